@@ -26,18 +26,30 @@ import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Optional;
 
-import static dk.mmj.evhe.client.SSLHelper.configureWebTarget;
-
 public abstract class Client implements Application {
     private static final String PUBLIC_KEY_NAME = "rsa";
     private static final Logger logger = LogManager.getLogger(Client.class);
 
+    ShardedBulletinBoard bulletinBoard;
     JerseyWebTarget target;
 
     private PublicInformationEntity publicInfo;
 
     public Client(ClientConfiguration configuration) {
-        target = configureWebTarget(logger, configuration.targetUrl);
+        bulletinBoard = new ShardedBulletinBoard(logger, configuration.targetUrl);
+        target = bulletinBoard.primary();
+    }
+
+    /**
+     * Makes sure that every shard of the bulletin board is listed at its position. Terminates if not
+     */
+    void assertShards() {
+        try {
+            bulletinBoard.verifyShards();
+        } catch (IOException e) {
+            logger.error("The shards of the bulletin board are not listed in order. Terminating", e);
+            System.exit(-1);
+        }
     }
 
     /**
@@ -48,9 +60,9 @@ public abstract class Client implements Application {
     protected PublicKey getPublicKey() {
         PublicInformationEntity info = fetchPublicInfo();
 
-        BigInteger h = SecurityUtils.combinePartials(info.getPublicKeys(), info.getP());
+        BigInteger h = SecurityUtils.combinePartials(info.getPublicKeys(), info.getGroup());
 
-        return new PublicKey(h, info.getG(), info.getQ());
+        return new PublicKey(h, info.getG(), info.getQ(), info.getP(), info.getCurve());
     }
 
     PublicInformationEntity fetchPublicInfo() {
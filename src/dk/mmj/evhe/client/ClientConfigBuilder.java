@@ -16,6 +16,7 @@ public class ClientConfigBuilder implements CommandLineParser.ConfigBuilder {
     private static final String ID = "id=";
     private static final String VOTE = "vote=";
     private static final String MULTI = "multi=";
+    private static final String BATCH = "batch=";
     private static final String READ = "read=";
     private static final String FORCE_CALCULATIONS = "forceCalculations=";
 
@@ -24,12 +25,13 @@ public class ClientConfigBuilder implements CommandLineParser.ConfigBuilder {
     private String id = "TEST_ID" + UUID.randomUUID().toString();
     private Boolean vote = null;
     private Integer multi = null;
+    private int batch = 1;
     private boolean read = false;
     private boolean forceCalculations = false;
 
     /**
      * Sets the local variables by translating the input from the command line.
-     * The available commands are "server=", "id=", "vote=" or "multi=".
+     * The available commands are "server=", "id=", "vote=", "multi=" or "batch=".
      *
      * @param command the command given as parameter.
      */
@@ -44,6 +46,8 @@ public class ClientConfigBuilder implements CommandLineParser.ConfigBuilder {
             vote = Boolean.parseBoolean(cmd.substring(VOTE.length()));
         } else if (cmd.startsWith(MULTI)) {
             multi = Integer.parseInt(cmd.substring(MULTI.length()));
+        } else if (cmd.startsWith(BATCH)) {
+            batch = Integer.parseInt(cmd.substring(BATCH.length()));
         } else if (cmd.startsWith(READ)) {
             read = Boolean.parseBoolean(cmd.substring(READ.length()));
         } else if (cmd.startsWith(FORCE_CALCULATIONS)) {
@@ -63,7 +67,7 @@ public class ClientConfigBuilder implements CommandLineParser.ConfigBuilder {
         if (read) {
             return new ResultFetcher.ResultFetcherConfiguration(targetUrl, forceCalculations);
         } else {
-            return new Voter.VoterConfiguration(targetUrl, id, vote, multi);
+            return new Voter.VoterConfiguration(targetUrl, id, vote, multi, batch);
         }
     }
 
@@ -75,9 +79,11 @@ public class ClientConfigBuilder implements CommandLineParser.ConfigBuilder {
         return "\tMODE: client\n" +
                 "\t  --" + TARGET_URL + "url\t\t Specifies url for public server to connect to. Standard is: "
                 + targetUrl + "\n" +
+                "\t\t\t\t For a sharded bulletin board, the urls of all shards are given comma separated, in shard order\n" +
                 "\t  --" + ID + "idString\t\t id identifying this instance as a unique voter\n" +
                 "\t  --" + VOTE + "{true,false}\t the vote to be cast. If not supplied program will prompt for it\n" +
                 "\t  --" + MULTI + "int\t\t How many random votes should be cast. If set, id and vote is ignored as it is test.\n" +
+                "\t  --" + BATCH + "int\t\t Default=1. Number of votes posted per request when multi is set.\n" +
                 "\t  --" + READ + "boolean\t Default=false. If true, all params except " + TARGET_URL.substring(0, TARGET_URL.length() - 1) +
                 "are ignored. Fetches poll results from bulletin board.\n" +
                 "\t  --" + FORCE_CALCULATIONS + "boolean\t\t Forces client to calculate sum of votes.\n";
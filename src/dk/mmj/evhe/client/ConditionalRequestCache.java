@@ -0,0 +1,114 @@
+package dk.mmj.evhe.client;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Client filter making GET requests conditional, for responses tagged with an entity tag.
+ * <br/>
+ * The body of a tagged response is kept, and later requests for the same resource send its tag in an
+ * {@value HttpHeaders#IF_NONE_MATCH} header. When the server answers that the resource is unchanged,
+ * the kept response is returned instead, so clients never see the 304.
+ * <br/>
+ * At most {@value #MAX_ENTRIES} responses of up to {@value #MAX_BODY_SIZE} bytes are kept.
+ */
+public class ConditionalRequestCache implements ClientRequestFilter, ClientResponseFilter {
+    private static final int MAX_ENTRIES = 64;
+    private static final int MAX_BODY_SIZE = 1 << 20;
+    private final Map<String, Cached> cache = new ConcurrentHashMap<>();
+
+    @Override
+    public void filter(ClientRequestContext request) {
+        if (!HttpMethod.GET.equals(request.getMethod())) {
+            return;
+        }
+
+        Cached cached = cache.get(key(request));
+        if (cached != null) {
+            request.getHeaders().putSingle(HttpHeaders.IF_NONE_MATCH, cached.tag);
+        }
+    }
+
+    @Override
+    public void filter(ClientRequestContext request, ClientResponseContext response) throws IOException {
+        if (!HttpMethod.GET.equals(request.getMethod())) {
+            return;
+        }
+
+        String key = key(request);
+        Cached cached = cache.get(key);
+
+        if (response.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode() && cached != null) {
+            response.setStatus(Response.Status.OK.getStatusCode());
+            response.getHeaders().putSingle(HttpHeaders.CONTENT_TYPE, cached.contentType);
+            response.setEntityStream(new ByteArrayInputStream(cached.body));
+            return;
+        }
+
+        String tag = response.getHeaderString(HttpHeaders.ETAG);
+        String contentType = response.getHeaderString(HttpHeaders.CONTENT_TYPE);
+        if (response.getStatus() != Response.Status.OK.getStatusCode() || tag == null || !response.hasEntity()) {
+            return;
+        }
+
+        byte[] body = readBody(response.getEntityStream());
+        response.setEntityStream(new ByteArrayInputStream(body));
+
+        if (body.length <= MAX_BODY_SIZE) {
+            if (cache.size() >= MAX_ENTRIES && !cache.containsKey(key)) {
+                cache.clear();
+            }
+            cache.put(key, new Cached(tag, contentType, body));
+        }
+    }
+
+    /**
+     * Responses are kept by resource and accepted media types, as a resource can have several representations
+     */
+    private static String key(ClientRequestContext request) {
+        MultivaluedMap<String, String> headers = request.getStringHeaders();
+        List<String> accept = headers.get(HttpHeaders.ACCEPT);
+
+        return request.getUri() + " " + (accept != null ? accept : new ArrayList<>());
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+
+        try (InputStream stream = in) {
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    private static class Cached {
+        private final String tag;
+        private final String contentType;
+        private final byte[] body;
+
+        private Cached(String tag, String contentType, byte[] body) {
+            this.tag = tag;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package dk.mmj.evhe.client;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import dk.mmj.evhe.crypto.ElGamal;
 import dk.mmj.evhe.crypto.SecurityUtils;
 import dk.mmj.evhe.crypto.exceptions.UnableToDecryptException;
@@ -9,13 +8,20 @@ import dk.mmj.evhe.crypto.zeroknowledge.VoteProofUtils;
 import dk.mmj.evhe.entities.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.glassfish.jersey.client.JerseyWebTarget;
 
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -32,19 +38,30 @@ public class ResultFetcher extends Client {
 
     @Override
     public void run() {
+        assertShards();
+
         logger.info("Fetching public information");
         PublicInformationEntity publicInformationEntity = fetchPublicInfo();
         long endTime = publicInformationEntity.getEndTime();
         if (new Date().getTime() < endTime) {
             long diff = (endTime - new Date().getTime()) / 60_000;
             logger.info("The vote has not yet terminated, so results are unavailable. " +
-                    "The vote should terminate in about " + diff + " minutes");
-            return;
+                    "The vote should terminate in about " + diff + " minutes. Waiting for the bulletin board to close it");
+
+            try {
+                if (bulletinBoard.awaitClose(endTime) == null) {
+                    logger.info("The bulletin board does not announce when the vote closes, or did not close it. Try again later");
+                    return;
+                }
+            } catch (IOException | ProcessingException | WebApplicationException e) {
+                logger.error("Unable to wait for the vote to close", e);
+                return;
+            }
         }
 
         logger.info("Fetching partial results");
         PublicKey publicKey = getPublicKey();
-        ResultList resultList = target.path("result").request().get(ResultList.class);
+        ResultList resultList = target.path("result").request(BinaryEncoding.MEDIA_TYPE, MediaType.APPLICATION_JSON).get(ResultList.class);
         List<PartialResult> results = resultList.getResults();
         if (results == null || results.isEmpty()) {
             logger.info("Did not fetch any results. Probable cause is unfinished decryption. Try again later");
@@ -70,30 +87,27 @@ public class ResultFetcher extends Client {
                 logger.info("Forcing local calculations on votes");
             }
 
-            logger.info("Fetching votes");
-            VoteList votes;
-            List<PersistedVote> actualVotes;
+            logger.info("Streaming votes from " + bulletinBoard.size() + " shard(s)");
+            Tally total;
             try {
-                String getVotes = target.path("getVotes").request().get(String.class);
-                votes = new ObjectMapper().readerFor(VoteList.class).readValue(getVotes);
-                logger.debug("Filtering votes");
-                actualVotes = votes.getVotes().parallelStream()
-                        .filter(v -> v.getTs().getTime() < endTime)
-                        .filter(v -> VoteProofUtils.verifyProof(v, publicKey))
-                        .collect(Collectors.toList());
-            } catch (IOException e) {
+                List<Tally> shardSums = bulletinBoard.onAllShards(shard -> sumVotes(shard, endTime, publicKey));
+                total = ShardedBulletinBoard.combine(shardSums, publicKey.getGroup());
+            } catch (IOException | WebApplicationException e) {
                 logger.error("Failed to read votes from server", e);
                 System.exit(-1);
                 return;
             }
 
-            logger.info("Summing votes");
-            sum = SecurityUtils.concurrentVoteSum(votes.getVotes(), publicKey, 1000);
+            sum = total.getCipherText();
             d = sum.getD();
-            amountOfVotes = actualVotes.size();
+            amountOfVotes = total.getVotes();
+
+            crossCheckTally(fetchTally(publicKey), sum);
         } else {
             logger.info("Fetched ciphertexts and number of votes were equal");
             logger.info("Using ciphertext and amount of collected votes from DA with id=" + firstDA.getId());
+
+            crossCheckTally(fetchTally(publicKey), sum);
         }
 
 
@@ -104,7 +118,9 @@ public class ResultFetcher extends Client {
             PublicKey partialPublicKey = new PublicKey(
                     publicInformationEntity.getPublicKeys().get(result.getId()),
                     publicInformationEntity.getG(),
-                    publicInformationEntity.getQ());
+                    publicInformationEntity.getQ(),
+                    publicInformationEntity.getP(),
+                    publicInformationEntity.getCurve());
             boolean validProof = DLogProofUtils.verifyProof(sum, partialDecryption, partialPublicKey, result.getProof(), result.getId());
 
             if (validProof) {
@@ -115,8 +131,8 @@ public class ResultFetcher extends Client {
         int result = 0;
         try {
             logger.info("Attempting to decrypt from " + partials.size() + " partials");
-            BigInteger cs = SecurityUtils.combinePartials(partials, publicKey.getP());
-            result = ElGamal.homomorphicDecryptionFromPartials(d, cs, publicKey.getG(), publicKey.getP(), amountOfVotes);
+            BigInteger cs = SecurityUtils.combinePartials(partials, publicKey.getGroup());
+            result = ElGamal.homomorphicDecryptionFromPartials(d, cs, publicKey.getG(), publicKey.getGroup(), amountOfVotes);
         } catch (UnableToDecryptException e) {
             logger.error("Failed to decrypt from partial decryptions.", e);
             System.exit(-1);
@@ -125,6 +141,73 @@ public class ResultFetcher extends Client {
         logger.info("Result: " + result + "/" + amountOfVotes);
     }
 
+    /**
+     * Streams the votes of a shard, and sums those cast in time with valid proofs
+     *
+     * @param shard     the shard
+     * @param endTime   end of the vote
+     * @param publicKey key the votes are encrypted under
+     * @return sum of the valid votes, and the number of them
+     * @throws IOException if the votes could not be read
+     */
+    private Tally sumVotes(JerseyWebTarget shard, long endTime, PublicKey publicKey) throws IOException {
+        List<CompletableFuture<CipherText>> pageSums = new ArrayList<>();
+        List<CompletableFuture<Long>> pageCounts = new ArrayList<>();
+        VoteStream stream = new VoteStream(shard, endTime);
+        List<PersistedVote> page;
+
+        while ((page = stream.nextPage()) != null) {
+            //The stream only returns votes cast before the end of the vote
+            List<PersistedVote> timelyVotes = page;
+
+            //Pages are verified and summed while the next is downloaded
+            pageSums.add(CompletableFuture.supplyAsync(() -> SecurityUtils.concurrentVoteSum(timelyVotes, publicKey)));
+            pageCounts.add(CompletableFuture.supplyAsync(() -> timelyVotes.parallelStream()
+                    .filter(v -> VoteProofUtils.verifyProof(v, publicKey))
+                    .count()));
+        }
+
+        CipherText sum = pageSums.stream()
+                .map(CompletableFuture::join)
+                .reduce((a, b) -> ElGamal.homomorphicAddition(a, b, publicKey.getGroup()))
+                .orElseGet(() -> SecurityUtils.concurrentVoteSum(Collections.<PersistedVote>emptyList(), publicKey));
+        int votes = (int) pageCounts.stream().mapToLong(CompletableFuture::join).sum();
+
+        return new Tally(sum, votes);
+    }
+
+    /**
+     * @param publicKey key the votes are encrypted under
+     * @return the running tally published by the bulletin board, combined over its shards, or null if none was published
+     */
+    private Tally fetchTally(PublicKey publicKey) {
+        Tally tally = bulletinBoard.fetchTally(publicKey.getGroup());
+
+        if (tally == null) {
+            logger.info("Bulletin board did not publish a tally");
+        }
+
+        return tally;
+    }
+
+    /**
+     * Compares the running tally published by the bulletin board to the sum used for the result
+     *
+     * @param tally the tally from the bulletin board, or null if none was published
+     * @param sum   the sum of the votes
+     */
+    private void crossCheckTally(Tally tally, CipherText sum) {
+        if (tally == null) {
+            return;
+        }
+
+        if (sum.equals(tally.getCipherText())) {
+            logger.info("Running tally from bulletin board matched the sum of " + tally.getVotes() + " votes");
+        } else {
+            logger.warn("Running tally from bulletin board did not match the sum of votes");
+        }
+    }
+
     private boolean decryptionAuthoritiesAgrees(List<PartialResult> results) {
         List<CipherText> cipherTexts = results.stream().map(PartialResult::getCipherText).collect(Collectors.toList());
         List<Integer> voteCounts = results.stream().map(PartialResult::getVotes).collect(Collectors.toList());
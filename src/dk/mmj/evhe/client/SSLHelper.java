@@ -1,5 +1,7 @@
 package dk.mmj.evhe.client;
 
+import dk.mmj.evhe.entities.BinaryEncoding;
+import dk.mmj.evhe.entities.BinaryEntityProvider;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.glassfish.jersey.client.ClientConfig;
@@ -61,7 +63,9 @@ public class SSLHelper {
     }
 
     /**
-     * Sets up {@link javax.ws.rs.client.WebTarget} using SSL
+     * Sets up {@link javax.ws.rs.client.WebTarget} using SSL, able to read and write the {@link BinaryEncoding}.
+     * <br/>
+     * GET requests for resources tagged by the server are made conditional, using a {@link ConditionalRequestCache}
      *
      * @param logger    logger used for reporting potential errors
      * @param targetUrl aseUrl for the webTarget
@@ -69,6 +73,8 @@ public class SSLHelper {
      */
     public static JerseyWebTarget configureWebTarget(Logger logger, String targetUrl) {
         ClientConfig clientConfig = new ClientConfig();
+        clientConfig.register(BinaryEntityProvider.class);
+        clientConfig.register(new ConditionalRequestCache());
 
         try {
             SSLContext ssl = SSLHelper.initializeSSL();
@@ -0,0 +1,265 @@
+package dk.mmj.evhe.client;
+
+import dk.mmj.evhe.crypto.ElGamal;
+import dk.mmj.evhe.crypto.group.Group;
+import dk.mmj.evhe.entities.BinaryEncoding;
+import dk.mmj.evhe.entities.CipherText;
+import dk.mmj.evhe.entities.ElectionClose;
+import dk.mmj.evhe.entities.Shard;
+import dk.mmj.evhe.entities.Tally;
+import org.apache.logging.log4j.Logger;
+import org.glassfish.jersey.client.JerseyWebTarget;
+
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static dk.mmj.evhe.client.SSLHelper.configureWebTarget;
+
+/**
+ * The shards of a bulletin board.
+ * <br/>
+ * Votes are partitioned between the shards by voter id, as given by {@link Shard#of(String, int)}.
+ * Public information and results are posted to every shard, so any shard can serve them, and each shard keeps
+ * a running tally of its own votes, which are combined homomorphically.
+ * A bulletin board that is not sharded is a single shard.
+ */
+public class ShardedBulletinBoard {
+    static final long CLOSE_GRACE_MS = 5 * 60_000;
+    private static final int CLOSE_WAIT_SECONDS = 30;
+    private final List<JerseyWebTarget> shards = new ArrayList<>();
+
+    /**
+     * @param logger logger used for reporting potential errors
+     * @param urls   comma separated urls of the shards, ordered by shard index
+     */
+    public ShardedBulletinBoard(Logger logger, String urls) {
+        for (String url : urls.split(",")) {
+            shards.add(configureWebTarget(logger, url.trim()));
+        }
+    }
+
+    /**
+     * Creates a bulletin board of shards reached through targets configured by the caller
+     *
+     * @param shards targets of the shards, ordered by shard index
+     */
+    public ShardedBulletinBoard(List<JerseyWebTarget> shards) {
+        this.shards.addAll(shards);
+    }
+
+    /**
+     * @return number of shards
+     */
+    public int size() {
+        return shards.size();
+    }
+
+    /**
+     * @return the first shard, used for reading what every shard holds
+     */
+    public JerseyWebTarget primary() {
+        return shards.get(0);
+    }
+
+    /**
+     * @return all shards, ordered by shard index
+     */
+    public List<JerseyWebTarget> all() {
+        return shards;
+    }
+
+    /**
+     * @param voterId id of a voter
+     * @return the shard the voter casts votes on
+     */
+    public JerseyWebTarget forVoter(String voterId) {
+        return shards.get(Shard.of(voterId, shards.size()));
+    }
+
+    /**
+     * Checks that every shard is the shard at its position in the list, and that the list holds all of them,
+     * so votes are cast on and read from the shard owning them.
+     * <br/>
+     * A bulletin board that does not tell which shard it is, is accepted as the only shard.
+     *
+     * @throws IOException if a shard could not be asked, or is not the shard at its position
+     */
+    public void verifyShards() throws IOException {
+        List<Shard> announced = onAllShards(shard -> {
+            try {
+                return shard.path("shard").request(MediaType.APPLICATION_JSON).get(Shard.class);
+            } catch (NotFoundException e) {
+                return null;
+            } catch (ProcessingException | WebApplicationException e) {
+                throw new IOException("Unable to ask " + shard.getUri() + " which shard it is", e);
+            }
+        });
+
+        for (int i = 0; i < announced.size(); i++) {
+            Shard shard = announced.get(i);
+
+            if (shard == null && shards.size() > 1) {
+                throw new IOException("Bulletin board " + shards.get(i).getUri() + " is not sharded, but is listed as shard "
+                        + i + " of " + shards.size());
+            }
+            if (shard != null && (shard.getIndex() != i || shard.getCount() != shards.size())) {
+                throw new IOException("Bulletin board " + shards.get(i).getUri() + " is shard " + shard.getIndex()
+                        + " of " + shard.getCount() + ", but is listed as shard " + i + " of " + shards.size());
+            }
+        }
+    }
+
+    /**
+     * Applies the function to every shard in parallel, each on its own thread
+     *
+     * @param function function to apply, which may block on requests to the shard
+     * @param <T>      type of the results
+     * @return the result for each shard, ordered by shard index
+     * @throws IOException if the function failed on any shard
+     */
+    public <T> List<T> onAllShards(ShardFunction<T> function) throws IOException {
+        if (shards.size() == 1) {
+            List<T> result = new ArrayList<>();
+            result.add(function.apply(shards.get(0)));
+            return result;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(shards.size());
+        try {
+            List<CompletableFuture<T>> futures = shards.stream()
+                    .map(shard -> CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return function.apply(shard);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }, executor))
+                    .collect(Collectors.toList());
+
+            return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Waits for every shard to close the vote, by long-polling each of them.
+     * <br/>
+     * A shard closes shortly after the end of the vote, so a shard that has not closed {@value #CLOSE_GRACE_MS} ms
+     * after it is given up on, as if it did not announce when it closes.
+     *
+     * @param endTime end of the vote, in ms since January 1, 1970, 00:00:00 GMT
+     * @return the close announced by each shard, ordered by shard index,
+     * or null if a shard does not announce when it closes, or did not close in time
+     * @throws IOException if a shard could not be asked
+     */
+    public List<ElectionClose> awaitClose(long endTime) throws IOException {
+        long deadline = endTime + CLOSE_GRACE_MS;
+
+        List<ElectionClose> closes = onAllShards(shard -> {
+            while (true) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+
+                long wait = Math.max(1, Math.min(CLOSE_WAIT_SECONDS, remaining / 1000));
+                Response response = shard.path("close").queryParam("wait", wait)
+                        .request(MediaType.APPLICATION_JSON).get();
+
+                if (response.getStatus() == Response.Status.OK.getStatusCode()) {
+                    return response.readEntity(ElectionClose.class);
+                }
+
+                response.close();
+                if (response.getStatus() == Response.Status.NOT_FOUND.getStatusCode()) {
+                    return null;
+                }
+                if (response.getStatus() != Response.Status.NO_CONTENT.getStatusCode()) {
+                    throw new IOException("Unable to wait for the vote to close, got response: " + response.getStatus());
+                }
+            }
+        });
+
+        return closes.contains(null) ? null : closes;
+    }
+
+    /**
+     * Fetches the running tally of every shard, and combines them
+     *
+     * @param group group the votes are encrypted in
+     * @return the combined tally, or null if a shard did not publish one
+     */
+    public Tally fetchTally(Group group) {
+        List<Tally> tallies;
+        try {
+            tallies = onAllShards(shard -> {
+                try {
+                    return shard.path("tally").request(BinaryEncoding.MEDIA_TYPE, MediaType.APPLICATION_JSON).get(Tally.class);
+                } catch (ProcessingException | WebApplicationException e) {
+                    return null;
+                }
+            });
+        } catch (IOException e) {
+            return null;
+        }
+
+        if (tallies.contains(null)) {
+            return null;
+        }
+
+        return combine(tallies, group);
+    }
+
+    /**
+     * @param tallies tallies of disjoint sets of votes. A tally of no votes may have no ciphertext
+     * @param group   group the votes are encrypted in
+     * @return tally of all the votes
+     */
+    public static Tally combine(List<Tally> tallies, Group group) {
+        CipherText sum = tallies.stream()
+                .map(Tally::getCipherText)
+                .filter(Objects::nonNull)
+                .reduce((a, b) -> ElGamal.homomorphicAddition(a, b, group))
+                .orElse(null);
+        int votes = tallies.stream().mapToInt(Tally::getVotes).sum();
+
+        return new Tally(sum, votes);
+    }
+
+    /**
+     * Function applied to a shard
+     *
+     * @param <T> type of the result
+     */
+    @FunctionalInterface
+    public interface ShardFunction<T> {
+        /**
+         * @param shard target for the shard
+         * @return the result for the shard
+         * @throws IOException if the shard could not be read
+         */
+        T apply(JerseyWebTarget shard) throws IOException;
+    }
+}
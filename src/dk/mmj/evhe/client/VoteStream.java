@@ -0,0 +1,135 @@
+package dk.mmj.evhe.client;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import dk.mmj.evhe.entities.BallotChain;
+import dk.mmj.evhe.entities.BinaryEncoding;
+import dk.mmj.evhe.entities.PersistedVote;
+import dk.mmj.evhe.server.bulletinboard.BulletinBoardResource;
+import org.glassfish.jersey.client.JerseyWebTarget;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the votes from a bulletin board one page at a time.
+ * <br/>
+ * Each page is parsed as it is streamed, so at most one page of votes is held by the stream,
+ * and a consumer can process a page while the next is downloaded.
+ * Pages are requested in the {@link BinaryEncoding}, falling back to newline delimited JSON.
+ * <br/>
+ * The stream keeps a {@link BallotChain} over the votes it has read, and verifies that each page extends it
+ * to the head given by the bulletin board. Votes are therefore read in full, and filtered by time on the client.
+ * A stream can be continued from a chain held from an earlier stream, and once it reaches the end of the votes,
+ * calling {@link #nextPage()} again returns any votes accepted since, so a consumer can stay in sync cheaply.
+ */
+public class VoteStream {
+    private static final int PAGE_SIZE = 1000;
+    private final ObjectReader reader = new ObjectMapper().readerFor(PersistedVote.class);
+    private final JerseyWebTarget bulletinBoard;
+    private final Long before;
+    private BallotChain chain;
+
+    /**
+     * @param bulletinBoard target for the bulletin board
+     * @param before        only votes cast before this time, in milliseconds since the epoch, are read. Null reads all votes
+     */
+    public VoteStream(JerseyWebTarget bulletinBoard, Long before) {
+        this(bulletinBoard, before, new BallotChain());
+    }
+
+    /**
+     * Creates a stream continuing after votes already held
+     *
+     * @param bulletinBoard target for the bulletin board
+     * @param before        only votes cast before this time, in milliseconds since the epoch, are read. Null reads all votes
+     * @param chain         chain over the votes held. The stream continues after them
+     */
+    public VoteStream(JerseyWebTarget bulletinBoard, Long before, BallotChain chain) {
+        this.bulletinBoard = bulletinBoard;
+        this.before = before;
+        this.chain = new BallotChain(chain.getLength(), chain.getHead());
+    }
+
+    /**
+     * Fetches the next page of votes.
+     * <br/>
+     * A page can be empty when none of its votes were cast before the requested time.
+     *
+     * @return the votes in the page, or null if there are no more votes
+     * @throws IOException if the votes could not be read, come without the head of the chain,
+     *                     or do not extend the chain of votes read so far
+     */
+    public List<PersistedVote> nextPage() throws IOException {
+        int offset = chain.getLength();
+        JerseyWebTarget target = bulletinBoard.path("votes")
+                .queryParam("offset", offset)
+                .queryParam("limit", PAGE_SIZE);
+
+        Response response = target.request(BinaryEncoding.MEDIA_TYPE, BulletinBoardResource.NDJSON + ";q=0.5").get();
+        if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+            response.close();
+            throw new WebApplicationException("Unable to fetch votes, got response: " + response, response);
+        }
+
+        int next = Integer.parseInt(response.getHeaderString(BulletinBoardResource.NEXT_OFFSET));
+        if (next == offset) {
+            response.close();
+            return null;
+        }
+
+        String head = response.getHeaderString(BulletinBoardResource.CHAIN_HEAD);
+        if (head == null) {
+            response.close();
+            throw new IOException("Votes from offset " + offset + " came without the head of their chain");
+        }
+
+        List<PersistedVote> votes = new ArrayList<>();
+        boolean binary = MediaType.valueOf(BinaryEncoding.MEDIA_TYPE).isCompatible(response.getMediaType());
+
+        try (InputStream in = new BufferedInputStream(response.readEntity(InputStream.class))) {
+            if (binary) {
+                PersistedVote vote;
+                while ((vote = BinaryEncoding.read(PersistedVote.class, in)) != null) {
+                    votes.add(vote);
+                }
+            } else {
+                MappingIterator<PersistedVote> iterator = reader.readValues(in);
+                while (iterator.hasNextValue()) {
+                    votes.add(iterator.nextValue());
+                }
+            }
+        }
+
+        if (votes.size() != next - offset) {
+            throw new IOException("Expected " + (next - offset) + " votes from offset " + offset + ", got " + votes.size());
+        }
+
+        BallotChain extended = new BallotChain(offset, chain.getHead());
+        votes.forEach(extended::append);
+
+        if (!extended.hasHead(BallotChain.fromString(head))) {
+            throw new IOException("Votes from offset " + offset + " do not extend the chain of votes read so far");
+        }
+
+        chain = extended;
+        return before != null
+                ? votes.stream().filter(v -> v.getTs().getTime() < before).collect(Collectors.toList())
+                : votes;
+    }
+
+    /**
+     * @return chain over the votes read so far, from which a later stream can continue
+     */
+    public BallotChain getChain() {
+        return new BallotChain(chain.getLength(), chain.getHead());
+    }
+}
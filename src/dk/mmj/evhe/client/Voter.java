@@ -1,26 +1,41 @@
 package dk.mmj.evhe.client;
 
-import dk.mmj.evhe.crypto.SecurityUtils;
+import dk.mmj.evhe.crypto.VotePrecomputationPool;
+import dk.mmj.evhe.entities.BinaryEncoding;
 import dk.mmj.evhe.entities.PublicKey;
+import dk.mmj.evhe.entities.Shard;
+import dk.mmj.evhe.entities.VoteBatch;
+import dk.mmj.evhe.entities.VoteBatchResult;
 import dk.mmj.evhe.entities.VoteDTO;
+import dk.mmj.evhe.server.bulletinboard.BulletinBoardResource;
 import dk.mmj.evhe.server.decryptionauthority.DecryptionAuthorityConfigBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.glassfish.jersey.client.JerseyWebTarget;
 
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 public class Voter extends Client {
     private static final Logger logger = LogManager.getLogger(DecryptionAuthorityConfigBuilder.class);
+    private static final int MAX_PRECOMPUTED_VOTES = 256;
+    private static final int MAX_ATTEMPTS = 10;
+    private final Random random = new Random();
     private String id;
     private Boolean vote;
     private Integer multi;
+    private int batchSize;
 
 
     /**
@@ -33,6 +48,7 @@ public class Voter extends Client {
         id = configuration.id;
         vote = configuration.vote;
         multi = configuration.multi;
+        batchSize = configuration.batchSize;
     }
 
     /**
@@ -41,29 +57,40 @@ public class Voter extends Client {
      * if <code>multi</code> is set it casts <code>multi</code> random votes, for testing purposes.
      * <br/>
      * Otherwise just casts a single, specified vote.
+     * <br/>
+     * The exponentiations for encrypting the votes are precomputed in the background, while waiting for input or
+     * for the previous vote to be posted.
      */
     @Override
     public void run() {
         assertBulletinBoard();
+        assertShards();
 
         PublicKey publicKey = getPublicKey();
         if (multi != null) {
-            doMultiVote(publicKey);
+            int threads = Runtime.getRuntime().availableProcessors();
+            try (VotePrecomputationPool pool = new VotePrecomputationPool(publicKey, Math.min(multi, MAX_PRECOMPUTED_VOTES), threads)) {
+                doMultiVote(pool);
+            }
         } else {
-            int vote = getVote();
-            doVote(vote, publicKey);
+            try (VotePrecomputationPool pool = new VotePrecomputationPool(publicKey, 1, 1)) {
+                int vote = getVote();
+                doVote(vote, pool);
+            }
         }
     }
 
     /**
      * Casts <code>multi</code> random votes, for testing purposes.
+     * <br/>
+     * If <code>batchSize</code> is larger than one, the votes are posted in batches of that size.
      *
-     * @param publicKey is the public key used to encrypt the vote.
+     * @param pool is the pool of precomputations for the public key used to encrypt the votes.
      */
-    private void doMultiVote(PublicKey publicKey) {
-        Random random = new Random();
+    private void doMultiVote(VotePrecomputationPool pool) {
         int trueVotes = 0;
         int falseVotes = 0;
+        List<VoteDTO> batch = new ArrayList<>();
 
         for (int i = 0; i < multi; i++) {
             System.out.print("Dispatching votes: " + i + "/" + multi + " \r");
@@ -77,7 +104,19 @@ public class Voter extends Client {
                 trueVotes++;
             }
 
-            doVote(vote, publicKey);
+            if (batchSize > 1) {
+                batch.add(pool.generateVote(vote, id));
+                if (batch.size() == batchSize) {
+                    postVotes(batch);
+                    batch.clear();
+                }
+            } else {
+                doVote(vote, pool);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            postVotes(batch);
         }
         System.out.println("Dispatched " + multi + " votes with " + trueVotes + " for, and " + falseVotes + " against");
     }
@@ -85,11 +124,11 @@ public class Voter extends Client {
     /**
      * Encrypts the vote under the public key, and casts the encrypted vote.
      *
-     * @param publicKey is the public key used to encrypt the vote.
-     * @param vote      is the vote to be cast, either 0 or 1.
+     * @param vote is the vote to be cast, either 0 or 1.
+     * @param pool is the pool of precomputations for the public key used to encrypt the vote.
      */
-    private void doVote(int vote, PublicKey publicKey) {
-        VoteDTO voteDTO = SecurityUtils.generateVote(vote, id, publicKey);
+    private void doVote(int vote, VotePrecomputationPool pool) {
+        VoteDTO voteDTO = pool.generateVote(vote, id);
         postVote(voteDTO);
     }
 
@@ -115,18 +154,119 @@ public class Voter extends Client {
 
     /**
      * Posts the encrypted vote to the public server, using the "/vote" path.
+     * <br/>
+     * The vote is sent in the {@link BinaryEncoding}, falling back to JSON if the server does not support it.
      *
      * @param vote the VoteDTO with vote encrypted under the public key, and zero knowledge proof.
      */
     private void postVote(VoteDTO vote) {
-        Entity<?> entity = Entity.entity(vote, MediaType.APPLICATION_JSON_TYPE);
-        Response response = target.path("vote").request().post(entity);
+        JerseyWebTarget shard = bulletinBoard.forVoter(vote.getId());
+        Response response = post(shard, "vote", Entity.entity(vote, BinaryEncoding.MEDIA_TYPE));
+
+        if (response.getStatus() == Response.Status.UNSUPPORTED_MEDIA_TYPE.getStatusCode()) {
+            response.close();
+            response = post(shard, "vote", Entity.entity(vote, MediaType.APPLICATION_JSON_TYPE));
+        }
 
         if (response.getStatus() != 204) {
             logger.warn("Failed to post vote to server: Error code was " + response.getStatus());
         }
     }
 
+    /**
+     * Posts a batch of encrypted votes to the public server in a single request, using the "/votes" path.
+     * <br/>
+     * The batch is sent in the {@link BinaryEncoding}, falling back to JSON if the server does not support it.
+     * If the server does not accept batches, the votes are posted one at a time.
+     * When the bulletin board is sharded, the votes are split into a batch for each shard.
+     *
+     * @param votes the VoteDTOs with votes encrypted under the public key, and zero knowledge proofs.
+     */
+    private void postVotes(List<VoteDTO> votes) {
+        Map<Integer, List<VoteDTO>> byShard = votes.stream()
+                .collect(Collectors.groupingBy(v -> Shard.of(v.getId(), bulletinBoard.size())));
+
+        byShard.forEach((shard, shardVotes) -> postBatch(bulletinBoard.all().get(shard), shardVotes));
+    }
+
+    private void postBatch(JerseyWebTarget shard, List<VoteDTO> votes) {
+        VoteBatch batch = new VoteBatch(votes);
+        Response response = post(shard, "votes", Entity.entity(batch, BinaryEncoding.MEDIA_TYPE),
+                BinaryEncoding.MEDIA_TYPE, MediaType.APPLICATION_JSON);
+
+        if (response.getStatus() == Response.Status.UNSUPPORTED_MEDIA_TYPE.getStatusCode()) {
+            response.close();
+            response = post(shard, "votes", Entity.entity(batch, MediaType.APPLICATION_JSON_TYPE), MediaType.APPLICATION_JSON);
+        }
+
+        int status = response.getStatus();
+        if (status == Response.Status.NOT_FOUND.getStatusCode() || status == Response.Status.METHOD_NOT_ALLOWED.getStatusCode()) {
+            response.close();
+            logger.info("Server does not accept batches of votes. Posting them one at a time");
+            votes.forEach(this::postVote);
+            return;
+        }
+
+        if (status != 200) {
+            response.close();
+            logger.warn("Failed to post batch of votes to server: Error code was " + status);
+            return;
+        }
+
+        List<VoteBatchResult.Status> statuses = response.readEntity(VoteBatchResult.class).getStatuses();
+        long rejected = statuses.stream().filter(s -> s != VoteBatchResult.Status.ACCEPTED).count();
+        if (rejected > 0) {
+            logger.warn("Server rejected " + rejected + " of " + votes.size() + " votes in batch");
+        }
+    }
+
+    /**
+     * Posts the entity to the path on the shard.
+     * <br/>
+     * While the server is too busy to accept it, the entity is posted again after the delay given by the server
+     * in its {@value HttpHeaders#RETRY_AFTER} header, up to {@value #MAX_ATTEMPTS} attempts in all.
+     * A random delay of up to a second is added, so voters refused together do not all return together.
+     *
+     * @param shard  the shard
+     * @param path   path to post to
+     * @param entity the entity
+     * @param accept accepted media types of the response
+     * @return the last response of the server
+     */
+    private Response post(JerseyWebTarget shard, String path, Entity<?> entity, String... accept) {
+        for (int attempt = 1; ; attempt++) {
+            Response response = shard.path(path).request(accept).post(entity);
+
+            if (response.getStatus() != BulletinBoardResource.TOO_MANY_REQUESTS || attempt == MAX_ATTEMPTS) {
+                return response;
+            }
+
+            long delay = retryDelaySeconds(response) * 1000 + random.nextInt(1000);
+            response.close();
+            logger.info("Server is busy. Posting to " + path + " again in " + delay + "ms");
+
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return response;
+            }
+        }
+    }
+
+    /**
+     * @return seconds to wait before retrying, as given by the response. One if it gives none
+     */
+    private static long retryDelaySeconds(Response response) {
+        String retryAfter = response.getHeaderString(HttpHeaders.RETRY_AFTER);
+
+        try {
+            return retryAfter != null ? Math.max(0, Long.parseLong(retryAfter.trim())) : 1;
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
     /**
      * Retrieves vote to be cast
      * <br/>
@@ -168,18 +308,21 @@ public class Voter extends Client {
         private final String id;
         private final Boolean vote;
         private final Integer multi;
+        private final int batchSize;
 
         /**
          * @param targetUrl url for bulletin board to post vote(s) to
          * @param id        voter id
          * @param vote      what to vote. True is pro while False is against
          * @param multi     if different from null, multiple random votes are dispatched
+         * @param batchSize number of votes posted per request, when multiple votes are dispatched
          */
-        VoterConfiguration(String targetUrl, String id, Boolean vote, Integer multi) {
+        VoterConfiguration(String targetUrl, String id, Boolean vote, Integer multi, int batchSize) {
             super(targetUrl);
             this.id = id;
             this.vote = vote;
             this.multi = multi;
+            this.batchSize = batchSize;
         }
     }
 }
@@ -1,11 +1,15 @@
 package dk.mmj.evhe.crypto;
 
 import dk.mmj.evhe.crypto.exceptions.UnableToDecryptException;
+import dk.mmj.evhe.crypto.group.Group;
 import dk.mmj.evhe.crypto.keygeneration.KeyGenerationParameters;
 import dk.mmj.evhe.entities.*;
 
 import java.math.BigInteger;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.OptionalLong;
+import java.util.stream.IntStream;
 
 /**
  * Class for handling encryption, decryption and key-generation for the Elgamal encryption scheme
@@ -25,9 +29,9 @@ public class ElGamal {
 
         BigInteger[] polynomial = SecurityUtils.generatePolynomial(polynomialDegree, primePair.getQ());
         Map<Integer, BigInteger> secretValues = SecurityUtils.generateSecretValues(polynomial, authorities, primePair.getQ());
-        Map<Integer, BigInteger> publicValues = SecurityUtils.generatePublicValues(secretValues, g, primePair.getP());
+        Map<Integer, BigInteger> publicValues = SecurityUtils.generatePublicValues(secretValues, g, params.getGroup());
 
-        return new DistKeyGenResult(g, primePair.getQ(), secretValues, publicValues);
+        return new DistKeyGenResult(g, primePair.getQ(), primePair.getP(), params.getCurve(), secretValues, publicValues);
     }
 
     /**
@@ -38,14 +42,32 @@ public class ElGamal {
      * @return the cipher text
      */
     static CipherText homomorphicEncryption(PublicKey publicKey, BigInteger message, BigInteger r) {
-        BigInteger p = publicKey.getQ().multiply(BigInteger.valueOf(2)).add(BigInteger.ONE);
+        Group group = publicKey.getGroup();
 
-        BigInteger c = publicKey.getG().modPow(r, p);
-        BigInteger d = publicKey.getG().modPow(message, p).multiply(publicKey.getH().modPow(r, p));
+        BigInteger c = group.fixedBasePow(publicKey.getG(), r);
+        BigInteger d = group.multiply(
+                group.fixedBasePow(publicKey.getG(), message),
+                group.fixedBasePow(publicKey.getH(), r));
 
         return new CipherText(c, d);
     }
 
+    /**
+     * Encrypts the message under the given public key, using the randomness and exponentiations of the precomputation
+     *
+     * @param publicKey      the public key
+     * @param message        the message to encrypt
+     * @param precomputation precomputation for the public key
+     * @return the cipher text
+     */
+    static CipherText homomorphicEncryption(PublicKey publicKey, BigInteger message, VotePrecomputation precomputation) {
+        Group group = publicKey.getGroup();
+
+        BigInteger d = group.multiply(group.fixedBasePow(publicKey.getG(), message), precomputation.getHPowR());
+
+        return new CipherText(precomputation.getC(), d);
+    }
+
     /**
      * Encrypts the message under the given public key, with the El-Gamal homomorphic encryption scheme
      *
@@ -67,13 +89,13 @@ public class ElGamal {
      * @return the original number which were encrypted
      */
     static int homomorphicDecryption(KeyPair keyPair, CipherText cipherText, int max) throws UnableToDecryptException {
-        BigInteger p = keyPair.getPublicKey().getQ().multiply(BigInteger.valueOf(2)).add(BigInteger.ONE);
-        BigInteger hr = cipherText.getC().modPow(keyPair.getSecretKey(), p);
-        BigInteger gPowMessage = cipherText.getD().multiply(hr.modInverse(p)).mod(p);
+        Group group = keyPair.getPublicKey().getGroup();
+        BigInteger hr = group.pow(cipherText.getC(), keyPair.getSecretKey());
+        BigInteger gPowMessage = group.multiply(cipherText.getD(), group.inverse(hr));
 
-        return findDecryptionValue(gPowMessage, keyPair.getPublicKey().getG(), keyPair.getPublicKey().getP(), max);
+        return findDecryptionValue(gPowMessage, keyPair.getPublicKey().getG(), group, max);
     }
-    
+
     /**
      * Partially decrypts the given c value
      *
@@ -86,6 +108,18 @@ public class ElGamal {
         return SecurityUtils.computePartial(c, partialSecretKey, p);
     }
 
+    /**
+     * Partially decrypts the given c value
+     *
+     * @param c                value to be partially decrypted
+     * @param partialSecretKey partial secret key used to decrypt
+     * @param group            the group of the public key
+     * @return A partial decryption of the C value
+     */
+    public static BigInteger partialDecryption(BigInteger c, BigInteger partialSecretKey, Group group) {
+        return SecurityUtils.computePartial(c, partialSecretKey, group);
+    }
+
     /**
      * Homomorphic addition
      * <br/>
@@ -102,26 +136,121 @@ public class ElGamal {
         return new CipherText(c, d);
     }
 
+    /**
+     * Homomorphic addition in the given group
+     * <br/>
+     * Creates a cipher text containing the sum of two original plaintexts, given their ciphertexts
+     *
+     * @param c1    cipher text of first original plaintext
+     * @param c2    cipher text of second original plaintext
+     * @param group the group of the public key the plaintexts are encrypted under
+     * @return cipher text containing sum of two plaintexts
+     */
+    public static CipherText homomorphicAddition(CipherText c1, CipherText c2, Group group) {
+        BigInteger c = group.multiply(c1.getC(), c2.getC());
+        BigInteger d = group.multiply(c1.getD(), c2.getD());
+
+        return new CipherText(c, d);
+    }
+
     static int homomorphicDecryptionFromPartials(CipherText cipherText, BigInteger combinedPartials, BigInteger g, BigInteger p, int max) throws UnableToDecryptException {
         return homomorphicDecryptionFromPartials(cipherText.getD(), combinedPartials, g, p, max);
     }
 
     public static int homomorphicDecryptionFromPartials(BigInteger d, BigInteger combinedPartials, BigInteger g, BigInteger p, int max) throws UnableToDecryptException {
-        BigInteger gPowMessage = d.multiply(combinedPartials.modInverse(p)).mod(p);
+        return homomorphicDecryptionFromPartials(d, combinedPartials, g, SecurityUtils.safePrimeGroup(p), max);
+    }
+
+    /**
+     * Decrypts the sum, given the combined partial decryptions
+     *
+     * @param d                d value of the ciphertext
+     * @param combinedPartials the combined partial decryptions, h^r
+     * @param g                generator g
+     * @param group            the group of the public key
+     * @param max              upper limit for the plaintext, exclusive
+     * @return the plaintext
+     * @throws UnableToDecryptException if the plaintext is not in the range [0;max)
+     */
+    public static int homomorphicDecryptionFromPartials(BigInteger d, BigInteger combinedPartials, BigInteger g, Group group, int max) throws UnableToDecryptException {
+        BigInteger gPowMessage = group.multiply(d, group.inverse(combinedPartials));
+
+        return findDecryptionValue(gPowMessage, g, group, max);
+    }
+
+    /**
+     * Finds b in the range [0;max) such that g^b = gPowMessage, using the baby-step giant-step algorithm.
+     * <br/>
+     * The baby steps g^j, for j in [0;m) where m = ceil(sqrt(max)), are stored in a table keyed on their residue.
+     * Then the giant steps gPowMessage * g^(-m*i) are looked up in the table, until b = m*i + j is found.
+     * <br/>
+     * The giant steps are partitioned and searched concurrently, as each partition only depends on the table.
+     *
+     * @param gPowMessage g^b
+     * @param g           generator g
+     * @param group       the group g is from
+     * @param max         upper limit for b, exclusive
+     * @return the smallest b in the range [0;max) such that g^b = gPowMessage
+     * @throws UnableToDecryptException if no such b exists
+     */
+    private static int findDecryptionValue(BigInteger gPowMessage, BigInteger g, Group group, int max) throws UnableToDecryptException {
+        if (max <= 0) {
+            throw new UnableToDecryptException("Could not decrypt message");
+        }
+
+        long m = (long) Math.ceil(Math.sqrt(max));
+        Map<BigInteger, Integer> babySteps = new HashMap<>();
+        BigInteger acc = group.getIdentity();
+
+        for (int j = 0; j < m; j++) {
+            babySteps.putIfAbsent(acc, j);
+            acc = group.multiply(acc, g);
+        }
+
+        BigInteger giantStep = group.inverse(acc);
+        long giantSteps = (max + m - 1) / m;
+        int partitions = (int) Math.min(giantSteps, Runtime.getRuntime().availableProcessors());
+        long partitionSize = (giantSteps + partitions - 1) / partitions;
 
-        return findDecryptionValue(gPowMessage, g, p, max);
+        OptionalLong result = IntStream.range(0, partitions).parallel()
+                .mapToLong(k -> searchGiantSteps(
+                        gPowMessage, giantStep, babySteps, group, m,
+                        k * partitionSize,
+                        Math.min(giantSteps, (k + 1) * partitionSize)))
+                .filter(b -> b >= 0 && b < max)
+                .min();
+
+        if (!result.isPresent()) {
+            throw new UnableToDecryptException("Could not decrypt message");
+        }
+
+        return (int) result.getAsLong();
     }
 
-    private static int findDecryptionValue(BigInteger gPowMessage, BigInteger g, BigInteger p, int max) throws UnableToDecryptException {
-        int b = 0;
+    /**
+     * Searches the giant steps i in the range [from;to) for a match in the table of baby steps
+     *
+     * @param gPowMessage g^b
+     * @param giantStep   g^(-m)
+     * @param babySteps   table mapping g^j to j, for j in [0;m)
+     * @param group       the group g is from
+     * @param m           number of baby steps
+     * @param from        first giant step to take, inclusive
+     * @param to          last giant step to take, exclusive
+     * @return the smallest b = m*i + j found in the range, or -1 if none was found
+     */
+    private static long searchGiantSteps(BigInteger gPowMessage, BigInteger giantStep, Map<BigInteger, Integer> babySteps,
+                                         Group group, long m, long from, long to) {
+        BigInteger gamma = group.multiply(gPowMessage, group.pow(giantStep, BigInteger.valueOf(from)));
 
-        while (b < max) {
-            if (gPowMessage.equals(g.modPow(BigInteger.valueOf(b), p))) {
-                return b;
+        for (long i = from; i < to; i++) {
+            Integer j = babySteps.get(gamma);
+            if (j != null) {
+                return i * m + j;
             }
-            b++;
+            gamma = group.multiply(gamma, giantStep);
         }
 
-        throw new UnableToDecryptException("Could not decrypt message");
+        return -1;
     }
 }
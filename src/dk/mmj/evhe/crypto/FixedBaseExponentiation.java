@@ -0,0 +1,192 @@
+package dk.mmj.evhe.crypto;
+
+import dk.mmj.evhe.entities.PublicKey;
+
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Modular exponentiation for bases that are used with many different exponents, such as g and h of a public key.
+ * <br/>
+ * For a base b a table holding b^(d * 2^(8i)) for every byte value d and byte position i of the exponent is
+ * precomputed in Montgomery form. An exponentiation is then one Montgomery multiplication per non-zero byte of the
+ * exponent, without any squarings.
+ * <br/>
+ * As building a table costs about as much as a few hundred exponentiations, it is only built once a base has been used
+ * {@link #PRECOMPUTATION_THRESHOLD} times. Until then, and for exponents larger than the table,
+ * {@link BigInteger#modPow(BigInteger, BigInteger)} is used.
+ */
+public class FixedBaseExponentiation {
+    private static final int PRECOMPUTATION_THRESHOLD = 100;
+    private static final int MAX_TABLES = 4;
+    private static final int WINDOW_BITS = 8;
+    private static final int WINDOW_SIZE = 1 << WINDOW_BITS;
+    private static final Map<TableKey, TableEntry> tables = new LinkedHashMap<TableKey, TableEntry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TableKey, TableEntry> eldest) {
+            return size() > MAX_TABLES;
+        }
+    };
+
+    private final MontgomeryArithmetic arithmetic;
+    private final int[][][] table;
+
+    /**
+     * Precomputes the table for the given base
+     *
+     * @param base         base to precompute powers of
+     * @param p            the modulus. Must be odd
+     * @param exponentBits bit length of the largest exponent supported by the table
+     */
+    private FixedBaseExponentiation(BigInteger base, BigInteger p, int exponentBits) {
+        arithmetic = new MontgomeryArithmetic(p);
+        int limbs = arithmetic.limbs();
+
+        int windows = (exponentBits + WINDOW_BITS - 1) / WINDOW_BITS;
+        table = new int[windows][WINDOW_SIZE][];
+
+        long[] scratch = arithmetic.scratch();
+        int[] windowBase = arithmetic.toMontgomery(base);
+
+        for (int i = 0; i < windows; i++) {
+            table[i][1] = windowBase;
+            for (int d = 2; d < WINDOW_SIZE; d++) {
+                table[i][d] = new int[limbs];
+                arithmetic.multiply(table[i][d - 1], windowBase, table[i][d], scratch);
+            }
+
+            int[] nextWindowBase = new int[limbs];
+            arithmetic.multiply(table[i][WINDOW_SIZE - 1], windowBase, nextWindowBase, scratch);
+            windowBase = nextWindowBase;
+        }
+    }
+
+    /**
+     * Computes base^exponent mod p, where base is a value used with many exponents under the public key,
+     * i.e. g or h.
+     *
+     * @param base      the fixed base
+     * @param exponent  the exponent
+     * @param publicKey the public key, whose p is used as modulus and whose q bounds the exponents
+     * @return base^exponent mod p
+     */
+    public static BigInteger modPow(BigInteger base, BigInteger exponent, PublicKey publicKey) {
+        return modPow(base, exponent, publicKey.getP(), publicKey.getQ());
+    }
+
+    /**
+     * Computes base^exponent mod p, where base is a value used with many exponents in the subgroup of order q
+     *
+     * @param base     the fixed base
+     * @param exponent the exponent
+     * @param p        the modulus
+     * @param q        order of the subgroup, which bounds the exponents
+     * @return base^exponent mod p
+     */
+    public static BigInteger modPow(BigInteger base, BigInteger exponent, BigInteger p, BigInteger q) {
+        int exponentBits = q.bitLength();
+
+        if (exponent.signum() < 0 || exponent.bitLength() > exponentBits || !p.testBit(0)) {
+            return base.modPow(exponent, p);
+        }
+
+        FixedBaseExponentiation precomputed = getTable(base, p, exponentBits);
+        if (precomputed == null) {
+            return base.modPow(exponent, p);
+        }
+
+        return precomputed.pow(exponent);
+    }
+
+    /**
+     * Finds the table for the base, and builds it if the base has been used often enough
+     *
+     * @param base         the fixed base
+     * @param p            the modulus
+     * @param exponentBits bit length of the largest exponent the table should support
+     * @return the table, or null if it has not been built
+     */
+    private static FixedBaseExponentiation getTable(BigInteger base, BigInteger p, int exponentBits) {
+        TableKey key = new TableKey(base, p, exponentBits);
+        TableEntry entry;
+
+        synchronized (tables) {
+            entry = tables.computeIfAbsent(key, k -> new TableEntry());
+        }
+
+        if (entry.table == null && entry.uses.incrementAndGet() == PRECOMPUTATION_THRESHOLD) {
+            entry.table = new FixedBaseExponentiation(base, p, exponentBits);
+        }
+
+        return entry.table;
+    }
+
+    /**
+     * Multiplies the table entries for each byte of the exponent
+     *
+     * @param exponent non-negative exponent no larger than the table
+     * @return base^exponent mod p
+     */
+    private BigInteger pow(BigInteger exponent) {
+        byte[] bytes = exponent.toByteArray();
+        long[] scratch = arithmetic.scratch();
+        int[] acc = null;
+        int[] tmp = new int[arithmetic.limbs()];
+
+        for (int i = 0; i < table.length && i < bytes.length; i++) {
+            int d = bytes[bytes.length - 1 - i] & 0xFF;
+            if (d == 0) {
+                continue;
+            }
+
+            if (acc == null) {
+                acc = table[i][d].clone();
+            } else {
+                arithmetic.multiply(acc, table[i][d], tmp, scratch);
+                int[] swap = acc;
+                acc = tmp;
+                tmp = swap;
+            }
+        }
+
+        if (acc == null) {
+            return BigInteger.ONE;
+        }
+
+        return arithmetic.fromMontgomery(acc);
+    }
+
+    private static class TableEntry {
+        private final AtomicInteger uses = new AtomicInteger();
+        private volatile FixedBaseExponentiation table;
+    }
+
+    private static class TableKey {
+        private final BigInteger base;
+        private final BigInteger p;
+        private final int exponentBits;
+
+        private TableKey(BigInteger base, BigInteger p, int exponentBits) {
+            this.base = base;
+            this.p = p;
+            this.exponentBits = exponentBits;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TableKey)) {
+                return false;
+            }
+            TableKey other = (TableKey) o;
+            return exponentBits == other.exponentBits && base.equals(other.base) && p.equals(other.p);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(base, p, exponentBits);
+        }
+    }
+}
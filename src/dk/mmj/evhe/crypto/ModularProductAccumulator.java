@@ -0,0 +1,72 @@
+package dk.mmj.evhe.crypto;
+
+import dk.mmj.evhe.crypto.group.ProductAccumulator;
+
+import java.math.BigInteger;
+
+/**
+ * Accumulates a product modulo an odd p, reducing after every multiplication so the product never grows.
+ * <br/>
+ * Factors are multiplied in using Montgomery multiplication directly, without converting them to Montgomery form.
+ * Each multiplication then contributes a factor R^-1, where R = 2^(32*limbs), which is counted and
+ * cancelled by a single multiplication by R^count when the product is read.
+ * This makes each step a single allocation free multiplication, instead of a multiplication followed by a division.
+ */
+public class ModularProductAccumulator implements ProductAccumulator {
+    private final BigInteger p;
+    private final MontgomeryArithmetic arithmetic;
+    private final long[] scratch;
+    private int[] product;
+    private int[] result;
+    private long reductions;
+
+    /**
+     * @param p the modulus. Must be odd
+     */
+    public ModularProductAccumulator(BigInteger p) {
+        this.p = p;
+        this.arithmetic = new MontgomeryArithmetic(p);
+        this.scratch = arithmetic.scratch();
+        this.product = arithmetic.toLimbs(BigInteger.ONE);
+        this.result = new int[arithmetic.limbs()];
+    }
+
+    @Override
+    public void multiply(BigInteger element) {
+        if (element.signum() < 0 || element.compareTo(p) >= 0) {
+            element = element.mod(p);
+        }
+
+        multiplyLimbs(arithmetic.toLimbs(element));
+    }
+
+    @Override
+    public void multiply(ProductAccumulator other) {
+        if (other instanceof ModularProductAccumulator && ((ModularProductAccumulator) other).p.equals(p)) {
+            ModularProductAccumulator accumulator = (ModularProductAccumulator) other;
+            long otherReductions = accumulator.reductions;
+            multiplyLimbs(accumulator.product);
+            reductions += otherReductions;
+        } else {
+            multiply(other.getProduct());
+        }
+    }
+
+    private void multiplyLimbs(int[] factor) {
+        arithmetic.multiply(product, factor, result, scratch);
+        reductions++;
+
+        int[] tmp = product;
+        product = result;
+        result = tmp;
+    }
+
+    @Override
+    public BigInteger getProduct() {
+        BigInteger r = BigInteger.ONE.shiftLeft(32 * arithmetic.limbs()).mod(p);
+
+        return arithmetic.toBigInteger(product)
+                .multiply(r.modPow(BigInteger.valueOf(reductions), p))
+                .mod(p);
+    }
+}
@@ -0,0 +1,176 @@
+package dk.mmj.evhe.crypto;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Multiplication modulo an odd p in Montgomery form, with values stored as arrays of 32-bit limbs,
+ * least significant first.
+ * <br/>
+ * Used for exponentiation algorithms which {@link BigInteger#modPow(BigInteger, BigInteger)} does not offer,
+ * where the multiplications must be done without allocating or dividing.
+ */
+class MontgomeryArithmetic {
+    private static final long MASK = 0xFFFFFFFFL;
+
+    private final BigInteger p;
+    private final int[] modulus;
+    private final int modulusInverse;
+
+    /**
+     * @param p the modulus. Must be odd
+     */
+    MontgomeryArithmetic(BigInteger p) {
+        this.p = p;
+        int limbs = (p.bitLength() + 31) / 32;
+        modulus = toLimbs(p, limbs);
+        modulusInverse = p.and(BigInteger.valueOf(MASK)).modInverse(BigInteger.ONE.shiftLeft(32)).negate().intValue();
+    }
+
+    /**
+     * @return number of limbs in a value
+     */
+    int limbs() {
+        return modulus.length;
+    }
+
+    /**
+     * @return scratch array of the size required by {@link #multiply(int[], int[], int[], long[])}
+     */
+    long[] scratch() {
+        return new long[modulus.length + 2];
+    }
+
+    /**
+     * @param value value to convert
+     * @return value * R mod p, where R = 2^(32*limbs)
+     */
+    int[] toMontgomery(BigInteger value) {
+        return toLimbs(value.mod(p).shiftLeft(32 * modulus.length).mod(p), modulus.length);
+    }
+
+    /**
+     * @return 1 in Montgomery form
+     */
+    int[] one() {
+        return toMontgomery(BigInteger.ONE);
+    }
+
+    /**
+     * @param value value in the range [0;p)
+     * @return the value as limbs, without converting it to Montgomery form
+     */
+    int[] toLimbs(BigInteger value) {
+        return toLimbs(value, modulus.length);
+    }
+
+    /**
+     * @param value limbs of a value
+     * @return the value the limbs represent, without converting it from Montgomery form
+     */
+    BigInteger toBigInteger(int[] value) {
+        return fromLimbs(value);
+    }
+
+    /**
+     * @param value value in Montgomery form
+     * @return the value converted back
+     */
+    BigInteger fromMontgomery(int[] value) {
+        int[] one = new int[modulus.length];
+        int[] result = new int[modulus.length];
+        one[0] = 1;
+        multiply(value, one, result, scratch());
+
+        return fromLimbs(result);
+    }
+
+    /**
+     * Montgomery multiplication, computing a*b*R^-1 mod p where R = 2^(32*limbs)
+     * <br/>
+     * Uses the coarsely integrated operand scanning method.
+     *
+     * @param a       first factor in Montgomery form
+     * @param b       second factor in Montgomery form. May be a
+     * @param result  array to write the product to. Must not be a or b
+     * @param scratch temporary array from {@link #scratch()}
+     */
+    void multiply(int[] a, int[] b, int[] result, long[] scratch) {
+        int s = modulus.length;
+        long[] t = scratch;
+        long inverse = modulusInverse & MASK;
+        Arrays.fill(t, 0);
+
+        for (int i = 0; i < s; i++) {
+            long carry = 0;
+            long bi = b[i] & MASK;
+            for (int j = 0; j < s; j++) {
+                long x = t[j] + (a[j] & MASK) * bi + carry;
+                t[j] = x & MASK;
+                carry = x >>> 32;
+            }
+            long x = t[s] + carry;
+            t[s] = x & MASK;
+            t[s + 1] = x >>> 32;
+
+            long m = (t[0] * inverse) & MASK;
+            x = t[0] + m * (modulus[0] & MASK);
+            carry = x >>> 32;
+            for (int j = 1; j < s; j++) {
+                x = t[j] + m * (modulus[j] & MASK) + carry;
+                t[j - 1] = x & MASK;
+                carry = x >>> 32;
+            }
+            x = t[s] + carry;
+            t[s - 1] = x & MASK;
+            t[s] = t[s + 1] + (x >>> 32);
+            t[s + 1] = 0;
+        }
+
+        boolean subtract = t[s] != 0;
+        if (!subtract) {
+            subtract = true;
+            for (int j = s - 1; j >= 0; j--) {
+                long nj = modulus[j] & MASK;
+                if (t[j] != nj) {
+                    subtract = t[j] > nj;
+                    break;
+                }
+            }
+        }
+
+        if (subtract) {
+            long borrow = 0;
+            for (int j = 0; j < s; j++) {
+                long x = t[j] - (modulus[j] & MASK) - borrow;
+                result[j] = (int) x;
+                borrow = x >>> 63;
+            }
+        } else {
+            for (int j = 0; j < s; j++) {
+                result[j] = (int) t[j];
+            }
+        }
+    }
+
+    private static int[] toLimbs(BigInteger value, int limbs) {
+        int[] result = new int[limbs];
+        byte[] bytes = value.toByteArray();
+
+        for (int i = 0; i < bytes.length && i < 4 * limbs; i++) {
+            result[i / 4] |= (bytes[bytes.length - 1 - i] & 0xFF) << (8 * (i % 4));
+        }
+
+        return result;
+    }
+
+    private static BigInteger fromLimbs(int[] limbs) {
+        byte[] bytes = new byte[4 * limbs.length];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[bytes.length - 1 - i] = (byte) (limbs[i / 4] >>> (8 * (i % 4)));
+        }
+
+        return new BigInteger(1, bytes);
+    }
+}
@@ -0,0 +1,177 @@
+package dk.mmj.evhe.crypto;
+
+import java.math.BigInteger;
+
+/**
+ * Computes products of powers, b_1^e_1 * ... * b_n^e_n mod p, using Straus' method with interleaved sliding windows.
+ * <br/>
+ * Every base gets its own table of odd powers and its own windows, but all bases share the same squarings,
+ * so the product costs one exponentiation's worth of squarings instead of n.
+ * <br/>
+ * This pays off for many bases with short exponents, such as the random weights in batch verification.
+ * For a couple of full size exponents separate calls to {@link BigInteger#modPow(BigInteger, BigInteger)} are faster,
+ * as the JVM's multiplication in modPow is intrinsified.
+ */
+public class MultiExponentiation {
+    private static final int MAX_WINDOW_BITS = 7;
+
+    /**
+     * Computes the product of the bases raised to their exponents
+     *
+     * @param bases     the bases
+     * @param exponents the exponents, where exponents[i] belongs to bases[i]
+     * @param p         the modulus
+     * @return bases[0]^exponents[0] * ... * bases[n-1]^exponents[n-1] mod p
+     */
+    public static BigInteger modPow(BigInteger[] bases, BigInteger[] exponents, BigInteger p) {
+        if (bases.length != exponents.length) {
+            throw new IllegalArgumentException("Number of bases and exponents must be equal");
+        }
+
+        int maxBits = 0;
+        boolean negativeExponent = false;
+        for (BigInteger exponent : exponents) {
+            maxBits = Math.max(maxBits, exponent.bitLength());
+            negativeExponent |= exponent.signum() < 0;
+        }
+
+        if (negativeExponent || !p.testBit(0)) {
+            BigInteger acc = BigInteger.ONE;
+            for (int i = 0; i < bases.length; i++) {
+                acc = acc.multiply(bases[i].modPow(exponents[i], p)).mod(p);
+            }
+            return acc.mod(p);
+        }
+
+        MontgomeryArithmetic arithmetic = new MontgomeryArithmetic(p);
+        long[] scratch = arithmetic.scratch();
+        int[][][] tables = new int[bases.length][][];
+        int[][] digits = new int[bases.length][];
+
+        for (int i = 0; i < bases.length; i++) {
+            int bits = exponents[i].bitLength();
+            if (bits == 0) {
+                continue;
+            }
+
+            int windowBits = windowBits(bits);
+            digits[i] = slidingWindowDigits(exponents[i], windowBits);
+            tables[i] = oddPowers(arithmetic, arithmetic.toMontgomery(bases[i]), windowBits, scratch);
+        }
+
+        int[] acc = null;
+        int[] tmp = new int[arithmetic.limbs()];
+
+        for (int bit = maxBits - 1; bit >= 0; bit--) {
+            if (acc != null) {
+                arithmetic.multiply(acc, acc, tmp, scratch);
+                int[] swap = acc;
+                acc = tmp;
+                tmp = swap;
+            }
+
+            for (int i = 0; i < bases.length; i++) {
+                if (digits[i] == null || bit >= digits[i].length || digits[i][bit] == 0) {
+                    continue;
+                }
+
+                int[] power = tables[i][digits[i][bit] >>> 1];
+                if (acc == null) {
+                    acc = power.clone();
+                } else {
+                    arithmetic.multiply(acc, power, tmp, scratch);
+                    int[] swap = acc;
+                    acc = tmp;
+                    tmp = swap;
+                }
+            }
+        }
+
+        if (acc == null) {
+            return BigInteger.ONE.mod(p);
+        }
+
+        return arithmetic.fromMontgomery(acc);
+    }
+
+    /**
+     * Chooses the window size, which minimizes precomputed powers plus expected multiplications
+     *
+     * @param bits bit length of the exponent
+     * @return the window size in bits
+     */
+    private static int windowBits(int bits) {
+        int best = 1;
+        double bestCost = bits / 2.0;
+
+        for (int w = 2; w <= MAX_WINDOW_BITS; w++) {
+            double cost = (1 << (w - 1)) + bits / (w + 1.0);
+            if (cost < bestCost) {
+                best = w;
+                bestCost = cost;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Splits the exponent into sliding windows, each starting and ending with a 1-bit
+     *
+     * @param exponent   non-negative exponent
+     * @param windowBits maximum width of a window
+     * @return array where index i holds the odd value of the window whose lowest bit is bit i, or 0
+     */
+    private static int[] slidingWindowDigits(BigInteger exponent, int windowBits) {
+        int[] digits = new int[exponent.bitLength()];
+        int bit = exponent.bitLength() - 1;
+
+        while (bit >= 0) {
+            if (!exponent.testBit(bit)) {
+                bit--;
+                continue;
+            }
+
+            int low = Math.max(bit - windowBits + 1, 0);
+            while (!exponent.testBit(low)) {
+                low++;
+            }
+
+            int value = 0;
+            for (int j = bit; j >= low; j--) {
+                value = (value << 1) | (exponent.testBit(j) ? 1 : 0);
+            }
+
+            digits[low] = value;
+            bit = low - 1;
+        }
+
+        return digits;
+    }
+
+    /**
+     * Computes base^1, base^3, ..., base^(2^windowBits - 1)
+     *
+     * @param arithmetic arithmetic for the modulus
+     * @param base       base in Montgomery form
+     * @param windowBits window size
+     * @param scratch    scratch array for the arithmetic
+     * @return array where index k holds base^(2k+1) in Montgomery form
+     */
+    private static int[][] oddPowers(MontgomeryArithmetic arithmetic, int[] base, int windowBits, long[] scratch) {
+        int[][] powers = new int[1 << (windowBits - 1)][];
+        powers[0] = base;
+
+        if (powers.length > 1) {
+            int[] square = new int[arithmetic.limbs()];
+            arithmetic.multiply(base, base, square, scratch);
+
+            for (int k = 1; k < powers.length; k++) {
+                powers[k] = new int[arithmetic.limbs()];
+                arithmetic.multiply(powers[k - 1], square, powers[k], scratch);
+            }
+        }
+
+        return powers;
+    }
+}
@@ -1,5 +1,8 @@
 package dk.mmj.evhe.crypto;
 
+import dk.mmj.evhe.crypto.group.Group;
+import dk.mmj.evhe.crypto.group.ModPGroup;
+import dk.mmj.evhe.crypto.group.ProductAccumulator;
 import dk.mmj.evhe.crypto.zeroknowledge.VoteProofUtils;
 import dk.mmj.evhe.entities.CipherText;
 import dk.mmj.evhe.entities.PublicKey;
@@ -10,13 +13,18 @@ import org.bouncycastle.crypto.digests.SHA256Digest;
 import java.math.BigInteger;
 import java.security.SecureRandom;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.stream.Collectors;
 
 /**
  * Class used for methods not tied directly to ElGamal
  */
 public class SecurityUtils {
+    private static final int VERIFICATION_BATCH_SIZE = 64;
+    private static final int PARTITIONS_PER_CORE = 4;
+    private static final int MIN_PARTITION_SIZE = 256;
+
     /**
      * Find a random number in the range [1;n)
      *
@@ -53,6 +61,42 @@ public class SecurityUtils {
         return hash;
     }
 
+    /**
+     * Computes the Jacobi symbol (a/n).
+     * <br/>
+     * When n is a safe prime p = 2q + 1, the subgroup G_q is exactly the quadratic residues,
+     * so (a/p) = 1 tells whether a is in G_q, at a fraction of the cost of checking a^q = 1.
+     *
+     * @param a the value
+     * @param n odd, positive modulus
+     * @return the Jacobi symbol, one of -1, 0 or 1
+     */
+    public static int jacobiSymbol(BigInteger a, BigInteger n) {
+        BigInteger x = a.mod(n);
+        BigInteger y = n;
+        int result = 1;
+
+        while (x.signum() != 0) {
+            int twos = x.getLowestSetBit();
+            x = x.shiftRight(twos);
+
+            int yMod8 = y.intValue() & 7;
+            if ((twos & 1) == 1 && (yMod8 == 3 || yMod8 == 5)) {
+                result = -result;
+            }
+
+            if ((x.intValue() & 3) == 3 && (y.intValue() & 3) == 3) {
+                result = -result;
+            }
+
+            BigInteger tmp = x;
+            x = y.mod(tmp);
+            y = tmp;
+        }
+
+        return y.equals(BigInteger.ONE) ? result : 0;
+    }
+
     /**
      * Generates the ciphertext, vote, and proof.
      *
@@ -62,13 +106,53 @@ public class SecurityUtils {
      * @return a VoteDTO containing the ciphertext, id and proof for the encrypted vote.
      */
     public static VoteDTO generateVote(int vote, String id, PublicKey publicKey) {
-        BigInteger r = SecurityUtils.getRandomNumModN(publicKey.getQ());
-        CipherText ciphertext = ElGamal.homomorphicEncryption(publicKey, BigInteger.valueOf(vote), r);
-        VoteDTO.Proof proof = VoteProofUtils.generateProof(ciphertext, publicKey, r, id, BigInteger.valueOf(vote));
+        return generateVote(vote, id, publicKey, precomputeVote(publicKey));
+    }
+
+    /**
+     * Generates the ciphertext, vote, and proof from a precomputation, using only multiplications and a hash.
+     *
+     * @param vote           the vote as an integer.
+     * @param id             the ID of the person voting.
+     * @param publicKey      the public key used to encrypt the vote.
+     * @param precomputation precomputation for the public key, which must not have been used before.
+     * @return a VoteDTO containing the ciphertext, id and proof for the encrypted vote.
+     */
+    public static VoteDTO generateVote(int vote, String id, PublicKey publicKey, VotePrecomputation precomputation) {
+        CipherText ciphertext = ElGamal.homomorphicEncryption(publicKey, BigInteger.valueOf(vote), precomputation);
+        VoteDTO.Proof proof = VoteProofUtils.generateProof(ciphertext, publicKey, precomputation, id, vote);
 
         return new VoteDTO(ciphertext, id, proof);
     }
 
+    /**
+     * Makes all exponentiations needed to encrypt and prove a vote, before the vote is known.
+     *
+     * @param publicKey the public key the vote is to be encrypted under.
+     * @return the precomputation
+     * @see VotePrecomputation
+     */
+    public static VotePrecomputation precomputeVote(PublicKey publicKey) {
+        BigInteger g = publicKey.getG();
+        BigInteger h = publicKey.getH();
+        BigInteger q = publicKey.getQ();
+        Group group = publicKey.getGroup();
+
+        BigInteger r = getRandomNumModN(q);
+        BigInteger y = getRandomNumModN(q);
+        BigInteger fakeChallenge = getRandomNumModN(q);
+        BigInteger fakeAnswer = getRandomNumModN(q);
+        BigInteger fakeExponent = fakeAnswer.add(r.multiply(fakeChallenge)).mod(q);
+        BigInteger gPowFakeChallenge = group.fixedBasePow(g, fakeChallenge);
+
+        return new VotePrecomputation(
+                r, group.fixedBasePow(g, r), group.fixedBasePow(h, r),
+                y, group.fixedBasePow(g, y), group.fixedBasePow(h, y),
+                fakeChallenge, fakeAnswer,
+                group.fixedBasePow(g, fakeExponent), group.fixedBasePow(h, fakeExponent),
+                gPowFakeChallenge, group.inverse(gPowFakeChallenge));
+    }
+
     /**
      * Generates a polynomial
      *
@@ -119,10 +203,22 @@ public class SecurityUtils {
      * @return a map where the key is an authority index and value is the corresponding public value
      */
     static Map<Integer, BigInteger> generatePublicValues(Map<Integer, BigInteger> secretValuesMap, BigInteger g, BigInteger p) {
+        return generatePublicValues(secretValuesMap, g, safePrimeGroup(p));
+    }
+
+    /**
+     * Generates the public values for each authority
+     *
+     * @param secretValuesMap The secret values
+     * @param g               generator for the group
+     * @param group           the group
+     * @return a map where the key is an authority index and value is the corresponding public value
+     */
+    static Map<Integer, BigInteger> generatePublicValues(Map<Integer, BigInteger> secretValuesMap, BigInteger g, Group group) {
         return secretValuesMap.entrySet().stream()
                 .collect(Collectors.toMap(
                         Map.Entry::getKey,
-                        e -> g.modPow(e.getValue(), p)
+                        e -> group.fixedBasePow(g, e.getValue())
                 ));
     }
 
@@ -162,6 +258,18 @@ public class SecurityUtils {
         return c.modPow(secretValue, p);
     }
 
+    /**
+     * Computes partial
+     *
+     * @param c           is the base value
+     * @param secretValue the secret value only known by the specific decryption authorities
+     * @param group       the group c is from
+     * @return the partial value
+     */
+    public static BigInteger computePartial(BigInteger c, BigInteger secretValue, Group group) {
+        return group.pow(c, secretValue);
+    }
+
     /**
      * Combines partials
      *
@@ -170,7 +278,18 @@ public class SecurityUtils {
      * @return the combination of the partials
      */
     public static BigInteger combinePartials(Map<Integer, BigInteger> partialsMap, BigInteger p) {
-        BigInteger q = p.subtract(BigInteger.ONE).divide(BigInteger.valueOf(2));
+        return combinePartials(partialsMap, safePrimeGroup(p));
+    }
+
+    /**
+     * Combines partials
+     *
+     * @param partialsMap a map where the key is an authority index and value is a corresponding partial
+     * @param group       the group the partials are from
+     * @return the combination of the partials
+     */
+    public static BigInteger combinePartials(Map<Integer, BigInteger> partialsMap, Group group) {
+        BigInteger q = group.getOrder();
         Integer[] authorityIndexesInteger = partialsMap.keySet().toArray(new Integer[0]);
         int[] authorityIndexes = new int[authorityIndexesInteger.length];
         for (int i = 0; i < authorityIndexesInteger.length; i++) {
@@ -178,8 +297,16 @@ public class SecurityUtils {
         }
 
         return partialsMap.keySet().stream()
-                .map(key -> partialsMap.get(key).modPow(generateLagrangeCoefficient(authorityIndexes, key, q), p))
-                .reduce(BigInteger.ONE, BigInteger::multiply).mod(p);
+                .map(key -> group.pow(partialsMap.get(key), generateLagrangeCoefficient(authorityIndexes, key, q)))
+                .reduce(group.getIdentity(), group::multiply);
+    }
+
+    /**
+     * @param p safe prime p = 2q + 1
+     * @return the subgroup G_q of Z_p^*
+     */
+    static ModPGroup safePrimeGroup(BigInteger p) {
+        return new ModPGroup(p, p.subtract(BigInteger.ONE).divide(BigInteger.valueOf(2)));
     }
 
     /**
@@ -194,21 +321,43 @@ public class SecurityUtils {
      * @return sum of all votes - meaning the product of the ciphertexts
      */
     static CipherText voteSum(List<? extends VoteDTO> votes, PublicKey publicKey) {
-        CipherText acc = new CipherText(BigInteger.ONE, BigInteger.ONE);
+        CipherTextAccumulator acc = new CipherTextAccumulator(publicKey.getGroup());
 
-        return votes.stream()
+        votes.stream()
                 .filter(v -> VoteProofUtils.verifyProof(v, publicKey))
                 .map(VoteDTO::getCipherText)
-                .reduce(acc, ElGamal::homomorphicAddition);
+                .forEach(acc::add);
+
+        return acc.getCipherText();
+    }
+
+    /**
+     * Computes the sum of all votes.
+     * <br/>
+     * Before sum is computed all proofs are verified, and those that could not are discarded.
+     * Proofs are batch verified concurrently, in batches of {@value #VERIFICATION_BATCH_SIZE}.
+     * <br/>
+     * The method is executed asynchronously.
+     * The ciphertexts are summed using a fork/join tree reduction, with partition sizes chosen from the number of cores.
+     *
+     * @param votes     list of votes
+     * @param publicKey public key the votes are encrypted under
+     * @return sum of all votes
+     */
+    public static CipherText concurrentVoteSum(List<? extends VoteDTO> votes, PublicKey publicKey) {
+        List<CipherText> cipherTexts = verifiedCipherTexts(votes, publicKey);
+
+        return concurrentSum(cipherTexts, partitionSize(cipherTexts.size()), publicKey.getGroup());
     }
 
     /**
      * Computes the sum of all votes.
      * <br/>
      * Before sum is computed all proofs are verified, and those that could not are discarded.
+     * Proofs are batch verified concurrently, in batches of {@value #VERIFICATION_BATCH_SIZE}.
      * <br/>
      * The method is executed asynchronously.
-     * All votes are partitioned into subsets of size <code>partitionSize</code>, which are summed in their own thread
+     * The ciphertexts are summed using a fork/join tree reduction, where no task sums more than <code>partitionSize</code> ciphertexts.
      *
      * @param votes         list of votes
      * @param publicKey     public key the votes are encrypted under
@@ -216,69 +365,102 @@ public class SecurityUtils {
      * @return sum of all votes
      */
     public static CipherText concurrentVoteSum(List<? extends VoteDTO> votes, PublicKey publicKey, int partitionSize) {
+        return concurrentSum(verifiedCipherTexts(votes, publicKey), partitionSize, publicKey.getGroup());
+    }
 
-        List<CipherText> cipherTexts = votes.parallelStream()
-                .filter(v -> VoteProofUtils.verifyProof(v, publicKey))
+    private static List<CipherText> verifiedCipherTexts(List<? extends VoteDTO> votes, PublicKey publicKey) {
+        return Lists.partition(new ArrayList<VoteDTO>(votes), VERIFICATION_BATCH_SIZE).parallelStream()
+                .flatMap(batch -> VoteProofUtils.verifyProofs(batch, publicKey).stream())
                 .map(VoteDTO::getCipherText)
                 .collect(Collectors.toList());
+    }
 
-        return concurrentSum(cipherTexts, partitionSize);
+    /**
+     * Chooses partition sizes giving {@value #PARTITIONS_PER_CORE} partitions per core,
+     * so the fork/join pool can balance the load, without partitions smaller than {@value #MIN_PARTITION_SIZE}
+     *
+     * @param size number of values to partition
+     * @return the partition size
+     */
+    static int partitionSize(int size) {
+        int partitions = PARTITIONS_PER_CORE * Runtime.getRuntime().availableProcessors();
+
+        return Math.max(MIN_PARTITION_SIZE, (size + partitions - 1) / partitions);
     }
 
     /**
      * Concurrently sums votes contained in list of cipherTexts.
      * <br/>
-     * Partitions cipherTexts and sums them in different threads.
+     * The list is split in halves until partitions are at most <code>partitionSize</code> long,
+     * and the partitions are summed in a fork/join pool. Each partition is summed into its own accumulator,
+     * which reduces after every multiplication, and the accumulators are combined pairwise on the way back up.
      *
      * @param cipherTexts   list of cipherTexts to be summed
      * @param partitionSize size of partitions.
+     * @param group         group of the public key the cipherTexts are encrypted under
      * @return sum of all cipherTexts
      */
-    private static CipherText concurrentSum(List<CipherText> cipherTexts, int partitionSize) {
-        ConcurrentLinkedQueue<CipherText> result = new ConcurrentLinkedQueue<>();
+    private static CipherText concurrentSum(List<CipherText> cipherTexts, int partitionSize, Group group) {
+        return ForkJoinPool.commonPool().invoke(new VoteSummer(cipherTexts, Math.max(1, partitionSize), group)).getCipherText();
+    }
 
-        if (cipherTexts.size() > 2 * partitionSize) {
-            List<Thread> threads = new ArrayList<>();
+    private static class VoteSummer extends RecursiveTask<CipherTextAccumulator> {
+        private static final long serialVersionUID = 1L;
+        private List<CipherText> values;
+        private int partitionSize;
+        private Group group;
 
-            List<List<CipherText>> partitions = Lists.partition(cipherTexts, partitionSize);
-            for (List<CipherText> partition : partitions) {
-                Thread thread = new Thread(new VoteSummer(result, partition));
-                thread.start();
-                threads.add(thread);
-            }
+        VoteSummer(List<CipherText> values, int partitionSize, Group group) {
+            this.values = values;
+            this.partitionSize = partitionSize;
+            this.group = group;
+        }
+
+        @Override
+        protected CipherTextAccumulator compute() {
+            if (values.size() <= partitionSize) {
+                CipherTextAccumulator acc = new CipherTextAccumulator(group);
+                values.forEach(acc::add);
 
-            for (Thread thread : threads) {
-                try {
-                    thread.join();
-                } catch (InterruptedException e) {
-                    throw new RuntimeException("Filtering thread was interrupted", e);
-                }
+                return acc;
             }
 
-            return concurrentSum(new ArrayList<>(result), partitionSize);
+            int middle = values.size() / 2;
+            VoteSummer left = new VoteSummer(values.subList(0, middle), partitionSize, group);
+            VoteSummer right = new VoteSummer(values.subList(middle, values.size()), partitionSize, group);
 
-        } else {
-            CipherText acc = new CipherText(BigInteger.ONE, BigInteger.ONE);
+            left.fork();
+            CipherTextAccumulator acc = right.compute();
+            acc.add(left.join());
 
-            return cipherTexts.stream().reduce(acc, ElGamal::homomorphicAddition);
+            return acc;
         }
     }
 
-    private static class VoteSummer implements Runnable {
-        private Collection<CipherText> resultRef;
-        private List<CipherText> values;
+    /**
+     * Accumulates the homomorphic sum of ciphertexts, by accumulating the products of their c and d values
+     */
+    private static class CipherTextAccumulator {
+        private final ProductAccumulator c;
+        private final ProductAccumulator d;
 
-        VoteSummer(Collection<CipherText> resultRef, List<CipherText> values) {
-            this.resultRef = resultRef;
-            this.values = values;
+        CipherTextAccumulator(Group group) {
+            c = group.newAccumulator();
+            d = group.newAccumulator();
         }
 
-        @Override
-        public void run() {
-            CipherText acc = new CipherText(BigInteger.ONE, BigInteger.ONE);
+        void add(CipherText cipherText) {
+            c.multiply(cipherText.getC());
+            d.multiply(cipherText.getD());
+        }
+
+        void add(CipherTextAccumulator other) {
+            c.multiply(other.c);
+            d.multiply(other.d);
+        }
 
-            CipherText sum = values.stream().reduce(acc, ElGamal::homomorphicAddition);
-            resultRef.add(sum);
+        CipherText getCipherText() {
+            return new CipherText(c.getProduct(), d.getProduct());
         }
     }
 }
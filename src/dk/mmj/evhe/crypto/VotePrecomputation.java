@@ -0,0 +1,129 @@
+package dk.mmj.evhe.crypto;
+
+import java.math.BigInteger;
+
+/**
+ * The exponentiations needed to cast a vote, computed before the vote itself is known.
+ * <br/>
+ * Neither the encryption nor the proof's commitments depend on the vote, except through multiplication by g or g^-1.
+ * Given a vote v, the ciphertext is (g^r, g^v * h^r) and the simulated branch of the proof is committed to as
+ * a = g^(z + r*e) and b = h^(z + r*e) * g^(+-e), so all exponentiations can be made in advance.
+ * <br/>
+ * A precomputation must only be used for a single vote, under the public key it was computed for.
+ */
+public class VotePrecomputation {
+    private final BigInteger r;
+    private final BigInteger c;
+    private final BigInteger hPowR;
+    private final BigInteger y;
+    private final BigInteger gPowY;
+    private final BigInteger hPowY;
+    private final BigInteger fakeChallenge;
+    private final BigInteger fakeAnswer;
+    private final BigInteger fakeA;
+    private final BigInteger fakeHPart;
+    private final BigInteger gPowFakeChallenge;
+    private final BigInteger gPowNegatedFakeChallenge;
+
+    VotePrecomputation(BigInteger r, BigInteger c, BigInteger hPowR,
+                       BigInteger y, BigInteger gPowY, BigInteger hPowY,
+                       BigInteger fakeChallenge, BigInteger fakeAnswer, BigInteger fakeA, BigInteger fakeHPart,
+                       BigInteger gPowFakeChallenge, BigInteger gPowNegatedFakeChallenge) {
+        this.r = r;
+        this.c = c;
+        this.hPowR = hPowR;
+        this.y = y;
+        this.gPowY = gPowY;
+        this.hPowY = hPowY;
+        this.fakeChallenge = fakeChallenge;
+        this.fakeAnswer = fakeAnswer;
+        this.fakeA = fakeA;
+        this.fakeHPart = fakeHPart;
+        this.gPowFakeChallenge = gPowFakeChallenge;
+        this.gPowNegatedFakeChallenge = gPowNegatedFakeChallenge;
+    }
+
+    /**
+     * @return the randomness r used in the encryption
+     */
+    public BigInteger getR() {
+        return r;
+    }
+
+    /**
+     * @return c = g^r
+     */
+    public BigInteger getC() {
+        return c;
+    }
+
+    /**
+     * @return h^r
+     */
+    public BigInteger getHPowR() {
+        return hPowR;
+    }
+
+    /**
+     * @return the randomness y used in the commitments of the real branch of the proof
+     */
+    public BigInteger getY() {
+        return y;
+    }
+
+    /**
+     * @return g^y
+     */
+    public BigInteger getGPowY() {
+        return gPowY;
+    }
+
+    /**
+     * @return h^y
+     */
+    public BigInteger getHPowY() {
+        return hPowY;
+    }
+
+    /**
+     * @return the challenge e of the simulated branch of the proof
+     */
+    public BigInteger getFakeChallenge() {
+        return fakeChallenge;
+    }
+
+    /**
+     * @return the answer z of the simulated branch of the proof
+     */
+    public BigInteger getFakeAnswer() {
+        return fakeAnswer;
+    }
+
+    /**
+     * @return the commitment a = g^z * c^e of the simulated branch
+     */
+    public BigInteger getFakeA() {
+        return fakeA;
+    }
+
+    /**
+     * @return h^(z + r*e), which the commitment b of the simulated branch is computed from
+     */
+    public BigInteger getFakeHPart() {
+        return fakeHPart;
+    }
+
+    /**
+     * @return g^e, where e is the challenge of the simulated branch
+     */
+    public BigInteger getGPowFakeChallenge() {
+        return gPowFakeChallenge;
+    }
+
+    /**
+     * @return g^-e, where e is the challenge of the simulated branch
+     */
+    public BigInteger getGPowNegatedFakeChallenge() {
+        return gPowNegatedFakeChallenge;
+    }
+}
@@ -0,0 +1,91 @@
+package dk.mmj.evhe.crypto;
+
+import dk.mmj.evhe.entities.PublicKey;
+import dk.mmj.evhe.entities.VoteDTO;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a bounded queue of {@link VotePrecomputation}s for a public key, filled by low priority background threads.
+ * <br/>
+ * Casting a vote from a precomputation only takes a few multiplications and a hash,
+ * so the exponentiations are moved off the critical path and into the idle time between votes.
+ * If the queue is empty, the precomputation is made on the calling thread instead.
+ */
+public class VotePrecomputationPool implements AutoCloseable {
+    private final PublicKey publicKey;
+    private final BlockingQueue<VotePrecomputation> queue;
+    private final ExecutorService workers;
+
+    /**
+     * Creates the pool, and starts filling it
+     *
+     * @param publicKey the public key votes are to be encrypted under
+     * @param capacity  maximum number of precomputations to keep ready
+     * @param threads   number of background threads filling the pool
+     */
+    public VotePrecomputationPool(PublicKey publicKey, int capacity, int threads) {
+        this.publicKey = publicKey;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "vote-precomputation");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+        for (int i = 0; i < threads; i++) {
+            workers.execute(this::fill);
+        }
+    }
+
+    private void fill() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                queue.put(SecurityUtils.precomputeVote(publicKey));
+            }
+        } catch (InterruptedException ignored) {
+            // The pool was closed
+        }
+    }
+
+    /**
+     * Takes a precomputation from the pool, or computes one if none are ready
+     *
+     * @return a precomputation, which has not been handed out before
+     */
+    public VotePrecomputation take() {
+        VotePrecomputation precomputation = queue.poll();
+
+        return precomputation != null ? precomputation : SecurityUtils.precomputeVote(publicKey);
+    }
+
+    /**
+     * Generates a vote using a precomputation from the pool
+     *
+     * @param vote the vote as an integer
+     * @param id   the ID of the person voting
+     * @return a VoteDTO containing the ciphertext, id and proof for the encrypted vote
+     */
+    public VoteDTO generateVote(int vote, String id) {
+        return SecurityUtils.generateVote(vote, id, publicKey, take());
+    }
+
+    /**
+     * @return number of precomputations ready to be taken
+     */
+    public int available() {
+        return queue.size();
+    }
+
+    /**
+     * Stops the background threads. Precomputations are still made on demand by {@link #take()}.
+     */
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+}
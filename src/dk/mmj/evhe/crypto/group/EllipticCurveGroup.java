@@ -0,0 +1,185 @@
+package dk.mmj.evhe.crypto.group;
+
+import org.bouncycastle.asn1.x9.ECNamedCurveTable;
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECMultiplier;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.bouncycastle.util.BigIntegers;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The group of points on a named elliptic curve of prime order, such as P-256.
+ * <br/>
+ * Points are represented by their compressed encoding read as an unsigned integer, with 0 being the point at infinity.
+ * Decoding a point validates that it is on the curve.
+ */
+public class EllipticCurveGroup implements Group {
+    private static final int MAX_FIXED_BASES = 8;
+    private static final Map<String, EllipticCurveGroup> instances = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final ECCurve curve;
+    private final ECPoint generator;
+    private final BigInteger order;
+    private final int encodingLength;
+    private final ECMultiplier fixedPointMultiplier = new FixedPointCombMultiplier();
+    private final Map<BigInteger, ECPoint> fixedBases = new ConcurrentHashMap<>();
+
+    private EllipticCurveGroup(String name, X9ECParameters parameters) {
+        this.name = name;
+        this.curve = parameters.getCurve();
+        this.generator = parameters.getG().normalize();
+        this.order = parameters.getN();
+        this.encodingLength = (curve.getFieldSize() + 7) / 8 + 1;
+
+        if (!parameters.getH().equals(BigInteger.ONE)) {
+            throw new IllegalArgumentException("Curve " + name + " does not have prime order");
+        }
+    }
+
+    /**
+     * Finds the group for the named curve
+     *
+     * @param name name of the curve, e.g. "P-256"
+     * @return the group
+     * @throws IllegalArgumentException if the curve is unknown, or does not have prime order
+     */
+    public static EllipticCurveGroup getInstance(String name) {
+        return instances.computeIfAbsent(name, n -> {
+            X9ECParameters parameters = ECNamedCurveTable.getByName(n);
+            if (parameters == null) {
+                throw new IllegalArgumentException("Unknown curve " + n);
+            }
+            return new EllipticCurveGroup(n, parameters);
+        });
+    }
+
+    /**
+     * @return name of the curve
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the standard generator of the curve
+     */
+    public BigInteger getGenerator() {
+        return encode(generator);
+    }
+
+    /**
+     * @return the prime of the field the curve is defined over
+     */
+    public BigInteger getFieldPrime() {
+        return curve.getField().getCharacteristic();
+    }
+
+    @Override
+    public BigInteger getOrder() {
+        return order;
+    }
+
+    /**
+     * The curve has prime order, so every point on it is an element
+     */
+    @Override
+    public boolean isElement(BigInteger value) {
+        if (value == null) {
+            return false;
+        }
+
+        try {
+            decode(value);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public BigInteger getIdentity() {
+        return BigInteger.ZERO;
+    }
+
+    @Override
+    public BigInteger multiply(BigInteger a, BigInteger b) {
+        return encode(decode(a).add(decode(b)));
+    }
+
+    @Override
+    public BigInteger pow(BigInteger base, BigInteger exponent) {
+        return encode(decode(base).multiply(exponent.mod(order)));
+    }
+
+    @Override
+    public BigInteger fixedBasePow(BigInteger base, BigInteger exponent) {
+        ECPoint point = fixedBases.get(base);
+
+        if (point == null) {
+            point = decode(base);
+            if (fixedBases.size() < MAX_FIXED_BASES) {
+                fixedBases.putIfAbsent(base, point);
+            }
+        }
+
+        return encode(fixedPointMultiplier.multiply(point, exponent.mod(order)));
+    }
+
+    @Override
+    public BigInteger inverse(BigInteger a) {
+        return encode(decode(a).negate());
+    }
+
+    /**
+     * Keeps the sum as a point in projective coordinates, so it is only normalized and encoded once, when read
+     *
+     * @return accumulator holding the point at infinity
+     */
+    @Override
+    public ProductAccumulator newAccumulator() {
+        return new ProductAccumulator() {
+            private ECPoint sum = curve.getInfinity();
+
+            @Override
+            public void multiply(BigInteger element) {
+                sum = sum.add(decode(element));
+            }
+
+            @Override
+            public void multiply(ProductAccumulator other) {
+                multiply(other.getProduct());
+            }
+
+            @Override
+            public BigInteger getProduct() {
+                return encode(sum);
+            }
+        };
+    }
+
+    private BigInteger encode(ECPoint point) {
+        if (point.isInfinity()) {
+            return BigInteger.ZERO;
+        }
+
+        return new BigInteger(1, point.getEncoded(true));
+    }
+
+    private ECPoint decode(BigInteger value) {
+        if (value.signum() == 0) {
+            return curve.getInfinity();
+        }
+
+        if (value.signum() < 0 || value.bitLength() > 8 * encodingLength) {
+            throw new IllegalArgumentException("Value is not an encoded point");
+        }
+
+        return curve.decodePoint(BigIntegers.asUnsignedByteArray(encodingLength, value));
+    }
+}
@@ -0,0 +1,117 @@
+package dk.mmj.evhe.crypto.group;
+
+import java.math.BigInteger;
+
+/**
+ * A cyclic group of prime order q, in which ElGamal encryption and the zero-knowledge proofs are computed.
+ * <br/>
+ * The group is written multiplicatively, and elements are represented as {@link BigInteger}s,
+ * so they can be stored in the existing entities regardless of the group used.
+ */
+public interface Group {
+
+    /**
+     * Finds the group described by the given values
+     *
+     * @param p     the modulus prime, when curve is null
+     * @param q     the order of the group
+     * @param curve name of an elliptic curve, or null for the subgroup of Z_p^*
+     * @return the group
+     */
+    static Group getInstance(BigInteger p, BigInteger q, String curve) {
+        if (curve == null) {
+            return new ModPGroup(p, q);
+        }
+
+        return EllipticCurveGroup.getInstance(curve);
+    }
+
+    /**
+     * @return the order q of the group
+     */
+    BigInteger getOrder();
+
+    /**
+     * @return the neutral element of the group
+     */
+    BigInteger getIdentity();
+
+    /**
+     * Checks that a value received from others, such as a ciphertext, a proof commitment or a partial decryption,
+     * is an element of the group.
+     * <br/>
+     * A value outside the group may have small order, so raising it to a secret exponent reveals the exponent
+     * modulo that order.
+     *
+     * @param value the value
+     * @return whether the value is an element of the group
+     */
+    boolean isElement(BigInteger value);
+
+    /**
+     * Applies the group operation
+     *
+     * @param a first element
+     * @param b second element
+     * @return a * b
+     */
+    BigInteger multiply(BigInteger a, BigInteger b);
+
+    /**
+     * Applies the group operation to base, exponent times
+     *
+     * @param base     the element
+     * @param exponent the exponent
+     * @return base^exponent
+     */
+    BigInteger pow(BigInteger base, BigInteger exponent);
+
+    /**
+     * Computes base^exponent, where base is used with many different exponents, such as g and h of a public key.
+     * <br/>
+     * Implementations may keep precomputed values for the base.
+     *
+     * @param base     the fixed base
+     * @param exponent the exponent
+     * @return base^exponent
+     */
+    default BigInteger fixedBasePow(BigInteger base, BigInteger exponent) {
+        return pow(base, exponent);
+    }
+
+    /**
+     * @param a the element
+     * @return the inverse of a
+     */
+    BigInteger inverse(BigInteger a);
+
+    /**
+     * Creates an accumulator for computing the product of many elements, such as when summing votes.
+     * <br/>
+     * Implementations may return accumulators which are cheaper per multiplication than {@link #multiply(BigInteger, BigInteger)}.
+     *
+     * @return accumulator holding the identity
+     */
+    default ProductAccumulator newAccumulator() {
+        Group group = this;
+
+        return new ProductAccumulator() {
+            private BigInteger product = getIdentity();
+
+            @Override
+            public void multiply(BigInteger element) {
+                product = group.multiply(product, element);
+            }
+
+            @Override
+            public void multiply(ProductAccumulator other) {
+                multiply(other.getProduct());
+            }
+
+            @Override
+            public BigInteger getProduct() {
+                return product;
+            }
+        };
+    }
+}
@@ -0,0 +1,85 @@
+package dk.mmj.evhe.crypto.group;
+
+import dk.mmj.evhe.crypto.FixedBaseExponentiation;
+import dk.mmj.evhe.crypto.ModularProductAccumulator;
+import dk.mmj.evhe.crypto.SecurityUtils;
+
+import java.math.BigInteger;
+
+/**
+ * The subgroup G_q of Z_p^*, where q divides p - 1
+ */
+public class ModPGroup implements Group {
+    private final BigInteger p;
+    private final BigInteger q;
+    private final boolean safePrime;
+
+    /**
+     * @param p the modulus prime
+     * @param q the order of the subgroup
+     */
+    public ModPGroup(BigInteger p, BigInteger q) {
+        this.p = p;
+        this.q = q;
+        this.safePrime = p.equals(q.shiftLeft(1).add(BigInteger.ONE));
+    }
+
+    /**
+     * @return the modulus prime
+     */
+    public BigInteger getP() {
+        return p;
+    }
+
+    @Override
+    public BigInteger getOrder() {
+        return q;
+    }
+
+    @Override
+    public BigInteger getIdentity() {
+        return BigInteger.ONE;
+    }
+
+    /**
+     * When p is a safe prime, G_q is exactly the quadratic residues, which the Jacobi symbol tells apart.
+     * Otherwise Z_p^* has other small subgroups, so the value must satisfy value^q = 1
+     */
+    @Override
+    public boolean isElement(BigInteger value) {
+        if (value == null || value.signum() <= 0 || value.compareTo(p) >= 0) {
+            return false;
+        }
+
+        if (safePrime) {
+            return SecurityUtils.jacobiSymbol(value, p) == 1;
+        }
+
+        return value.modPow(q, p).equals(BigInteger.ONE);
+    }
+
+    @Override
+    public BigInteger multiply(BigInteger a, BigInteger b) {
+        return a.multiply(b).mod(p);
+    }
+
+    @Override
+    public BigInteger pow(BigInteger base, BigInteger exponent) {
+        return base.modPow(exponent, p);
+    }
+
+    @Override
+    public BigInteger fixedBasePow(BigInteger base, BigInteger exponent) {
+        return FixedBaseExponentiation.modPow(base, exponent, p, q);
+    }
+
+    @Override
+    public BigInteger inverse(BigInteger a) {
+        return a.modInverse(p);
+    }
+
+    @Override
+    public ProductAccumulator newAccumulator() {
+        return new ModularProductAccumulator(p);
+    }
+}
@@ -0,0 +1,31 @@
+package dk.mmj.evhe.crypto.group;
+
+import java.math.BigInteger;
+
+/**
+ * Mutable accumulator for the product of many group elements.
+ * <br/>
+ * Implementations may keep the product in an internal representation, which is only converted back by {@link #getProduct()}.
+ * Accumulators are not thread safe, but several accumulators can be filled concurrently and combined afterwards.
+ */
+public interface ProductAccumulator {
+
+    /**
+     * Multiplies an element into the product
+     *
+     * @param element element of the group
+     */
+    void multiply(BigInteger element);
+
+    /**
+     * Multiplies the product of another accumulator, from the same group, into this product
+     *
+     * @param other the other accumulator, which is not changed
+     */
+    void multiply(ProductAccumulator other);
+
+    /**
+     * @return the product of all elements multiplied in so far
+     */
+    BigInteger getProduct();
+}
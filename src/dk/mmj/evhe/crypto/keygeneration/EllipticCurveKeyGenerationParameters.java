@@ -0,0 +1,43 @@
+package dk.mmj.evhe.crypto.keygeneration;
+
+import dk.mmj.evhe.crypto.group.EllipticCurveGroup;
+import dk.mmj.evhe.crypto.group.Group;
+import dk.mmj.evhe.entities.PrimePair;
+
+import java.math.BigInteger;
+
+/**
+ * Parameters for El-Gamal over a named elliptic curve
+ * <br/>
+ * The prime pair holds the prime of the field the curve is defined over, and the order of the curve.
+ */
+public class EllipticCurveKeyGenerationParameters implements KeyGenerationParameters {
+    private EllipticCurveGroup group;
+
+    /**
+     * @param curve name of the curve, e.g. "P-256"
+     */
+    public EllipticCurveKeyGenerationParameters(String curve) {
+        group = EllipticCurveGroup.getInstance(curve);
+    }
+
+    @Override
+    public PrimePair getPrimePair() {
+        return new PrimePair(group.getFieldPrime(), group.getOrder());
+    }
+
+    @Override
+    public BigInteger getGenerator() {
+        return group.getGenerator();
+    }
+
+    @Override
+    public String getCurve() {
+        return group.getName();
+    }
+
+    @Override
+    public Group getGroup() {
+        return group;
+    }
+}
@@ -1,5 +1,6 @@
 package dk.mmj.evhe.crypto.keygeneration;
 
+import dk.mmj.evhe.crypto.group.Group;
 import dk.mmj.evhe.entities.PrimePair;
 
 import java.math.BigInteger;
@@ -23,5 +24,21 @@ public interface KeyGenerationParameters {
      */
     BigInteger getGenerator();
 
+    /**
+     * Name of the elliptic curve used, if any
+     *
+     * @return name of the curve, or null when the subgroup of Z_p^* is used
+     */
+    default String getCurve() {
+        return null;
+    }
 
+    /**
+     * returns the group keys are generated in
+     *
+     * @return the {@link Group} described by the parameters
+     */
+    default Group getGroup() {
+        return Group.getInstance(getPrimePair().getP(), getPrimePair().getQ(), getCurve());
+    }
 }
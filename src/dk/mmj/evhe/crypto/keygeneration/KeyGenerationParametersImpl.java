@@ -17,6 +17,24 @@ public class KeyGenerationParametersImpl implements KeyGenerationParameters {
         g = findGeneratorForGq(primePair);
     }
 
+    /**
+     * Generates Schnorr group parameters, where p = kq + 1 and q is much shorter than p.
+     * <br/>
+     * Exponents are then only as long as q, which makes every exponentiation cheaper.
+     *
+     * @param primeBitLength bit length of prime number p
+     * @param orderBitLength bit length of prime number q, the order of G_q
+     * @param primeCertainty certainty of p and q being prime numbers (1 - 1/2^certainty)
+     */
+    public KeyGenerationParametersImpl(int primeBitLength, int orderBitLength, int primeCertainty) {
+        if (orderBitLength >= primeBitLength - 1) {
+            throw new IllegalArgumentException("Order of the group must be shorter than p");
+        }
+
+        primePair = findSchnorrPrimes(primeBitLength, orderBitLength, primeCertainty);
+        g = findGeneratorForSchnorrGroup(primePair);
+    }
+
     /**
      * Finds primes p and q such that p = 2q + 1
      *
@@ -37,6 +55,48 @@ public class KeyGenerationParametersImpl implements KeyGenerationParameters {
         return new PrimePair(p, q);
     }
 
+    /**
+     * Finds primes p and q such that p = kq + 1 for some even k
+     *
+     * @param primeBitLength bit length of prime number p
+     * @param orderBitLength bit length of prime number q
+     * @param primeCertainty certainty of p and q being prime numbers (1 - 1/2^certainty)
+     * @return PrimePair containing p and q
+     */
+    private PrimePair findSchnorrPrimes(int primeBitLength, int orderBitLength, int primeCertainty) {
+        Random randomBits = new SecureRandom();
+        BigInteger q = BigInteger.probablePrime(orderBitLength, randomBits);
+
+        while (true) {
+            BigInteger x = new BigInteger(primeBitLength, randomBits).setBit(primeBitLength - 1);
+            BigInteger k = x.divide(q).clearBit(0);
+            BigInteger p = k.multiply(q).add(BigInteger.ONE);
+
+            if (p.bitLength() == primeBitLength && p.isProbablePrime(primeCertainty)) {
+                return new PrimePair(p, q);
+            }
+        }
+    }
+
+    /**
+     * Finds a generator g for the subgroup Gq of order q, by raising random elements to the cofactor (p-1)/q
+     *
+     * @param primePair primes p and q, where q divides p-1
+     * @return generator g for cyclic group Gq
+     */
+    private BigInteger findGeneratorForSchnorrGroup(PrimePair primePair) {
+        BigInteger p = primePair.getP();
+        BigInteger cofactor = p.subtract(BigInteger.ONE).divide(primePair.getQ());
+
+        while (true) {
+            BigInteger g = getRandomNumModN(p).modPow(cofactor, p);
+
+            if (!g.equals(BigInteger.ONE)) {
+                return g;
+            }
+        }
+    }
+
     /**
      * Finds a suitable generator g for the cyclic group Gq
      *
@@ -26,6 +26,35 @@ public class PersistedKeyParameters implements KeyGenerationParameters {
         this.primePair = new PrimePair(p, q);
     }
 
+    /**
+     * Generates persisted key parameters for a Schnorr group, from primes p and q, and a generator g
+     *
+     * @param pString hexadecimal encoding of prime p
+     * @param qString hexadecimal encoding of prime q, dividing p - 1
+     * @param gString hexadecimal encoding of generator g, of order q
+     * @throws IllegalArgumentException if q does not divide p - 1, or g does not generate the subgroup of order q
+     */
+    public PersistedKeyParameters(String pString, String qString, String gString) {
+        BigInteger p = decodeHex(pString);
+        BigInteger q = decodeHex(qString);
+
+        if (p.subtract(ONE).mod(q).signum() != 0) {
+            throw new IllegalArgumentException("q does not divide p - 1");
+        }
+
+        BigInteger g = decodeHex(gString);
+        if (g.compareTo(ONE) <= 0 || g.compareTo(p) >= 0 || !g.modPow(q, p).equals(ONE)) {
+            throw new IllegalArgumentException("g is not a generator of the subgroup of order q");
+        }
+
+        this.g = g;
+        this.primePair = new PrimePair(p, q);
+    }
+
+    private static BigInteger decodeHex(String value) {
+        return new BigInteger(value.replaceAll(" ", ""), 16);
+    }
+
     @Override
     public PrimePair getPrimePair() {
         return primePair;
@@ -1,6 +1,7 @@
 package dk.mmj.evhe.crypto.zeroknowledge;
 
 import dk.mmj.evhe.crypto.SecurityUtils;
+import dk.mmj.evhe.crypto.group.Group;
 import dk.mmj.evhe.entities.CipherText;
 import dk.mmj.evhe.entities.PublicKey;
 
@@ -38,16 +39,16 @@ public class DLogProofUtils {
      */
     static Proof generateProof(CipherText cipherText, BigInteger secretValue, PublicKey publicKey, BigInteger y, int id) {
         BigInteger c = cipherText.getC();
-        BigInteger p = publicKey.getP();
         BigInteger q = publicKey.getQ();
+        Group group = publicKey.getGroup();
 
-        BigInteger a = c.modPow(y, p);
-        BigInteger b = publicKey.getG().modPow(y, p);
+        BigInteger a = group.pow(c, y);
+        BigInteger b = group.fixedBasePow(publicKey.getG(), y);
         BigInteger e = new BigInteger(
                 SecurityUtils.hash(new byte[][]{
                         a.toByteArray(),
                         b.toByteArray(),
-                        computePartial(c, secretValue, p).toByteArray(),
+                        computePartial(c, secretValue, group).toByteArray(),
                         publicKey.getH().toByteArray(),
                         BigInteger.valueOf(id).toByteArray()
                 })).mod(q);
@@ -57,7 +58,9 @@ public class DLogProofUtils {
     }
 
     /**
-     * Verifies whether the given proof of discrete logarithms equality for a partial decryption is correct
+     * Verifies whether the given proof of discrete logarithms equality for a partial decryption is correct.
+     * <br/>
+     * The ciphertext and partial decryption must be in the group, as the proof says nothing about values outside it.
      *
      * @param cipherText        the cipher text computed using homomorphic addition
      * @param partialDecryption partial decryption of cipherText using the secret value s_i
@@ -67,11 +70,22 @@ public class DLogProofUtils {
      * @return whether the partial decryption could be verified
      */
     public static boolean verifyProof(CipherText cipherText, CipherText partialDecryption, PublicKey publicKey, Proof proof, int id) {
-        BigInteger p = publicKey.getP();
-        BigInteger a = cipherText.getC().modPow(proof.getZ(), p)
-                .multiply(partialDecryption.getC().modPow(proof.getE(), p).modInverse(p)).mod(p);
-        BigInteger b = publicKey.getG().modPow(proof.getZ(), p)
-                .multiply(publicKey.getH().modPow(proof.getE(), p).modInverse(p)).mod(p);
+        Group group = publicKey.getGroup();
+        if (!group.isElement(cipherText.getC()) || !group.isElement(partialDecryption.getC())) {
+            return false;
+        }
+
+        BigInteger a, b;
+        try {
+            a = group.multiply(
+                    group.pow(cipherText.getC(), proof.getZ()),
+                    group.inverse(group.pow(partialDecryption.getC(), proof.getE())));
+            b = group.multiply(
+                    group.fixedBasePow(publicKey.getG(), proof.getZ()),
+                    group.inverse(group.pow(publicKey.getH(), proof.getE())));
+        } catch (IllegalArgumentException e) {
+            return false; // Values were not elements of the group
+        }
 
         BigInteger s = new BigInteger(
                 SecurityUtils.hash(new byte[][]{
@@ -1,13 +1,22 @@
 package dk.mmj.evhe.crypto.zeroknowledge;
 
+import dk.mmj.evhe.crypto.FixedBaseExponentiation;
+import dk.mmj.evhe.crypto.MultiExponentiation;
 import dk.mmj.evhe.crypto.SecurityUtils;
+import dk.mmj.evhe.crypto.VotePrecomputation;
+import dk.mmj.evhe.crypto.group.Group;
 import dk.mmj.evhe.entities.CipherText;
 import dk.mmj.evhe.entities.PublicKey;
 import dk.mmj.evhe.entities.VoteDTO;
 
 import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.stream.Collectors;
 
 public class VoteProofUtils {
+    private static final int BATCH_WEIGHT_BITS = 64;
+    private static final int MIN_BATCH_SIZE = 4;
 
     /**
      * Method for generating zero-knowledge proof for vote that is either 0 or 1
@@ -32,7 +41,7 @@ public class VoteProofUtils {
         BigInteger c = cipherText.getC();
         BigInteger d = cipherText.getD();
         BigInteger q = publicKey.getQ();
-        BigInteger p = publicKey.getP();
+        Group group = publicKey.getGroup();
 
         int fakeIndex = (1 - v);
 
@@ -40,37 +49,74 @@ public class VoteProofUtils {
         e[fakeIndex] = SecurityUtils.getRandomNumModN(q);
         z[fakeIndex] = SecurityUtils.getRandomNumModN(q);
 
-        a[fakeIndex] = g.modPow(z[fakeIndex], p).multiply(c.modPow(e[fakeIndex], p)).mod(p);
+        a[fakeIndex] = group.multiply(group.fixedBasePow(g, z[fakeIndex]), group.pow(c, e[fakeIndex]));
 
         if (v == 1) {
-            b[fakeIndex] = h.modPow(z[fakeIndex], p).multiply(d.modPow(e[fakeIndex], p)).mod(p);
+            b[fakeIndex] = group.multiply(group.fixedBasePow(h, z[fakeIndex]), group.pow(d, e[fakeIndex]));
         } else {
-            b[fakeIndex] = h.modPow(z[fakeIndex], p).multiply(d.multiply(g.modInverse(p)).modPow(e[fakeIndex], p)).mod(p);
+            b[fakeIndex] = group.multiply(group.fixedBasePow(h, z[fakeIndex]), group.pow(group.multiply(d, group.inverse(g)), e[fakeIndex]));
         }
 
-        a[v] = g.modPow(y, p);
-        b[v] = h.modPow(y, p);
+        a[v] = group.fixedBasePow(g, y);
+        b[v] = group.fixedBasePow(h, y);
 
-        BigInteger s = new BigInteger(
-                SecurityUtils.hash(new byte[][]{
-                        a[0].toByteArray(),
-                        b[0].toByteArray(),
-                        a[1].toByteArray(),
-                        b[1].toByteArray(),
-                        c.toByteArray(),
-                        d.toByteArray(),
-                        id.getBytes()
-                })).mod(q);
+        BigInteger s = challenge(a[0], b[0], a[1], b[1], c, d, id, q);
 
         e[v] = s.subtract(e[fakeIndex]).mod(q);
         z[v] = y.subtract(e[v].multiply(witness)).mod(q);
 
-        return new VoteDTO.Proof(e[0], e[1], z[0], z[1]);
+        return new VoteDTO.Proof(e[0], e[1], z[0], z[1], a[0], b[0], a[1], b[1]);
+    }
+
+    /**
+     * Generates the zero-knowledge proof for a vote that is either 0 or 1, from a precomputation.
+     * <br/>
+     * The commitments are already computed, so only a few multiplications and the hash remain.
+     *
+     * @param cipherText     ciphertext from encrypting the vote with the precomputation
+     * @param publicKey      public key the vote is encrypted under
+     * @param precomputation the precomputation used for the encryption
+     * @param id             voter id
+     * @param vote           what was voted - either 0 or 1
+     * @return the zero-knowledge proof
+     */
+    public static VoteDTO.Proof generateProof(CipherText cipherText, PublicKey publicKey, VotePrecomputation precomputation, String id, int vote) {
+        int v = (vote > 0) ? 1 : 0; // For unit-test purposes.
+        int fakeIndex = (1 - v);
+
+        BigInteger[] e = new BigInteger[2];
+        BigInteger[] z = new BigInteger[2];
+        BigInteger[] a = new BigInteger[2];
+        BigInteger[] b = new BigInteger[2];
+        BigInteger q = publicKey.getQ();
+        Group group = publicKey.getGroup();
+
+        e[fakeIndex] = precomputation.getFakeChallenge();
+        z[fakeIndex] = precomputation.getFakeAnswer();
+        a[fakeIndex] = precomputation.getFakeA();
+
+        if (v == 1) {
+            b[fakeIndex] = group.multiply(precomputation.getFakeHPart(), precomputation.getGPowFakeChallenge());
+        } else {
+            b[fakeIndex] = group.multiply(precomputation.getFakeHPart(), precomputation.getGPowNegatedFakeChallenge());
+        }
+
+        a[v] = precomputation.getGPowY();
+        b[v] = precomputation.getHPowY();
+
+        BigInteger s = challenge(a[0], b[0], a[1], b[1], cipherText.getC(), cipherText.getD(), id, q);
+
+        e[v] = s.subtract(e[fakeIndex]).mod(q);
+        z[v] = precomputation.getY().subtract(e[v].multiply(precomputation.getR())).mod(q);
+
+        return new VoteDTO.Proof(e[0], e[1], z[0], z[1], a[0], b[0], a[1], b[1]);
     }
 
 
     /**
-     * Method for verifying that the zero-knowledge proof of a vote is correct
+     * Method for verifying that the zero-knowledge proof of a vote is correct.
+     * <br/>
+     * The ciphertext must be in the group, as a ciphertext of small order could otherwise be added to the sum of votes.
      *
      * @param vote      vote to be verified
      * @param publicKey key the vote is encrypted under
@@ -83,16 +129,188 @@ public class VoteProofUtils {
         BigInteger z1 = vote.getProof().getZ1();
         BigInteger g = publicKey.getG();
         BigInteger h = publicKey.getH();
-        BigInteger p = publicKey.getP();
         BigInteger c = vote.getCipherText().getC();
         BigInteger d = vote.getCipherText().getD();
+        Group group = publicKey.getGroup();
 
-        BigInteger a0 = g.modPow(z0, p).multiply(c.modPow(e0, p)).mod(p);
-        BigInteger b0 = h.modPow(z0, p).multiply(d.modPow(e0, p)).mod(p);
-        BigInteger a1 = g.modPow(z1, p).multiply(c.modPow(e1, p)).mod(p);
-        BigInteger b1 = h.modPow(z1, p).multiply(d.multiply(g.modInverse(p)).modPow(e1, p)).mod(p);
+        if (!group.isElement(c) || !group.isElement(d)) {
+            return false;
+        }
+
+        BigInteger a0, b0, a1, b1;
+        try {
+            a0 = group.multiply(group.fixedBasePow(g, z0), group.pow(c, e0));
+            b0 = group.multiply(group.fixedBasePow(h, z0), group.pow(d, e0));
+            a1 = group.multiply(group.fixedBasePow(g, z1), group.pow(c, e1));
+            b1 = group.multiply(group.fixedBasePow(h, z1), group.pow(group.multiply(d, group.inverse(g)), e1));
+        } catch (IllegalArgumentException e) {
+            return false; // Ciphertext was not an element of the group
+        }
+
+        BigInteger s = challenge(a0, b0, a1, b1, c, d, vote.getId(), publicKey.getQ());
+
+        BigInteger e = e0.add(e1);
 
-        BigInteger s = new BigInteger(
+        return e.mod(publicKey.getQ()).equals(s);
+    }
+
+    /**
+     * Verifies the proofs of many votes at once, and returns the votes whose proof could be verified.
+     * <br/>
+     * Proofs carrying their commitments are checked using the small exponents test: the four verification equations of
+     * every proof are raised to random {@value #BATCH_WEIGHT_BITS}-bit weights and multiplied together. This way g and h
+     * are only raised once per batch, and each vote needs two full exponentiations instead of eight.
+     * If the combined equation does not hold, the batch is bisected to locate the invalid proofs.
+     * <br/>
+     * Proofs without commitments, or whose commitments do not match the challenge or are outside G_q,
+     * and proofs in groups other than mod a safe prime, are verified one at a time using {@link #verifyProof(VoteDTO, PublicKey)}.
+     * Hence the result is the same as filtering the votes using {@link #verifyProof(VoteDTO, PublicKey)}.
+     *
+     * @param votes     votes to be verified
+     * @param publicKey key the votes are encrypted under
+     * @param <T>       type of votes
+     * @return the votes that could be verified, in their original order
+     */
+    public static <T extends VoteDTO> List<T> verifyProofs(List<T> votes, PublicKey publicKey) {
+        Set<T> verified = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<T> batchable = new ArrayList<>();
+        boolean safePrimeGroup = publicKey.getCurve() == null
+                && publicKey.getP().equals(publicKey.getQ().shiftLeft(1).add(BigInteger.ONE));
+
+        for (T vote : votes) {
+            if (safePrimeGroup && isBatchable(vote, publicKey)) {
+                batchable.add(vote);
+            } else if (verifyProof(vote, publicKey)) {
+                verified.add(vote);
+            }
+        }
+
+        verifyBatch(batchable, publicKey, new SecureRandom(), verified);
+
+        return votes.stream().filter(verified::contains).collect(Collectors.toList());
+    }
+
+    /**
+     * Verifies the batch if possible, and otherwise bisects it
+     *
+     * @param batch     votes with valid commitments
+     * @param publicKey key the votes are encrypted under
+     * @param random    source of the weights
+     * @param verified  collection that verified votes are added to
+     * @param <T>       type of votes
+     */
+    private static <T extends VoteDTO> void verifyBatch(List<T> batch, PublicKey publicKey, Random random, Collection<T> verified) {
+        if (batch.size() < MIN_BATCH_SIZE) {
+            batch.stream().filter(v -> verifyProof(v, publicKey)).forEach(verified::add);
+            return;
+        }
+
+        if (batchEquationHolds(batch, publicKey, random)) {
+            verified.addAll(batch);
+            return;
+        }
+
+        int half = batch.size() / 2;
+        verifyBatch(batch.subList(0, half), publicKey, random, verified);
+        verifyBatch(batch.subList(half, batch.size()), publicKey, random, verified);
+    }
+
+    /**
+     * Checks the weighted product of all verification equations in the batch:
+     * <br/>
+     * prod(a0^w0 * b0^w1 * a1^w2 * b1^w3) = g^sum(w0*z0 + w2*z1 - w3*e1) * h^sum(w1*z0 + w3*z1)
+     * * prod(c^(w0*e0 + w2*e1) * d^(w1*e0 + w3*e1))
+     * <br/>
+     * All values must be in G_q, so exponents can be reduced mod q.
+     * The left hand side only has small exponents, so it is computed as one multi-exponentiation.
+     *
+     * @param batch     votes with valid commitments
+     * @param publicKey key the votes are encrypted under
+     * @param random    source of the weights
+     * @return whether the combined equation holds
+     */
+    private static boolean batchEquationHolds(List<? extends VoteDTO> batch, PublicKey publicKey, Random random) {
+        BigInteger p = publicKey.getP();
+        BigInteger q = publicKey.getQ();
+        BigInteger gExponent = BigInteger.ZERO;
+        BigInteger hExponent = BigInteger.ZERO;
+        BigInteger cipherTexts = BigInteger.ONE;
+        BigInteger[] commitmentBases = new BigInteger[4 * batch.size()];
+        BigInteger[] weights = new BigInteger[4 * batch.size()];
+        int i = 0;
+
+        for (VoteDTO vote : batch) {
+            VoteDTO.Proof proof = vote.getProof();
+            BigInteger w0 = new BigInteger(BATCH_WEIGHT_BITS, random);
+            BigInteger w1 = new BigInteger(BATCH_WEIGHT_BITS, random);
+            BigInteger w2 = new BigInteger(BATCH_WEIGHT_BITS, random);
+            BigInteger w3 = new BigInteger(BATCH_WEIGHT_BITS, random);
+
+            commitmentBases[i] = proof.getA0();
+            weights[i++] = w0;
+            commitmentBases[i] = proof.getB0();
+            weights[i++] = w1;
+            commitmentBases[i] = proof.getA1();
+            weights[i++] = w2;
+            commitmentBases[i] = proof.getB1();
+            weights[i++] = w3;
+
+            BigInteger cExponent = w0.multiply(proof.getE0()).add(w2.multiply(proof.getE1())).mod(q);
+            BigInteger dExponent = w1.multiply(proof.getE0()).add(w3.multiply(proof.getE1())).mod(q);
+            cipherTexts = cipherTexts
+                    .multiply(vote.getCipherText().getC().modPow(cExponent, p)).mod(p)
+                    .multiply(vote.getCipherText().getD().modPow(dExponent, p)).mod(p);
+
+            gExponent = gExponent.add(w0.multiply(proof.getZ0())).add(w2.multiply(proof.getZ1())).subtract(w3.multiply(proof.getE1()));
+            hExponent = hExponent.add(w1.multiply(proof.getZ0())).add(w3.multiply(proof.getZ1()));
+        }
+
+        BigInteger expected = cipherTexts
+                .multiply(FixedBaseExponentiation.modPow(publicKey.getG(), gExponent.mod(q), publicKey)).mod(p)
+                .multiply(FixedBaseExponentiation.modPow(publicKey.getH(), hExponent.mod(q), publicKey)).mod(p);
+
+        BigInteger commitments = MultiExponentiation.modPow(commitmentBases, weights, p);
+
+        return commitments.equals(expected);
+    }
+
+    /**
+     * Checks the parts of a proof which are cheap to check, and required for batch verification.
+     * <br/>
+     * The commitments must be present and hash to the challenge,
+     * and the commitments and ciphertext must be in G_q.
+     *
+     * @param vote      vote to be checked
+     * @param publicKey key the vote is encrypted under, where p must be a safe prime
+     * @return whether the vote can be batch verified
+     */
+    private static boolean isBatchable(VoteDTO vote, PublicKey publicKey) {
+        VoteDTO.Proof proof = vote.getProof();
+        BigInteger q = publicKey.getQ();
+        Group group = publicKey.getGroup();
+        CipherText cipherText = vote.getCipherText();
+
+        if (proof.getA0() == null || proof.getB0() == null || proof.getA1() == null || proof.getB1() == null) {
+            return false;
+        }
+
+        BigInteger s = challenge(proof.getA0(), proof.getB0(), proof.getA1(), proof.getB1(), cipherText.getC(), cipherText.getD(), vote.getId(), q);
+        if (!proof.getE0().add(proof.getE1()).mod(q).equals(s)) {
+            return false;
+        }
+
+        return group.isElement(proof.getA0()) && group.isElement(proof.getB0())
+                && group.isElement(proof.getA1()) && group.isElement(proof.getB1())
+                && group.isElement(cipherText.getC()) && group.isElement(cipherText.getD());
+    }
+
+    /**
+     * Computes the Fiat-Shamir challenge for the proof
+     *
+     * @return hash of the commitments, ciphertext and voter id, mod q
+     */
+    private static BigInteger challenge(BigInteger a0, BigInteger b0, BigInteger a1, BigInteger b1, BigInteger c, BigInteger d, String id, BigInteger q) {
+        return new BigInteger(
                 SecurityUtils.hash(new byte[][]{
                         a0.toByteArray(),
                         b0.toByteArray(),
@@ -100,12 +318,7 @@ public class VoteProofUtils {
                         b1.toByteArray(),
                         c.toByteArray(),
                         d.toByteArray(),
-                        vote.getId().getBytes()
-                })).mod(publicKey.getQ());
-
-        BigInteger e = e0.add(e1);
-
-        return e.mod(publicKey.getQ()).equals(s);
+                        id.getBytes()
+                })).mod(q);
     }
 }
-
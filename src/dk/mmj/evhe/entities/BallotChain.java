@@ -0,0 +1,131 @@
+package dk.mmj.evhe.entities;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Running hash over the votes on a bulletin board, in the order they were accepted.
+ * <br/>
+ * The head of an empty chain is {@value #HASH_LENGTH} zero bytes, and appending a vote replaces the head
+ * with the SHA-256 hash of the head followed by the vote in the {@link BinaryEncoding}.
+ * The head after <code>n</code> votes therefore commits to those votes and their order,
+ * so a client holding the head of a prefix can verify that further votes extend it, by appending them to its own chain.
+ */
+public class BallotChain {
+    /**
+     * Length of the head, in bytes
+     */
+    public static final int HASH_LENGTH = 32;
+    private final MessageDigest digest;
+    private byte[] head;
+    private int length;
+
+    /**
+     * Creates an empty chain
+     */
+    public BallotChain() {
+        this(0, new byte[HASH_LENGTH]);
+    }
+
+    /**
+     * Creates a chain continuing from a prefix of votes
+     *
+     * @param length number of votes in the prefix
+     * @param head   head of the chain after the prefix
+     */
+    public BallotChain(int length, byte[] head) {
+        if (head.length != HASH_LENGTH) {
+            throw new IllegalArgumentException("Head must be " + HASH_LENGTH + " bytes");
+        }
+
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+
+        this.length = length;
+        this.head = head.clone();
+    }
+
+    /**
+     * Appends the vote to the chain
+     *
+     * @param vote the vote
+     */
+    public void append(PersistedVote vote) {
+        digest.update(head);
+        head = digest.digest(BinaryEncoding.encode(vote));
+        length++;
+    }
+
+    /**
+     * @return the head of the chain
+     */
+    public byte[] getHead() {
+        return head.clone();
+    }
+
+    /**
+     * @return number of votes in the chain
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @param head head of a chain
+     * @return whether this chain has the same head
+     */
+    public boolean hasHead(byte[] head) {
+        return MessageDigest.isEqual(this.head, head);
+    }
+
+    /**
+     * @param head head of a chain
+     * @return the head as a string, for headers and JSON
+     */
+    public static String toString(byte[] head) {
+        return Base64.getEncoder().encodeToString(head);
+    }
+
+    /**
+     * @param head head of a chain, as given by {@link #toString(byte[])}
+     * @return the head
+     * @throws IllegalArgumentException if the string is not a head
+     */
+    public static byte[] fromString(String head) {
+        byte[] bytes = Base64.getDecoder().decode(head);
+
+        if (bytes.length != HASH_LENGTH) {
+            throw new IllegalArgumentException("Head must be " + HASH_LENGTH + " bytes, was " + bytes.length);
+        }
+
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "BallotChain{length=" + length + ", head=" + toString(head) + "}";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        BallotChain that = (BallotChain) o;
+        return length == that.length && Arrays.equals(head, that.head);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * length + Arrays.hashCode(head);
+    }
+}
@@ -0,0 +1,471 @@
+package dk.mmj.evhe.entities;
+
+import dk.mmj.evhe.crypto.zeroknowledge.DLogProofUtils;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Compact binary encoding of the entities carrying ciphertexts and proofs.
+ * <br/>
+ * A message starts with a version byte, and the width in bytes used for every number in it.
+ * Each number is then written as a flag byte, telling whether it is null, non-negative or negative,
+ * followed by its magnitude as a fixed width big-endian integer. The width is the byte length of the largest number,
+ * which for group elements is the byte length of the modulus, so numbers are copied rather than converted to decimal.
+ * Strings are length prefixed UTF-8, and lists are prefixed with their size, or -1 when null.
+ * <br/>
+ * Messages are self-delimiting, so a sequence of messages can be read from a single stream.
+ * Numbers and strings are at most {@value #MAX_LENGTH} bytes, so a malformed message cannot make the reader allocate
+ * more than that up front.
+ */
+public class BinaryEncoding {
+    /**
+     * Media type of entities in the binary encoding
+     */
+    public static final String MEDIA_TYPE = "application/x-evhe-binary";
+    private static final int VERSION = 1;
+    private static final byte NULL = 0;
+    private static final byte POSITIVE = 1;
+    private static final byte NEGATIVE = 2;
+    private static final int MAX_PREALLOCATED = 1024;
+    private static final int MAX_LENGTH = 1 << 16;
+
+    /**
+     * @param type class of an entity
+     * @return whether entities of the class can be encoded
+     */
+    public static boolean isSupported(Class<?> type) {
+        return type == VoteDTO.class
+                || type == PersistedVote.class
+                || type == CipherText.class
+                || type == PartialResult.class
+                || type == ResultList.class
+                || type == PublicKey.class
+                || type == Tally.class
+                || type == VoteBatch.class
+                || type == VoteBatchResult.class;
+    }
+
+    /**
+     * Writes the entity as a single message
+     *
+     * @param entity the entity. Must be of a supported class
+     * @param out    stream to write to. Is not closed
+     * @throws IOException if the stream could not be written
+     */
+    public static void write(Object entity, OutputStream out) throws IOException {
+        Encoder encoder = new Encoder();
+
+        if (entity instanceof PersistedVote) {
+            encoder.vote((PersistedVote) entity);
+            encoder.date(((PersistedVote) entity).getTs());
+        } else if (entity instanceof VoteDTO) {
+            encoder.vote((VoteDTO) entity);
+        } else if (entity instanceof CipherText) {
+            encoder.cipherText((CipherText) entity);
+        } else if (entity instanceof PartialResult) {
+            encoder.partialResult((PartialResult) entity);
+        } else if (entity instanceof ResultList) {
+            List<PartialResult> results = ((ResultList) entity).getResults();
+            encoder.size(results);
+            if (results != null) {
+                for (PartialResult result : results) {
+                    encoder.partialResult(result);
+                }
+            }
+        } else if (entity instanceof PublicKey) {
+            PublicKey key = (PublicKey) entity;
+            encoder.number(key.getH());
+            encoder.number(key.getG());
+            encoder.number(key.getQ());
+            encoder.number(key.getCurve() == null ? key.getP() : null);
+            encoder.string(key.getCurve());
+        } else if (entity instanceof Tally) {
+            encoder.cipherText(((Tally) entity).getCipherText());
+            encoder.integer(((Tally) entity).getVotes());
+        } else if (entity instanceof VoteBatch) {
+            List<VoteDTO> votes = ((VoteBatch) entity).getVotes();
+            encoder.size(votes);
+            if (votes != null) {
+                for (VoteDTO vote : votes) {
+                    encoder.vote(vote);
+                }
+            }
+        } else if (entity instanceof VoteBatchResult) {
+            List<VoteBatchResult.Status> statuses = ((VoteBatchResult) entity).getStatuses();
+            encoder.size(statuses);
+            if (statuses != null) {
+                for (VoteBatchResult.Status status : statuses) {
+                    encoder.integer(status.ordinal());
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported entity " + (entity == null ? null : entity.getClass()));
+        }
+
+        encoder.writeTo(new DataOutputStream(out));
+    }
+
+    /**
+     * @param entity the entity. Must be of a supported class
+     * @return the entity encoded as a single message
+     */
+    public static byte[] encode(Object entity) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try {
+            write(entity, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads a single message
+     *
+     * @param type class of the entity. Must be supported
+     * @param in   stream to read from. Is not closed
+     * @param <T>  type of the entity
+     * @return the entity, or null if the stream ended before the message
+     * @throws IOException if the stream could not be read, or did not hold a valid message
+     */
+    public static <T> T read(Class<T> type, InputStream in) throws IOException {
+        int version = in.read();
+        if (version < 0) {
+            return null;
+        }
+
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary encoding version " + version);
+        }
+
+        Decoder decoder = new Decoder(new DataInputStream(in));
+        Object entity;
+
+        if (type == PersistedVote.class) {
+            PersistedVote vote = new PersistedVote();
+            decoder.vote(vote);
+            vote.setTs(decoder.date());
+            entity = vote;
+        } else if (type == VoteDTO.class) {
+            VoteDTO vote = new VoteDTO();
+            decoder.vote(vote);
+            entity = vote;
+        } else if (type == CipherText.class) {
+            entity = decoder.cipherText();
+        } else if (type == PartialResult.class) {
+            entity = decoder.partialResult();
+        } else if (type == ResultList.class) {
+            int size = decoder.size();
+            List<PartialResult> results = null;
+            if (size >= 0) {
+                results = new ArrayList<>(Math.min(size, MAX_PREALLOCATED));
+                for (int i = 0; i < size; i++) {
+                    results.add(decoder.partialResult());
+                }
+            }
+            entity = new ResultList(results);
+        } else if (type == PublicKey.class) {
+            BigInteger h = decoder.number();
+            BigInteger g = decoder.number();
+            BigInteger q = decoder.number();
+            BigInteger p = decoder.number();
+            entity = new PublicKey(h, g, q, p, decoder.string());
+        } else if (type == Tally.class) {
+            entity = new Tally(decoder.cipherText(), decoder.integer());
+        } else if (type == VoteBatch.class) {
+            int size = decoder.size();
+            List<VoteDTO> votes = null;
+            if (size >= 0) {
+                votes = new ArrayList<>(Math.min(size, MAX_PREALLOCATED));
+                for (int i = 0; i < size; i++) {
+                    VoteDTO vote = new VoteDTO();
+                    decoder.vote(vote);
+                    votes.add(vote);
+                }
+            }
+            entity = new VoteBatch(votes);
+        } else if (type == VoteBatchResult.class) {
+            int size = decoder.size();
+            List<VoteBatchResult.Status> statuses = null;
+            if (size >= 0) {
+                statuses = new ArrayList<>(Math.min(size, MAX_PREALLOCATED));
+                for (int i = 0; i < size; i++) {
+                    statuses.add(decoder.status());
+                }
+            }
+            entity = new VoteBatchResult(statuses);
+        } else {
+            throw new IllegalArgumentException("Unsupported entity " + type);
+        }
+
+        return type.cast(entity);
+    }
+
+    /**
+     * @param type    class of the entity. Must be supported
+     * @param message the entity encoded as a single message
+     * @param <T>     type of the entity
+     * @return the entity
+     * @throws IOException if the bytes did not hold a valid message
+     */
+    public static <T> T decode(Class<T> type, byte[] message) throws IOException {
+        T entity = read(type, new ByteArrayInputStream(message));
+        if (entity == null) {
+            throw new EOFException("Empty message");
+        }
+
+        return entity;
+    }
+
+    /**
+     * Collects the fields of a message, so the width of its numbers is known before it is written
+     */
+    private static class Encoder {
+        private final List<Object> fields = new ArrayList<>();
+        private int width;
+        private int stringLength;
+
+        void number(BigInteger value) {
+            if (value != null) {
+                width = Math.max(width, (value.abs().bitLength() + 7) / 8);
+            }
+            fields.add(new NumberField(value));
+        }
+
+        void integer(int value) {
+            fields.add(value);
+        }
+
+        void date(Date date) {
+            fields.add(date == null ? Long.MIN_VALUE : date.getTime());
+        }
+
+        void string(String value) {
+            byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+            if (bytes != null) {
+                stringLength = Math.max(stringLength, bytes.length);
+            }
+            fields.add(bytes);
+        }
+
+        void size(List<?> list) {
+            integer(list == null ? -1 : list.size());
+        }
+
+        void cipherText(CipherText cipherText) {
+            number(cipherText == null ? null : cipherText.getC());
+            number(cipherText == null ? null : cipherText.getD());
+        }
+
+        void vote(VoteDTO vote) {
+            cipherText(vote.getCipherText());
+            string(vote.getId());
+
+            VoteDTO.Proof proof = vote.getProof();
+            integer(proof == null ? 0 : 1);
+            if (proof != null) {
+                number(proof.getE0());
+                number(proof.getE1());
+                number(proof.getZ0());
+                number(proof.getZ1());
+                number(proof.getA0());
+                number(proof.getB0());
+                number(proof.getA1());
+                number(proof.getB1());
+            }
+        }
+
+        void partialResult(PartialResult result) {
+            integer(result.getId());
+            number(result.getResult());
+
+            DLogProofUtils.Proof proof = result.getProof();
+            integer(proof == null ? 0 : 1);
+            if (proof != null) {
+                number(proof.getE());
+                number(proof.getZ());
+            }
+
+            cipherText(result.getCipherText());
+            integer(result.getVotes());
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            if (width > MAX_LENGTH || stringLength > MAX_LENGTH) {
+                throw new IOException("Message has fields too large to encode");
+            }
+
+            out.writeByte(VERSION);
+            out.writeInt(width);
+
+            for (Object field : fields) {
+                if (field instanceof NumberField) {
+                    writeNumber(out, ((NumberField) field).value);
+                } else if (field instanceof Integer) {
+                    out.writeInt((Integer) field);
+                } else if (field instanceof Long) {
+                    out.writeLong((Long) field);
+                } else if (field == null) {
+                    out.writeInt(-1);
+                } else {
+                    byte[] bytes = (byte[]) field;
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+
+            out.flush();
+        }
+
+        private void writeNumber(DataOutputStream out, BigInteger value) throws IOException {
+            if (value == null) {
+                out.writeByte(NULL);
+                return;
+            }
+
+            out.writeByte(value.signum() < 0 ? NEGATIVE : POSITIVE);
+
+            byte[] bytes = value.abs().toByteArray();
+            int offset = bytes.length > width ? bytes.length - width : 0;
+            for (int i = bytes.length - offset; i < width; i++) {
+                out.writeByte(0);
+            }
+            out.write(bytes, offset, bytes.length - offset);
+        }
+
+        /**
+         * Marks a number, as numbers may be null
+         */
+        private static class NumberField {
+            private final BigInteger value;
+
+            NumberField(BigInteger value) {
+                this.value = value;
+            }
+        }
+    }
+
+    /**
+     * Reads the fields of a message, in the order they were written by the {@link Encoder}
+     */
+    private static class Decoder {
+        private final DataInputStream in;
+        private final byte[] buffer;
+
+        Decoder(DataInputStream in) throws IOException {
+            this.in = in;
+
+            int width = in.readInt();
+            if (width < 0 || width > MAX_LENGTH) {
+                throw new IOException("Invalid number width " + width);
+            }
+            this.buffer = new byte[width];
+        }
+
+        BigInteger number() throws IOException {
+            byte flag = in.readByte();
+            if (flag == NULL) {
+                return null;
+            }
+
+            in.readFully(buffer);
+            BigInteger magnitude = new BigInteger(1, buffer);
+
+            if (flag == POSITIVE) {
+                return magnitude;
+            } else if (flag == NEGATIVE) {
+                return magnitude.negate();
+            }
+
+            throw new IOException("Invalid number flag " + flag);
+        }
+
+        int integer() throws IOException {
+            return in.readInt();
+        }
+
+        Date date() throws IOException {
+            long time = in.readLong();
+
+            return time == Long.MIN_VALUE ? null : new Date(time);
+        }
+
+        String string() throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+
+            if (length > MAX_LENGTH) {
+                throw new IOException("Invalid string length " + length);
+            }
+
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int size() throws IOException {
+            return in.readInt();
+        }
+
+        VoteBatchResult.Status status() throws IOException {
+            int ordinal = in.readInt();
+            VoteBatchResult.Status[] statuses = VoteBatchResult.Status.values();
+            if (ordinal < 0 || ordinal >= statuses.length) {
+                throw new IOException("Invalid status " + ordinal);
+            }
+
+            return statuses[ordinal];
+        }
+
+        CipherText cipherText() throws IOException {
+            BigInteger c = number();
+            BigInteger d = number();
+
+            return c == null && d == null ? null : new CipherText(c, d);
+        }
+
+        void vote(VoteDTO vote) throws IOException {
+            vote.setCipherText(cipherText());
+            vote.setId(string());
+
+            if (integer() != 0) {
+                BigInteger e0 = number();
+                BigInteger e1 = number();
+                BigInteger z0 = number();
+                BigInteger z1 = number();
+                BigInteger a0 = number();
+                BigInteger b0 = number();
+                BigInteger a1 = number();
+                BigInteger b1 = number();
+                vote.setProof(new VoteDTO.Proof(e0, e1, z0, z1, a0, b0, a1, b1));
+            }
+        }
+
+        PartialResult partialResult() throws IOException {
+            int id = integer();
+            BigInteger result = number();
+
+            DLogProofUtils.Proof proof = null;
+            if (integer() != 0) {
+                BigInteger e = number();
+                BigInteger z = number();
+                proof = new DLogProofUtils.Proof(e, z);
+            }
+
+            CipherText cipherText = cipherText();
+            int votes = integer();
+
+            return new PartialResult(id, result, proof, cipherText, votes);
+        }
+    }
+}
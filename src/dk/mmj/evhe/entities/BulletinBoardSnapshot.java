@@ -0,0 +1,80 @@
+package dk.mmj.evhe.entities;
+
+import java.util.List;
+
+/**
+ * The state of a bulletin board besides its votes, as of a number of votes.
+ * <br/>
+ * The votes themselves are kept in the ballot log, and the head of their {@link BallotChain} identifies
+ * the votes the snapshot was taken after, so the tally is only restored on top of the same votes.
+ */
+@SuppressWarnings("JavaDocs, unused")
+public class BulletinBoardSnapshot {
+    private long time;
+    private ChainHead chain;
+    private Tally tally;
+    private PublicKey publicKey;
+    private List<PublicInformationEntity> publicInfos;
+    private List<PartialResult> results;
+
+    public BulletinBoardSnapshot() {
+    }
+
+    public BulletinBoardSnapshot(long time, ChainHead chain, Tally tally, PublicKey publicKey,
+                                 List<PublicInformationEntity> publicInfos, List<PartialResult> results) {
+        this.time = time;
+        this.chain = chain;
+        this.tally = tally;
+        this.publicKey = publicKey;
+        this.publicInfos = publicInfos;
+        this.results = results;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    public ChainHead getChain() {
+        return chain;
+    }
+
+    public void setChain(ChainHead chain) {
+        this.chain = chain;
+    }
+
+    public Tally getTally() {
+        return tally;
+    }
+
+    public void setTally(Tally tally) {
+        this.tally = tally;
+    }
+
+    public PublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    public void setPublicKey(PublicKey publicKey) {
+        this.publicKey = publicKey;
+    }
+
+    public List<PublicInformationEntity> getPublicInfos() {
+        return publicInfos;
+    }
+
+    public void setPublicInfos(List<PublicInformationEntity> publicInfos) {
+        this.publicInfos = publicInfos;
+    }
+
+    public List<PartialResult> getResults() {
+        return results;
+    }
+
+    public void setResults(List<PartialResult> results) {
+        this.results = results;
+    }
+}
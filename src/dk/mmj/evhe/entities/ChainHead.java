@@ -0,0 +1,34 @@
+package dk.mmj.evhe.entities;
+
+/**
+ * Head of the {@link BallotChain} of a bulletin board after a number of votes
+ */
+@SuppressWarnings("JavaDocs, unused")
+public class ChainHead {
+    private int length;
+    private String head;
+
+    public ChainHead() {
+    }
+
+    public ChainHead(int length, String head) {
+        this.length = length;
+        this.head = head;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public void setLength(int length) {
+        this.length = length;
+    }
+
+    public String getHead() {
+        return head;
+    }
+
+    public void setHead(String head) {
+        this.head = head;
+    }
+}
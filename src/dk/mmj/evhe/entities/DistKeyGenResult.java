@@ -9,6 +9,7 @@ public class DistKeyGenResult {
     private BigInteger g;
     private BigInteger q;
     private BigInteger p;
+    private String curve;
     private List<Integer> authorityIds;
     private Map<Integer, BigInteger> secretValues;
     private Map<Integer, BigInteger> publicValues;
@@ -21,9 +22,14 @@ public class DistKeyGenResult {
     }
 
     public DistKeyGenResult(BigInteger g, BigInteger q, Map<Integer, BigInteger> secretValues, Map<Integer, BigInteger> publicValues) {
+        this(g, q, q.multiply(BigInteger.valueOf(2)).add(BigInteger.ONE), null, secretValues, publicValues);
+    }
+
+    public DistKeyGenResult(BigInteger g, BigInteger q, BigInteger p, String curve, Map<Integer, BigInteger> secretValues, Map<Integer, BigInteger> publicValues) {
         this.g = g;
         this.q = q;
-        this.p = q.multiply(BigInteger.valueOf(2)).add(BigInteger.ONE);
+        this.p = p;
+        this.curve = curve;
         this.secretValues = secretValues;
         this.publicValues = publicValues;
         authorityIds = new ArrayList<>(secretValues.keySet());
@@ -41,6 +47,10 @@ public class DistKeyGenResult {
         return p;
     }
 
+    public String getCurve() {
+        return curve;
+    }
+
     public List<Integer> getAuthorityIds() {
         return authorityIds;
     }
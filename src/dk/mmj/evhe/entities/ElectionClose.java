@@ -0,0 +1,47 @@
+package dk.mmj.evhe.entities;
+
+/**
+ * Announcement that a bulletin board has closed the vote.
+ * <br/>
+ * The board accepts no votes after closing, so its first <code>votes</code> votes are final,
+ * and the head of their {@link BallotChain} identifies them.
+ */
+@SuppressWarnings("JavaDocs, unused")
+public class ElectionClose {
+    private long endTime;
+    private int votes;
+    private String chainHead;
+
+    public ElectionClose() {
+    }
+
+    public ElectionClose(long endTime, int votes, String chainHead) {
+        this.endTime = endTime;
+        this.votes = votes;
+        this.chainHead = chainHead;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(long endTime) {
+        this.endTime = endTime;
+    }
+
+    public int getVotes() {
+        return votes;
+    }
+
+    public void setVotes(int votes) {
+        this.votes = votes;
+    }
+
+    public String getChainHead() {
+        return chainHead;
+    }
+
+    public void setChainHead(String chainHead) {
+        this.chainHead = chainHead;
+    }
+}
@@ -1,5 +1,7 @@
 package dk.mmj.evhe.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import dk.mmj.evhe.crypto.group.Group;
 import org.bouncycastle.crypto.Signer;
 
 import java.math.BigInteger;
@@ -14,6 +16,7 @@ public class PublicInformationEntity {
     private BigInteger g;
     private BigInteger q;
     private BigInteger p;
+    private String curve;
     private long endTime;
     private String signature;
 
@@ -29,6 +32,11 @@ public class PublicInformationEntity {
         this.endTime = endTime;
     }
 
+    public PublicInformationEntity(List<Integer> ids, Map<Integer, BigInteger> publicKeys, BigInteger g, BigInteger q, BigInteger p, String curve, long endTime) {
+        this(ids, publicKeys, g, q, p, endTime);
+        this.curve = curve;
+    }
+
     public List<Integer> getIds() {
         return ids;
     }
@@ -69,6 +77,22 @@ public class PublicInformationEntity {
         this.p = p;
     }
 
+    public String getCurve() {
+        return curve;
+    }
+
+    public void setCurve(String curve) {
+        this.curve = curve;
+    }
+
+    /**
+     * @return the group the election is using
+     */
+    @JsonIgnore
+    public Group getGroup() {
+        return Group.getInstance(p, q, curve);
+    }
+
     public long getEndTime() {
         return endTime;
     }
@@ -101,6 +125,11 @@ public class PublicInformationEntity {
         signer.update(q.toByteArray(), 0, q.toByteArray().length);
         signer.update(p.toByteArray(), 0, p.toByteArray().length);
 
+        if (curve != null) {
+            byte[] curveBytes = curve.getBytes();
+            signer.update(curveBytes, 0, curveBytes.length);
+        }
+
         byte[] endTimeBytes = Long.toString(endTime).getBytes();
         signer.update(endTimeBytes, 0, endTimeBytes.length);
     }
@@ -1,12 +1,14 @@
 package dk.mmj.evhe.entities;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import dk.mmj.evhe.crypto.group.Group;
 
 import java.math.BigInteger;
 
 @SuppressWarnings("unused")
 public class PublicKey {
-    private BigInteger h, g, q;
+    private BigInteger h, g, q, p;
+    private String curve;
 
     /**
      * Unused object mapper constructor
@@ -21,6 +23,29 @@ public class PublicKey {
         this.h = h;
     }
 
+    /**
+     * @param h     the public value
+     * @param g     generator of the group
+     * @param q     order of the group
+     * @param curve name of the elliptic curve the key is for, or null for the subgroup of Z_p^*
+     */
+    public PublicKey(BigInteger h, BigInteger g, BigInteger q, String curve) {
+        this(h, g, q);
+        this.curve = curve;
+    }
+
+    /**
+     * @param h     the public value
+     * @param g     generator of the group
+     * @param q     order of the group
+     * @param p     the modulus prime, where q divides p - 1
+     * @param curve name of the elliptic curve the key is for, or null for the subgroup of Z_p^*
+     */
+    public PublicKey(BigInteger h, BigInteger g, BigInteger q, BigInteger p, String curve) {
+        this(h, g, q, curve);
+        this.p = p;
+    }
+
     public BigInteger getH() {
         return h;
     }
@@ -45,8 +70,36 @@ public class PublicKey {
         this.q = q;
     }
 
-    @JsonIgnore
+    public String getCurve() {
+        return curve;
+    }
+
+    public void setCurve(String curve) {
+        this.curve = curve;
+    }
+
+    /**
+     * Keys without an explicit p are from safe prime groups, where p = 2q + 1
+     *
+     * @return the modulus prime
+     */
     public BigInteger getP() {
-        return q.multiply(BigInteger.valueOf(2)).add(BigInteger.ONE);
+        if (p == null && curve == null) {
+            return q.multiply(BigInteger.valueOf(2)).add(BigInteger.ONE);
+        }
+
+        return p;
+    }
+
+    public void setP(BigInteger p) {
+        this.p = p;
+    }
+
+    /**
+     * @return the group the key is for
+     */
+    @JsonIgnore
+    public Group getGroup() {
+        return Group.getInstance(getP(), q, curve);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,60 @@
+package dk.mmj.evhe.entities;
+
+/**
+ * A bulletin board shard: one of <code>count</code> bulletin boards, each holding the votes of the voter ids assigned to it.
+ * <br/>
+ * Voter ids are assigned by hash, so a voter always votes on the same shard,
+ * and the shards can detect repeated votes without coordinating.
+ */
+@SuppressWarnings("JavaDocs, unused")
+public class Shard {
+    private int index;
+    private int count;
+
+    public Shard() {
+    }
+
+    public Shard(int index, int count) {
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * @param voterId id of a voter
+     * @param count   number of shards
+     * @return index of the shard the voter is assigned to
+     */
+    public static int of(String voterId, int count) {
+        int hash = voterId.hashCode();
+        //Spreads the high bits, as ids often differ only in their last characters
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+
+        return Math.floorMod(hash, count);
+    }
+
+    /**
+     * @param voterId id of a voter
+     * @return whether the voter is assigned to this shard
+     */
+    public boolean owns(String voterId) {
+        return count <= 1 || of(voterId, count) == index;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+}
@@ -0,0 +1,34 @@
+package dk.mmj.evhe.entities;
+
+/**
+ * Homomorphic sum of the valid votes cast before the end of the vote, and the number of votes in it
+ */
+@SuppressWarnings("JavaDocs, unused")
+public class Tally {
+    private CipherText cipherText;
+    private int votes;
+
+    public Tally() {
+    }
+
+    public Tally(CipherText cipherText, int votes) {
+        this.cipherText = cipherText;
+        this.votes = votes;
+    }
+
+    public CipherText getCipherText() {
+        return cipherText;
+    }
+
+    public void setCipherText(CipherText cipherText) {
+        this.cipherText = cipherText;
+    }
+
+    public int getVotes() {
+        return votes;
+    }
+
+    public void setVotes(int votes) {
+        this.votes = votes;
+    }
+}
@@ -0,0 +1,37 @@
+package dk.mmj.evhe.entities;
+
+/**
+ * Progress of a decryption authority summing the votes of a bulletin board shard while the vote is open.
+ * <br/>
+ * The tally holds the sum of the valid votes among the first votes of the shard,
+ * and the head of their {@link BallotChain} identifies them, so summing can continue after them.
+ */
+@SuppressWarnings("JavaDocs, unused")
+public class TallyCheckpoint {
+    private ChainHead chain;
+    private Tally tally;
+
+    public TallyCheckpoint() {
+    }
+
+    public TallyCheckpoint(ChainHead chain, Tally tally) {
+        this.chain = chain;
+        this.tally = tally;
+    }
+
+    public ChainHead getChain() {
+        return chain;
+    }
+
+    public void setChain(ChainHead chain) {
+        this.chain = chain;
+    }
+
+    public Tally getTally() {
+        return tally;
+    }
+
+    public void setTally(Tally tally) {
+        this.tally = tally;
+    }
+}
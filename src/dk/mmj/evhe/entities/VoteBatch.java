@@ -0,0 +1,26 @@
+package dk.mmj.evhe.entities;
+
+import java.util.List;
+
+/**
+ * Votes submitted to the bulletin board in a single request
+ */
+@SuppressWarnings("JavaDocs, unused")
+public class VoteBatch {
+    private List<VoteDTO> votes;
+
+    public VoteBatch() {
+    }
+
+    public VoteBatch(List<VoteDTO> votes) {
+        this.votes = votes;
+    }
+
+    public List<VoteDTO> getVotes() {
+        return votes;
+    }
+
+    public void setVotes(List<VoteDTO> votes) {
+        this.votes = votes;
+    }
+}
@@ -0,0 +1,44 @@
+package dk.mmj.evhe.entities;
+
+import java.util.List;
+
+/**
+ * Outcome of each vote in a {@link VoteBatch}, in the order the votes were submitted
+ */
+@SuppressWarnings("JavaDocs, unused")
+public class VoteBatchResult {
+    private List<Status> statuses;
+
+    public VoteBatchResult() {
+    }
+
+    public VoteBatchResult(List<Status> statuses) {
+        this.statuses = statuses;
+    }
+
+    public List<Status> getStatuses() {
+        return statuses;
+    }
+
+    public void setStatuses(List<Status> statuses) {
+        this.statuses = statuses;
+    }
+
+    /**
+     * Outcome of a single vote
+     */
+    public enum Status {
+        /**
+         * The vote was registered
+         */
+        ACCEPTED,
+        /**
+         * A vote has already been registered with the voter id
+         */
+        DUPLICATE,
+        /**
+         * The vote was malformed, e.g. without voter id or ciphertext
+         */
+        INVALID
+    }
+}
@@ -46,12 +46,19 @@ public class VoteDTO {
 
     /**
      * DTO class for proof that votes is either 0 or 1
+     * <br/>
+     * The commitments a0, b0, a1 and b1 are optional, as they can be recomputed from the rest of the proof.
+     * When present they allow the proof to be batch verified.
      */
     public static class Proof {
         private BigInteger e0;
         private BigInteger e1;
         private BigInteger z0;
         private BigInteger z1;
+        private BigInteger a0;
+        private BigInteger b0;
+        private BigInteger a1;
+        private BigInteger b1;
 
         public Proof() {
         }
@@ -63,6 +70,14 @@ public class VoteDTO {
             this.z1 = z1;
         }
 
+        public Proof(BigInteger e0, BigInteger e1, BigInteger z0, BigInteger z1, BigInteger a0, BigInteger b0, BigInteger a1, BigInteger b1) {
+            this(e0, e1, z0, z1);
+            this.a0 = a0;
+            this.b0 = b0;
+            this.a1 = a1;
+            this.b1 = b1;
+        }
+
         public BigInteger getE0() {
             return e0;
         }
@@ -94,5 +109,37 @@ public class VoteDTO {
         public void setZ1(BigInteger z1) {
             this.z1 = z1;
         }
+
+        public BigInteger getA0() {
+            return a0;
+        }
+
+        public void setA0(BigInteger a0) {
+            this.a0 = a0;
+        }
+
+        public BigInteger getB0() {
+            return b0;
+        }
+
+        public void setB0(BigInteger b0) {
+            this.b0 = b0;
+        }
+
+        public BigInteger getA1() {
+            return a1;
+        }
+
+        public void setA1(BigInteger a1) {
+            this.a1 = a1;
+        }
+
+        public BigInteger getB1() {
+            return b1;
+        }
+
+        public void setB1(BigInteger b1) {
+            this.b1 = b1;
+        }
     }
 }
@@ -6,11 +6,17 @@ import java.util.List;
 public class VoteList {
 
     private List<PersistedVote> votes;
+    private Tally tally;
 
     public VoteList(List<PersistedVote> votes) {
         this.votes = votes;
     }
 
+    public VoteList(List<PersistedVote> votes, Tally tally) {
+        this.votes = votes;
+        this.tally = tally;
+    }
+
     public VoteList() {
     }
 
@@ -21,4 +27,12 @@ public class VoteList {
     public void setVotes(List<PersistedVote> votes) {
         this.votes = votes;
     }
+
+    public Tally getTally() {
+        return tally;
+    }
+
+    public void setTally(Tally tally) {
+        this.tally = tally;
+    }
 }
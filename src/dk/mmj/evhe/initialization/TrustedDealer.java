@@ -4,11 +4,15 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import dk.eSoftware.commandLineParser.Configuration;
 import dk.mmj.evhe.Application;
+import dk.mmj.evhe.client.ShardedBulletinBoard;
 import dk.mmj.evhe.crypto.ElGamal;
 import dk.mmj.evhe.crypto.SecurityUtils;
+import dk.mmj.evhe.crypto.keygeneration.EllipticCurveKeyGenerationParameters;
+import dk.mmj.evhe.crypto.keygeneration.KeyGenerationParameters;
 import dk.mmj.evhe.crypto.keygeneration.KeyGenerationParametersImpl;
 import dk.mmj.evhe.entities.DistKeyGenResult;
 import dk.mmj.evhe.entities.PublicInformationEntity;
+import dk.mmj.evhe.server.bulletinboard.VoterRoll;
 import org.apache.commons.compress.utils.IOUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -23,11 +27,13 @@ import org.glassfish.jersey.client.JerseyWebTarget;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.*;
 import java.util.ArrayList;
@@ -35,26 +41,31 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
-import static dk.mmj.evhe.client.SSLHelper.configureWebTarget;
-
 public class TrustedDealer implements Application {
     private static final String PRIVATE_KEY_NAME = "rsa.pub";
     private static final String PUBLIC_KEY_NAME = "rsa";
+    private static final String ROLL_NAME = "voters.roll";
     private static final Logger logger = LogManager.getLogger(TrustedDealer.class);
-    private JerseyWebTarget bulletinBoard;
+    private ShardedBulletinBoard bulletinBoard;
     private int polynomialDegree;
     private int servers;
     private long endTime;
+    private String curve;
+    private Integer orderBits;
     private Path rootPath;
     private Path keyPath;
+    private Path votersPath;
 
     public TrustedDealer(TrustedDealerConfiguration config) {
-        bulletinBoard = configureWebTarget(logger, config.bulletinBoardPath);
+        bulletinBoard = new ShardedBulletinBoard(logger, config.bulletinBoardPath);
         this.polynomialDegree = config.polynomialDegree;
         this.servers = config.servers;
         this.rootPath = config.rootPath;
         this.keyPath = config.keyPath;
         this.endTime = config.endTime;
+        this.curve = config.curve;
+        this.orderBits = config.orderBits;
+        this.votersPath = config.votersPath;
 
         createIfNotExists(rootPath);
         createIfNotExists(keyPath);
@@ -83,8 +94,24 @@ public class TrustedDealer implements Application {
 
     @Override
     public void run() {
+        try {
+            bulletinBoard.verifyShards();
+        } catch (IOException e) {
+            logger.error("The shards of the bulletin board are not listed in order. Terminating", e);
+            System.exit(-1);
+        }
+
         logger.info("Starting key generation");
-        KeyGenerationParametersImpl params = new KeyGenerationParametersImpl(1024, 50);
+        KeyGenerationParameters params;
+        if (curve != null) {
+            logger.info("Using elliptic curve " + curve);
+            params = new EllipticCurveKeyGenerationParameters(curve);
+        } else if (orderBits != null) {
+            logger.info("Using Schnorr group with " + orderBits + " bit order");
+            params = new KeyGenerationParametersImpl(1024, orderBits, 50);
+        } else {
+            params = new KeyGenerationParametersImpl(1024, 50);
+        }
 
         DistKeyGenResult distKeyGenResult = ElGamal.generateDistributedKeys(params, polynomialDegree, servers);
 
@@ -95,9 +122,9 @@ public class TrustedDealer implements Application {
 
         List<String> output = new ArrayList<>();
 
-        BigInteger h = SecurityUtils.combinePartials(publicValues, distKeyGenResult.getP());
+        BigInteger h = SecurityUtils.combinePartials(publicValues, params.getGroup());
 
-        dk.mmj.evhe.entities.PublicKey publicKey = new dk.mmj.evhe.entities.PublicKey(h, distKeyGenResult.getG(), distKeyGenResult.getQ());
+        dk.mmj.evhe.entities.PublicKey publicKey = new dk.mmj.evhe.entities.PublicKey(h, distKeyGenResult.getG(), distKeyGenResult.getQ(), distKeyGenResult.getP(), distKeyGenResult.getCurve());
 
         ObjectMapper mapper = new ObjectMapper();
 
@@ -130,8 +157,13 @@ public class TrustedDealer implements Application {
                 distKeyGenResult.getG(),
                 distKeyGenResult.getQ(),
                 distKeyGenResult.getP(),
+                distKeyGenResult.getCurve(),
                 endTime);
 
+        if (votersPath != null) {
+            writeRoll();
+        }
+
         logger.info("Signing public information");
         File privateFile = keyPath.resolve(PRIVATE_KEY_NAME).toFile();
         try {
@@ -152,6 +184,18 @@ public class TrustedDealer implements Application {
 
     }
 
+    private void writeRoll() {
+        Path rollPath = rootPath.resolve(ROLL_NAME);
+
+        try (BufferedReader ids = Files.newBufferedReader(votersPath)) {
+            long voters = VoterRoll.write(ids, rollPath);
+            logger.info("Wrote roll of " + voters + " eligible voters to " + rollPath);
+        } catch (IOException e) {
+            logger.error("Unable to write roll of eligible voters. Terminating", e);
+            System.exit(-1);
+        }
+    }
+
     private AsymmetricKeyParameter loadKey(File keyFile) {
         try {
             byte[] bytes = new byte[2048];
@@ -169,9 +213,11 @@ public class TrustedDealer implements Application {
     private void post(PublicInformationEntity publicInformation) {
         try {
             Entity entity = Entity.entity(new ObjectMapper().writeValueAsString(publicInformation), MediaType.APPLICATION_JSON);
-            Response response = bulletinBoard.path("postPublicInfo").request().post(entity);
-            if (response.getStatus() <= 200 || response.getStatus() >= 300) {
-                logger.error("Unable to post information to bulletin board, response code was " + response.getStatus());
+            for (JerseyWebTarget shard : bulletinBoard.all()) {
+                Response response = shard.path("postPublicInfo").request().post(entity);
+                if (response.getStatus() <= 200 || response.getStatus() >= 300) {
+                    logger.error("Unable to post information to bulletin board, response code was " + response.getStatus());
+                }
             }
         } catch (JsonProcessingException e) {
             logger.error("Unable to serialize");
@@ -213,6 +259,9 @@ public class TrustedDealer implements Application {
         private String bulletinBoardPath;
         private boolean newKey;
         private long endTime;
+        private String curve;
+        private Integer orderBits;
+        private Path votersPath;
 
         /**
          * Constructor for the Trusted Dealer configuration
@@ -224,8 +273,11 @@ public class TrustedDealer implements Application {
          * @param bulletinBoardPath path to the bulletin board where public key should be posted
          * @param newKey            whether new key should be generated in the root
          * @param endTime           When the vote comes to an end. ms since January 1, 1970, 00:00:00 GMT
+         * @param curve             name of elliptic curve to use, or null to use the subgroup of Z_p^*
+         * @param orderBits         bit length of q for a Schnorr group, or null to use a safe prime group
+         * @param votersPath        file listing the ids of eligible voters, one per line, or null for no roll
          */
-        TrustedDealerConfiguration(Path rootPath, Path keyPath, int servers, int polynomialDegree, String bulletinBoardPath, boolean newKey, long endTime) {
+        TrustedDealerConfiguration(Path rootPath, Path keyPath, int servers, int polynomialDegree, String bulletinBoardPath, boolean newKey, long endTime, String curve, Integer orderBits, Path votersPath) {
             this.rootPath = rootPath;
             this.keyPath = keyPath;
             this.servers = servers;
@@ -233,6 +285,9 @@ public class TrustedDealer implements Application {
             this.bulletinBoardPath = bulletinBoardPath;
             this.newKey = newKey;
             this.endTime = endTime;
+            this.curve = curve;
+            this.orderBits = orderBits;
+            this.votersPath = votersPath;
         }
     }
 }
@@ -20,6 +20,9 @@ public class TrustedDealerConfigBuilder implements CommandLineParser.ConfigBuild
     private static final String DEGREE = "degree=";
     private static final String BULLETIN_BOARD_PATH = "url=";
     private static final String NEW_KEY = "newKey=";
+    private static final String CURVE = "curve=";
+    private static final String ORDER_BITS = "orderBits=";
+    private static final String VOTERS = "voters=";
     private static final String TIME = "time";
     private static final String TIME_DAY = "day=";
     private static final String TIME_HR = "hour=";
@@ -34,6 +37,9 @@ public class TrustedDealerConfigBuilder implements CommandLineParser.ConfigBuild
     private String bulletinBoardPath = "https://localhost:8080";
     private boolean newKey = false;
     private long time = 10_000 * 60;
+    private String curve = null;
+    private Integer orderBits = null;
+    private Path votersPath = null;
 
 
     @Override
@@ -57,6 +63,12 @@ public class TrustedDealerConfigBuilder implements CommandLineParser.ConfigBuild
             bulletinBoardPath = cmd.substring(BULLETIN_BOARD_PATH.length());
         } else if (cmd.startsWith(NEW_KEY)) {
             newKey = Boolean.parseBoolean(cmd.substring(NEW_KEY.length()));
+        } else if (cmd.startsWith(CURVE)) {
+            curve = cmd.substring(CURVE.length());
+        } else if (cmd.startsWith(ORDER_BITS)) {
+            orderBits = Integer.parseInt(cmd.substring(ORDER_BITS.length()));
+        } else if (cmd.startsWith(VOTERS)) {
+            votersPath = Paths.get(cmd.substring(VOTERS.length()));
         } else if (cmd.equalsIgnoreCase(TIME)) {
             time = 0;
             for (String param : command.getParams()) {
@@ -86,7 +98,10 @@ public class TrustedDealerConfigBuilder implements CommandLineParser.ConfigBuild
                 polynomialDegree,
                 bulletinBoardPath,
                 newKey || !keyPathHasKeys(),
-                new Date().getTime() + time);
+                new Date().getTime() + time,
+                curve,
+                orderBits,
+                votersPath);
     }
 
     private boolean keyPathHasKeys() {
@@ -119,9 +134,12 @@ public class TrustedDealerConfigBuilder implements CommandLineParser.ConfigBuild
                 "\t  --" + SERVERS + "int\t\t How many servers are going to participate\n" +
                 "\t  --" + DEGREE + "int\t\t Degree of polynomial for keygeneration. System is safe when #of corrupt is less or" +
                 "equals to degree\n" +
-                "\t  --" + BULLETIN_BOARD_PATH + "int\t\t Url pointing to the bulletin board where public keys should be posed\n" +
+                "\t  --" + BULLETIN_BOARD_PATH + "int\t\t Url pointing to the bulletin board where public keys should be posed. Comma separated urls of every shard, if sharded\n" +
                 "\t  --" + NEW_KEY + "boolean\t Whether new RSA keypair should be generated. If keyPath does not point dir with keys, " +
                 "it defaults to true. Otherwise false\n" +
+                "\t  --" + CURVE + "name\t\t Use El-Gamal over the named elliptic curve, e.g. P-256, instead of mod p\n" +
+                "\t  --" + ORDER_BITS + "int\t Use a Schnorr group mod p, where q has the given bit length, e.g. 256\n" +
+                "\t  --" + VOTERS + "Path\t\t File of eligible voter ids, one per line. Written to root as the roll the bulletin board checks\n" +
                 "\t  --" + TIME + "\t\t Sets time. Vote ends at current time + time parameters. Standard value: 10 min\n" +
                 "\t\t -" + TIME_DAY + "days, -" + TIME_HR + "hours, -" + TIME_MIN + "minutes\n";
     }
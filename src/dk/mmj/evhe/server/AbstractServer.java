@@ -4,10 +4,15 @@ import dk.mmj.evhe.Application;
 import dk.mmj.evhe.client.SSLHelper;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
 import org.eclipse.jetty.server.*;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.BlockingArrayQueue;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 
 @SuppressWarnings("WeakerAccess")
@@ -65,6 +70,7 @@ public abstract class AbstractServer implements Application {
     /**
      * Generates and returns a {@link Server}
      * <br/>
+     * The connector and thread pool are tuned using the {@link ConnectorConfiguration} of the server.
      * After creation the method <code>configure</code> method is called
      * with the servletHolder as a parameter, so <code>initParameters</code> can be set.
      *
@@ -72,24 +78,43 @@ public abstract class AbstractServer implements Application {
      * @return a {@link Server}
      */
     protected Server getServer(int port) {
+        ConnectorConfiguration conf = getConnectorConfiguration();
+
         ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
         context.setContextPath("/");
 
         ServletHolder jerseyServlet = context.addServlet(
                 org.glassfish.jersey.servlet.ServletContainer.class, "/*");
         jerseyServlet.setInitOrder(0);
+        jerseyServlet.setAsyncSupported(true);
+
+        QueuedThreadPool threadPool = new QueuedThreadPool(
+                conf.getMaxThreads(),
+                conf.getMinThreads(),
+                conf.getIdleTimeout(),
+                new BlockingArrayQueue<>(conf.getThreadQueue()));
+        threadPool.setName("server");
 
-        Server jettyServer = new Server();
+        Server jettyServer = new Server(threadPool);
 
         HttpConfiguration https = new HttpConfiguration();
         https.addCustomizer(new SecureRequestCustomizer());
 
         SslContextFactory sslContextFactory = SSLHelper.getSSLContextFactory();
+        if (conf.getSslSessionCacheSize() >= 0) {
+            sslContextFactory.setSslSessionCacheSize(conf.getSslSessionCacheSize());
+        }
+        if (conf.getSslSessionTimeout() >= 0) {
+            sslContextFactory.setSslSessionTimeout(conf.getSslSessionTimeout());
+        }
 
         ServerConnector sslConnector = new ServerConnector(jettyServer,
-                new SslConnectionFactory(sslContextFactory, "http/1.1"),
-                new HttpConnectionFactory(https));
+                conf.getAcceptors(),
+                conf.getSelectors(),
+                connectionFactories(https, sslContextFactory, conf.isHttp2()));
         sslConnector.setPort(port);
+        sslConnector.setIdleTimeout(conf.getIdleTimeout());
+        sslConnector.setAcceptQueueSize(conf.getAcceptQueue());
 
         jettyServer.setConnectors(new Connector[]{sslConnector});
         jettyServer.setHandler(context);
@@ -99,6 +124,49 @@ public abstract class AbstractServer implements Application {
         return jettyServer;
     }
 
+    /**
+     * Creates the connection factories of the connector.
+     * <br/>
+     * HTTP/2 is negotiated using ALPN, which needs a JDK supporting it. On a JDK without ALPN,
+     * a warning is logged and only HTTP/1.1 is offered.
+     *
+     * @param https      configuration of HTTP over TLS
+     * @param sslContext factory of TLS contexts
+     * @param http2      whether to offer HTTP/2
+     * @return the connection factories, starting with TLS
+     */
+    private ConnectionFactory[] connectionFactories(HttpConfiguration https, SslContextFactory sslContext, boolean http2) {
+        HttpConnectionFactory http1 = new HttpConnectionFactory(https);
+
+        if (http2) {
+            try {
+                HTTP2ServerConnectionFactory h2 = new HTTP2ServerConnectionFactory(https);
+                ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory(h2.getProtocol(), http1.getProtocol());
+                alpn.setDefaultProtocol(http1.getProtocol());
+
+                sslContext.setCipherComparator(HTTP2Cipher.COMPARATOR);
+                sslContext.setUseCipherSuitesOrder(true);
+
+                logger.info("Offering HTTP/2 and HTTP/1.1");
+                return new ConnectionFactory[]{new SslConnectionFactory(sslContext, alpn.getProtocol()), alpn, h2, http1};
+            } catch (IllegalStateException e) {
+                //Thrown by the ALPN factory when no ALPN processor works on this JDK
+                logger.warn("HTTP/2 was requested, but ALPN is not available on this JDK. Offering HTTP/1.1 only", e);
+            }
+        }
+
+        return new ConnectionFactory[]{new SslConnectionFactory(sslContext, http1.getProtocol()), http1};
+    }
+
+    /**
+     * Method for tuning the connector and thread pool of the server
+     *
+     * @return the connector configuration. Standard is the default options
+     */
+    protected ConnectorConfiguration getConnectorConfiguration() {
+        return new ConnectorConfiguration();
+    }
+
     /**
      * Method that is used to configure the {@link ServletHolder} that is used
      * in the {@link Server} returned by the <code>getServer</code> method call
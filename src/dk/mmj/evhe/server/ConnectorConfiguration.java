@@ -0,0 +1,125 @@
+package dk.mmj.evhe.server;
+
+/**
+ * Tuning of the connector and thread pool of a server.
+ * <br/>
+ * Jetty serves connections using non-blocking selectors, so idle connections do not hold a thread.
+ * The thread pool only needs to be large enough for the requests being processed,
+ * and the queue of requests waiting for a thread is bounded, so a server under load sheds work instead of
+ * running out of memory.
+ * <br/>
+ * Options are parsed by the config builders of the servers, using {@link #applyCommand(String)}.
+ */
+public class ConnectorConfiguration {
+    private static final String ACCEPTORS = "acceptors=";
+    private static final String SELECTORS = "selectors=";
+    private static final String MIN_THREADS = "minThreads=";
+    private static final String MAX_THREADS = "maxThreads=";
+    private static final String THREAD_QUEUE = "threadQueue=";
+    private static final String IDLE_TIMEOUT = "idleTimeout=";
+    private static final String ACCEPT_QUEUE = "acceptQueue=";
+    private static final String SSL_SESSION_CACHE = "sslSessionCache=";
+    private static final String SSL_SESSION_TIMEOUT = "sslSessionTimeout=";
+    private static final String HTTP2 = "http2=";
+
+    private int acceptors = -1;
+    private int selectors = -1;
+    private int minThreads = 8;
+    private int maxThreads = 200;
+    private int threadQueue = 10_000;
+    private int idleTimeout = 30_000;
+    private int acceptQueue = 0;
+    private int sslSessionCacheSize = -1;
+    private int sslSessionTimeout = -1;
+    private boolean http2 = true;
+
+    /**
+     * Applies the command, if it is a connector option
+     *
+     * @param cmd the command, without leading dashes
+     * @return whether the command was a connector option
+     */
+    public boolean applyCommand(String cmd) {
+        if (cmd.startsWith(ACCEPTORS)) {
+            acceptors = Integer.parseInt(cmd.substring(ACCEPTORS.length()));
+        } else if (cmd.startsWith(SELECTORS)) {
+            selectors = Integer.parseInt(cmd.substring(SELECTORS.length()));
+        } else if (cmd.startsWith(MIN_THREADS)) {
+            minThreads = Integer.parseInt(cmd.substring(MIN_THREADS.length()));
+        } else if (cmd.startsWith(MAX_THREADS)) {
+            maxThreads = Integer.parseInt(cmd.substring(MAX_THREADS.length()));
+        } else if (cmd.startsWith(THREAD_QUEUE)) {
+            threadQueue = Integer.parseInt(cmd.substring(THREAD_QUEUE.length()));
+        } else if (cmd.startsWith(IDLE_TIMEOUT)) {
+            idleTimeout = Integer.parseInt(cmd.substring(IDLE_TIMEOUT.length()));
+        } else if (cmd.startsWith(ACCEPT_QUEUE)) {
+            acceptQueue = Integer.parseInt(cmd.substring(ACCEPT_QUEUE.length()));
+        } else if (cmd.startsWith(SSL_SESSION_CACHE)) {
+            sslSessionCacheSize = Integer.parseInt(cmd.substring(SSL_SESSION_CACHE.length()));
+        } else if (cmd.startsWith(SSL_SESSION_TIMEOUT)) {
+            sslSessionTimeout = Integer.parseInt(cmd.substring(SSL_SESSION_TIMEOUT.length()));
+        } else if (cmd.startsWith(HTTP2)) {
+            http2 = Boolean.parseBoolean(cmd.substring(HTTP2.length()));
+        } else {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return String describing the connector options
+     */
+    public static String help() {
+        return "\t  --" + ACCEPTORS + "int\t\tThreads accepting connections. Standard is chosen by Jetty from the number of cores\n" +
+                "\t  --" + SELECTORS + "int\t\tSelectors serving connections. Standard is chosen by Jetty from the number of cores\n" +
+                "\t  --" + MIN_THREADS + "int\t\tMinimum threads processing requests. Standard=8\n" +
+                "\t  --" + MAX_THREADS + "int\t\tMaximum threads processing requests. Standard=200\n" +
+                "\t  --" + THREAD_QUEUE + "int\t\tMaximum requests waiting for a thread. Standard=10000\n" +
+                "\t  --" + IDLE_TIMEOUT + "ms\t\tTime before an idle connection is closed. Standard=30000\n" +
+                "\t  --" + ACCEPT_QUEUE + "int\t\tBacklog of connections waiting to be accepted. Standard is the OS default\n" +
+                "\t  --" + SSL_SESSION_CACHE + "int\tNumber of cached TLS sessions. Standard is the JDK default\n" +
+                "\t  --" + SSL_SESSION_TIMEOUT + "s\tTime TLS sessions can be resumed. Standard is the JDK default\n" +
+                "\t  --" + HTTP2 + "boolean\t\tWhether to offer HTTP/2, when available. Standard=true\n";
+    }
+
+    int getAcceptors() {
+        return acceptors;
+    }
+
+    int getSelectors() {
+        return selectors;
+    }
+
+    int getMinThreads() {
+        return minThreads;
+    }
+
+    int getMaxThreads() {
+        return maxThreads;
+    }
+
+    int getThreadQueue() {
+        return threadQueue;
+    }
+
+    int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    int getAcceptQueue() {
+        return acceptQueue;
+    }
+
+    int getSslSessionCacheSize() {
+        return sslSessionCacheSize;
+    }
+
+    int getSslSessionTimeout() {
+        return sslSessionTimeout;
+    }
+
+    boolean isHttp2() {
+        return http2;
+    }
+}
@@ -0,0 +1,235 @@
+package dk.mmj.evhe.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registry of the runtime metrics of a server: counters, gauges and latency histograms.
+ * <br/>
+ * Metrics are created on first use, and looked up by name and labels. Updating a metric is a few uncontended additions,
+ * so they can be kept in hot paths. Callers should keep the returned metric rather than looking it up again.
+ * <br/>
+ * The metrics are written with {@link #scrape()} in the Prometheus text format.
+ */
+public class Metrics {
+    /**
+     * Media type of the Prometheus text format
+     */
+    public static final String MEDIA_TYPE = "text/plain; version=0.0.4";
+    private static final double[] BUCKETS = {
+            0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60
+    };
+    private static final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param name   name of the counter
+     * @param help   description of what is counted
+     * @param labels alternating label names and values
+     * @return the counter
+     */
+    public static Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, "counter").children.computeIfAbsent(labels(labels), l -> new Counter());
+    }
+
+    /**
+     * @param name   name of the histogram
+     * @param help   description of what is measured
+     * @param labels alternating label names and values
+     * @return the histogram, measuring in seconds
+     */
+    public static Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) family(name, help, "histogram").children.computeIfAbsent(labels(labels), l -> new Histogram());
+    }
+
+    /**
+     * Registers a gauge, read whenever the metrics are scraped. Replaces any gauge of the same name and labels
+     *
+     * @param name   name of the gauge
+     * @param help   description of what is measured
+     * @param value  supplies the current value
+     * @param labels alternating label names and values
+     */
+    public static void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "gauge").children.put(labels(labels), new Gauge(value));
+    }
+
+    private static Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(help, type));
+
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + family.type + ", not a " + type);
+        }
+
+        return family;
+    }
+
+    private static String labels(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be pairs of names and values");
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+
+        return builder.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * @return all metrics in the Prometheus text format
+     */
+    public static String scrape() {
+        StringBuilder out = new StringBuilder();
+
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+
+            out.append("# HELP ").append(name).append(' ').append(family.help.replace("\n", " ")).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+
+            for (Map.Entry<String, Metric> child : family.children.entrySet()) {
+                child.getValue().write(name, child.getKey(), out);
+            }
+        }
+
+        return out.toString();
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        if (value == Double.POSITIVE_INFINITY) {
+            return "+Inf";
+        }
+
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private interface Metric {
+        void write(String name, String labels, StringBuilder out);
+    }
+
+    private static class Family {
+        private final String help;
+        private final String type;
+        private final ConcurrentMap<String, Metric> children = new ConcurrentHashMap<>();
+
+        private Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    /**
+     * Value that only increases
+     */
+    public static class Counter implements Metric {
+        private final LongAdder count = new LongAdder();
+
+        private Counter() {
+        }
+
+        /**
+         * Increments the counter by one
+         */
+        public void inc() {
+            count.increment();
+        }
+
+        /**
+         * @param amount amount to increment the counter by
+         */
+        public void inc(long amount) {
+            count.add(amount);
+        }
+
+        @Override
+        public void write(String name, String labels, StringBuilder out) {
+            sample(out, name, labels, count.sum());
+        }
+    }
+
+    /**
+     * Distribution of durations, counted in fixed buckets from half a millisecond to a minute
+     */
+    public static class Histogram implements Metric {
+        private final LongAdder[] buckets = new LongAdder[BUCKETS.length + 1];
+        private final DoubleAdder sum = new DoubleAdder();
+
+        private Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Records the time passed since <code>start</code>
+         *
+         * @param start the start, as given by {@link System#nanoTime()}
+         */
+        public void observeSince(long start) {
+            observe((System.nanoTime() - start) / 1e9);
+        }
+
+        /**
+         * @param seconds duration to record
+         */
+        public void observe(double seconds) {
+            int bucket = 0;
+            while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) {
+                bucket++;
+            }
+
+            buckets[bucket].increment();
+            sum.add(seconds);
+        }
+
+        @Override
+        public void write(String name, String labels, StringBuilder out) {
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0;
+
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i].sum();
+                double bound = i < BUCKETS.length ? BUCKETS[i] : Double.POSITIVE_INFINITY;
+                sample(out, name + "_bucket", prefix + "le=\"" + format(bound) + "\"", cumulative);
+            }
+
+            sample(out, name + "_sum", labels, sum.sum());
+            sample(out, name + "_count", labels, cumulative);
+        }
+    }
+
+    private static class Gauge implements Metric {
+        private final DoubleSupplier value;
+
+        private Gauge(DoubleSupplier value) {
+            this.value = value;
+        }
+
+        @Override
+        public void write(String name, String labels, StringBuilder out) {
+            sample(out, name, labels, value.getAsDouble());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package dk.mmj.evhe.server;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+import java.lang.reflect.Method;
+
+/**
+ * Jersey filter measuring the latency and responses of each endpoint of a server.
+ * <br/>
+ * Endpoints are labelled by the name of their resource method, so the number of labels is bounded.
+ * The latency of an asynchronous endpoint includes the time until its response is resumed.
+ */
+@Provider
+public class MetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+    private static final String START = MetricsFilter.class.getName() + ".start";
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        request.setProperty(START, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        Object start = request.getProperty(START);
+        Method method = resourceInfo.getResourceMethod();
+        String endpoint = method != null ? method.getName() : "unmatched";
+
+        if (start != null) {
+            Metrics.histogram("evhe_http_request_duration_seconds", "Time from a request is matched until it is answered",
+                    "endpoint", endpoint).observeSince((Long) start);
+        }
+
+        Metrics.counter("evhe_http_responses_total", "Responses by endpoint and status",
+                "endpoint", endpoint, "status", Integer.toString(response.getStatus())).inc();
+    }
+}
@@ -3,17 +3,17 @@ package dk.mmj.evhe.server;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Singleton state for a server. Acts like a map
+ * Singleton state for a server. Acts like a map, and is safe to use from concurrent requests
  */
 public class ServerState {
     // State
     private static ServerState instance = new ServerState();
     private static Logger logger = LogManager.getLogger(ServerState.class);
-    private Map<String, Object> state = new HashMap<>();
+    private Map<String, Object> state = new ConcurrentHashMap<>();
 
     /**
      * Getter for singleton instance
@@ -31,7 +31,24 @@ public class ServerState {
      * @param object object to be stored
      */
     public void put(String key, Object object) {
-        state.put(key, object);
+        if (object == null) {
+            state.remove(key);
+        } else {
+            state.put(key, object);
+        }
+    }
+
+    /**
+     * Atomically puts an object into the state, unless the key is already in use
+     *
+     * @param key    unique key used as reference for the stored object
+     * @param object object to be stored
+     * @return the object stored with the key after the call, which is either the existing object or the given one
+     */
+    public Object putIfAbsent(String key, Object object) {
+        Object existing = state.putIfAbsent(key, object);
+
+        return existing != null ? existing : object;
     }
 
     /**
@@ -0,0 +1,384 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import dk.mmj.evhe.entities.BinaryEncoding;
+import dk.mmj.evhe.entities.PersistedVote;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Durable append-only log of the votes accepted by the bulletin board.
+ * <br/>
+ * The log is a sequence of fixed size segment files, which are memory-mapped, so appending a vote is a copy into memory.
+ * Each record is framed as its length, a CRC32 checksum and the vote in the {@link BinaryEncoding}. A zero length marks the end of a segment.
+ * <br/>
+ * Making the log durable is done with group commit: one thread forces the mapped segment to disk,
+ * and every vote appended before the force started is durable when it completes.
+ * With {@link Durability#SYNC} each append waits for a force covering it, so concurrent requests share a single force.
+ * With {@link Durability#BATCHED} appends return at once, and the log is forced every {@value #BATCH_INTERVAL_MS}ms,
+ * so votes accepted in the last interval can be lost in a crash.
+ * <br/>
+ * When opened, the log replays all intact records, and continues after the last one.
+ * A record torn by a crash fails its checksum, and is discarded along with anything after it.
+ * <br/>
+ * If a force fails, the votes written since the last force may or may not be on disk, so they cannot be taken back.
+ * The log has then failed, and refuses further votes until it is opened again.
+ */
+class BallotLog implements Closeable {
+    static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int HEADER_SIZE = 8;
+    private static final long BATCH_INTERVAL_MS = 100;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final Logger logger = LogManager.getLogger(BallotLog.class);
+
+    private final Path directory;
+    private final Durability durability;
+    private final int segmentSize;
+    private final Object flushLock = new Object();
+    private ScheduledExecutorService flusher;
+    private volatile MappedByteBuffer segment;
+    private int segmentIndex;
+    private volatile long appended;
+    private long durable;
+    private volatile IOException failure;
+
+    private BallotLog(Path directory, Durability durability, int segmentSize) {
+        this.directory = directory;
+        this.durability = durability;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Opens the log in the directory, replaying the votes already in it
+     *
+     * @param directory  directory of the segment files. Created if it does not exist
+     * @param durability when appended votes are forced to disk
+     * @param replay     receives each vote in the log, in the order they were appended
+     * @return the log, ready for appending
+     * @throws IOException if the log could not be read or created
+     */
+    static BallotLog open(Path directory, Durability durability, Consumer<PersistedVote> replay) throws IOException {
+        return open(directory, durability, SEGMENT_SIZE, replay);
+    }
+
+    /**
+     * Opens the log in the directory, with segments of the given size
+     *
+     * @param directory   directory of the segment files. Created if it does not exist
+     * @param durability  when appended votes are forced to disk
+     * @param segmentSize size of each segment file in bytes. Must be the size the log was created with
+     * @param replay      receives each vote in the log, in the order they were appended
+     * @return the log, ready for appending
+     * @throws IOException if the log could not be read or created
+     */
+    static BallotLog open(Path directory, Durability durability, int segmentSize, Consumer<PersistedVote> replay) throws IOException {
+        Files.createDirectories(directory);
+        BallotLog log = new BallotLog(directory, durability, segmentSize);
+
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files
+                    .filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        for (int i = 0; i < segments.size(); i++) {
+            log.segmentIndex = i;
+            log.segment = log.map(segments.get(i));
+            log.replay(replay);
+        }
+
+        if (log.segment == null) {
+            log.segment = log.map(log.segmentPath(0));
+        }
+
+        logger.info("Recovered " + log.appended + " votes from ballot log in " + directory);
+        log.durable = log.appended;
+
+        if (durability == Durability.BATCHED) {
+            log.flusher = Executors.newSingleThreadScheduledExecutor();
+            log.flusher.scheduleWithFixedDelay(log::flush, BATCH_INTERVAL_MS, BATCH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+
+        return log;
+    }
+
+    private MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private Path segmentPath(int index) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Reads records from the start of the current segment, and leaves its position after the last intact one
+     */
+    private void replay(Consumer<PersistedVote> replay) throws IOException {
+        MappedByteBuffer buffer = segment;
+
+        while (buffer.remaining() >= HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+
+            if (length == 0 && checksum == 0) {
+                buffer.position(start);
+                return;
+            }
+
+            if (length < 0 || length > buffer.remaining()) {
+                discardTail(buffer, start);
+                return;
+            }
+
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+
+            if (checksum(payload) != checksum) {
+                discardTail(buffer, start);
+                return;
+            }
+
+            replay.accept(BinaryEncoding.decode(PersistedVote.class, payload));
+            appended++;
+        }
+    }
+
+    /**
+     * Zeroes the segment from the torn record and onwards, so no remains of it are read after later appends
+     */
+    private void discardTail(MappedByteBuffer buffer, int start) {
+        logger.warn("Discarding torn record at offset " + start + " of " + segmentPath(segmentIndex));
+        buffer.position(start);
+
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0);
+        }
+
+        buffer.position(start);
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Appends the vote to the log.
+     * <br/>
+     * With {@link Durability#SYNC} the call returns once the vote has been forced to disk.
+     *
+     * @param vote the vote
+     * @throws IOException if the vote could not be written
+     */
+    void append(PersistedVote vote) throws IOException {
+        append(Collections.singletonList(vote));
+    }
+
+    /**
+     * Appends the votes to the log, in order.
+     * <br/>
+     * With {@link Durability#SYNC} the call returns once all the votes have been forced to disk, using a single force.
+     * If the call fails while the log has not failed, none of the votes are in the log.
+     * If the log has failed, see {@link #hasFailed()}, the votes may be in it.
+     *
+     * @param votes the votes
+     * @throws IOException if the votes could not be written, or the log has failed
+     */
+    void append(List<PersistedVote> votes) throws IOException {
+        List<byte[]> payloads = new ArrayList<>(votes.size());
+        for (PersistedVote vote : votes) {
+            byte[] payload = BinaryEncoding.encode(vote);
+            if (payload.length + HEADER_SIZE > segmentSize) {
+                throw new IOException("Vote of " + payload.length + " bytes does not fit in a segment");
+            }
+            payloads.add(payload);
+        }
+
+        long sequence;
+        synchronized (this) {
+            checkFailure();
+
+            //Maps the segments needed before writing, so a failure to map one leaves no votes half written
+            List<MappedByteBuffer> next = new ArrayList<>();
+            int remaining = segment.remaining();
+            for (byte[] payload : payloads) {
+                if (remaining < payload.length + HEADER_SIZE) {
+                    next.add(map(segmentPath(segmentIndex + next.size() + 1)));
+                    remaining = segmentSize;
+                }
+                remaining -= payload.length + HEADER_SIZE;
+            }
+
+            Iterator<MappedByteBuffer> rolls = next.iterator();
+            try {
+                for (byte[] payload : payloads) {
+                    if (segment.remaining() < payload.length + HEADER_SIZE) {
+                        roll(rolls.next());
+                    }
+
+                    segment.putInt(payload.length);
+                    segment.putInt(checksum(payload));
+                    segment.put(payload);
+                }
+            } catch (RuntimeException e) {
+                throw fail(e);
+            }
+            appended += payloads.size();
+            sequence = appended;
+        }
+
+        if (durability == Durability.SYNC) {
+            awaitDurable(sequence);
+        }
+    }
+
+    /**
+     * Forces the full segment to disk, and continues in the next one. Must hold the lock on the log
+     *
+     * @param next the next segment, mapped
+     */
+    private void roll(MappedByteBuffer next) {
+        segment.force();
+        segmentIndex++;
+        segment = next;
+    }
+
+    private void awaitDurable(long sequence) throws IOException {
+        synchronized (flushLock) {
+            if (durable >= sequence) {
+                return;
+            }
+
+            checkFailure();
+            forceAppended();
+        }
+    }
+
+    /**
+     * Forces all appended votes to disk, unless the log has failed
+     */
+    void flush() {
+        synchronized (flushLock) {
+            if (failure == null && durable < appended) {
+                try {
+                    forceAppended();
+                } catch (IOException ignored) {
+                    //Logged when the log failed
+                }
+            }
+        }
+    }
+
+    /**
+     * Forces the current segment. Earlier segments were forced when they were rolled,
+     * so every vote appended before the current segment was read is durable afterwards.
+     * Must hold the flush lock
+     *
+     * @throws IOException if the force failed, which fails the log
+     */
+    private void forceAppended() throws IOException {
+        long target = appended;
+        try {
+            segment.force();
+        } catch (RuntimeException e) {
+            throw fail(e);
+        }
+        durable = target;
+    }
+
+    /**
+     * Fails the log, as a force failed
+     *
+     * @param cause why the force failed
+     * @return the failure of the log
+     */
+    private synchronized IOException fail(Exception cause) {
+        if (failure == null) {
+            failure = new IOException("Unable to force the ballot log in " + directory + " to disk", cause);
+            logger.error("Unable to force the ballot log to disk. Refusing further votes until the bulletin board is restarted", cause);
+        }
+
+        return failure;
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("The ballot log has failed, and takes no more votes", failure);
+        }
+    }
+
+    /**
+     * @return whether a force of the log failed. Votes appended since the last successful force may then be in the log,
+     * and are replayed when it is opened again
+     */
+    boolean hasFailed() {
+        return failure != null;
+    }
+
+    /**
+     * @return number of votes in the log, counted from the first segment
+     */
+    long size() {
+        return appended;
+    }
+
+    /**
+     * @return number of votes in the log known to have been forced to disk
+     */
+    long durableSize() {
+        synchronized (flushLock) {
+            return durable;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+
+        synchronized (this) {
+            flush();
+        }
+    }
+
+    /**
+     * When appended votes are forced to disk
+     */
+    enum Durability {
+        /**
+         * Each append waits until the vote is on disk, sharing forces with concurrent appends
+         */
+        SYNC,
+        /**
+         * Appends return at once, and the log is forced periodically
+         */
+        BATCHED
+    }
+}
@@ -0,0 +1,79 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free Bloom filter over 128 bit keys, answering whether a key may have been added.
+ * <br/>
+ * The filter has {@value #BITS_PER_KEY} bits per expected key, and sets {@value #HASHES} of them per key,
+ * so about one in a hundred absent keys is reported as possibly present while the expected number of keys is not exceeded.
+ * Keys that were added are always reported as possibly present.
+ */
+class BloomFilter {
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASHES = 7;
+    private static final long MIN_BITS = 1 << 20;
+    private static final long MAX_BITS = 1L << 36;
+    private final AtomicLongArray words;
+    private final long mask;
+
+    /**
+     * @param expectedKeys number of keys the filter is sized for
+     */
+    BloomFilter(long expectedKeys) {
+        long bits = MIN_BITS;
+        while (bits < expectedKeys * BITS_PER_KEY && bits < MAX_BITS) {
+            bits <<= 1;
+        }
+
+        words = new AtomicLongArray((int) (bits >>> 6));
+        mask = bits - 1;
+    }
+
+    /**
+     * @param high high 64 bits of the key
+     * @param low  low 64 bits of the key
+     */
+    void put(long high, long low) {
+        long h1 = VoterIdSet.mix(high);
+        long h2 = VoterIdSet.mix(low) | 1;
+
+        for (int i = 0; i < HASHES; i++) {
+            long bit = (h1 + i * h2) & mask;
+            int word = (int) (bit >>> 6);
+            long set = 1L << bit;
+
+            long current;
+            do {
+                current = words.get(word);
+            } while ((current & set) == 0 && !words.compareAndSet(word, current, current | set));
+        }
+    }
+
+    /**
+     * @param high high 64 bits of the key
+     * @param low  low 64 bits of the key
+     * @return false if the key was certainly not added
+     */
+    boolean mightContain(long high, long low) {
+        long h1 = VoterIdSet.mix(high);
+        long h2 = VoterIdSet.mix(low) | 1;
+
+        for (int i = 0; i < HASHES; i++) {
+            long bit = (h1 + i * h2) & mask;
+
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return heap memory used by the bits
+     */
+    long memoryUsage() {
+        return (mask + 1) >>> 3;
+    }
+}
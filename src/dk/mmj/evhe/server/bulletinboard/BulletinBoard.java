@@ -2,20 +2,34 @@ package dk.mmj.evhe.server.bulletinboard;
 
 
 import dk.eSoftware.commandLineParser.Configuration;
-import dk.mmj.evhe.entities.PersistedVote;
+import dk.mmj.evhe.entities.BinaryEntityProvider;
+import dk.mmj.evhe.entities.Shard;
 import dk.mmj.evhe.server.AbstractServer;
+import dk.mmj.evhe.server.ConnectorConfiguration;
+import dk.mmj.evhe.server.Metrics;
+import dk.mmj.evhe.server.MetricsFilter;
 import dk.mmj.evhe.server.ServerState;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.eclipse.jetty.servlet.ServletHolder;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 
 public class BulletinBoard extends AbstractServer {
     static final String PUBLIC_KEY = "publicKey";
-    static final String HAS_VOTED = "hasVoted";
+    static final String PUBLIC_INFO = "publicInfo";
     static final String RESULT = "result";
     static final String VOTES = "votes";
+    static final String TALLY = "tally";
+    static final String BALLOT_LOG = "ballotLog";
+    static final String INGESTOR = "ingestor";
+    static final String CHAIN = "chain";
+    static final String SHARD = "shard";
+    static final String ROLL = "roll";
+    static final String CLOSER = "closer";
+    private static final Logger logger = LogManager.getLogger(BulletinBoard.class);
 
     private BulletinBoardConfiguration configuration;
 
@@ -27,14 +41,78 @@ public class BulletinBoard extends AbstractServer {
     protected void configure(ServletHolder servletHolder) {
         servletHolder.setInitParameter(
                 "jersey.config.server.provider.classnames",
-                BulletinBoardResource.class.getCanonicalName() + ";" + "org.glassfish.jersey.jackson.JacksonFeature");
+                BulletinBoardResource.class.getCanonicalName() + ";"
+                        + MetricsFilter.class.getCanonicalName() + ";"
+                        + BinaryEntityProvider.class.getCanonicalName() + ";"
+                        + "org.glassfish.jersey.jackson.JacksonFeature");
 
         initializeVoting();
     }
 
     private void initializeVoting() {
-        ServerState.getInstance().put(VOTES, new ArrayList<PersistedVote>());
-        ServerState.getInstance().put(HAS_VOTED, new HashSet<String>());
+        if (configuration.snapshotPath != null && configuration.logPath == null) {
+            //Without the votes and voter ids of the log, voters who had voted before the restart could vote again
+            logger.error("A snapshot can only be restored along with the votes in the ballot log, but no log is set. Terminating");
+            System.exit(-1);
+        }
+
+        ServerState state = ServerState.getInstance();
+        VoterIdSet voterIds = new VoterIdSet(configuration.expectedVoters, configuration.voterFilter);
+        VoteStore votes = new VoteStore(voterIds);
+
+        if (configuration.logPath != null) {
+            try {
+                BallotLog log = BallotLog.open(Paths.get(configuration.logPath), configuration.durability, votes::add);
+                state.put(BALLOT_LOG, log);
+                Runtime.getRuntime().addShutdownHook(new Thread(log::close));
+            } catch (IOException e) {
+                logger.error("Unable to open ballot log at " + configuration.logPath + ". Terminating", e);
+                System.exit(-1);
+            }
+        }
+
+        VoteChain chain = new VoteChain(votes);
+        logger.info("Chained " + chain.extend() + " votes");
+
+        VoteIngestor ingestor = new VoteIngestor(configuration.ingestQueue, configuration.ingestWriters);
+        Metrics.gauge("evhe_votes_stored", "Votes accepted by the bulletin board", votes::size);
+        Metrics.gauge("evhe_voter_ids_bytes", "Direct memory holding the ids of voters who have voted", voterIds::memoryUsage);
+        Metrics.gauge("evhe_ingest_queue_votes", "Votes waiting to be written", ingestor::waiting);
+
+        Shard shard = configuration.shard;
+        if (shard.getCount() > 1) {
+            logger.info("Running as shard " + shard.getIndex() + " of " + shard.getCount());
+        }
+
+        if (configuration.rollPath != null) {
+            try {
+                VoterRoll roll = VoterRoll.open(Paths.get(configuration.rollPath));
+                logger.info("Accepting votes from the " + roll.size() + " voters on the roll");
+                state.put(ROLL, roll);
+            } catch (IOException e) {
+                logger.error("Unable to open voter roll at " + configuration.rollPath + ". Terminating", e);
+                System.exit(-1);
+            }
+        }
+
+        state.put(SHARD, shard);
+        state.put(VOTES, votes);
+        state.put(CHAIN, chain);
+        state.put(INGESTOR, ingestor);
+        state.put(CLOSER, new ElectionCloser());
+
+        if (configuration.snapshotPath != null) {
+            try {
+                StateSnapshotter snapshotter = new StateSnapshotter(Paths.get(configuration.snapshotPath));
+                if (snapshotter.restore()) {
+                    logger.info("Restored state from snapshot in " + configuration.snapshotPath);
+                }
+                snapshotter.start(configuration.snapshotInterval);
+            } catch (IOException e) {
+                logger.error("Unable to restore snapshot from " + configuration.snapshotPath + ". Terminating", e);
+                System.exit(-1);
+            }
+        }
     }
 
     @Override
@@ -42,11 +120,41 @@ public class BulletinBoard extends AbstractServer {
         return configuration.port;
     }
 
+    @Override
+    protected ConnectorConfiguration getConnectorConfiguration() {
+        return configuration.connector;
+    }
+
     public static class BulletinBoardConfiguration implements Configuration {
         private Integer port;
+        private String logPath;
+        private BallotLog.Durability durability;
+        private ConnectorConfiguration connector;
+        private int ingestQueue;
+        private int ingestWriters;
+        private Shard shard;
+        private long expectedVoters;
+        private boolean voterFilter;
+        private String rollPath;
+        private String snapshotPath;
+        private long snapshotInterval;
 
-        BulletinBoardConfiguration(Integer port) {
+        BulletinBoardConfiguration(Integer port, String logPath, BallotLog.Durability durability,
+                                   ConnectorConfiguration connector, int ingestQueue, int ingestWriters, Shard shard,
+                                   long expectedVoters, boolean voterFilter, String rollPath,
+                                   String snapshotPath, long snapshotInterval) {
             this.port = port;
+            this.logPath = logPath;
+            this.durability = durability;
+            this.connector = connector;
+            this.ingestQueue = ingestQueue;
+            this.ingestWriters = ingestWriters;
+            this.shard = shard;
+            this.expectedVoters = expectedVoters;
+            this.voterFilter = voterFilter;
+            this.rollPath = rollPath;
+            this.snapshotPath = snapshotPath;
+            this.snapshotInterval = snapshotInterval;
         }
     }
 }
\ No newline at end of file
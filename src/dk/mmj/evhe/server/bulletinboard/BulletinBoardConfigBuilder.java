@@ -2,6 +2,8 @@ package dk.mmj.evhe.server.bulletinboard;
 
 import dk.eSoftware.commandLineParser.CommandLineParser;
 import dk.eSoftware.commandLineParser.Configuration;
+import dk.mmj.evhe.entities.Shard;
+import dk.mmj.evhe.server.ConnectorConfiguration;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -11,9 +13,30 @@ public class BulletinBoardConfigBuilder implements CommandLineParser.ConfigBuild
     //Configuration options
     private static final String SELF = "--bulletinBoard";
     private static final String PORT = "port=";
+    private static final String LOG = "log=";
+    private static final String DURABILITY = "durability=";
+    private static final String INGEST_QUEUE = "ingestQueue=";
+    private static final String INGEST_WRITERS = "ingestWriters=";
+    private static final String SHARD = "shard=";
+    private static final String EXPECTED_VOTERS = "expectedVoters=";
+    private static final String VOTER_FILTER = "voterFilter=";
+    private static final String ROLL = "roll=";
+    private static final String SNAPSHOT = "snapshot=";
+    private static final String SNAPSHOT_INTERVAL = "snapshotInterval=";
 
     //State
     private Integer port = 8080;
+    private String logPath;
+    private BallotLog.Durability durability = BallotLog.Durability.SYNC;
+    private ConnectorConfiguration connector = new ConnectorConfiguration();
+    private int ingestQueue = 10_000;
+    private int ingestWriters = 2;
+    private Shard shard = new Shard(0, 1);
+    private long expectedVoters = 0;
+    private boolean voterFilter = false;
+    private String rollPath;
+    private String snapshotPath;
+    private long snapshotInterval = 60;
 
 
     @Override
@@ -22,19 +45,53 @@ public class BulletinBoardConfigBuilder implements CommandLineParser.ConfigBuild
 
         if (cmd.startsWith(PORT)) {
             port = Integer.parseInt(cmd.substring(PORT.length()));
-        } else if (!cmd.equals(SELF)) {
+        } else if (cmd.startsWith(LOG)) {
+            logPath = cmd.substring(LOG.length());
+        } else if (cmd.startsWith(DURABILITY)) {
+            durability = BallotLog.Durability.valueOf(cmd.substring(DURABILITY.length()).toUpperCase());
+        } else if (cmd.startsWith(INGEST_QUEUE)) {
+            ingestQueue = Integer.parseInt(cmd.substring(INGEST_QUEUE.length()));
+        } else if (cmd.startsWith(INGEST_WRITERS)) {
+            ingestWriters = Integer.parseInt(cmd.substring(INGEST_WRITERS.length()));
+        } else if (cmd.startsWith(SHARD)) {
+            String[] shardOf = cmd.substring(SHARD.length()).split("/");
+            shard = new Shard(Integer.parseInt(shardOf[0]), Integer.parseInt(shardOf[1]));
+        } else if (cmd.startsWith(EXPECTED_VOTERS)) {
+            expectedVoters = Long.parseLong(cmd.substring(EXPECTED_VOTERS.length()));
+        } else if (cmd.startsWith(VOTER_FILTER)) {
+            voterFilter = Boolean.parseBoolean(cmd.substring(VOTER_FILTER.length()));
+        } else if (cmd.startsWith(ROLL)) {
+            rollPath = cmd.substring(ROLL.length());
+        } else if (cmd.startsWith(SNAPSHOT_INTERVAL)) {
+            snapshotInterval = Long.parseLong(cmd.substring(SNAPSHOT_INTERVAL.length()));
+        } else if (cmd.startsWith(SNAPSHOT)) {
+            snapshotPath = cmd.substring(SNAPSHOT.length());
+        } else if (!cmd.equals(SELF) && !connector.applyCommand(cmd)) {
             logger.warn("Did not recognize command " + command.getCommand());
         }
     }
 
     @Override
     public Configuration build() {
-        return new BulletinBoard.BulletinBoardConfiguration(port);
+        return new BulletinBoard.BulletinBoardConfiguration(port, logPath, durability, connector, ingestQueue, ingestWriters, shard,
+                expectedVoters, voterFilter, rollPath,
+                snapshotPath, snapshotInterval);
     }
 
     @Override
     public String help() {
         return "\tMODE: bulletinBoard\n" +
-                "\t  --" + PORT + "int\t\tSpecifies port to be used. Standard=8081\n";
+                "\t  --" + PORT + "int\t\tSpecifies port to be used. Standard=8081\n" +
+                "\t  --" + LOG + "path\t\tDirectory of durable ballot log. Votes in it are recovered on start. Standard is no log\n" +
+                "\t  --" + DURABILITY + "sync|batched\tWhether votes are forced to disk before accepted, or periodically. Standard=sync\n" +
+                "\t  --" + INGEST_QUEUE + "int\t\tMaximum votes waiting to be written. Further votes are refused with 429. Standard=10000\n" +
+                "\t  --" + INGEST_WRITERS + "int\t\tThreads writing votes. Standard=2\n" +
+                "\t  --" + SHARD + "i/n\t\tRun as shard i of n, accepting only voter ids assigned to it. Standard=0/1\n" +
+                "\t  --" + EXPECTED_VOTERS + "int\t\tNumber of voters the index of voter ids is sized for. It grows beyond it. Standard=0\n" +
+                "\t  --" + VOTER_FILTER + "boolean\tWhether a Bloom filter, sized for expectedVoters, answers lookups of voters who have not voted. Standard=false\n" +
+                "\t  --" + ROLL + "path\t\tRoll of eligible voters, as written by the dealer. Standard is every voter being eligible\n" +
+                "\t  --" + SNAPSHOT + "path\t\tDirectory of snapshots of public information, results and tally, restored on start. Requires --log. Standard is none\n" +
+                "\t  --" + SNAPSHOT_INTERVAL + "int\tSeconds between snapshots. Standard=60\n" +
+                ConnectorConfiguration.help();
     }
 }
\ No newline at end of file
@@ -1,21 +1,59 @@
 package dk.mmj.evhe.server.bulletinboard;
 
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import dk.mmj.evhe.entities.*;
+import dk.mmj.evhe.server.Metrics;
 import dk.mmj.evhe.server.ServerState;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.ws.rs.*;
-import javax.ws.rs.core.MediaType;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.*;
 import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import static dk.mmj.evhe.server.bulletinboard.BulletinBoard.*;
 
 @Path("/")
 public class BulletinBoardResource {
-    private static final String PUBLIC_INFO = "publicInfo";
+    /**
+     * Media type of the vote stream: one JSON vote per line
+     */
+    public static final String NDJSON = "application/x-ndjson";
+    /**
+     * Response header of the vote stream, holding the offset to request the next page from
+     */
+    public static final String NEXT_OFFSET = "X-Next-Offset";
+    /**
+     * Response header of the vote stream, holding the head of the {@link BallotChain} after the page
+     */
+    public static final String CHAIN_HEAD = "X-Chain-Head";
+    /**
+     * Status of a vote refused because too many votes are waiting to be written
+     */
+    public static final int TOO_MANY_REQUESTS = 429;
+    private static final int MAX_CLOSE_WAIT = 60;
+    private static final int MAX_PAGE_SIZE = 10_000;
+    private static final int MAX_BATCH_SIZE = 10_000;
+    private static final ObjectWriter voteWriter = new ObjectMapper().writerFor(PersistedVote.class).withRootValueSeparator("\n");
+    private static final ObjectWriter tagWriter = new ObjectMapper().writer();
+    private static final CacheControl PUBLIC_CACHE = publicCacheControl(60);
+    private static final CacheControl RESULT_CACHE = publicCacheControl(5);
+    private static final CacheControl REVALIDATE_CACHE = revalidateCacheControl();
+    private static final Map<String, EntityTagged> entityTags = new ConcurrentHashMap<>();
     private static Logger logger = LogManager.getLogger(BulletinBoardResource.class);
     private ServerState state = ServerState.getInstance();
 
@@ -27,10 +65,16 @@ public class BulletinBoardResource {
         return "<b>ServerType:</b> Bulletin Board";
     }
 
+    /**
+     * Returns the public key, tagged for conditional requests
+     *
+     * @param request the request, with any preconditions
+     * @return the public key, or 304 if the client holds it already
+     */
     @GET
     @Path("publicKey")
-    @Produces(MediaType.APPLICATION_JSON)
-    public PublicKey getPublicKey() {
+    @Produces({MediaType.APPLICATION_JSON, BinaryEncoding.MEDIA_TYPE})
+    public Response getPublicKey(@Context Request request) {
         PublicKey publicKey = state.get(PUBLIC_KEY, PublicKey.class);
 
         if (publicKey == null) {
@@ -38,12 +82,12 @@ public class BulletinBoardResource {
             throw new NotFoundException("Currently the server has no public key");
         }
 
-        return publicKey;
+        return conditional(request, PUBLIC_KEY, publicKey, 0, publicKey, PUBLIC_CACHE);
     }
 
     @POST
     @Path("publicKey")
-    @Consumes(MediaType.APPLICATION_JSON)
+    @Consumes({MediaType.APPLICATION_JSON, BinaryEncoding.MEDIA_TYPE})
     public void setPublicKey(PublicKey publicKey) {
         if (publicKey == null) {
             logger.warn("A submitted key CANNOT be null");
@@ -59,13 +103,38 @@ public class BulletinBoardResource {
     @Consumes(MediaType.APPLICATION_JSON)
     public void initialize(PublicInformationEntity info) {
         addToList(PUBLIC_INFO, info);
+        state.get(CLOSER, ElectionCloser.class).schedule(info.getEndTime());
+
+        if (state.get(TALLY, RunningTally.class) == null) {
+            RunningTally tally = new RunningTally(info);
+
+            //Between rounds, so every vote is either in the store when it is replayed, or written to the tally
+            state.get(INGESTOR, VoteIngestor.class).betweenRounds(() -> {
+                if (state.putIfAbsent(TALLY, tally) == tally) {
+                    Metrics.gauge("evhe_tally_votes", "Votes in the running tally", () -> tally.snapshot().getVotes());
+
+                    VoteStore votes = state.get(VOTES, VoteStore.class);
+                    //Votes recovered from the ballot log were cast before the tally existed
+                    tally.addAll(votes.getVotes());
+                }
+                return tally;
+            });
+        }
     }
 
+    /**
+     * Returns the public information posted, tagged for conditional requests.
+     * <br/>
+     * More information can be posted at any time, so caches must revalidate the list on every request
+     *
+     * @param request the request, with any preconditions
+     * @return the public information, or 304 if the client holds it already
+     */
     @GET
     @Path("getPublicInfo")
     @Produces(MediaType.APPLICATION_JSON)
     @SuppressWarnings("unchecked")
-    public PublicInfoList getPublicInfos() {
+    public Response getPublicInfos(@Context Request request) {
         List<PublicInformationEntity> list = state.get(PUBLIC_INFO, List.class);
 
         if (list == null) {
@@ -73,26 +142,178 @@ public class BulletinBoardResource {
             throw new NotFoundException();
         }
 
-        return new PublicInfoList(list);
+        List<PublicInformationEntity> snapshot = new ArrayList<>(list);
+        return conditional(request, PUBLIC_INFO, list, snapshot.size(), new PublicInfoList(snapshot), REVALIDATE_CACHE);
     }
 
+    /**
+     * Casts a vote.
+     * <br/>
+     * The vote is queued for writing, and the request is answered once it is in the ballot log.
+     * If too many votes are waiting, the request is refused with status {@value #TOO_MANY_REQUESTS},
+     * and a {@value HttpHeaders#RETRY_AFTER} header telling when to try again.
+     * <br/>
+     * If the bulletin board has a roll of eligible voters, votes from voters not on it are refused as forbidden,
+     * as are votes cast after the vote is closed.
+     *
+     * @param vote     the vote
+     * @param response the suspended response
+     */
     @POST
     @Path("vote")
-    @Consumes(MediaType.APPLICATION_JSON)
-    @SuppressWarnings("unchecked")
-    public void Vote(VoteDTO vote) {
-        Set hasVoted = state.get(HAS_VOTED, HashSet.class);
+    @Consumes({MediaType.APPLICATION_JSON, BinaryEncoding.MEDIA_TYPE})
+    public void Vote(VoteDTO vote, @Suspended AsyncResponse response) {
         String voterId = vote.getId();
 
+        if (voterId == null) {
+            logger.warn("A vote without voter id was submitted");
+            throw new NotAllowedException("Vote must have an ID");
+        }
+
+        Shard shard = state.get(SHARD, Shard.class);
+        if (shard != null && !shard.owns(voterId)) {
+            logger.warn("Voter with id=" + voterId + " is not assigned to this shard");
+            throw new BadRequestException("Voter is assigned to shard " + Shard.of(voterId, shard.getCount()));
+        }
+
+        VoterRoll roll = state.get(ROLL, VoterRoll.class);
+        if (roll != null && !roll.contains(voterId)) {
+            logger.warn("Voter with id=" + voterId + " is not on the roll of eligible voters");
+            throw new ForbiddenException("Voter is not eligible");
+        }
+
+        submit(Collections.singletonList(new PersistedVote(vote)), response, statuses -> {
+            if (statuses.get(0) == VoteBatchResult.Status.DUPLICATE) {
+                logger.warn("Voter with id=" + voterId + " attempted to vote more than once");
+                throw new NotAllowedException("A vote has already been registered with this ID");
+            }
+            if (statuses.get(0) == VoteBatchResult.Status.INVALID) {
+                logger.warn("Voter with id=" + voterId + " attempted to vote after the vote closed");
+                throw new ForbiddenException("The vote is closed");
+            }
+
+            return Response.noContent().build();
+        });
+    }
+
+    /**
+     * Casts a batch of votes in a single request.
+     * <br/>
+     * Each vote is accepted or rejected on its own, as by {@link #Vote(VoteDTO, AsyncResponse)}, and its outcome is returned
+     * in the order the votes were submitted. The accepted votes are written to the ballot log together,
+     * and their proofs are verified together when they are added to the tally.
+     *
+     * @param batch    the votes. At most {@value #MAX_BATCH_SIZE}
+     * @param response the suspended response, resumed with the outcome of each vote
+     */
+    @POST
+    @Path("votes")
+    @Consumes({MediaType.APPLICATION_JSON, BinaryEncoding.MEDIA_TYPE})
+    @Produces({MediaType.APPLICATION_JSON, BinaryEncoding.MEDIA_TYPE})
+    public void voteBatch(VoteBatch batch, @Suspended AsyncResponse response) {
+        List<VoteDTO> submitted = batch != null ? batch.getVotes() : null;
+
+        if (submitted == null || submitted.size() > MAX_BATCH_SIZE) {
+            throw new BadRequestException("Batch must contain a list of at most " + MAX_BATCH_SIZE + " votes");
+        }
 
-        if (hasVoted.contains(voterId)) {
-            logger.warn("Voter with id=" + voterId + " attempted to vote more than once");
-            throw new NotAllowedException("A vote has already been registered with this ID");
+        Shard shard = state.get(SHARD, Shard.class);
+        VoterRoll roll = state.get(ROLL, VoterRoll.class);
+        List<PersistedVote> cast = new ArrayList<>(submitted.size());
+        for (VoteDTO vote : submitted) {
+            boolean valid = vote != null && vote.getId() != null && vote.getCipherText() != null
+                    && (shard == null || shard.owns(vote.getId()))
+                    && (roll == null || roll.contains(vote.getId()));
+            cast.add(valid ? new PersistedVote(vote) : null);
         }
 
-        List votes = state.get(VOTES, ArrayList.class);
-        votes.add(new PersistedVote(vote));
-        hasVoted.add(voterId);
+        submit(cast, response, statuses -> {
+            long rejected = statuses.stream().filter(s -> s != VoteBatchResult.Status.ACCEPTED).count();
+            if (rejected > 0) {
+                logger.warn("Rejected " + rejected + " of " + submitted.size() + " votes in batch");
+            }
+
+            return Response.ok(new VoteBatchResult(statuses)).build();
+        });
+    }
+
+    /**
+     * Queues the votes, and resumes the response once they are written
+     *
+     * @param votes    the votes, timestamped on receipt
+     * @param response the suspended response
+     * @param respond  builds the response from the outcome of each vote. May throw a {@link WebApplicationException}
+     */
+    private void submit(List<PersistedVote> votes, AsyncResponse response,
+                        Function<List<VoteBatchResult.Status>, Response> respond) {
+        VoteIngestor ingestor = state.get(INGESTOR, VoteIngestor.class);
+        CompletableFuture<List<VoteBatchResult.Status>> result = ingestor.submit(votes);
+
+        if (result == null) {
+            logger.warn("Ingestion queue is full. Refused " + votes.size() + " votes");
+            response.resume(Response.status(TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, VoteIngestor.RETRY_AFTER_SECONDS)
+                    .build());
+            return;
+        }
+
+        result.whenComplete((statuses, e) -> {
+            if (e != null) {
+                response.resume(new InternalServerErrorException("Votes could not be stored durably"));
+                return;
+            }
+
+            try {
+                response.resume(respond.apply(statuses));
+            } catch (WebApplicationException ex) {
+                response.resume(ex);
+            }
+        });
+    }
+
+    /**
+     * Waits for the vote to close, for clients to long-poll.
+     * <br/>
+     * Answers as soon as the vote is closed, with the number of votes that are final.
+     * If the vote is not closed within <code>wait</code> seconds, at most {@value #MAX_CLOSE_WAIT},
+     * the request is answered with no content, and should be repeated.
+     * If the close is not scheduled, as the board has not been told the end of the vote, it is answered with not found,
+     * so clients fall back to the end time by the clock of the board instead of waiting for a close that may never come.
+     *
+     * @param wait     seconds to wait for the close
+     * @param response the suspended response
+     */
+    @GET
+    @Path("close")
+    @Produces(MediaType.APPLICATION_JSON)
+    public void awaitClose(@QueryParam("wait") @DefaultValue("30") int wait, @Suspended AsyncResponse response) {
+        ElectionCloser closer = state.get(CLOSER, ElectionCloser.class);
+        if (closer == null || !closer.isScheduled()) {
+            response.resume(new NotFoundException("The close of the vote is not scheduled"));
+            return;
+        }
+
+        CompletableFuture<ElectionClose> closed = closer.closed();
+
+        response.setTimeoutHandler(r -> r.resume(Response.noContent().build()));
+        response.setTimeout(Math.max(1, Math.min(wait, MAX_CLOSE_WAIT)), TimeUnit.SECONDS);
+        closed.thenAccept(response::resume);
+    }
+
+    /**
+     * @return the homomorphic sum of the valid votes cast before the end of the vote
+     */
+    @GET
+    @Path("tally")
+    @Produces({MediaType.APPLICATION_JSON, BinaryEncoding.MEDIA_TYPE})
+    public Tally getTally() {
+        RunningTally tally = state.get(TALLY, RunningTally.class);
+
+        if (tally == null) {
+            throw new NotFoundException("Voting has not been initialized");
+        }
+
+        return tally.snapshot();
     }
 
     /**
@@ -100,43 +321,256 @@ public class BulletinBoardResource {
      */
     @GET
     @Path("result")
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, BinaryEncoding.MEDIA_TYPE})
     @SuppressWarnings("unchecked")
-    public ResultList getResult() {
-        return new ResultList(state.get(RESULT, List.class));
+    public Response getResult(@Context Request request) {
+        List<PartialResult> list = state.get(RESULT, List.class);
+        List<PartialResult> snapshot = list != null ? new ArrayList<>(list) : null;
+        int size = snapshot != null ? snapshot.size() : 0;
+
+        return conditional(request, RESULT, list, size, new ResultList(snapshot), RESULT_CACHE);
     }
 
     @POST
     @Path("result")
-    @Consumes(MediaType.APPLICATION_JSON)
+    @Consumes({MediaType.APPLICATION_JSON, BinaryEncoding.MEDIA_TYPE})
     public void postResult(PartialResult partialDecryption) {
         addToList(RESULT, partialDecryption);
     }
 
-    @SuppressWarnings("unchecked")
-    private void addToList(String key, Object element) {
-        List list = state.get(key, List.class);
+    /**
+     * Answers a GET of an entity that only changes when its source is replaced or grows, with an entity tag.
+     * <br/>
+     * The tag is a hash of the entity, computed once for each version of the source.
+     * It is weak, as the JSON and binary representations share it, and caches are told they vary by {@value HttpHeaders#ACCEPT}.
+     *
+     * @param request      the request, with any preconditions
+     * @param key          key of the source in the state
+     * @param source       the source the entity is created from. Replacing it in the state is a new version
+     * @param size         size of the source, for sources that only change by growing
+     * @param entity       the entity
+     * @param cacheControl how long caches can serve the entity without revalidating
+     * @return the entity, or 304 if the request already holds it
+     */
+    private Response conditional(Request request, String key, Object source, int size, Object entity, CacheControl cacheControl) {
+        EntityTagged tagged = entityTags.get(key);
 
-        if (list == null) {
-            list = new ArrayList();
-            state.put(key, list);
+        if (tagged == null || tagged.source != source || tagged.size != size) {
+            tagged = new EntityTagged(source, size, entityTag(entity));
+            entityTags.put(key, tagged);
         }
 
-        list.add(element);
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tagged.tag);
+        Response.ResponseBuilder response = notModified != null ? notModified : Response.ok(entity);
+
+        return response.tag(tagged.tag)
+                .cacheControl(cacheControl)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .build();
+    }
+
+    private static EntityTag entityTag(Object entity) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(tagWriter.writeValueAsBytes(entity));
+
+            return new EntityTag(Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 16)), true);
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new InternalServerErrorException("Unable to tag entity", e);
+        }
+    }
+
+    private static CacheControl publicCacheControl(int maxAge) {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.getCacheExtension().put("public", null);
+        cacheControl.setMaxAge(maxAge);
+
+        return cacheControl;
+    }
+
+    /**
+     * @return cache control letting caches keep the entity, but only serve it once revalidated with its entity tag
+     */
+    private static CacheControl revalidateCacheControl() {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.getCacheExtension().put("public", null);
+        cacheControl.setNoCache(true);
+
+        return cacheControl;
     }
 
     @SuppressWarnings("unchecked")
+    private void addToList(String key, Object element) {
+        List list = (List) state.putIfAbsent(key, new CopyOnWriteArrayList());
+
+        list.add(element);
+    }
+
     @GET
     @Path("getVotes")
     @Produces(MediaType.APPLICATION_JSON)
     public VoteList getVotes() {
-        List<PersistedVote> list = state.get(VOTES, List.class);
+        VoteStore votes = state.get(VOTES, VoteStore.class);
 
-        if (list == null) {
+        if (votes == null) {
+            throw new NotFoundException("Voting has not been initialized");
+        }
+
+        RunningTally tally = state.get(TALLY, RunningTally.class);
+
+        return new VoteList(votes.getVotes(), tally != null ? tally.snapshot() : null);
+    }
+
+    /**
+     * Streams a page of the votes as newline delimited JSON.
+     * <br/>
+     * Votes are paged by their offset in the order they were cast, which is stable as more votes arrive.
+     * The page covers at most <code>limit</code> offsets, and stops early at a vote still being written.
+     * The offset to continue from is returned in the {@value #NEXT_OFFSET} header, and equals <code>offset</code>
+     * when no further votes are available.
+     * <br/>
+     * The head of the {@link BallotChain} after the votes up to that offset is returned in the {@value #CHAIN_HEAD} header.
+     * It covers every vote up to the offset, including votes left out by <code>before</code>.
+     *
+     * @param offset offset of the first vote in the page
+     * @param limit  maximum number of offsets covered by the page. At most {@value #MAX_PAGE_SIZE}
+     * @param before if present, only votes cast before this time, in milliseconds since the epoch, are returned
+     * @return response streaming the votes
+     */
+    @GET
+    @Path("votes")
+    @Produces(NDJSON)
+    public Response getVoteStream(@QueryParam("offset") @DefaultValue("0") int offset,
+                                  @QueryParam("limit") @DefaultValue("1000") int limit,
+                                  @QueryParam("before") Long before) {
+        List<PersistedVote> page = new ArrayList<>();
+        int next = readPage(offset, limit, before, page);
+
+        StreamingOutput body = out -> {
+            try (SequenceWriter writer = voteWriter.writeValues(out)) {
+                writer.writeAll(page);
+            }
+        };
+
+        return pageResponse(body, next);
+    }
+
+    /**
+     * Streams a page of the votes as consecutive messages in the {@link BinaryEncoding}.
+     * <br/>
+     * Paging is the same as for {@link #getVoteStream(int, int, Long)}.
+     *
+     * @param offset offset of the first vote in the page
+     * @param limit  maximum number of offsets covered by the page. At most {@value #MAX_PAGE_SIZE}
+     * @param before if present, only votes cast before this time, in milliseconds since the epoch, are returned
+     * @return response streaming the votes
+     */
+    @GET
+    @Path("votes")
+    @Produces(BinaryEncoding.MEDIA_TYPE)
+    public Response getBinaryVoteStream(@QueryParam("offset") @DefaultValue("0") int offset,
+                                        @QueryParam("limit") @DefaultValue("1000") int limit,
+                                        @QueryParam("before") Long before) {
+        List<PersistedVote> page = new ArrayList<>();
+        int next = readPage(offset, limit, before, page);
+
+        StreamingOutput body = out -> {
+            for (PersistedVote vote : page) {
+                BinaryEncoding.write(vote, out);
+            }
+        };
+
+        return pageResponse(body, next);
+    }
+
+    private Response pageResponse(StreamingOutput body, int next) {
+        VoteChain chain = state.get(CHAIN, VoteChain.class);
+        byte[] head = chain != null ? chain.headAt(next) : null;
+
+        Response.ResponseBuilder response = Response.ok(body).header(NEXT_OFFSET, next);
+        if (head != null) {
+            response.header(CHAIN_HEAD, BallotChain.toString(head));
+        }
+
+        return response.build();
+    }
+
+    /**
+     * Returns the head of the {@link BallotChain} over the votes, after a number of votes.
+     * <br/>
+     * A client holding the votes up to an offset can compare this with the head of its own chain,
+     * to verify that it holds the same votes as the bulletin board.
+     *
+     * @param length number of votes. If absent, all votes written so far are included
+     * @return the number of votes, and the head after them
+     */
+    @GET
+    @Path("chain")
+    @Produces(MediaType.APPLICATION_JSON)
+    public ChainHead getChainHead(@QueryParam("length") Integer length) {
+        VoteChain chain = state.get(CHAIN, VoteChain.class);
+
+        if (chain == null) {
             throw new NotFoundException("Voting has not been initialized");
         }
 
-        return new VoteList(list);
+        if (length == null) {
+            BallotChain snapshot = chain.snapshot();
+            return new ChainHead(snapshot.getLength(), BallotChain.toString(snapshot.getHead()));
+        }
+
+        byte[] head = chain.headAt(length);
+        if (head == null) {
+            throw new NotFoundException("The first " + length + " votes are not available");
+        }
+
+        return new ChainHead(length, BallotChain.toString(head));
+    }
+
+    /**
+     * Collects a page of votes
+     *
+     * @param page list the votes in the page are added to
+     * @return the offset following the page
+     */
+    private int readPage(int offset, int limit, Long before, List<PersistedVote> page) {
+        VoteStore votes = state.get(VOTES, VoteStore.class);
+
+        if (votes == null) {
+            throw new NotFoundException("Voting has not been initialized");
+        }
+
+        if (offset < 0 || limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new BadRequestException("Offset must be non-negative, and limit between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        int end = (int) Math.min(votes.size(), (long) offset + limit);
+        int next = offset;
+
+        for (; next < end; next++) {
+            PersistedVote vote = votes.get(next);
+            if (vote == null) {
+                break;
+            }
+
+            if (before == null || vote.getTs().getTime() < before) {
+                page.add(vote);
+            }
+        }
+
+        return next;
+    }
+
+    /**
+     * @return which shard this bulletin board is, and of how many
+     */
+    @GET
+    @Path("shard")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Shard getShard() {
+        Shard shard = state.get(SHARD, Shard.class);
+
+        return shard != null ? shard : new Shard(0, 1);
     }
 
     @GET
@@ -145,4 +579,29 @@ public class BulletinBoardResource {
     public String getCurrentTime() {
         return Long.toString(new Date().getTime());
     }
+
+    /**
+     * @return the runtime metrics of the server, in the Prometheus text format
+     */
+    @GET
+    @Path("metrics")
+    @Produces(Metrics.MEDIA_TYPE)
+    public String getMetrics() {
+        return Metrics.scrape();
+    }
+
+    /**
+     * Entity tag of a version of a source
+     */
+    private static class EntityTagged {
+        private final Object source;
+        private final int size;
+        private final EntityTag tag;
+
+        private EntityTagged(Object source, int size, EntityTag tag) {
+            this.source = source;
+            this.size = size;
+            this.tag = tag;
+        }
+    }
 }
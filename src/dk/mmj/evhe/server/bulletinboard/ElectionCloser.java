@@ -0,0 +1,72 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import dk.mmj.evhe.entities.BallotChain;
+import dk.mmj.evhe.entities.ElectionClose;
+import dk.mmj.evhe.server.ServerState;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static dk.mmj.evhe.server.bulletinboard.BulletinBoard.*;
+
+/**
+ * Closes the vote on the bulletin board at its end time, and announces the close to those waiting for it.
+ * <br/>
+ * Closing stops the {@link VoteIngestor} from taking further votes, and waits for the votes submitted before to be written.
+ * The number of votes written is then final, so the announcement tells authorities exactly which votes to tally,
+ * as soon as the board has closed, rather than when their own clocks say the vote has ended.
+ */
+class ElectionCloser {
+    private static final Logger logger = LogManager.getLogger(ElectionCloser.class);
+    private final ServerState state = ServerState.getInstance();
+    private final CompletableFuture<ElectionClose> closed = new CompletableFuture<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "election-closer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Schedules the close. Only the first call has an effect
+     *
+     * @param endTime end of the vote, in ms since January 1, 1970, 00:00:00 GMT, by the clock of the bulletin board
+     */
+    void schedule(long endTime) {
+        if (scheduled.compareAndSet(false, true)) {
+            scheduler.schedule(() -> close(endTime), endTime - new Date().getTime(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void close(long endTime) {
+        state.get(INGESTOR, VoteIngestor.class).close().thenAccept(votes -> {
+            byte[] head = state.get(CHAIN, VoteChain.class).headAt(votes);
+            logger.info("Closed the vote after " + votes + " votes");
+
+            closed.complete(new ElectionClose(endTime, votes, BallotChain.toString(head)));
+        }).exceptionally(e -> {
+            logger.error("Unable to close the vote", e);
+            return null;
+        });
+    }
+
+    /**
+     * @return whether the close is scheduled, i.e. whether the end of the vote is known
+     */
+    boolean isScheduled() {
+        return scheduled.get();
+    }
+
+    /**
+     * @return the announcement, completed when the vote is closed
+     */
+    CompletableFuture<ElectionClose> closed() {
+        return closed;
+    }
+}
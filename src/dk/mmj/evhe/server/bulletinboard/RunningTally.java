@@ -0,0 +1,145 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import dk.mmj.evhe.crypto.SecurityUtils;
+import dk.mmj.evhe.crypto.group.Group;
+import dk.mmj.evhe.crypto.group.ProductAccumulator;
+import dk.mmj.evhe.crypto.zeroknowledge.VoteProofUtils;
+import dk.mmj.evhe.entities.CipherText;
+import dk.mmj.evhe.entities.PersistedVote;
+import dk.mmj.evhe.entities.PublicInformationEntity;
+import dk.mmj.evhe.entities.PublicKey;
+import dk.mmj.evhe.entities.Tally;
+import dk.mmj.evhe.server.Metrics;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Homomorphic sum of the votes accepted by the bulletin board, updated as each vote is cast.
+ * <br/>
+ * Only votes cast before the end of the vote, and whose proof can be verified, are added.
+ * After the end of the vote the tally is therefore the same sum the decryption authorities compute from the list of votes,
+ * and it can be read without summing the list again.
+ * <br/>
+ * Each voter id is counted at most once, so votes replayed into a tally that already saw them are not added twice.
+ */
+class RunningTally {
+    private static final Metrics.Histogram verificationTime = Metrics.histogram(
+            "evhe_proof_verification_seconds", "Time to verify the proofs of votes added to the tally together");
+    private static final Metrics.Counter verified = Metrics.counter(
+            "evhe_proofs_total", "Proofs of votes checked by the tally, by result", "result", "valid");
+    private static final Metrics.Counter failed = Metrics.counter(
+            "evhe_proofs_total", "Proofs of votes checked by the tally, by result", "result", "invalid");
+    private final PublicKey publicKey;
+    private final long endTime;
+    private final ProductAccumulator c;
+    private final ProductAccumulator d;
+    private final VoterIdSet counted = new VoterIdSet();
+    private int votes;
+
+    /**
+     * @param info public information for the vote, describing the public key and end of the vote
+     */
+    RunningTally(PublicInformationEntity info) {
+        Group group = info.getGroup();
+        BigInteger h = SecurityUtils.combinePartials(info.getPublicKeys(), group);
+
+        this.publicKey = new PublicKey(h, info.getG(), info.getQ(), info.getP(), info.getCurve());
+        this.endTime = info.getEndTime();
+        this.c = group.newAccumulator();
+        this.d = group.newAccumulator();
+    }
+
+    /**
+     * Adds the vote to the tally, if it was cast in time, its proof can be verified and the voter has not been counted
+     *
+     * @param vote the vote
+     * @return whether the vote was added
+     */
+    boolean add(PersistedVote vote) {
+        if (vote.getTs().getTime() >= endTime || !verify(vote)) {
+            return false;
+        }
+
+        if (!counted.add(vote.getId())) {
+            return false;
+        }
+
+        accumulate(vote.getCipherText());
+        return true;
+    }
+
+    /**
+     * Adds the votes that were cast in time, whose proofs can be verified and whose voters have not been counted.
+     * <br/>
+     * The proofs are verified together using {@link VoteProofUtils#verifyProofs(List, PublicKey)},
+     * which is cheaper than verifying them one at a time.
+     *
+     * @param cast the votes
+     * @return number of votes added
+     */
+    int addAll(List<PersistedVote> cast) {
+        List<PersistedVote> timely = cast.stream()
+                .filter(v -> v.getTs().getTime() < endTime)
+                .collect(Collectors.toList());
+        if (timely.isEmpty()) {
+            return 0;
+        }
+
+        int added = 0;
+
+        long start = System.nanoTime();
+        List<PersistedVote> valid = VoteProofUtils.verifyProofs(timely, publicKey);
+        verificationTime.observeSince(start);
+        verified.inc(valid.size());
+        failed.inc(timely.size() - valid.size());
+
+        for (PersistedVote vote : valid) {
+            if (counted.add(vote.getId())) {
+                accumulate(vote.getCipherText());
+                added++;
+            }
+        }
+
+        return added;
+    }
+
+    private boolean verify(PersistedVote vote) {
+        long start = System.nanoTime();
+        boolean valid = VoteProofUtils.verifyProof(vote, publicKey);
+        verificationTime.observeSince(start);
+        (valid ? verified : failed).inc();
+
+        return valid;
+    }
+
+    private synchronized void accumulate(CipherText cipherText) {
+        c.multiply(cipherText.getC());
+        d.multiply(cipherText.getD());
+        votes++;
+    }
+
+    /**
+     * Restores a tally from a snapshot. Must only be called on a new tally
+     *
+     * @param snapshot the snapshot, as taken by {@link #snapshot()}
+     * @param seen     every vote the tally had seen when the snapshot was taken, whether added or not
+     */
+    synchronized void restore(Tally snapshot, List<PersistedVote> seen) {
+        c.multiply(snapshot.getCipherText().getC());
+        d.multiply(snapshot.getCipherText().getD());
+        votes = snapshot.getVotes();
+
+        for (PersistedVote vote : seen) {
+            counted.add(vote.getId());
+        }
+    }
+
+    /**
+     * @return the current sum, and number of votes in it
+     */
+    synchronized Tally snapshot() {
+        return new Tally(new CipherText(c.getProduct(), d.getProduct()), votes);
+    }
+}
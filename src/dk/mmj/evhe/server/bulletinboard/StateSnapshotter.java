@@ -0,0 +1,184 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dk.mmj.evhe.entities.BallotChain;
+import dk.mmj.evhe.entities.BulletinBoardSnapshot;
+import dk.mmj.evhe.entities.ChainHead;
+import dk.mmj.evhe.entities.PartialResult;
+import dk.mmj.evhe.entities.PersistedVote;
+import dk.mmj.evhe.entities.PublicInformationEntity;
+import dk.mmj.evhe.entities.PublicKey;
+import dk.mmj.evhe.entities.Tally;
+import dk.mmj.evhe.server.Metrics;
+import dk.mmj.evhe.server.ServerState;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static dk.mmj.evhe.server.bulletinboard.BulletinBoard.*;
+
+/**
+ * Periodic snapshots of the bulletin board state that is not in the ballot log, so it can be restarted without a new election.
+ * <br/>
+ * A snapshot holds the public key, public information and results, and the running tally as of a number of votes.
+ * The tally and vote count are read between two rounds of ingestion, which only holds back ingestion for as long as it
+ * takes to copy them. The snapshot is then written while ingestion continues, to a temporary file that replaces
+ * the previous snapshot when complete, so a crash while writing leaves the previous snapshot.
+ * <br/>
+ * When restoring, the tally is only used if the chain of the votes recovered from the ballot log has the head recorded
+ * in the snapshot. It then only has to verify the votes cast after the snapshot, instead of every vote.
+ */
+class StateSnapshotter {
+    private static final String SNAPSHOT_FILE = "snapshot.json";
+    private static final Logger logger = LogManager.getLogger(StateSnapshotter.class);
+    private static final Metrics.Histogram snapshotTime = Metrics.histogram(
+            "evhe_snapshot_seconds", "Time to take and write a snapshot of the bulletin board state");
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ServerState state = ServerState.getInstance();
+    private final Path file;
+
+    /**
+     * @param directory directory of the snapshot. Created if it does not exist
+     * @throws IOException if the directory could not be created
+     */
+    StateSnapshotter(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.file = directory.resolve(SNAPSHOT_FILE);
+    }
+
+    /**
+     * Takes a snapshot every <code>interval</code> seconds, and when the server shuts down
+     *
+     * @param interval seconds between snapshots
+     */
+    void start(long interval) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "state-snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        scheduler.scheduleWithFixedDelay(this::snapshotQuietly, interval, interval, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::snapshotQuietly));
+    }
+
+    private synchronized void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            logger.error("Unable to write snapshot to " + file, e);
+        }
+    }
+
+    /**
+     * Takes a snapshot, and writes it in place of the previous one
+     *
+     * @throws IOException if the snapshot could not be written
+     */
+    @SuppressWarnings("unchecked")
+    void snapshot() throws IOException {
+        long start = System.nanoTime();
+        VoteIngestor ingestor = state.get(INGESTOR, VoteIngestor.class);
+        VoteStore votes = state.get(VOTES, VoteStore.class);
+
+        Cut cut = ingestor.betweenRounds(() -> {
+            RunningTally tally = state.get(TALLY, RunningTally.class);
+            return new Cut(votes.size(), tally != null ? tally.snapshot() : null);
+        });
+        int length = cut.length;
+
+        byte[] head = state.get(CHAIN, VoteChain.class).headAt(length);
+        if (head == null) {
+            throw new IllegalStateException("Chain is not available for the first " + length + " votes");
+        }
+
+        List<PublicInformationEntity> infos = state.get(PUBLIC_INFO, List.class);
+        List<PartialResult> results = state.get(RESULT, List.class);
+        BulletinBoardSnapshot snapshot = new BulletinBoardSnapshot(
+                System.currentTimeMillis(),
+                new ChainHead(length, BallotChain.toString(head)),
+                cut.tally,
+                state.get(PUBLIC_KEY, PublicKey.class),
+                infos != null ? new ArrayList<>(infos) : null,
+                results != null ? new ArrayList<>(results) : null);
+
+        Path temporary = Files.createTempFile(file.getParent(), SNAPSHOT_FILE, ".tmp");
+        mapper.writeValue(temporary.toFile(), snapshot);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        snapshotTime.observeSince(start);
+        logger.debug("Wrote snapshot after " + length + " votes");
+    }
+
+    /**
+     * Restores the state from the latest snapshot, if there is one. Must be called before votes are ingested
+     *
+     * @return whether a snapshot was restored
+     * @throws IOException if the snapshot could not be read
+     */
+    boolean restore() throws IOException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+
+        BulletinBoardSnapshot snapshot = mapper.readValue(file.toFile(), BulletinBoardSnapshot.class);
+
+        state.put(PUBLIC_KEY, snapshot.getPublicKey());
+        if (snapshot.getPublicInfos() != null && !snapshot.getPublicInfos().isEmpty()) {
+            state.put(PUBLIC_INFO, new CopyOnWriteArrayList<>(snapshot.getPublicInfos()));
+        }
+        if (snapshot.getResults() != null && !snapshot.getResults().isEmpty()) {
+            state.put(RESULT, new CopyOnWriteArrayList<>(snapshot.getResults()));
+        }
+
+        if (snapshot.getPublicInfos() != null && !snapshot.getPublicInfos().isEmpty()) {
+            restoreTally(snapshot);
+            state.get(CLOSER, ElectionCloser.class).schedule(snapshot.getPublicInfos().get(0).getEndTime());
+        }
+
+        return true;
+    }
+
+    private void restoreTally(BulletinBoardSnapshot snapshot) {
+        RunningTally tally = new RunningTally(snapshot.getPublicInfos().get(0));
+        List<PersistedVote> votes = state.get(VOTES, VoteStore.class).getVotes();
+        ChainHead chain = snapshot.getChain();
+        byte[] head = state.get(CHAIN, VoteChain.class).headAt(chain.getLength());
+
+        if (snapshot.getTally() != null && head != null && BallotChain.toString(head).equals(chain.getHead())) {
+            tally.restore(snapshot.getTally(), votes.subList(0, chain.getLength()));
+            tally.addAll(votes.subList(chain.getLength(), votes.size()));
+            logger.info("Restored tally after " + chain.getLength() + " votes, and added the " +
+                    (votes.size() - chain.getLength()) + " votes cast since");
+        } else {
+            logger.warn("Votes in the ballot log do not match the snapshot. Tallying all " + votes.size() + " votes");
+            tally.addAll(votes);
+        }
+
+        state.put(TALLY, tally);
+        Metrics.gauge("evhe_tally_votes", "Votes in the running tally", () -> tally.snapshot().getVotes());
+    }
+
+    /**
+     * Number of votes written, and the tally of them
+     */
+    private static class Cut {
+        private final int length;
+        private final Tally tally;
+
+        private Cut(int length, Tally tally) {
+            this.length = length;
+            this.tally = tally;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import dk.mmj.evhe.entities.BallotChain;
+import dk.mmj.evhe.entities.PersistedVote;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@link BallotChain} over the votes in a {@link VoteStore}.
+ * <br/>
+ * The chain is extended over the votes written so far, stopping at the first vote still being written.
+ * Rather than the head after every vote, the head after every {@value #CHECKPOINT_INTERVAL}th vote is kept,
+ * and heads in between are recomputed from the nearest checkpoint when asked for.
+ */
+class VoteChain {
+    static final int CHECKPOINT_INTERVAL = 64;
+    private final VoteStore votes;
+    private final BallotChain chain = new BallotChain();
+    private final List<byte[]> checkpoints = new ArrayList<>();
+
+    /**
+     * @param votes the votes to chain
+     */
+    VoteChain(VoteStore votes) {
+        this.votes = votes;
+        checkpoints.add(chain.getHead());
+    }
+
+    /**
+     * Extends the chain over the votes written since last extended
+     *
+     * @return number of votes in the chain
+     */
+    synchronized int extend() {
+        int size = votes.size();
+
+        while (chain.getLength() < size) {
+            PersistedVote vote = votes.get(chain.getLength());
+            if (vote == null) {
+                break;
+            }
+
+            chain.append(vote);
+            if (chain.getLength() % CHECKPOINT_INTERVAL == 0) {
+                checkpoints.add(chain.getHead());
+            }
+        }
+
+        return chain.getLength();
+    }
+
+    /**
+     * @param length number of votes
+     * @return head of the chain after the first <code>length</code> votes,
+     * or null if they have not all been written
+     */
+    byte[] headAt(int length) {
+        byte[] checkpoint;
+
+        synchronized (this) {
+            if (length < 0 || length > extend()) {
+                return null;
+            }
+
+            if (length == chain.getLength()) {
+                return chain.getHead();
+            }
+
+            checkpoint = checkpoints.get(length / CHECKPOINT_INTERVAL);
+        }
+
+        int start = length - length % CHECKPOINT_INTERVAL;
+        BallotChain partial = new BallotChain(start, checkpoint);
+        for (int i = start; i < length; i++) {
+            partial.append(votes.get(i));
+        }
+
+        return partial.getHead();
+    }
+
+    /**
+     * @return number of votes in the chain, and its head
+     */
+    synchronized BallotChain snapshot() {
+        extend();
+
+        return new BallotChain(chain.getLength(), chain.getHead());
+    }
+}
@@ -0,0 +1,296 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import dk.mmj.evhe.entities.PersistedVote;
+import dk.mmj.evhe.entities.VoteBatchResult;
+import dk.mmj.evhe.server.Metrics;
+import dk.mmj.evhe.server.ServerState;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static dk.mmj.evhe.server.bulletinboard.BulletinBoard.*;
+
+/**
+ * Accepts votes for the bulletin board off the request threads.
+ * <br/>
+ * Submissions are queued, and drained by a small set of writer threads. A writer takes every submission waiting,
+ * registers the votes, appends the accepted ones to the ballot log together and adds them to the tally together.
+ * Under load many requests therefore share a single force of the log and a single batched proof verification,
+ * while the request threads are free to read more requests.
+ * <br/>
+ * The number of votes waiting is bounded. A submission that does not fit is refused at once,
+ * and should be retried after {@value #RETRY_AFTER_SECONDS} seconds.
+ * <br/>
+ * When the vote is closed, votes submitted afterwards are invalid, while those submitted before are still written.
+ */
+class VoteIngestor {
+    static final int RETRY_AFTER_SECONDS = 1;
+    private static final int MAX_DRAIN = 1000;
+    private static final Logger logger = LogManager.getLogger(VoteIngestor.class);
+    private static final Metrics.Counter refused = Metrics.counter(
+            "evhe_votes_refused_total", "Votes refused because the ingestion queue was full");
+    private static final Metrics.Histogram writeTime = Metrics.histogram(
+            "evhe_ingest_write_seconds", "Time to register, log and tally a round of queued votes");
+    private static final Metrics.Histogram logTime = Metrics.histogram(
+            "evhe_ballot_log_append_seconds", "Time to append a round of accepted votes to the ballot log");
+    private static final Map<VoteBatchResult.Status, Metrics.Counter> outcomes = new EnumMap<>(VoteBatchResult.Status.class);
+
+    static {
+        for (VoteBatchResult.Status status : VoteBatchResult.Status.values()) {
+            outcomes.put(status, Metrics.counter("evhe_votes_total", "Votes received, by outcome",
+                    "status", status.name().toLowerCase()));
+        }
+    }
+
+    private final BlockingQueue<Submission> queue = new LinkedBlockingQueue<>();
+    private final ServerState state = ServerState.getInstance();
+    private final Semaphore capacity;
+    private final int maxPermits;
+    private final ReadWriteLock rounds = new ReentrantReadWriteLock(true);
+    private final Object order = new Object();
+    private final CompletableFuture<Void> drained = new CompletableFuture<>();
+    private boolean closed;
+    private int unwritten;
+
+    /**
+     * Creates the ingestor, and starts its writer threads
+     *
+     * @param capacity maximum number of votes waiting to be written
+     * @param writers  number of writer threads
+     */
+    VoteIngestor(int capacity, int writers) {
+        this.capacity = new Semaphore(capacity);
+        this.maxPermits = capacity;
+
+        for (int i = 0; i < writers; i++) {
+            Thread writer = new Thread(this::drain, "vote-writer-" + i);
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    /**
+     * Queues the votes for writing.
+     * <br/>
+     * A <code>null</code> vote is invalid, and is not written. After the vote is closed, every vote is invalid.
+     *
+     * @param votes the votes, in the order they were cast
+     * @return outcome of each vote, completed once the accepted votes are in the ballot log,
+     * or <code>null</code> if the queue is full
+     */
+    CompletableFuture<List<VoteBatchResult.Status>> submit(List<PersistedVote> votes) {
+        //A submission larger than the queue takes all of it, rather than never fitting
+        int permits = Math.min(votes.size(), maxPermits);
+        if (!capacity.tryAcquire(permits)) {
+            refused.inc(votes.size());
+            return null;
+        }
+
+        Submission submission = new Submission(votes, permits);
+        synchronized (this) {
+            if (closed) {
+                capacity.release(permits);
+                return CompletableFuture.completedFuture(
+                        Collections.nCopies(votes.size(), VoteBatchResult.Status.INVALID));
+            }
+
+            unwritten++;
+            queue.add(submission);
+        }
+
+        return submission.result;
+    }
+
+    /**
+     * Closes the vote, so no further votes are taken
+     *
+     * @return the number of votes written, completed once every vote submitted before closing is written
+     */
+    CompletableFuture<Integer> close() {
+        //Waits for the submissions themselves rather than the queue, as a writer may have taken some that it has not written yet
+        synchronized (this) {
+            closed = true;
+            if (unwritten == 0) {
+                drained.complete(null);
+            }
+        }
+
+        VoteStore votes = state.get(VOTES, VoteStore.class);
+        return drained.thenApply(v -> betweenRounds(votes::size));
+    }
+
+    /**
+     * Counts the submissions of a round as written, whether they succeeded or failed
+     *
+     * @param submissions number of submissions in the round
+     */
+    private synchronized void written(int submissions) {
+        unwritten -= submissions;
+        if (closed && unwritten == 0) {
+            drained.complete(null);
+        }
+    }
+
+    private void drain() {
+        List<Submission> round = new ArrayList<>();
+
+        while (true) {
+            try {
+                round.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(round, MAX_DRAIN - 1);
+
+            List<PersistedVote> votes = round.stream()
+                    .flatMap(s -> s.votes.stream())
+                    .collect(Collectors.toList());
+
+            List<VoteBatchResult.Status> statuses = null;
+            Exception failure = null;
+            long start = System.nanoTime();
+            rounds.readLock().lock();
+            try {
+                statuses = write(votes);
+                writeTime.observeSince(start);
+            } catch (IOException | RuntimeException e) {
+                logger.error("Unable to write " + votes.size() + " votes", e);
+                failure = e;
+            } finally {
+                rounds.readLock().unlock();
+            }
+            written(round.size());
+
+            //Frees the queue before answering, so clients told their votes are written can submit again at once
+            capacity.release(round.stream().mapToInt(s -> s.permits).sum());
+
+            int from = 0;
+            for (Submission submission : round) {
+                int to = from + submission.votes.size();
+                if (failure != null) {
+                    submission.result.completeExceptionally(failure);
+                } else {
+                    submission.result.complete(new ArrayList<>(statuses.subList(from, to)));
+                }
+                from = to;
+            }
+
+            round.clear();
+
+            //Keeps the chain current, so readers do not have to extend it
+            VoteChain chain = state.get(CHAIN, VoteChain.class);
+            if (chain != null) {
+                chain.extend();
+            }
+        }
+    }
+
+    /**
+     * Runs <code>capture</code> while no round of votes is being written, so every vote it sees is registered,
+     * logged and tallied. Waits for the rounds being written, and holds back new rounds until it returns
+     *
+     * @param capture reads the state
+     * @param <T>     type of what is read
+     * @return what was read
+     */
+    <T> T betweenRounds(Supplier<T> capture) {
+        rounds.writeLock().lock();
+        try {
+            return capture.get();
+        } finally {
+            rounds.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of votes waiting to be written
+     */
+    int waiting() {
+        return maxPermits - capacity.availablePermits();
+    }
+
+    /**
+     * Registers the votes, and writes the accepted ones to the ballot log and tally.
+     * <br/>
+     * The voter ids are claimed first, and the votes are only published to the store once they are in the ballot log,
+     * so readers never see a vote that could be lost. If the votes are not written to the log, the claims are released,
+     * and the votes can be cast again. If the log has failed, the votes may be in it, so the voters stay claimed.
+     * Appending and publishing is a single step among the writers, so the votes are in the same order in the store as in the log,
+     * and a board replaying the log after a restart has the same chain
+     *
+     * @param cast the votes, where <code>null</code> is an invalid vote
+     * @return outcome of each vote
+     * @throws IOException if the accepted votes could not be written to the ballot log
+     */
+    private List<VoteBatchResult.Status> write(List<PersistedVote> cast) throws IOException {
+        VoteStore votes = state.get(VOTES, VoteStore.class);
+        List<VoteBatchResult.Status> statuses = new ArrayList<>(cast.size());
+        List<PersistedVote> accepted = new ArrayList<>(cast.size());
+
+        for (PersistedVote vote : cast) {
+            if (vote == null) {
+                statuses.add(VoteBatchResult.Status.INVALID);
+            } else if (votes.claim(vote.getId())) {
+                accepted.add(vote);
+                statuses.add(VoteBatchResult.Status.ACCEPTED);
+            } else {
+                statuses.add(VoteBatchResult.Status.DUPLICATE);
+            }
+        }
+
+        BallotLog log = state.get(BALLOT_LOG, BallotLog.class);
+        synchronized (order) {
+            if (log != null && !accepted.isEmpty()) {
+                long start = System.nanoTime();
+                try {
+                    log.append(accepted);
+                } catch (IOException | RuntimeException e) {
+                    //A vote that may be replayed from the log after a restart must not be cast again
+                    if (!log.hasFailed()) {
+                        accepted.forEach(vote -> votes.release(vote.getId()));
+                    }
+                    throw e;
+                }
+                logTime.observeSince(start);
+            }
+
+            votes.publish(accepted);
+        }
+        statuses.forEach(status -> outcomes.get(status).inc());
+
+        RunningTally tally = state.get(TALLY, RunningTally.class);
+        if (tally != null) {
+            int added = tally.addAll(accepted);
+            if (added < accepted.size()) {
+                logger.info((accepted.size() - added) + " accepted votes were not added to the tally");
+            }
+        }
+
+        return statuses;
+    }
+
+    private static class Submission {
+        private final List<PersistedVote> votes;
+        private final int permits;
+        private final CompletableFuture<List<VoteBatchResult.Status>> result = new CompletableFuture<>();
+
+        private Submission(List<PersistedVote> votes, int permits) {
+            this.votes = votes;
+            this.permits = permits;
+        }
+    }
+}
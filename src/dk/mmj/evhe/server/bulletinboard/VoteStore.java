@@ -0,0 +1,155 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import dk.mmj.evhe.entities.PersistedVote;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Thread safe store of the votes cast on the bulletin board, allowing one vote per voter id.
+ * <br/>
+ * Voter ids are claimed atomically in a {@link VoterIdSet}, so two requests with the same id can never both be accepted.
+ * Accepted votes are appended to a log without locking: each vote reserves the next index with a single atomic increment,
+ * and is written to that slot in chunks of {@value #CHUNK_SIZE} slots, which are allocated as they are first needed.
+ * <br/>
+ * A vote can be added in two steps, by claiming its voter id and later publishing it,
+ * so it is only visible to readers once it has been made durable. Until published, the claim can be released.
+ * <br/>
+ * Readers see the votes up to the first one whose slot is reserved, but not yet written,
+ * so every reader sees a prefix of the votes in the order they were added.
+ */
+class VoteStore {
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 1 << 16;
+
+    private final VoterIdSet voterIds;
+    private final AtomicReferenceArray<AtomicReferenceArray<PersistedVote>> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+    private final AtomicInteger reserved = new AtomicInteger();
+
+    /**
+     * @param voterIds set claiming the ids of the voters who have voted. Must be empty
+     */
+    VoteStore(VoterIdSet voterIds) {
+        this.voterIds = voterIds;
+    }
+
+    /**
+     * Creates a store whose set of voter ids grows from a small size
+     */
+    VoteStore() {
+        this(new VoterIdSet());
+    }
+
+    /**
+     * Adds the vote, unless a vote has already been cast with the same voter id
+     *
+     * @param vote the vote
+     * @return whether the vote was added
+     * @throws IllegalStateException if the store is full
+     */
+    boolean add(PersistedVote vote) {
+        if (!claim(vote.getId())) {
+            return false;
+        }
+
+        publish(Collections.singletonList(vote));
+        return true;
+    }
+
+    /**
+     * Claims the voter id, so no other vote with it can be added
+     *
+     * @param voterId id of the voter
+     * @return whether the id was claimed, or has already been claimed
+     */
+    boolean claim(String voterId) {
+        return voterIds.add(voterId);
+    }
+
+    /**
+     * Releases the claim on a voter id whose vote could not be published
+     *
+     * @param voterId id claimed with {@link #claim(String)}
+     */
+    void release(String voterId) {
+        voterIds.remove(voterId);
+    }
+
+    /**
+     * Publishes votes whose voter ids have been claimed, so readers see them
+     *
+     * @param votes the votes, in order
+     * @throws IllegalStateException if the store is full. The claims of the votes are released
+     */
+    void publish(List<PersistedVote> votes) {
+        int start = reserved.getAndAdd(votes.size());
+        if (start < 0 || start + votes.size() > MAX_CHUNKS * CHUNK_SIZE) {
+            votes.forEach(vote -> release(vote.getId()));
+            throw new IllegalStateException("Vote store is full");
+        }
+
+        for (int i = 0; i < votes.size(); i++) {
+            int index = start + i;
+            chunk(index >>> CHUNK_BITS).set(index & (CHUNK_SIZE - 1), votes.get(i));
+        }
+    }
+
+    /**
+     * @param voterId id of a voter
+     * @return whether a vote has been cast with the id
+     */
+    boolean hasVoted(String voterId) {
+        return voterIds.contains(voterId);
+    }
+
+    /**
+     * @return number of votes added, including votes still being written
+     */
+    int size() {
+        return Math.min(reserved.get(), MAX_CHUNKS * CHUNK_SIZE);
+    }
+
+    /**
+     * @param index index of the vote, in the order votes were added
+     * @return the vote, or null if it is still being written
+     */
+    PersistedVote get(int index) {
+        AtomicReferenceArray<PersistedVote> chunk = chunks.get(index >>> CHUNK_BITS);
+
+        return chunk != null ? chunk.get(index & (CHUNK_SIZE - 1)) : null;
+    }
+
+    /**
+     * @return the votes, in the order they were added, up to the first vote still being written
+     */
+    List<PersistedVote> getVotes() {
+        int size = size();
+        List<PersistedVote> votes = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            PersistedVote vote = get(i);
+            if (vote == null) {
+                break;
+            }
+
+            votes.add(vote);
+        }
+
+        return votes;
+    }
+
+    private AtomicReferenceArray<PersistedVote> chunk(int chunkIndex) {
+        AtomicReferenceArray<PersistedVote> chunk = chunks.get(chunkIndex);
+
+        if (chunk == null) {
+            chunks.compareAndSet(chunkIndex, null, new AtomicReferenceArray<>(CHUNK_SIZE));
+            chunk = chunks.get(chunkIndex);
+        }
+
+        return chunk;
+    }
+}
@@ -0,0 +1,326 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Thread safe set of voter ids, kept off the heap in open addressing tables of 128 bit keys.
+ * <br/>
+ * Ids in the canonical form of a UUID, as generated by the client, are stored as their 128 bits.
+ * Other ids are stored as the first 128 bits of their SHA-256 hash, so a voter cannot choose an id colliding with another voter's.
+ * Each id then costs 16 bytes of direct memory, divided by the load of the table, and no objects on the heap.
+ * <br/>
+ * The ids are spread over {@value #SEGMENTS} segments, each with its own lock and linearly probed table,
+ * which is doubled when it becomes {@value #MAX_LOAD} full.
+ * An optional {@link BloomFilter} answers most lookups of absent ids without taking a lock.
+ * <br/>
+ * Direct memory is limited by <code>-XX:MaxDirectMemorySize</code>, which defaults to the maximum heap size.
+ */
+class VoterIdSet {
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int SLOT_SIZE = 16;
+    private static final int MIN_SLOTS = 16;
+    private static final int MAX_SLOTS = 1 << 26;
+    private static final double MAX_LOAD = 0.7;
+    private static final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    });
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final BloomFilter filter;
+
+    /**
+     * @param expectedIds number of ids the set is sized for. It grows beyond it as needed
+     * @param useFilter   whether lookups go through a {@link BloomFilter} sized for <code>expectedIds</code>
+     */
+    VoterIdSet(long expectedIds, boolean useFilter) {
+        int slots = MIN_SLOTS;
+        while (slots < (long) (expectedIds / SEGMENTS / MAX_LOAD) + 1 && slots < MAX_SLOTS) {
+            slots <<= 1;
+        }
+
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(slots);
+        }
+
+        filter = useFilter ? new BloomFilter(expectedIds) : null;
+    }
+
+    /**
+     * Creates a set without a filter, growing from a small size
+     */
+    VoterIdSet() {
+        this(0, false);
+    }
+
+    /**
+     * @param id voter id
+     * @return whether the id was added, i.e. false if it was already in the set
+     * @throws IllegalStateException if the set is full
+     */
+    boolean add(String id) {
+        long[] key = key(id);
+        boolean added = segment(key).add(key[0], key[1]);
+
+        if (added && filter != null) {
+            filter.put(key[0], key[1]);
+        }
+
+        return added;
+    }
+
+    /**
+     * @param id voter id
+     * @return whether the id is in the set
+     */
+    boolean contains(String id) {
+        long[] key = key(id);
+
+        if (filter != null && !filter.mightContain(key[0], key[1])) {
+            return false;
+        }
+
+        return segment(key).contains(key[0], key[1]);
+    }
+
+    /**
+     * Removes the id. An id that was removed may still pass the filter, so later lookups of it take the lock
+     *
+     * @param id voter id
+     * @return whether the id was in the set
+     */
+    boolean remove(String id) {
+        long[] key = key(id);
+
+        return segment(key).remove(key[0], key[1]);
+    }
+
+    /**
+     * @return number of ids in the set
+     */
+    long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+
+        return size;
+    }
+
+    /**
+     * @return direct memory used by the tables
+     */
+    long memoryUsage() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.memoryUsage();
+        }
+
+        return bytes;
+    }
+
+    private Segment segment(long[] key) {
+        return segments[(int) (mix(key[0] ^ key[1]) >>> (64 - SEGMENT_BITS))];
+    }
+
+    /**
+     * @param id voter id
+     * @return the 128 bit key of the id, as its high and low 64 bits
+     */
+    static long[] key(String id) {
+        if (isCanonicalUuid(id)) {
+            return new long[]{parseHex(id, 0, 18), parseHex(id, 19, 36)};
+        }
+
+        byte[] hash = sha256.get().digest(id.getBytes(StandardCharsets.UTF_8));
+        ByteBuffer buffer = ByteBuffer.wrap(hash);
+
+        return new long[]{buffer.getLong(), buffer.getLong()};
+    }
+
+    /**
+     * Only the form produced by {@link java.util.UUID#toString()} is parsed, as UUID parsing accepts several
+     * spellings of the same UUID, which would otherwise be the same voter
+     */
+    private static boolean isCanonicalUuid(String id) {
+        if (id.length() != 36) {
+            return false;
+        }
+
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            boolean dash = i == 8 || i == 13 || i == 18 || i == 23;
+
+            if (dash ? c != '-' : !((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static long parseHex(String id, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            char c = id.charAt(i);
+            if (c != '-') {
+                value = (value << 4) | Character.digit(c, 16);
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Finalizer of MurmurHash3, spreading every bit of the input over the output
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return h;
+    }
+
+    /**
+     * Linearly probed table of 128 bit keys. The zero key marks free slots, so it is kept in a flag instead
+     */
+    private static class Segment {
+        private ByteBuffer table;
+        private int mask;
+        private int size;
+        private boolean hasZero;
+
+        private Segment(int slots) {
+            allocate(slots);
+        }
+
+        private void allocate(int slots) {
+            table = ByteBuffer.allocateDirect(slots * SLOT_SIZE).order(ByteOrder.nativeOrder());
+            mask = slots - 1;
+        }
+
+        synchronized boolean add(long high, long low) {
+            if (high == 0 && low == 0) {
+                boolean added = !hasZero;
+                hasZero = true;
+                return added;
+            }
+
+            int slot = find(high, low);
+            if (!isFree(slot)) {
+                return false;
+            }
+
+            if (size >= mask) {
+                throw new IllegalStateException("Voter id set is full");
+            }
+
+            put(slot, high, low);
+            if (++size > MAX_LOAD * (mask + 1) && mask + 1 < MAX_SLOTS) {
+                grow();
+            }
+
+            return true;
+        }
+
+        synchronized boolean contains(long high, long low) {
+            if (high == 0 && low == 0) {
+                return hasZero;
+            }
+
+            return !isFree(find(high, low));
+        }
+
+        synchronized boolean remove(long high, long low) {
+            if (high == 0 && low == 0) {
+                boolean removed = hasZero;
+                hasZero = false;
+                return removed;
+            }
+
+            int slot = find(high, low);
+            if (isFree(slot)) {
+                return false;
+            }
+
+            //Shifts later keys of the probe sequence back, so no key is separated from its home slot by a free slot
+            int free = slot;
+            for (int next = (slot + 1) & mask; !isFree(next); next = (next + 1) & mask) {
+                int home = home(table.getLong(next * SLOT_SIZE), table.getLong(next * SLOT_SIZE + 8));
+
+                if (((next - home) & mask) >= ((next - free) & mask)) {
+                    put(free, table.getLong(next * SLOT_SIZE), table.getLong(next * SLOT_SIZE + 8));
+                    free = next;
+                }
+            }
+
+            put(free, 0, 0);
+            size--;
+            return true;
+        }
+
+        synchronized int size() {
+            return size + (hasZero ? 1 : 0);
+        }
+
+        synchronized long memoryUsage() {
+            return table.capacity();
+        }
+
+        /**
+         * @return the slot holding the key, or the free slot ending its probe sequence
+         */
+        private int find(long high, long low) {
+            int slot = home(high, low);
+
+            while (true) {
+                long slotHigh = table.getLong(slot * SLOT_SIZE);
+                long slotLow = table.getLong(slot * SLOT_SIZE + 8);
+
+                if ((slotHigh == high && slotLow == low) || (slotHigh == 0 && slotLow == 0)) {
+                    return slot;
+                }
+
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private int home(long high, long low) {
+            return (int) mix(high ^ low) & mask;
+        }
+
+        private boolean isFree(int slot) {
+            return table.getLong(slot * SLOT_SIZE) == 0 && table.getLong(slot * SLOT_SIZE + 8) == 0;
+        }
+
+        private void put(int slot, long high, long low) {
+            table.putLong(slot * SLOT_SIZE, high);
+            table.putLong(slot * SLOT_SIZE + 8, low);
+        }
+
+        private void grow() {
+            ByteBuffer old = table;
+            int oldSlots = mask + 1;
+            allocate(oldSlots * 2);
+
+            for (int i = 0; i < oldSlots; i++) {
+                long high = old.getLong(i * SLOT_SIZE);
+                long low = old.getLong(i * SLOT_SIZE + 8);
+
+                if (high != 0 || low != 0) {
+                    put(find(high, low), high, low);
+                }
+            }
+        }
+    }
+}
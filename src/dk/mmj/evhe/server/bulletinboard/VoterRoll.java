@@ -0,0 +1,285 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The roll of eligible voters, read from a memory mapped file.
+ * <br/>
+ * The file starts with the {@value #MAGIC} magic and the number of voters, followed by the 128 bit key of each
+ * voter id, as given by {@link VoterIdSet#key(String)}, in ascending unsigned order. All numbers are big endian.
+ * <br/>
+ * Opening a roll only maps the file, so no records are read onto the heap, and lookups fault in the pages they touch.
+ * As keys are uniformly distributed, a lookup first interpolates the position of the key,
+ * which finds it in a few reads, and falls back to binary search on the remaining range.
+ */
+public class VoterRoll {
+    private static final String MAGIC = "EVHEROLL";
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 16;
+    private static final int RECORDS_PER_MAP = 1 << 26;
+    private static final int INTERPOLATION_STEPS = 4;
+    private final MappedByteBuffer[] maps;
+    private final long size;
+    private final int recordsPerMap;
+
+    private VoterRoll(MappedByteBuffer[] maps, long size, int recordsPerMap) {
+        this.maps = maps;
+        this.size = size;
+        this.recordsPerMap = recordsPerMap;
+    }
+
+    /**
+     * Maps a roll written by {@link #write(BufferedReader, Path)}
+     *
+     * @param path path of the roll
+     * @return the roll
+     * @throws IOException if the file could not be read, or is not a roll
+     */
+    public static VoterRoll open(Path path) throws IOException {
+        return open(path, RECORDS_PER_MAP);
+    }
+
+    /**
+     * Maps a roll written by {@link #write(BufferedReader, Path)}
+     *
+     * @param path          path of the roll
+     * @param recordsPerMap number of records in each mapping of the file
+     * @return the roll
+     * @throws IOException if the file could not be read, or is not a roll
+     */
+    static VoterRoll open(Path path, int recordsPerMap) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException(path + " is not a voter roll");
+            }
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            byte[] magic = new byte[MAGIC.length()];
+            header.get(magic);
+
+            if (!MAGIC.equals(new String(magic, StandardCharsets.US_ASCII))) {
+                throw new IOException(path + " is not a voter roll");
+            }
+
+            long size = header.getLong();
+            if (size < 0 || channel.size() != HEADER_SIZE + size * RECORD_SIZE) {
+                throw new IOException("Voter roll " + path + " should hold " + size + " voters, but has " + channel.size() + " bytes");
+            }
+
+            MappedByteBuffer[] maps = new MappedByteBuffer[(int) ((size + recordsPerMap - 1) / recordsPerMap)];
+            for (int i = 0; i < maps.length; i++) {
+                long first = (long) i * recordsPerMap;
+                long records = Math.min(recordsPerMap, size - first);
+
+                maps[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * RECORD_SIZE, records * RECORD_SIZE);
+            }
+
+            return new VoterRoll(maps, size, recordsPerMap);
+        }
+    }
+
+    /**
+     * Writes a roll of the voter ids read from <code>ids</code>, one per line. Blank lines and repeated ids are skipped
+     *
+     * @param ids  reader of the voter ids
+     * @param path path to write the roll to
+     * @return number of voters in the roll
+     * @throws IOException if the ids could not be read, or the roll could not be written
+     */
+    public static long write(BufferedReader ids, Path path) throws IOException {
+        long[] high = new long[1024];
+        long[] low = new long[1024];
+        int count = 0;
+
+        String id;
+        while ((id = ids.readLine()) != null) {
+            id = id.trim();
+            if (id.isEmpty()) {
+                continue;
+            }
+
+            if (count == high.length) {
+                high = Arrays.copyOf(high, count * 2);
+                low = Arrays.copyOf(low, count * 2);
+            }
+
+            long[] key = VoterIdSet.key(id);
+            high[count] = key[0];
+            low[count] = key[1];
+            count++;
+        }
+
+        sort(high, low, 0, count - 1);
+
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || high[i] != high[i - 1] || low[i] != low[i - 1]) {
+                high[unique] = high[i];
+                low[unique] = low[i];
+                unique++;
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.write(MAGIC.getBytes(StandardCharsets.US_ASCII));
+            out.writeLong(unique);
+
+            for (int i = 0; i < unique; i++) {
+                out.writeLong(high[i]);
+                out.writeLong(low[i]);
+            }
+        }
+
+        return unique;
+    }
+
+    /**
+     * @param voterId id of a voter
+     * @return whether the voter is on the roll
+     */
+    public boolean contains(String voterId) {
+        long[] key = VoterIdSet.key(voterId);
+        long high = key[0];
+        long low = key[1];
+
+        long from = 0;
+        long to = size - 1;
+
+        for (int step = 0; step < INTERPOLATION_STEPS && from <= to; step++) {
+            double fromHigh = unsigned(high(from));
+            double toHigh = unsigned(high(to));
+            double target = unsigned(high);
+
+            if (target < fromHigh || target > toHigh) {
+                return false;
+            }
+
+            long guess = toHigh > fromHigh ? from + (long) ((target - fromHigh) / (toHigh - fromHigh) * (to - from)) : from;
+            guess = Math.max(from, Math.min(to, guess));
+            int comparison = compare(guess, high, low);
+
+            if (comparison == 0) {
+                return true;
+            } else if (comparison < 0) {
+                from = guess + 1;
+            } else {
+                to = guess - 1;
+            }
+        }
+
+        while (from <= to) {
+            long middle = (from + to) >>> 1;
+            int comparison = compare(middle, high, low);
+
+            if (comparison == 0) {
+                return true;
+            } else if (comparison < 0) {
+                from = middle + 1;
+            } else {
+                to = middle - 1;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return number of voters on the roll
+     */
+    public long size() {
+        return size;
+    }
+
+    private long high(long index) {
+        return maps[(int) (index / recordsPerMap)].getLong((int) (index % recordsPerMap) * RECORD_SIZE);
+    }
+
+    private long low(long index) {
+        return maps[(int) (index / recordsPerMap)].getLong((int) (index % recordsPerMap) * RECORD_SIZE + 8);
+    }
+
+    /**
+     * @return the sign of the record at <code>index</code> minus the key
+     */
+    private int compare(long index, long high, long low) {
+        int comparison = Long.compareUnsigned(high(index), high);
+
+        return comparison != 0 ? comparison : Long.compareUnsigned(low(index), low);
+    }
+
+    private static double unsigned(long value) {
+        return (value >>> 1) * 2.0;
+    }
+
+    private static int compare(long[] high, long[] low, int i, long pivotHigh, long pivotLow) {
+        int comparison = Long.compareUnsigned(high[i], pivotHigh);
+
+        return comparison != 0 ? comparison : Long.compareUnsigned(low[i], pivotLow);
+    }
+
+    private static int compare(long[] high, long[] low, int i, int j) {
+        return compare(high, low, i, high[j], low[j]);
+    }
+
+    /**
+     * Quicksort of the keys in <code>[from, to]</code>, recursing on the smaller part only.
+     * Keys equal to the pivot are gathered between the two parts, so a list repeating few ids many times is sorted in linear time
+     */
+    private static void sort(long[] high, long[] low, int from, int to) {
+        while (to - from > 16) {
+            int middle = (from + to) >>> 1;
+            long pivotHigh = high[middle];
+            long pivotLow = low[middle];
+
+            //Keys in [from, less) are below the pivot, in [less, i) equal to it, and in (greater, to] above it
+            int less = from;
+            int greater = to;
+            int i = from;
+            while (i <= greater) {
+                int comparison = compare(high, low, i, pivotHigh, pivotLow);
+
+                if (comparison < 0) {
+                    swap(high, low, i++, less++);
+                } else if (comparison > 0) {
+                    swap(high, low, i, greater--);
+                } else {
+                    i++;
+                }
+            }
+
+            if (less - from < to - greater) {
+                sort(high, low, from, less - 1);
+                from = greater + 1;
+            } else {
+                sort(high, low, greater + 1, to);
+                to = less - 1;
+            }
+        }
+
+        for (int i = from + 1; i <= to; i++) {
+            for (int j = i; j > from && compare(high, low, j - 1, j) > 0; j--) {
+                swap(high, low, j - 1, j);
+            }
+        }
+    }
+
+    private static void swap(long[] high, long[] low, int i, int j) {
+        long h = high[i];
+        high[i] = high[j];
+        high[j] = h;
+
+        long l = low[i];
+        low[i] = low[j];
+        low[j] = l;
+    }
+}
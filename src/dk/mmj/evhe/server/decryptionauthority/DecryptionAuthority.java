@@ -3,16 +3,24 @@ package dk.mmj.evhe.server.decryptionauthority;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import dk.eSoftware.commandLineParser.Configuration;
+import dk.mmj.evhe.client.ShardedBulletinBoard;
+import dk.mmj.evhe.client.VoteStream;
 import dk.mmj.evhe.crypto.ElGamal;
 import dk.mmj.evhe.crypto.SecurityUtils;
+import dk.mmj.evhe.crypto.group.Group;
 import dk.mmj.evhe.crypto.zeroknowledge.DLogProofUtils;
 import dk.mmj.evhe.entities.*;
 import dk.mmj.evhe.server.AbstractServer;
+import dk.mmj.evhe.server.ConnectorConfiguration;
+import dk.mmj.evhe.server.Metrics;
+import dk.mmj.evhe.server.MetricsFilter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.glassfish.jersey.client.JerseyWebTarget;
 
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -21,23 +29,35 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-
-import static dk.mmj.evhe.client.SSLHelper.configureWebTarget;
 
 public class DecryptionAuthority extends AbstractServer {
     private static final Logger logger = LogManager.getLogger(DecryptionAuthority.class);
+    private static final Metrics.Histogram pageFetchTime = Metrics.histogram(
+            "evhe_vote_page_fetch_seconds", "Time to fetch a page of votes from the bulletin board");
+    private static final Metrics.Histogram pageSumTime = Metrics.histogram(
+            "evhe_vote_sum_seconds", "Time to verify the proofs of a page of votes and sum the valid ones");
+    private static final Metrics.Histogram decryptionTime = Metrics.histogram(
+            "evhe_partial_decryption_seconds", "Time to partially decrypt the sum of votes");
+    private static final Metrics.Histogram proofTime = Metrics.histogram(
+            "evhe_proof_generation_seconds", "Time to generate the proof of the partial decryption");
+    private static final Metrics.Counter votesSummed = Metrics.counter(
+            "evhe_votes_summed_total", "Votes cast in time that were fetched for summing");
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-    private JerseyWebTarget bulletinBoard;
+    private ShardedBulletinBoard bulletinBoard;
     private boolean timeCorrupt = false;
+    private boolean useTally;
+    private ConnectorConfiguration connector;
     private PartialSecretKey sk;
     private int port = 8081;
     private long endTime;
     private PublicKey pk;
     private Integer id;
+    private List<ElectionClose> closes;
+    private PreTally preTally;
 
     public DecryptionAuthority(DecryptionAuthorityConfiguration configuration) {
         if (configuration.port != null) {
@@ -48,7 +68,16 @@ public class DecryptionAuthority extends AbstractServer {
             timeCorrupt = true;
         }
 
-        bulletinBoard = configureWebTarget(logger, configuration.bulletinBoard);
+        useTally = configuration.useTally;
+        connector = configuration.connector;
+
+        bulletinBoard = new ShardedBulletinBoard(logger, configuration.bulletinBoard);
+        try {
+            bulletinBoard.verifyShards();
+        } catch (IOException e) {
+            logger.error("The shards of the bulletin board are not listed in order. Terminating", e);
+            System.exit(-1);
+        }
 
         File conf = new File(configuration.confPath);
         if (!conf.exists() || !conf.isFile()) {
@@ -71,14 +100,22 @@ public class DecryptionAuthority extends AbstractServer {
 
             sk = new PartialSecretKey(secretValue, p);
             endTime = Long.parseLong(endTimeString);
+
+            if (configuration.preTallyInterval > 0) {
+                preTally = new PreTally(bulletinBoard, pk.getGroup(), endTime, this::sumPage,
+                        PreTally.checkpointFor(conf.toPath()));
+                preTally.start(configuration.preTallyInterval);
+            }
+
             long relativeEndTime = endTime - new Date().getTime();
 
             if (timeCorrupt) {
                 relativeEndTime -= configuration.timeCorrupt; //30 sec.
+                scheduler.schedule(this::terminateVoting, relativeEndTime, TimeUnit.MILLISECONDS);
+            } else {
+                scheduler.execute(this::awaitClose);
             }
 
-            scheduler.schedule(this::terminateVoting, relativeEndTime, TimeUnit.MILLISECONDS);
-
         } catch (JsonProcessingException e) {
             logger.error("Unable to deserialize public key. Terminating", e);
             System.exit(-1);
@@ -91,82 +128,206 @@ public class DecryptionAuthority extends AbstractServer {
         }
     }
 
-    private void terminateVoting() {
-        Long bulletinBoardTime = new Long(bulletinBoard.path("getCurrentTime").request().get(String.class));
-        long remainingTime = endTime - bulletinBoardTime;
+    /**
+     * Waits for the bulletin board to close the vote, and terminates voting at once when it does.
+     * Falls back to the end time by the bulletin board clock, if the board does not announce the close or does not close in time
+     */
+    private void awaitClose() {
+        logger.info("Waiting for the bulletin board to close the vote");
 
-        if (!timeCorrupt && remainingTime > 0) {
-            logger.info("Attempted to collect votes from BB, but voting not finished. Retrying in " + (remainingTime / 1000) + "s");
-            scheduler.schedule(this::terminateVoting, remainingTime, TimeUnit.MILLISECONDS);
+        try {
+            closes = bulletinBoard.awaitClose(endTime);
+        } catch (IOException | ProcessingException | WebApplicationException e) {
+            logger.warn("Unable to wait for the bulletin board to close the vote", e);
+        }
+
+        if (closes == null) {
+            logger.info("Using the end time by the bulletin board clock instead");
+            scheduler.schedule(this::terminateVoting, endTime - new Date().getTime(), TimeUnit.MILLISECONDS);
             return;
         }
 
-        logger.info("Terminating voting - Fetching votes");
-        ArrayList<PersistedVote> votes = getVotes();
+        terminateVoting();
+    }
 
-        if (votes == null || votes.size() < 1) {
+    private void terminateVoting() {
+        //Once the bulletin board has closed the vote, its clock need not be checked
+        if (closes == null) {
+            Long bulletinBoardTime = new Long(bulletinBoard.primary().path("getCurrentTime").request().get(String.class));
+            long remainingTime = endTime - bulletinBoardTime;
+
+            if (!timeCorrupt && remainingTime > 0) {
+                logger.info("Attempted to collect votes from BB, but voting not finished. Retrying in " + (remainingTime / 1000) + "s");
+                scheduler.schedule(this::terminateVoting, remainingTime, TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+
+        Tally tally = useTally ? getTally() : null;
+        CipherText sum;
+        int voteCount;
+
+        if (tally == null && preTally != null) {
+            tally = finishPreTally();
+        }
+
+        if (tally != null) {
+            logger.info("Terminating voting - Using tally of " + tally.getVotes() + " votes");
+            sum = tally.getCipherText();
+            voteCount = tally.getVotes();
+        } else {
+            logger.info("Terminating voting - Streaming votes from " + bulletinBoard.size() + " shard(s)");
+
+            try {
+                Tally total = ShardedBulletinBoard.combine(bulletinBoard.onAllShards(this::sumVotes), pk.getGroup());
+                sum = total.getCipherText();
+                voteCount = total.getVotes();
+            } catch (IOException | WebApplicationException e) {
+                logger.error("Failed to fetch votes from BB. Terminating server without result", e);
+                terminate();
+                return;
+            }
+        }
+
+        if (voteCount < 1) {
             logger.error("No votes registered. Terminating server without result");
             terminate();
             return;
         }
 
-        logger.info("Summing votes");
-        List<PersistedVote> filteredVotes = votes.parallelStream().filter(v -> v.getTs().getTime() < endTime).collect(Collectors.toList());
-        CipherText sum = SecurityUtils.concurrentVoteSum(
-                filteredVotes,
-                pk,
-                1000);
+        //A sum outside the group, such as a tally from the bulletin board, would leak the secret value when decrypted
+        if (!pk.getGroup().isElement(sum.getC())) {
+            logger.error("Sum of votes is not an element of the group. Terminating server without result");
+            terminate();
+            return;
+        }
 
         logger.info("Beginning partial decryption");
 
 
-        BigInteger result = ElGamal.partialDecryption(sum.getC(), sk.getSecretValue(), sk.getP());
+        Group group = pk.getGroup();
+        long start = System.nanoTime();
+        BigInteger result = ElGamal.partialDecryption(sum.getC(), sk.getSecretValue(), group);
+        decryptionTime.observeSince(start);
 
         logger.info("Partially decrypted value. Generating proof");
 
-        PublicKey partialPublicKey = new PublicKey(pk.getG().modPow(sk.getSecretValue(), sk.getP()), pk.getG(), pk.getQ());
+        PublicKey partialPublicKey = new PublicKey(group.pow(pk.getG(), sk.getSecretValue()), pk.getG(), pk.getQ(), pk.getP(), pk.getCurve());
+        start = System.nanoTime();
         DLogProofUtils.Proof proof = DLogProofUtils.generateProof(sum, sk.getSecretValue(), partialPublicKey, id);
+        proofTime.observeSince(start);
 
         logger.info("Posting to bulletin board");
 
-        Entity<PartialResult> resultEntity = Entity.entity(new PartialResult(id, result, proof, sum, filteredVotes.size()), MediaType.APPLICATION_JSON);
-        Response post = bulletinBoard.path("result").request().post(resultEntity);
+        PartialResult partialResult = new PartialResult(id, result, proof, sum, voteCount);
+        for (JerseyWebTarget shard : bulletinBoard.all()) {
+            Response post = shard.path("result").request().post(Entity.entity(partialResult, BinaryEncoding.MEDIA_TYPE));
 
-        if (post.getStatus() < 200 || post.getStatus() > 300) {
-            logger.error("Unable to post result to bulletinBoard, got response:" + post);
-            System.exit(-1);
-        } else {
-            logger.info("Successfully transferred partial decryption to bulletin board");
+            if (post.getStatus() == Response.Status.UNSUPPORTED_MEDIA_TYPE.getStatusCode()) {
+                post.close();
+                post = shard.path("result").request().post(Entity.entity(partialResult, MediaType.APPLICATION_JSON));
+            }
+
+            if (post.getStatus() < 200 || post.getStatus() > 300) {
+                logger.error("Unable to post result to bulletinBoard, got response:" + post);
+                System.exit(-1);
+            }
         }
 
+        logger.info("Successfully transferred partial decryption to bulletin board");
     }
 
-    private ArrayList<PersistedVote> getVotes() {
-        try {
-            String getVotes = bulletinBoard.path("getVotes").request().get(String.class);
-            VoteList voteObjects = new ObjectMapper().readerFor(VoteList.class).readValue(getVotes);
-            ArrayList<PersistedVote> votes = new ArrayList<>();
-
-            for (Object vote : voteObjects.getVotes()) {
-                if (vote instanceof PersistedVote) {
-                    votes.add((PersistedVote) vote);
-                } else {
-                    logger.error("Found vote that was not ciphertext. Was " + vote.getClass() + ". Terminating server");
-                    terminate();
-                }
+    /**
+     * Streams the votes of a shard cast before the end of the vote, and sums them
+     *
+     * @param shard the shard
+     * @return sum of the votes with valid proofs, and the number of votes read
+     * @throws IOException if the votes could not be read
+     */
+    private Tally sumVotes(JerseyWebTarget shard) throws IOException {
+        List<CompletableFuture<CipherText>> pageSums = new ArrayList<>();
+        int voteCount = 0;
+        VoteStream stream = new VoteStream(shard, endTime);
+        List<PersistedVote> page;
+
+        long fetchStart = System.nanoTime();
+        while ((page = stream.nextPage()) != null) {
+            pageFetchTime.observeSince(fetchStart);
+
+            //The stream only returns votes cast before the end of the vote
+            List<PersistedVote> timelyVotes = page;
+            if (!timelyVotes.isEmpty()) {
+                //Pages are summed while the next is downloaded
+                pageSums.add(CompletableFuture.supplyAsync(() -> sumPage(timelyVotes)));
+                voteCount += timelyVotes.size();
             }
-            return votes;
-        } catch (IOException e) {
-            logger.error("Failed to read VoteList from JSON string", e);
+
+            fetchStart = System.nanoTime();
+        }
+
+        //Checks the votes read are exactly those the shard closed the vote with
+        ElectionClose close = closes != null ? closes.get(bulletinBoard.all().indexOf(shard)) : null;
+        BallotChain chain = stream.getChain();
+        if (close != null && (chain.getLength() != close.getVotes()
+                || !chain.hasHead(BallotChain.fromString(close.getChainHead())))) {
+            throw new IOException("Read " + chain.getLength() + " votes, which do not match the "
+                    + close.getVotes() + " votes the bulletin board closed the vote with");
+        }
+
+        CipherText sum = pageSums.stream()
+                .map(CompletableFuture::join)
+                .reduce((a, b) -> ElGamal.homomorphicAddition(a, b, pk.getGroup()))
+                .orElse(null);
+
+        return new Tally(sum, voteCount);
+    }
+
+    private CipherText sumPage(List<PersistedVote> votes) {
+        long start = System.nanoTime();
+        CipherText sum = SecurityUtils.concurrentVoteSum(votes, pk);
+        pageSumTime.observeSince(start);
+        votesSummed.inc(votes.size());
+
+        return sum;
+    }
+
+    /**
+     * Sums the votes cast since the last round of pre-tallying, and adds them to the votes summed already
+     *
+     * @return sum of the valid votes, or null if the votes summed could not be completed
+     */
+    private Tally finishPreTally() {
+        logger.info("Terminating voting - Summing the votes cast since the last round of pre-tallying");
+
+        try {
+            return preTally.finish(closes);
+        } catch (IOException | ProcessingException | WebApplicationException e) {
+            logger.warn("Failed to complete the pre-tally. Summing all votes instead", e);
             return null;
         }
     }
 
+    /**
+     * Fetches the running tally the bulletin board computes as votes are cast, combined over its shards
+     *
+     * @return the tally, or null if it could not be fetched
+     */
+    private Tally getTally() {
+        Tally tally = bulletinBoard.fetchTally(pk.getGroup());
+
+        if (tally == null) {
+            logger.warn("Failed to fetch tally from BB. Summing votes instead");
+        }
+
+        return tally;
+    }
+
     @Override
     protected void configure(ServletHolder servletHolder) {
         servletHolder.setInitParameter(
                 "jersey.config.server.provider.classnames",
-                DecryptionAuthorityResource.class.getCanonicalName());
+                DecryptionAuthorityResource.class.getCanonicalName() + ";"
+                        + MetricsFilter.class.getCanonicalName());
     }
 
     @Override
@@ -174,6 +335,11 @@ public class DecryptionAuthority extends AbstractServer {
         return port;
     }
 
+    @Override
+    protected ConnectorConfiguration getConnectorConfiguration() {
+        return connector;
+    }
+
     /**
      * Configuration for a DecryptionAuthority
      */
@@ -182,12 +348,19 @@ public class DecryptionAuthority extends AbstractServer {
         private String bulletinBoard;
         private String confPath;
         private int timeCorrupt;
+        private boolean useTally;
+        private long preTallyInterval;
+        private ConnectorConfiguration connector;
 
-        DecryptionAuthorityConfiguration(Integer port, String bulletinBoard, String confPath, int timeCorrupt) {
+        DecryptionAuthorityConfiguration(Integer port, String bulletinBoard, String confPath, int timeCorrupt, boolean useTally,
+                                         long preTallyInterval, ConnectorConfiguration connector) {
             this.port = port;
             this.bulletinBoard = bulletinBoard;
             this.confPath = confPath;
             this.timeCorrupt = timeCorrupt;
+            this.useTally = useTally;
+            this.preTallyInterval = preTallyInterval;
+            this.connector = connector;
         }
     }
 }
\ No newline at end of file
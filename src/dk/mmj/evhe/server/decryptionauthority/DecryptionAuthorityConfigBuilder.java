@@ -2,6 +2,7 @@ package dk.mmj.evhe.server.decryptionauthority;
 
 import dk.eSoftware.commandLineParser.CommandLineParser;
 import dk.eSoftware.commandLineParser.Configuration;
+import dk.mmj.evhe.server.ConnectorConfiguration;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -15,12 +16,17 @@ public class DecryptionAuthorityConfigBuilder implements CommandLineParser.Confi
     private static final String BULLETIN_BOARD_2 = "bulletinBoard=";
     private static final String CONF = "conf=";
     private static final String CORRUPT = "timeCorrupt=";
+    private static final String TALLY = "tally=";
+    private static final String PRE_TALLY = "preTally=";
 
     //State
     private Integer port;
     private String bulletinBoard = "https://localhost:8080";
     private String confPath = "";
     private Integer timeCorrupt = 0;
+    private boolean useTally = false;
+    private long preTallyInterval = 0;
+    private ConnectorConfiguration connector = new ConnectorConfiguration();
 
     @Override
     public void applyCommand(CommandLineParser.Command command) {
@@ -37,14 +43,18 @@ public class DecryptionAuthorityConfigBuilder implements CommandLineParser.Confi
             confPath = cmd.substring(CONF.length());
         } else if (cmd.startsWith(CORRUPT)) {
             timeCorrupt = Integer.parseInt(cmd.substring(CORRUPT.length()));
-        } else if (!cmd.equals(SELF)) {
+        } else if (cmd.startsWith(TALLY)) {
+            useTally = Boolean.parseBoolean(cmd.substring(TALLY.length()));
+        } else if (cmd.startsWith(PRE_TALLY)) {
+            preTallyInterval = Long.parseLong(cmd.substring(PRE_TALLY.length()));
+        } else if (!cmd.equals(SELF) && !connector.applyCommand(cmd)) {
             logger.warn("Did not recognize command " + command.getCommand());
         }
     }
 
     @Override
     public Configuration build() {
-        return new DecryptionAuthority.DecryptionAuthorityConfiguration(port, bulletinBoard, confPath, timeCorrupt);
+        return new DecryptionAuthority.DecryptionAuthorityConfiguration(port, bulletinBoard, confPath, timeCorrupt, useTally, preTallyInterval, connector);
     }
 
     @Override
@@ -52,8 +62,11 @@ public class DecryptionAuthorityConfigBuilder implements CommandLineParser.Confi
         return "" +
                 "\tMODE: " + SELF.substring(2) + "\n" +
                 "\t  --" + PORT + "int\t\tSpecifies port to be used. Standard=8081\n" +
-                "\t  --" + BULLETIN_BOARD_2 + "/" + BULLETIN_BOARD_1 + "ip:port location bulletin board to be used\n" +
+                "\t  --" + BULLETIN_BOARD_2 + "/" + BULLETIN_BOARD_1 + "ip:port location bulletin board to be used. Comma separated locations of every shard, if sharded\n" +
                 "\t  --" + CONF + "Path\t\tRelative path to config file.\n" +
-                "\t  --" + CORRUPT + "int\t\tInteger specifying with what offset a timeCorrupt DA tries to decrypt with.";
+                "\t  --" + CORRUPT + "int\t\tInteger specifying with what offset a timeCorrupt DA tries to decrypt with.\n" +
+                "\t  --" + TALLY + "boolean\t\tWhether to decrypt the running tally from the bulletin board, instead of summing all votes.\n" +
+                "\t  --" + PRE_TALLY + "int\t\tSeconds between summing the votes cast while the vote is open, so only the latest are left when it closes. 0 disables. Standard=0\n" +
+                ConnectorConfiguration.help();
     }
 }
\ No newline at end of file
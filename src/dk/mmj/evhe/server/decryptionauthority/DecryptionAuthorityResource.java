@@ -1,5 +1,6 @@
 package dk.mmj.evhe.server.decryptionauthority;
 
+import dk.mmj.evhe.server.Metrics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -20,4 +21,14 @@ public class DecryptionAuthorityResource {
 
         return "<b>ServerType:</b> Decryption Authority";
     }
+
+    /**
+     * @return the runtime metrics of the server, in the Prometheus text format
+     */
+    @GET
+    @Path("metrics")
+    @Produces(Metrics.MEDIA_TYPE)
+    public String getMetrics() {
+        return Metrics.scrape();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,246 @@
+package dk.mmj.evhe.server.decryptionauthority;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dk.mmj.evhe.client.ShardedBulletinBoard;
+import dk.mmj.evhe.client.VoteStream;
+import dk.mmj.evhe.crypto.ElGamal;
+import dk.mmj.evhe.crypto.group.Group;
+import dk.mmj.evhe.entities.*;
+import dk.mmj.evhe.server.Metrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.glassfish.jersey.client.JerseyWebTarget;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Sums the votes of every shard while the vote is open, so only the votes cast since the last round
+ * are left to verify when it closes.
+ * <br/>
+ * Each round continues a {@link VoteStream} of each shard after the votes already summed, and adds the valid new votes
+ * to the running sum of the shard. The progress is then written to a checkpoint, from which a restarted authority
+ * continues, once the shards confirm that they still hold the votes it summed.
+ * <br/>
+ * The running sums are kept by the authority itself, so unlike the running tally of the bulletin board,
+ * they do not have to be trusted.
+ */
+class PreTally {
+    private static final String CHECKPOINT_SUFFIX = ".tally";
+    private static final Logger logger = LogManager.getLogger(PreTally.class);
+    private static final Metrics.Histogram roundTime = Metrics.histogram(
+            "evhe_pretally_round_seconds", "Time to fetch and sum the votes cast since the previous round");
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ShardedBulletinBoard bulletinBoard;
+    private final Group group;
+    private final long endTime;
+    private final Function<List<PersistedVote>, CipherText> sumPage;
+    private final Path checkpoint;
+    private final BallotChain[] chains;
+    private final Tally[] tallies;
+    private ScheduledExecutorService scheduler;
+    private boolean finished;
+
+    /**
+     * @param bulletinBoard shards of the bulletin board
+     * @param group         group the votes are encrypted in
+     * @param endTime       end of the vote. Only votes cast before it are summed
+     * @param sumPage       verifies the proofs of a page of votes, and sums the valid ones
+     * @param checkpoint    file the progress is written to
+     */
+    PreTally(ShardedBulletinBoard bulletinBoard, Group group, long endTime,
+             Function<List<PersistedVote>, CipherText> sumPage, Path checkpoint) {
+        this.bulletinBoard = bulletinBoard;
+        this.group = group;
+        this.endTime = endTime;
+        this.sumPage = sumPage;
+        this.checkpoint = checkpoint;
+
+        chains = new BallotChain[bulletinBoard.size()];
+        tallies = new Tally[bulletinBoard.size()];
+        for (int i = 0; i < chains.length; i++) {
+            chains[i] = new BallotChain();
+            tallies[i] = new Tally(null, 0);
+        }
+
+        Metrics.gauge("evhe_pretally_votes", "Votes summed before the close of the vote",
+                () -> Arrays.stream(tallies).mapToInt(Tally::getVotes).sum());
+    }
+
+    /**
+     * @param confPath path of the configuration file of the authority
+     * @return path of the checkpoint kept beside it
+     */
+    static Path checkpointFor(Path confPath) {
+        return confPath.resolveSibling(confPath.getFileName() + CHECKPOINT_SUFFIX);
+    }
+
+    /**
+     * Continues from the checkpoint, if there is one, and sums the new votes every <code>interval</code> seconds
+     *
+     * @param interval seconds between rounds
+     */
+    synchronized void start(long interval) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "pre-tally");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(this::restore);
+        scheduler.scheduleWithFixedDelay(this::roundQuietly, 0, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the rounds, and sums the votes cast since the last of them
+     *
+     * @param closes the close announced by each shard, which the votes summed must match. Null if not announced
+     * @return sum of the valid votes of every shard, and the number of votes read
+     * @throws IOException if the votes could not be read, or do not match the close
+     */
+    synchronized Tally finish(List<ElectionClose> closes) throws IOException {
+        //A round or restore waiting for the lock does nothing once finished
+        finished = true;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+
+        long before = total();
+        round();
+        logger.info("Summed the last " + (total() - before) + " votes, of " + total() + " in all");
+
+        for (int i = 0; closes != null && i < chains.length; i++) {
+            ElectionClose close = closes.get(i);
+
+            if (chains[i].getLength() != close.getVotes() || !chains[i].hasHead(BallotChain.fromString(close.getChainHead()))) {
+                throw new IOException("Summed " + chains[i].getLength() + " votes of shard " + i + ", which do not match the "
+                        + close.getVotes() + " votes it closed the vote with");
+            }
+        }
+
+        return ShardedBulletinBoard.combine(Arrays.asList(tallies), group);
+    }
+
+    private synchronized void roundQuietly() {
+        if (finished) {
+            return;
+        }
+
+        try {
+            round();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to sum the latest votes. Retrying next round", e);
+        }
+    }
+
+    private void round() throws IOException {
+        long start = System.nanoTime();
+        bulletinBoard.onAllShards(this::catchUp);
+        roundTime.observeSince(start);
+
+        writeCheckpoint();
+    }
+
+    /**
+     * Sums the votes of the shard cast since the previous round.
+     * The chain and sum of the shard are updated after every page, so they always match
+     */
+    private Void catchUp(JerseyWebTarget shard) throws IOException {
+        int index = bulletinBoard.all().indexOf(shard);
+        VoteStream stream = new VoteStream(shard, endTime, chains[index]);
+        List<PersistedVote> page;
+
+        while ((page = stream.nextPage()) != null) {
+            Tally tally = tallies[index];
+
+            //The stream only returns votes cast before the end of the vote
+            if (!page.isEmpty()) {
+                tally = new Tally(add(tally.getCipherText(), sumPage.apply(page)), tally.getVotes() + page.size());
+            }
+
+            tallies[index] = tally;
+            chains[index] = stream.getChain();
+        }
+
+        return null;
+    }
+
+    private CipherText add(CipherText a, CipherText b) {
+        if (a == null || b == null) {
+            return a != null ? a : b;
+        }
+
+        return ElGamal.homomorphicAddition(a, b, group);
+    }
+
+    private long total() {
+        return Arrays.stream(tallies).mapToLong(Tally::getVotes).sum();
+    }
+
+    private void writeCheckpoint() throws IOException {
+        TallyCheckpoint[] progress = new TallyCheckpoint[chains.length];
+        for (int i = 0; i < chains.length; i++) {
+            ChainHead head = new ChainHead(chains[i].getLength(), BallotChain.toString(chains[i].getHead()));
+            progress[i] = new TallyCheckpoint(head, tallies[i]);
+        }
+
+        Path directory = checkpoint.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, checkpoint.getFileName().toString(), ".tmp");
+        mapper.writeValue(temporary.toFile(), progress);
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Continues each shard from the checkpoint, if the shard has the same head after the votes summed
+     */
+    private synchronized void restore() {
+        if (finished || !Files.exists(checkpoint)) {
+            return;
+        }
+
+        TallyCheckpoint[] progress;
+        try {
+            progress = mapper.readValue(checkpoint.toFile(), TallyCheckpoint[].class);
+        } catch (IOException e) {
+            logger.warn("Unable to read checkpoint " + checkpoint + ". Summing all votes", e);
+            return;
+        }
+
+        if (progress.length != chains.length) {
+            logger.warn("Checkpoint " + checkpoint + " is of " + progress.length + " shards, not "
+                    + chains.length + ". Summing all votes");
+            return;
+        }
+
+        for (int i = 0; i < progress.length; i++) {
+            ChainHead saved = progress[i].getChain();
+
+            try {
+                ChainHead head = bulletinBoard.all().get(i).path("chain").queryParam("length", saved.getLength())
+                        .request(MediaType.APPLICATION_JSON).get(ChainHead.class);
+
+                if (!saved.getHead().equals(head.getHead())) {
+                    logger.warn("Shard " + i + " does not hold the votes in the checkpoint. Summing all its votes");
+                    continue;
+                }
+            } catch (ProcessingException | WebApplicationException e) {
+                logger.warn("Unable to check the checkpoint against shard " + i + ". Summing all its votes", e);
+                continue;
+            }
+
+            chains[i] = new BallotChain(saved.getLength(), BallotChain.fromString(saved.getHead()));
+            tallies[i] = progress[i].getTally();
+            logger.info("Continuing after the " + saved.getLength() + " votes of shard " + i + " in the checkpoint");
+        }
+    }
+}
@@ -1,13 +1,21 @@
 package dk.mmj.evhe;
 
+import dk.mmj.evhe.client.ClientTestSuite;
 import dk.mmj.evhe.crypto.CryptoTestSuite;
+import dk.mmj.evhe.server.ServerTestSuite;
+import dk.mmj.evhe.server.bulletinboard.BulletinBoardTestSuite;
+import dk.mmj.evhe.server.decryptionauthority.DecryptionAuthorityTestSuite;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 
 @Suite.SuiteClasses({
-        CryptoTestSuite.class
+        CryptoTestSuite.class,
+        BulletinBoardTestSuite.class,
+        ClientTestSuite.class,
+        DecryptionAuthorityTestSuite.class,
+        ServerTestSuite.class
 })
 public class TestSuite {
 }
@@ -0,0 +1,14 @@
+package dk.mmj.evhe.client;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+
+@Suite.SuiteClasses({
+        TestConditionalRequestCache.class,
+        TestShardedBulletinBoard.class,
+        TestVoteStream.class
+})
+public class ClientTestSuite {
+}
@@ -0,0 +1,130 @@
+package dk.mmj.evhe.client;
+
+import com.sun.net.httpserver.HttpServer;
+import org.glassfish.jersey.client.JerseyClient;
+import org.glassfish.jersey.client.JerseyClientBuilder;
+import org.glassfish.jersey.client.JerseyWebTarget;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class TestConditionalRequestCache {
+    private final List<String> conditions = new CopyOnWriteArrayList<>();
+    private volatile String body = "first";
+    private volatile String tag = "W/\"1\"";
+    private volatile int notModified;
+    private HttpServer server;
+    private JerseyClient client;
+    private JerseyWebTarget target;
+
+    /**
+     * Starts a server answering with the current body and tag, if any, or 304 if the request holds the tag.
+     * The If-None-Match header of each request is recorded, or "none" if it has none
+     */
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            String condition = exchange.getRequestHeaders().getFirst(HttpHeaders.IF_NONE_MATCH);
+            conditions.add(condition != null ? condition : "none");
+            String current = tag;
+            if (current != null) {
+                exchange.getResponseHeaders().set(HttpHeaders.ETAG, current);
+            }
+
+            if (current != null && current.equals(condition)) {
+                notModified++;
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+
+        client = JerseyClientBuilder.createClient().register(new ConditionalRequestCache());
+        target = client.target("http://localhost:" + server.getAddress().getPort()).path("resource");
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        server.stop(0);
+    }
+
+    private String get() {
+        Response response = target.request(MediaType.TEXT_PLAIN).get();
+        assertEquals("Client saw another status than 200", 200, response.getStatus());
+
+        return response.readEntity(String.class);
+    }
+
+    /**
+     * Once a response is tagged, each later request holds the tag, and the kept response is replayed on 304
+     */
+    @Test
+    public void shouldReplayKeptResponseWhenNotModified() {
+        assertEquals("Wrong body", "first", get());
+        assertEquals("Wrong body of replayed response", "first", get());
+        assertEquals("Wrong body of second replayed response", "first", get());
+
+        assertEquals("Wrong number of 304s", 2, notModified);
+        assertEquals("Wrong conditions", Arrays.asList("none", tag, tag), conditions);
+    }
+
+    @Test
+    public void shouldKeepNewResponseWhenModified() {
+        get();
+        body = "second";
+        tag = "W/\"2\"";
+
+        assertEquals("Modified body was not returned", "second", get());
+        assertEquals("Modified body was not kept", "second", get());
+        assertEquals("Wrong condition after modification", tag, conditions.get(2));
+    }
+
+    @Test
+    public void shouldKeepResponsesByAcceptedType() {
+        get();
+        target.request(MediaType.APPLICATION_JSON).get().close();
+
+        assertEquals("Request for another type held the tag", "none", conditions.get(1));
+    }
+
+    @Test
+    public void shouldNotMakeOtherMethodsConditional() {
+        get();
+        target.request(MediaType.TEXT_PLAIN).post(Entity.text("vote")).close();
+
+        assertEquals("Post held the tag", "none", conditions.get(1));
+    }
+
+    @Test
+    public void shouldNotKeepUntaggedResponses() {
+        tag = null;
+        get();
+        get();
+
+        assertEquals("Untagged response was made conditional", "none", conditions.get(1));
+    }
+}
@@ -0,0 +1,252 @@
+package dk.mmj.evhe.client;
+
+import com.sun.net.httpserver.HttpServer;
+import dk.mmj.evhe.crypto.ElGamal;
+import dk.mmj.evhe.crypto.SecurityUtils;
+import dk.mmj.evhe.crypto.group.Group;
+import dk.mmj.evhe.crypto.keygeneration.EllipticCurveKeyGenerationParameters;
+import dk.mmj.evhe.crypto.keygeneration.KeyGenerationParameters;
+import dk.mmj.evhe.entities.CipherText;
+import dk.mmj.evhe.entities.ElectionClose;
+import dk.mmj.evhe.entities.PublicKey;
+import dk.mmj.evhe.entities.Shard;
+import dk.mmj.evhe.entities.Tally;
+import org.glassfish.jersey.client.JerseyClient;
+import org.glassfish.jersey.client.JerseyClientBuilder;
+import org.glassfish.jersey.client.JerseyWebTarget;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class TestShardedBulletinBoard {
+    private final List<HttpServer> servers = new ArrayList<>();
+    private JerseyClient client;
+
+    @Before
+    public void setUp() {
+        client = JerseyClientBuilder.createClient().register(JacksonFeature.class);
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        servers.forEach(server -> server.stop(0));
+    }
+
+    /**
+     * @param shard the shard the server tells it is, or null if it does not know of shards
+     * @return target of a server answering which shard it is
+     */
+    private JerseyWebTarget shard(Shard shard) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/shard", exchange -> {
+            if (shard == null) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+
+            byte[] body = ("{\"index\":" + shard.getIndex() + ",\"count\":" + shard.getCount() + "}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        servers.add(server);
+
+        return client.target("http://localhost:" + server.getAddress().getPort());
+    }
+
+    /**
+     * @param status status the server answers requests for the close with
+     * @param waits  the wait parameter of each request for the close is added to it
+     * @return target of a server answering requests for the close with the status, and a close of 3 votes if 200
+     */
+    private JerseyWebTarget closing(int status, List<String> waits) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/close", exchange -> {
+            waits.add(exchange.getRequestURI().getQuery());
+            if (status != 200) {
+                exchange.sendResponseHeaders(status, -1);
+                exchange.close();
+                return;
+            }
+
+            byte[] body = "{\"endTime\":1,\"votes\":3,\"chainHead\":\"head\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        servers.add(server);
+
+        return client.target("http://localhost:" + server.getAddress().getPort());
+    }
+
+    private void assertRejected(String message, ShardedBulletinBoard bulletinBoard) {
+        try {
+            bulletinBoard.verifyShards();
+            fail(message);
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void shouldAcceptShardsInOrder() throws IOException {
+        new ShardedBulletinBoard(Arrays.asList(shard(new Shard(0, 3)), shard(new Shard(1, 3)), shard(new Shard(2, 3))))
+                .verifyShards();
+        new ShardedBulletinBoard(Arrays.asList(shard(new Shard(0, 1)))).verifyShards();
+        new ShardedBulletinBoard(Arrays.asList(shard(null))).verifyShards();
+    }
+
+    @Test
+    public void shouldRejectShardsOutOfOrder() throws IOException {
+        assertRejected("Accepted swapped shards",
+                new ShardedBulletinBoard(Arrays.asList(shard(new Shard(1, 2)), shard(new Shard(0, 2)))));
+    }
+
+    @Test
+    public void shouldRejectMissingShards() throws IOException {
+        assertRejected("Accepted two of three shards",
+                new ShardedBulletinBoard(Arrays.asList(shard(new Shard(0, 3)), shard(new Shard(1, 3)))));
+        assertRejected("Accepted a single shard of two",
+                new ShardedBulletinBoard(Arrays.asList(shard(new Shard(0, 2)))));
+    }
+
+    @Test
+    public void shouldRejectUnshardedBoardAmongShards() throws IOException {
+        assertRejected("Accepted unsharded board as a shard",
+                new ShardedBulletinBoard(Arrays.asList(shard(new Shard(0, 2)), shard(null))));
+    }
+
+    @Test
+    public void shouldRejectUnreachableShard() throws IOException {
+        int port;
+        try (ServerSocket closed = new ServerSocket(0)) {
+            port = closed.getLocalPort();
+        }
+
+        assertRejected("Accepted unreachable shard", new ShardedBulletinBoard(Arrays.asList(
+                shard(new Shard(0, 2)), client.target("http://localhost:" + port))));
+    }
+
+    @Test
+    public void shouldReturnCloseOfEveryShard() throws IOException {
+        List<String> waits = new CopyOnWriteArrayList<>();
+        ShardedBulletinBoard bulletinBoard = new ShardedBulletinBoard(Arrays.asList(closing(200, waits), closing(200, waits)));
+
+        List<ElectionClose> closes = bulletinBoard.awaitClose(System.currentTimeMillis());
+
+        assertEquals("Wrong number of closes", 2, closes.size());
+        assertEquals("Wrong number of votes at close", 3, closes.get(1).getVotes());
+    }
+
+    @Test
+    public void shouldGiveUpWhenShardDoesNotScheduleClose() throws IOException {
+        List<String> waits = new CopyOnWriteArrayList<>();
+        ShardedBulletinBoard bulletinBoard = new ShardedBulletinBoard(Arrays.asList(closing(200, waits), closing(404, waits)));
+
+        assertNull("Closes were returned although a shard did not schedule its close",
+                bulletinBoard.awaitClose(System.currentTimeMillis()));
+    }
+
+    /**
+     * A shard that keeps answering that it has not closed yet is given up on once the grace period after the end has passed.
+     * The shard must not be asked to wait beyond the end of the grace period
+     */
+    @Test
+    public void shouldGiveUpWhenShardDoesNotCloseInTime() throws IOException {
+        List<String> waits = new CopyOnWriteArrayList<>();
+        ShardedBulletinBoard bulletinBoard = new ShardedBulletinBoard(Arrays.asList(closing(204, waits)));
+        long endTime = System.currentTimeMillis() - ShardedBulletinBoard.CLOSE_GRACE_MS + 1500;
+
+        assertNull("Closes were returned although the shard did not close", bulletinBoard.awaitClose(endTime));
+        assertFalse("Shard was not asked", waits.isEmpty());
+        assertTrue("Shard was asked to wait beyond the grace period", waits.stream().allMatch("wait=1"::equals));
+
+        waits.clear();
+        assertNull("Closes were returned after the grace period", bulletinBoard.awaitClose(endTime - 2000));
+        assertTrue("Shard was asked after the grace period", waits.isEmpty());
+    }
+
+    @Test
+    public void shouldSendVotersToTheShardOwningThem() {
+        List<JerseyWebTarget> targets = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            targets.add(client.target("http://shard" + i));
+        }
+        ShardedBulletinBoard bulletinBoard = new ShardedBulletinBoard(targets);
+
+        for (int v = 0; v < 100; v++) {
+            String id = "voter" + v;
+            int index = targets.indexOf(bulletinBoard.forVoter(id));
+
+            assertTrue("Voter was sent to a shard not owning it", new Shard(index, 3).owns(id));
+        }
+        assertSame("Wrong primary shard", targets.get(0), bulletinBoard.primary());
+    }
+
+    @Test
+    public void shouldApplyToAllShardsInOrder() throws IOException {
+        List<JerseyWebTarget> targets = Arrays.asList(client.target("http://shard0"), client.target("http://shard1"));
+        ShardedBulletinBoard bulletinBoard = new ShardedBulletinBoard(targets);
+
+        assertEquals("Results out of order", Arrays.asList("http://shard0", "http://shard1"),
+                bulletinBoard.onAllShards(shard -> shard.getUri().toString()));
+
+        try {
+            bulletinBoard.onAllShards(shard -> {
+                if (shard == targets.get(1)) {
+                    throw new IOException("Shard failed");
+                }
+                return null;
+            });
+            fail("Failure on a shard was not thrown");
+        } catch (IOException e) {
+            assertEquals("Wrong exception thrown", "Shard failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldCombineTallies() {
+        KeyGenerationParameters params = new EllipticCurveKeyGenerationParameters("P-256");
+        Group group = params.getGroup();
+        BigInteger g = params.getGenerator();
+        PublicKey publicKey = new PublicKey(group.pow(g, BigInteger.valueOf(7)), g,
+                params.getPrimePair().getQ(), params.getPrimePair().getP(), params.getCurve());
+
+        CipherText a = SecurityUtils.generateVote(1, "a", publicKey).getCipherText();
+        CipherText b = SecurityUtils.generateVote(0, "b", publicKey).getCipherText();
+        CipherText c = SecurityUtils.generateVote(1, "c", publicKey).getCipherText();
+
+        Tally combined = ShardedBulletinBoard.combine(Arrays.asList(
+                new Tally(ElGamal.homomorphicAddition(a, b, group), 2), new Tally(null, 0), new Tally(c, 1)), group);
+
+        assertEquals("Wrong number of votes", 3, combined.getVotes());
+        assertEquals("Wrong sum", ElGamal.homomorphicAddition(ElGamal.homomorphicAddition(a, b, group), c, group),
+                combined.getCipherText());
+
+        Tally empty = ShardedBulletinBoard.combine(Arrays.asList(new Tally(null, 0), new Tally(null, 0)), group);
+        assertNull("Sum of no votes had a ciphertext", empty.getCipherText());
+        assertEquals("Wrong number of no votes", 0, empty.getVotes());
+    }
+}
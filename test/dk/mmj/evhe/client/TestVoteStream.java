@@ -0,0 +1,149 @@
+package dk.mmj.evhe.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dk.mmj.evhe.entities.BallotChain;
+import dk.mmj.evhe.entities.CipherText;
+import dk.mmj.evhe.entities.PersistedVote;
+import dk.mmj.evhe.server.bulletinboard.BulletinBoardResource;
+import org.glassfish.jersey.client.JerseyClient;
+import org.glassfish.jersey.client.JerseyClientBuilder;
+import org.glassfish.jersey.client.JerseyWebTarget;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class TestVoteStream {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<PersistedVote> votes = new ArrayList<>();
+    private HttpServer server;
+    private JerseyClient client;
+    private Function<List<PersistedVote>, String> chainHead;
+
+    private static PersistedVote vote(int i) {
+        return new PersistedVote(new CipherText(BigInteger.valueOf(i), BigInteger.valueOf(i + 1)),
+                "voter" + i, null, new Date(1000L * i));
+    }
+
+    private static String headOf(List<PersistedVote> votes) {
+        BallotChain chain = new BallotChain();
+        votes.forEach(chain::append);
+
+        return BallotChain.toString(chain.getHead());
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            votes.add(vote(i));
+        }
+        chainHead = TestVoteStream::headOf;
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/votes", this::votes);
+        server.start();
+        client = JerseyClientBuilder.createClient();
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        server.stop(0);
+    }
+
+    private JerseyWebTarget target() {
+        return client.target("http://localhost:" + server.getAddress().getPort());
+    }
+
+    /**
+     * Answers with the votes from the offset as newline delimited JSON,
+     * and the chain head given by {@link #chainHead} for the votes up to the next offset, if any
+     */
+    private void votes(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        int offset = Integer.parseInt(query.replaceAll(".*offset=(\\d+).*", "$1"));
+        int next = Math.max(offset, votes.size());
+
+        StringBuilder body = new StringBuilder();
+        for (PersistedVote vote : votes.subList(Math.min(offset, next), next)) {
+            body.append(mapper.writeValueAsString(vote)).append('\n');
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", BulletinBoardResource.NDJSON);
+        exchange.getResponseHeaders().set(BulletinBoardResource.NEXT_OFFSET, String.valueOf(next));
+        String head = chainHead.apply(votes.subList(0, next));
+        if (head != null) {
+            exchange.getResponseHeaders().set(BulletinBoardResource.CHAIN_HEAD, head);
+        }
+
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void assertRejected(String message, VoteStream stream) {
+        try {
+            stream.nextPage();
+            fail(message);
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void shouldReadVotesAndContinueAfterEnd() throws IOException {
+        VoteStream stream = new VoteStream(target(), null);
+
+        assertEquals("Wrong number of votes", 3, stream.nextPage().size());
+        assertNull("Votes were read after the end", stream.nextPage());
+        assertEquals("Wrong chain", headOf(votes), BallotChain.toString(stream.getChain().getHead()));
+
+        votes.add(vote(3));
+        List<PersistedVote> later = stream.nextPage();
+        assertEquals("Vote cast later was not read", 1, later.size());
+        assertEquals("Wrong vote cast later", "voter3", later.get(0).getId());
+    }
+
+    @Test
+    public void shouldFilterVotesCastAfterBefore() throws IOException {
+        List<PersistedVote> page = new VoteStream(target(), 2000L).nextPage();
+
+        assertEquals("Wrong number of votes before the time", 2, page.size());
+        assertEquals("Wrong vote", "voter1", page.get(1).getId());
+    }
+
+    /**
+     * A page without a chain head cannot be verified, so it must be refused rather than trusted
+     */
+    @Test
+    public void shouldRejectPageWithoutChainHead() {
+        chainHead = held -> null;
+        VoteStream stream = new VoteStream(target(), null);
+
+        assertRejected("Page without chain head was accepted", stream);
+        assertEquals("Chain was extended by rejected page", 0, stream.getChain().getLength());
+    }
+
+    @Test
+    public void shouldRejectPageNotExtendingChain() {
+        chainHead = held -> headOf(held.subList(1, held.size()));
+        VoteStream stream = new VoteStream(target(), null);
+
+        assertRejected("Page with other chain head was accepted", stream);
+        assertEquals("Chain was extended by rejected page", 0, stream.getChain().getLength());
+    }
+}
@@ -10,7 +10,13 @@ import org.junit.runners.Suite;
         TestKeyGenerationsParametersImpl.class,
         TestElGamal.class,
         TestVoteProofUtils.class,
-        TestSecurityUtils.class
+        TestSecurityUtils.class,
+        TestFixedBaseExponentiation.class,
+        TestMultiExponentiation.class,
+        TestModularProductAccumulator.class,
+        TestBinaryEncoding.class,
+        TestBallotChain.class,
+        TestShard.class
 })
 public class CryptoTestSuite {
 }
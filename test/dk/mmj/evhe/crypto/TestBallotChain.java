@@ -0,0 +1,74 @@
+package dk.mmj.evhe.crypto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dk.mmj.evhe.entities.*;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static dk.mmj.evhe.crypto.TestUtils.generateKeysFromP2048bitsG2;
+import static org.junit.Assert.*;
+
+public class TestBallotChain {
+
+    private List<PersistedVote> votes() {
+        PublicKey publicKey = generateKeysFromP2048bitsG2().getPublicKey();
+
+        return Arrays.asList(
+                new PersistedVote(SecurityUtils.generateVote(1, "first", publicKey)),
+                new PersistedVote(SecurityUtils.generateVote(0, "second", publicKey)),
+                new PersistedVote(SecurityUtils.generateVote(1, "third", publicKey)));
+    }
+
+    @Test
+    public void shouldContinueFromPrefix() {
+        List<PersistedVote> votes = votes();
+
+        BallotChain full = new BallotChain();
+        votes.forEach(full::append);
+
+        BallotChain prefix = new BallotChain();
+        prefix.append(votes.get(0));
+
+        BallotChain continued = new BallotChain(prefix.getLength(), prefix.getHead());
+        continued.append(votes.get(1));
+        continued.append(votes.get(2));
+
+        assertEquals("Continued chain did not match full chain", full, continued);
+        assertEquals("Wrong length", 3, continued.getLength());
+    }
+
+    @Test
+    public void shouldDependOnOrder() {
+        List<PersistedVote> votes = votes();
+
+        BallotChain chain = new BallotChain();
+        votes.forEach(chain::append);
+
+        BallotChain reordered = new BallotChain();
+        reordered.append(votes.get(1));
+        reordered.append(votes.get(0));
+        reordered.append(votes.get(2));
+
+        assertFalse("Reordered votes gave the same head", reordered.hasHead(chain.getHead()));
+    }
+
+    @Test
+    public void shouldMatchAfterJsonRoundTrip() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        PersistedVote vote = votes().get(0);
+        vote.setTs(new Date(1234));
+
+        BallotChain chain = new BallotChain();
+        chain.append(vote);
+
+        BallotChain received = new BallotChain();
+        received.append(mapper.readValue(mapper.writeValueAsBytes(vote), PersistedVote.class));
+
+        assertTrue("Chain over received vote did not match", received.hasHead(chain.getHead()));
+        assertArrayEquals("Head did not survive encoding", chain.getHead(), BallotChain.fromString(BallotChain.toString(chain.getHead())));
+    }
+}
@@ -0,0 +1,117 @@
+package dk.mmj.evhe.crypto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dk.mmj.evhe.crypto.zeroknowledge.DLogProofUtils;
+import dk.mmj.evhe.crypto.zeroknowledge.VoteProofUtils;
+import dk.mmj.evhe.entities.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Date;
+
+import static dk.mmj.evhe.crypto.TestUtils.generateKeysFromP2048bitsG2;
+import static dk.mmj.evhe.crypto.TestUtils.generateKeysFromP256;
+import static org.junit.Assert.*;
+
+public class TestBinaryEncoding {
+
+    @Test
+    public void shouldDecodeVerifiableVote() throws IOException {
+        PublicKey publicKey = generateKeysFromP2048bitsG2().getPublicKey();
+        VoteDTO vote = SecurityUtils.generateVote(1, "TESTID", publicKey);
+
+        VoteDTO decoded = BinaryEncoding.decode(VoteDTO.class, BinaryEncoding.encode(vote));
+
+        assertEquals("Ciphertext did not match", vote.getCipherText(), decoded.getCipherText());
+        assertEquals("Id did not match", vote.getId(), decoded.getId());
+        assertTrue("Unable to verify decoded vote", VoteProofUtils.verifyProof(decoded, publicKey));
+    }
+
+    @Test
+    public void shouldDecodeVerifiableVoteOnEllipticCurve() throws IOException {
+        PublicKey publicKey = generateKeysFromP256().getPublicKey();
+        VoteDTO vote = SecurityUtils.generateVote(0, "TESTID", publicKey);
+
+        VoteDTO decoded = BinaryEncoding.decode(VoteDTO.class, BinaryEncoding.encode(vote));
+
+        assertTrue("Unable to verify decoded vote", VoteProofUtils.verifyProof(decoded, publicKey));
+    }
+
+    @Test
+    public void shouldBeSmallerThanJson() throws IOException {
+        PublicKey publicKey = generateKeysFromP2048bitsG2().getPublicKey();
+        VoteDTO vote = SecurityUtils.generateVote(1, "TESTID", publicKey);
+
+        byte[] json = new ObjectMapper().writeValueAsBytes(vote);
+        byte[] binary = BinaryEncoding.encode(vote);
+
+        assertTrue("Binary encoding was not smaller than JSON", binary.length < json.length);
+    }
+
+    @Test
+    public void shouldReadSequenceOfPersistedVotes() throws IOException {
+        PersistedVote first = new PersistedVote(new CipherText(BigInteger.TEN, BigInteger.ONE), "first", null, new Date(1000));
+        PersistedVote second = new PersistedVote(new CipherText(BigInteger.valueOf(-5), null), "second", null, null);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryEncoding.write(first, out);
+        BinaryEncoding.write(second, out);
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        PersistedVote readFirst = BinaryEncoding.read(PersistedVote.class, in);
+        PersistedVote readSecond = BinaryEncoding.read(PersistedVote.class, in);
+
+        assertEquals("First vote did not match", first.getCipherText(), readFirst.getCipherText());
+        assertEquals("Timestamp did not match", first.getTs(), readFirst.getTs());
+        assertNull("Proof should be null", readFirst.getProof());
+        assertEquals("Negative value did not match", BigInteger.valueOf(-5), readSecond.getCipherText().getC());
+        assertNull("Null value should be null", readSecond.getCipherText().getD());
+        assertNull("Timestamp should be null", readSecond.getTs());
+        assertNull("Stream should be exhausted", BinaryEncoding.read(PersistedVote.class, in));
+    }
+
+    @Test
+    public void shouldDecodeResultListAndPublicKey() throws IOException {
+        PublicKey publicKey = generateKeysFromP2048bitsG2().getPublicKey();
+        CipherText sum = new CipherText(BigInteger.valueOf(3), BigInteger.valueOf(4));
+        PartialResult result = new PartialResult(2, BigInteger.valueOf(5), new DLogProofUtils.Proof(BigInteger.ONE, BigInteger.TEN), sum, 7);
+
+        ResultList decodedList = BinaryEncoding.decode(ResultList.class, BinaryEncoding.encode(new ResultList(Arrays.asList(result))));
+        PartialResult decoded = decodedList.getResults().get(0);
+
+        assertEquals("Id did not match", result.getId(), decoded.getId());
+        assertEquals("Result did not match", result.getResult(), decoded.getResult());
+        assertEquals("Proof did not match", result.getProof().getZ(), decoded.getProof().getZ());
+        assertEquals("Ciphertext did not match", sum, decoded.getCipherText());
+        assertEquals("Votes did not match", 7, decoded.getVotes());
+
+        PublicKey decodedKey = BinaryEncoding.decode(PublicKey.class, BinaryEncoding.encode(publicKey));
+        assertEquals("h did not match", publicKey.getH(), decodedKey.getH());
+        assertEquals("g did not match", publicKey.getG(), decodedKey.getG());
+        assertEquals("q did not match", publicKey.getQ(), decodedKey.getQ());
+        assertEquals("p did not match", publicKey.getP(), decodedKey.getP());
+        assertNull("Curve should be null", decodedKey.getCurve());
+    }
+
+    @Test
+    public void shouldDecodeVoteBatchAndResult() throws IOException {
+        PublicKey publicKey = generateKeysFromP2048bitsG2().getPublicKey();
+        VoteDTO first = SecurityUtils.generateVote(0, "first", publicKey);
+        VoteDTO second = SecurityUtils.generateVote(1, "second", publicKey);
+
+        VoteBatch decoded = BinaryEncoding.decode(VoteBatch.class, BinaryEncoding.encode(new VoteBatch(Arrays.asList(first, second))));
+
+        assertEquals("Wrong number of votes", 2, decoded.getVotes().size());
+        assertEquals("Order of votes was not kept", "second", decoded.getVotes().get(1).getId());
+        assertEquals("Verified votes did not match", 2, VoteProofUtils.verifyProofs(decoded.getVotes(), publicKey).size());
+
+        VoteBatchResult result = new VoteBatchResult(Arrays.asList(VoteBatchResult.Status.ACCEPTED, VoteBatchResult.Status.DUPLICATE));
+        VoteBatchResult decodedResult = BinaryEncoding.decode(VoteBatchResult.class, BinaryEncoding.encode(result));
+
+        assertEquals("Statuses did not match", result.getStatuses(), decodedResult.getStatuses());
+    }
+}
@@ -1,5 +1,6 @@
 package dk.mmj.evhe.crypto;
 
+import dk.mmj.evhe.crypto.group.Group;
 import dk.mmj.evhe.crypto.keygeneration.KeyGenerationParameters;
 import dk.mmj.evhe.crypto.zeroknowledge.DLogProofTestUtils;
 import dk.mmj.evhe.crypto.zeroknowledge.DLogProofUtils;
@@ -15,7 +16,10 @@ import java.util.stream.Collectors;
 
 import static dk.mmj.evhe.crypto.TestUtils.getKeyGenParamsFromP2048bitsG2;
 import static dk.mmj.evhe.crypto.TestUtils.getKeyGenParamsFromP227G172;
+import static dk.mmj.evhe.crypto.TestUtils.getKeyGenParamsFromP256;
+import static dk.mmj.evhe.crypto.TestUtils.getKeyGenParamsFromSchnorrGroup2048bits;
 import static dk.mmj.evhe.crypto.zeroknowledge.DLogProofUtils.generateProof;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class TestDLogProofUtils {
@@ -110,4 +114,53 @@ public class TestDLogProofUtils {
         boolean verification = DLogProofUtils.verifyProof(cipherText, partialDecryption, partialPublicKey, fakeproofs.get(1), 1);
         assertTrue("Couldn't verify proof.", verification);
     }
+
+    @Test
+    public void shouldVerifyProofOnEllipticCurve() {
+        KeyGenerationParameters params = getKeyGenParamsFromP256();
+        DistKeyGenResult distKeyGenResult = ElGamal.generateDistributedKeys(params, 1, 3);
+        Group group = params.getGroup();
+        String curve = distKeyGenResult.getCurve();
+        BigInteger g = distKeyGenResult.getG();
+        BigInteger q = distKeyGenResult.getQ();
+
+        BigInteger h = SecurityUtils.combinePartials(distKeyGenResult.getPublicValues(), group);
+        CipherText cipherText = ElGamal.homomorphicEncryption(new PublicKey(h, g, q, curve), BigInteger.valueOf(1));
+
+        BigInteger secretValue = distKeyGenResult.getSecretValues().get(1);
+        PublicKey partialPublicKey = new PublicKey(distKeyGenResult.getPublicValues().get(1), g, q, curve);
+        DLogProofUtils.Proof proof = generateProof(cipherText, secretValue, partialPublicKey, 1);
+
+        CipherText partialDecryption = new CipherText(SecurityUtils.computePartial(cipherText.getC(), secretValue, group), cipherText.getD());
+        assertTrue("Couldn't verify proof.", DLogProofUtils.verifyProof(cipherText, partialDecryption, partialPublicKey, proof, 1));
+
+        CipherText wrongDecryption = new CipherText(group.multiply(partialDecryption.getC(), g), cipherText.getD());
+        assertFalse("Verified proof of wrong partial decryption.", DLogProofUtils.verifyProof(cipherText, wrongDecryption, partialPublicKey, proof, 1));
+    }
+
+    /**
+     * An authority decrypting a sum of votes outside G_q gives a partial decryption outside G_q,
+     * which must be rejected even with a proof computed honestly over it
+     */
+    @Test
+    public void shouldNotVerifyPartialDecryptionOfSmallOrderInSchnorrGroup() {
+        KeyGenerationParameters params = getKeyGenParamsFromSchnorrGroup2048bits();
+        DistKeyGenResult distKeyGenResult = ElGamal.generateDistributedKeys(params, 1, 3);
+        Group group = params.getGroup();
+        BigInteger p = distKeyGenResult.getP();
+        BigInteger g = distKeyGenResult.getG();
+        BigInteger q = distKeyGenResult.getQ();
+
+        BigInteger h = SecurityUtils.combinePartials(distKeyGenResult.getPublicValues(), group);
+        CipherText honest = ElGamal.homomorphicEncryption(new PublicKey(h, g, q, p, null), BigInteger.valueOf(1));
+        CipherText cipherText = new CipherText(honest.getC().multiply(p.subtract(BigInteger.ONE)).mod(p), honest.getD());
+
+        BigInteger secretValue = distKeyGenResult.getSecretValues().get(1);
+        PublicKey partialPublicKey = new PublicKey(distKeyGenResult.getPublicValues().get(1), g, q, p, null);
+        DLogProofUtils.Proof proof = generateProof(cipherText, secretValue, partialPublicKey, 1);
+        CipherText partialDecryption = new CipherText(SecurityUtils.computePartial(cipherText.getC(), secretValue, group), cipherText.getD());
+
+        assertFalse("Verified proof of partial decryption outside the group.",
+                DLogProofUtils.verifyProof(cipherText, partialDecryption, partialPublicKey, proof, 1));
+    }
 }
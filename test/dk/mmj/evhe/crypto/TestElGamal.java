@@ -2,6 +2,8 @@ package dk.mmj.evhe.crypto;
 
 import dk.mmj.evhe.entities.*;
 import dk.mmj.evhe.crypto.exceptions.UnableToDecryptException;
+import dk.mmj.evhe.crypto.group.Group;
+import dk.mmj.evhe.crypto.group.ModPGroup;
 import dk.mmj.evhe.crypto.keygeneration.KeyGenerationParameters;
 import org.junit.Assert;
 import org.junit.Test;
@@ -15,6 +17,8 @@ import java.util.stream.Collectors;
 
 import static dk.mmj.evhe.crypto.TestUtils.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class TestElGamal {
@@ -162,6 +166,164 @@ public class TestElGamal {
 
     }
 
+    @Test
+    public void shouldBeAbleToDecryptLargeValue() {
+        try {
+            KeyPair keyPair = generateKeysFromP2048bitsG2();
+            CipherText cipherText = ElGamal.homomorphicEncryption(keyPair.getPublicKey(), BigInteger.valueOf(987_654));
+            int m = ElGamal.homomorphicDecryption(keyPair, cipherText, 1_000_000);
+
+            assertEquals(987_654, m);
+        } catch (UnableToDecryptException e) {
+            fail("Was unable to decrypt encrypted value, with message: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Max is exclusive, so the largest decryptable value is max - 1
+     */
+    @Test
+    public void shouldBeAbleToDecryptMaxMinusOne() {
+        try {
+            KeyPair keyPair = generateKeysFromP2048bitsG2();
+            CipherText cipherText = ElGamal.homomorphicEncryption(keyPair.getPublicKey(), BigInteger.valueOf(99));
+            int m = ElGamal.homomorphicDecryption(keyPair, cipherText, 100);
+
+            assertEquals(99, m);
+        } catch (UnableToDecryptException e) {
+            fail("Was unable to decrypt encrypted value, with message: " + e.getMessage());
+        }
+    }
+
+    @Test(expected = UnableToDecryptException.class)
+    public void shouldFailWhenValueEqualsMax() throws UnableToDecryptException {
+        KeyPair keyPair = generateKeysFromP2048bitsG2();
+        CipherText cipherText = ElGamal.homomorphicEncryption(keyPair.getPublicKey(), BigInteger.valueOf(100));
+
+        ElGamal.homomorphicDecryption(keyPair, cipherText, 100);
+    }
+
+    @Test
+    public void shouldBeAbleToEncryptAndDecryptOnEllipticCurve() {
+        try {
+            KeyPair keyPair = generateKeysFromP256();
+            for (int message : new int[]{0, 1, 857}) {
+                CipherText cipherText = ElGamal.homomorphicEncryption(keyPair.getPublicKey(), BigInteger.valueOf(message));
+                int m = ElGamal.homomorphicDecryption(keyPair, cipherText, maxIterations);
+
+                assertEquals(message, m);
+            }
+        } catch (UnableToDecryptException e) {
+            fail("Was unable to decrypt encrypted value, with message: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void testHomomorphicAdditionOnEllipticCurve() {
+        try {
+            KeyPair keyPair = generateKeysFromP256();
+            PublicKey publicKey = keyPair.getPublicKey();
+            CipherText cipherText1 = ElGamal.homomorphicEncryption(publicKey, BigInteger.valueOf(400));
+            CipherText cipherText2 = ElGamal.homomorphicEncryption(publicKey, BigInteger.valueOf(57));
+
+            CipherText sum = ElGamal.homomorphicAddition(cipherText1, cipherText2, publicKey.getGroup());
+            int b = ElGamal.homomorphicDecryption(keyPair, sum, maxIterations);
+
+            assertEquals(457, b);
+        } catch (UnableToDecryptException e) {
+            fail("Was unable to decrypt encrypted value, with message: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldBeAbleToDecryptPartialsOnEllipticCurve() throws UnableToDecryptException {
+        KeyGenerationParameters params = getKeyGenParamsFromP256();
+        DistKeyGenResult distKeyGenResult = ElGamal.generateDistributedKeys(params, 1, 3);
+        Group group = params.getGroup();
+
+        BigInteger h = SecurityUtils.combinePartials(distKeyGenResult.getPublicValues(), group);
+        PublicKey publicKey = new PublicKey(h, distKeyGenResult.getG(), distKeyGenResult.getQ(), distKeyGenResult.getCurve());
+        CipherText cipherText = ElGamal.homomorphicEncryption(publicKey, BigInteger.valueOf(857));
+
+        Map<Integer, BigInteger> partialDecryptions = distKeyGenResult.getSecretValues().entrySet().stream()
+                .filter(e -> e.getKey() != 2)
+                .collect(Collectors.toMap(
+                        Map.Entry::getKey,
+                        e -> ElGamal.partialDecryption(cipherText.getC(), e.getValue(), group)
+                ));
+
+        BigInteger combinedPartialDecryptions = SecurityUtils.combinePartials(partialDecryptions, group);
+        int m = ElGamal.homomorphicDecryptionFromPartials(cipherText.getD(), combinedPartialDecryptions, distKeyGenResult.getG(), group, maxIterations);
+
+        assertEquals(857, m);
+    }
+
+    @Test
+    public void shouldBeAbleToDecryptPartialsInSchnorrGroup() throws UnableToDecryptException {
+        KeyGenerationParameters params = getKeyGenParamsFromSchnorrGroup2048bits();
+        DistKeyGenResult distKeyGenResult = ElGamal.generateDistributedKeys(params, 1, 3);
+        Group group = params.getGroup();
+
+        BigInteger h = SecurityUtils.combinePartials(distKeyGenResult.getPublicValues(), group);
+        PublicKey publicKey = new PublicKey(h, distKeyGenResult.getG(), distKeyGenResult.getQ(), distKeyGenResult.getP(), null);
+        CipherText cipherText = ElGamal.homomorphicAddition(
+                ElGamal.homomorphicEncryption(publicKey, BigInteger.valueOf(800)),
+                ElGamal.homomorphicEncryption(publicKey, BigInteger.valueOf(57)),
+                publicKey.getGroup());
+
+        Map<Integer, BigInteger> partialDecryptions = distKeyGenResult.getSecretValues().entrySet().stream()
+                .filter(e -> e.getKey() != 1)
+                .collect(Collectors.toMap(
+                        Map.Entry::getKey,
+                        e -> ElGamal.partialDecryption(cipherText.getC(), e.getValue(), group)
+                ));
+
+        BigInteger combinedPartialDecryptions = SecurityUtils.combinePartials(partialDecryptions, group);
+        int m = ElGamal.homomorphicDecryptionFromPartials(cipherText.getD(), combinedPartialDecryptions, distKeyGenResult.getG(), group, maxIterations);
+
+        assertEquals(857, m);
+    }
+
+    /**
+     * p = 23 = 2 * 11 + 1 is a safe prime, where G_11 is the quadratic residues
+     */
+    @Test
+    public void shouldRecogniseElementsOfSafePrimeGroup() {
+        Group group = new ModPGroup(BigInteger.valueOf(23), BigInteger.valueOf(11));
+
+        for (int value = 1; value < 23; value++) {
+            boolean residue = BigInteger.valueOf(value).modPow(BigInteger.valueOf(11), BigInteger.valueOf(23)).equals(BigInteger.ONE);
+            assertEquals("Wrong membership of " + value, residue, group.isElement(BigInteger.valueOf(value)));
+        }
+
+        assertFalse("0 is not an element", group.isElement(BigInteger.ZERO));
+        assertFalse("p is not an element", group.isElement(BigInteger.valueOf(23)));
+        assertFalse("Negative values are not elements", group.isElement(BigInteger.valueOf(-2)));
+    }
+
+    /**
+     * p = 31 = 6 * 5 + 1, so Z_31^* has subgroups of order 2, 3 and 6 besides G_5 = {1, 2, 4, 8, 16}
+     */
+    @Test
+    public void shouldRejectElementsOfSmallOrderInSchnorrGroup() {
+        Group group = new ModPGroup(BigInteger.valueOf(31), BigInteger.valueOf(5));
+        List<Integer> elements = Arrays.asList(1, 2, 4, 8, 16);
+
+        for (int value = 1; value < 31; value++) {
+            assertEquals("Wrong membership of " + value, elements.contains(value), group.isElement(BigInteger.valueOf(value)));
+        }
+    }
+
+    @Test
+    public void shouldRecogniseElementsOfEllipticCurve() {
+        Group group = getKeyGenParamsFromP256().getGroup();
+        BigInteger g = getKeyGenParamsFromP256().getGenerator();
+
+        assertTrue("Generator is an element", group.isElement(g));
+        assertTrue("Identity is an element", group.isElement(group.getIdentity()));
+        assertFalse("Value not on the curve is an element", group.isElement(BigInteger.valueOf(12345)));
+    }
+
     private int testPartialDecryptionSetup(int message, List<Integer> excludedIndexes) throws UnableToDecryptException {
         KeyGenerationParameters params = getKeyGenParamsFromP2048bitsG2();
         DistKeyGenResult distKeyGenResult = ElGamal.generateDistributedKeys(params, 1, 3);
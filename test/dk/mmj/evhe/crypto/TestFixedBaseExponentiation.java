@@ -0,0 +1,64 @@
+package dk.mmj.evhe.crypto;
+
+import dk.mmj.evhe.crypto.keygeneration.KeyGenerationParameters;
+import dk.mmj.evhe.entities.KeyPair;
+import dk.mmj.evhe.entities.PublicKey;
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static dk.mmj.evhe.crypto.TestUtils.*;
+import static org.junit.Assert.assertEquals;
+
+public class TestFixedBaseExponentiation {
+
+    /**
+     * Uses the base more than enough times for the table to be built, and compares each result with modPow
+     */
+    private void testAgainstModPow(PublicKey publicKey, BigInteger base) {
+        BigInteger p = publicKey.getP();
+
+        for (int i = 0; i < 300; i++) {
+            BigInteger exponent = SecurityUtils.getRandomNumModN(publicKey.getQ());
+            assertEquals("Result differed from modPow", base.modPow(exponent, p), FixedBaseExponentiation.modPow(base, exponent, publicKey));
+        }
+    }
+
+    @Test
+    public void shouldMatchModPowForGeneratorWith2048bitP() {
+        PublicKey publicKey = generateKeysFromP2048bitsG2().getPublicKey();
+        testAgainstModPow(publicKey, publicKey.getG());
+    }
+
+    @Test
+    public void shouldMatchModPowForHWith2048bitP() {
+        PublicKey publicKey = generateKeysFromP2048bitsG2().getPublicKey();
+        testAgainstModPow(publicKey, publicKey.getH());
+    }
+
+    @Test
+    public void shouldMatchModPowWithSingleLimbP() {
+        KeyGenerationParameters params = getKeyGenParamsFromP227G172();
+        PublicKey publicKey = new PublicKey(BigInteger.valueOf(9), params.getGenerator(), params.getPrimePair().getQ());
+        testAgainstModPow(publicKey, publicKey.getG());
+    }
+
+    @Test
+    public void shouldHandleEdgeExponents() {
+        KeyPair keyPair = generateKeysFromP2048bitsG2();
+        PublicKey publicKey = keyPair.getPublicKey();
+        BigInteger p = publicKey.getP();
+        BigInteger h = publicKey.getH();
+
+        testAgainstModPow(publicKey, h);
+
+        assertEquals("Wrong result for exponent 0", BigInteger.ONE, FixedBaseExponentiation.modPow(h, BigInteger.ZERO, publicKey));
+        assertEquals("Wrong result for exponent 1", h.mod(p), FixedBaseExponentiation.modPow(h, BigInteger.ONE, publicKey));
+
+        BigInteger large = p.multiply(BigInteger.TEN);
+        assertEquals("Wrong result for exponent larger than table", h.modPow(large, p), FixedBaseExponentiation.modPow(h, large, publicKey));
+
+        BigInteger negative = BigInteger.valueOf(-5);
+        assertEquals("Wrong result for negative exponent", h.modPow(negative, p), FixedBaseExponentiation.modPow(h, negative, publicKey));
+    }
+}
@@ -0,0 +1,78 @@
+package dk.mmj.evhe.crypto;
+
+import dk.mmj.evhe.entities.PublicKey;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static dk.mmj.evhe.crypto.TestUtils.generateKeysFromP2048bitsG2;
+import static org.junit.Assert.assertEquals;
+
+public class TestModularProductAccumulator {
+    private final BigInteger p = generateKeysFromP2048bitsG2().getPublicKey().getP();
+    private final Random random = new Random(42);
+
+    @Test
+    public void shouldMatchProductModP() {
+        ModularProductAccumulator accumulator = new ModularProductAccumulator(p);
+        BigInteger expected = BigInteger.ONE;
+
+        for (int i = 0; i < 100; i++) {
+            BigInteger value = new BigInteger(p.bitLength() - 1, random);
+            accumulator.multiply(value);
+            expected = expected.multiply(value).mod(p);
+        }
+
+        assertEquals("Product did not match", expected, accumulator.getProduct());
+    }
+
+    @Test
+    public void shouldReduceFactorsOutsideRange() {
+        ModularProductAccumulator accumulator = new ModularProductAccumulator(p);
+        BigInteger large = p.multiply(BigInteger.valueOf(3)).add(BigInteger.valueOf(5));
+        BigInteger negative = BigInteger.valueOf(-7);
+
+        accumulator.multiply(large);
+        accumulator.multiply(negative);
+
+        assertEquals("Product did not match", large.multiply(negative).mod(p), accumulator.getProduct());
+    }
+
+    @Test
+    public void shouldHoldOneWhenEmpty() {
+        assertEquals("Empty product was not 1", BigInteger.ONE, new ModularProductAccumulator(p).getProduct());
+    }
+
+    @Test
+    public void shouldCombineAccumulators() {
+        ModularProductAccumulator left = new ModularProductAccumulator(p);
+        ModularProductAccumulator right = new ModularProductAccumulator(p);
+        BigInteger expected = BigInteger.ONE;
+
+        for (int i = 0; i < 10; i++) {
+            BigInteger value = new BigInteger(p.bitLength() - 1, random);
+            (i % 3 == 0 ? left : right).multiply(value);
+            expected = expected.multiply(value).mod(p);
+        }
+
+        left.multiply(right);
+        assertEquals("Combined product did not match", expected, left.getProduct());
+
+        left.multiply(left);
+        assertEquals("Squared product did not match", expected.multiply(expected).mod(p), left.getProduct());
+    }
+
+    @Test
+    public void shouldMatchGroupOfPublicKey() {
+        PublicKey publicKey = generateKeysFromP2048bitsG2().getPublicKey();
+        BigInteger g = publicKey.getG();
+        BigInteger h = publicKey.getH();
+
+        ModularProductAccumulator accumulator = new ModularProductAccumulator(publicKey.getP());
+        accumulator.multiply(g);
+        accumulator.multiply(h);
+
+        assertEquals("Product did not match", publicKey.getGroup().multiply(g, h), accumulator.getProduct());
+    }
+}
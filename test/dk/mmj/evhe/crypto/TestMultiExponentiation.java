@@ -0,0 +1,85 @@
+package dk.mmj.evhe.crypto;
+
+import dk.mmj.evhe.entities.PublicKey;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static dk.mmj.evhe.crypto.TestUtils.generateKeysFromP2048bitsG2;
+import static org.junit.Assert.assertEquals;
+
+public class TestMultiExponentiation {
+
+    private static BigInteger naiveProduct(BigInteger[] bases, BigInteger[] exponents, BigInteger p) {
+        BigInteger acc = BigInteger.ONE;
+        for (int i = 0; i < bases.length; i++) {
+            acc = acc.multiply(bases[i].modPow(exponents[i], p)).mod(p);
+        }
+        return acc;
+    }
+
+    @Test
+    public void shouldMatchModPowForFullSizeExponents() {
+        PublicKey publicKey = generateKeysFromP2048bitsG2().getPublicKey();
+        BigInteger p = publicKey.getP();
+        BigInteger[] bases = {publicKey.getG(), publicKey.getH()};
+
+        for (int i = 0; i < 5; i++) {
+            BigInteger[] exponents = {
+                    SecurityUtils.getRandomNumModN(publicKey.getQ()),
+                    SecurityUtils.getRandomNumModN(publicKey.getQ())
+            };
+
+            assertEquals("Product did not match modPow", naiveProduct(bases, exponents, p),
+                    MultiExponentiation.modPow(bases, exponents, p));
+        }
+    }
+
+    @Test
+    public void shouldMatchModPowForManyShortExponents() {
+        BigInteger p = generateKeysFromP2048bitsG2().getPublicKey().getP();
+        Random random = new Random(42);
+        BigInteger[] bases = new BigInteger[40];
+        BigInteger[] exponents = new BigInteger[40];
+
+        for (int i = 0; i < bases.length; i++) {
+            bases[i] = new BigInteger(p.bitLength() + 8, random);
+            exponents[i] = new BigInteger(1 + random.nextInt(64), random);
+        }
+        exponents[7] = BigInteger.ZERO;
+        exponents[8] = BigInteger.ONE;
+
+        assertEquals("Product did not match modPow", naiveProduct(bases, exponents, p),
+                MultiExponentiation.modPow(bases, exponents, p));
+    }
+
+    @Test
+    public void shouldHandleZeroExponents() {
+        BigInteger p = BigInteger.valueOf(23);
+        BigInteger[] bases = {BigInteger.valueOf(2), BigInteger.valueOf(3)};
+        BigInteger[] exponents = {BigInteger.ZERO, BigInteger.ZERO};
+
+        assertEquals(BigInteger.ONE, MultiExponentiation.modPow(bases, exponents, p));
+        assertEquals(BigInteger.ONE, MultiExponentiation.modPow(new BigInteger[0], new BigInteger[0], p));
+    }
+
+    @Test
+    public void shouldFallBackForNegativeExponentsAndEvenModulus() {
+        BigInteger[] bases = {BigInteger.valueOf(2), BigInteger.valueOf(3)};
+        BigInteger[] negative = {BigInteger.valueOf(-5), BigInteger.valueOf(7)};
+        BigInteger[] positive = {BigInteger.valueOf(5), BigInteger.valueOf(7)};
+
+        BigInteger p = BigInteger.valueOf(23);
+        assertEquals(naiveProduct(bases, negative, p), MultiExponentiation.modPow(bases, negative, p));
+
+        BigInteger even = BigInteger.valueOf(25 * 4);
+        assertEquals(naiveProduct(new BigInteger[]{BigInteger.valueOf(3), BigInteger.valueOf(7)}, positive, even),
+                MultiExponentiation.modPow(new BigInteger[]{BigInteger.valueOf(3), BigInteger.valueOf(7)}, positive, even));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMismatchedArguments() {
+        MultiExponentiation.modPow(new BigInteger[]{BigInteger.ONE}, new BigInteger[0], BigInteger.valueOf(23));
+    }
+}
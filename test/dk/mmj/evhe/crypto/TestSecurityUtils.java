@@ -32,6 +32,21 @@ public class TestSecurityUtils {
         }
     }
 
+    @Test
+    public void shouldCreateCorrectVotesFromPrecomputationPool() throws UnableToDecryptException {
+        KeyPair keyPair = generateKeysFromP2048bitsG2();
+        PublicKey publicKey = keyPair.getPublicKey();
+
+        try (VotePrecomputationPool pool = new VotePrecomputationPool(publicKey, 4, 1)) {
+            for (int i = 0; i < 6; i++) {
+                VoteDTO voteDTO = pool.generateVote(i % 2, "TESTID" + i);
+
+                assertTrue("Unable to verify generated vote", VoteProofUtils.verifyProof(voteDTO, publicKey));
+                assertEquals("Decrypted message to wrong value", i % 2, ElGamal.homomorphicDecryption(keyPair, voteDTO.getCipherText(), 1000));
+            }
+        }
+    }
+
     @Test
     public void shouldCreateCorrectVote0() {
         KeyPair keyPair = generateKeysFromP2048bitsG2();
@@ -231,6 +246,20 @@ public class TestSecurityUtils {
         assertEquals("Sums did not match.", oldSum, concSum);
     }
 
+    @Test
+    public void shouldBeSameSumWithAdaptivePartitionsOnEllipticCurve() {
+        PublicKey publicKey = generateKeysFromP256().getPublicKey();
+
+        int amount = 600;
+        List<? extends VoteDTO> votes = generateVotes(amount, publicKey);
+
+        CipherText oldSum = SecurityUtils.voteSum(votes, publicKey);
+
+        CipherText concSum = SecurityUtils.concurrentVoteSum(votes, publicKey);
+
+        assertEquals("Sums did not match.", oldSum, concSum);
+    }
+
     @Test
     public void benchmarkFilter() {
         KeyPair keyPair = generateKeysFromP2048bitsG2();
@@ -246,4 +275,24 @@ public class TestSecurityUtils {
 
         assertEquals("Filters did not match in results", collect.size(), collectConc.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldComputeJacobiSymbolAsQuadraticResiduosity() {
+        BigInteger p = BigInteger.valueOf(23);
+        BigInteger q = BigInteger.valueOf(11);
+
+        for (int a = 0; a < 23; a++) {
+            BigInteger value = BigInteger.valueOf(a);
+            int expected = a == 0 ? 0 : value.modPow(q, p).equals(BigInteger.ONE) ? 1 : -1;
+
+            assertEquals("Wrong Jacobi symbol for " + a, expected, SecurityUtils.jacobiSymbol(value, p));
+        }
+    }
+
+    @Test
+    public void shouldComputeJacobiSymbolForCompositeModulus() {
+        assertEquals(1, SecurityUtils.jacobiSymbol(BigInteger.valueOf(2), BigInteger.valueOf(15)));
+        assertEquals(-1, SecurityUtils.jacobiSymbol(BigInteger.valueOf(7), BigInteger.valueOf(15)));
+        assertEquals(0, SecurityUtils.jacobiSymbol(BigInteger.valueOf(6), BigInteger.valueOf(15)));
+    }
+}
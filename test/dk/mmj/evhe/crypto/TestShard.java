@@ -0,0 +1,63 @@
+package dk.mmj.evhe.crypto;
+
+import dk.mmj.evhe.entities.Shard;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class TestShard {
+
+    @Test
+    public void shouldAssignEachVoterToOneShard() {
+        int count = 5;
+        Shard[] shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(i, count);
+        }
+
+        for (int v = 0; v < 1000; v++) {
+            String id = "voter" + v;
+            int index = Shard.of(id, count);
+
+            assertTrue("Shard index out of range", index >= 0 && index < count);
+            assertEquals("Voter was assigned to another shard the second time", index, Shard.of(id, count));
+            for (int i = 0; i < count; i++) {
+                assertEquals("Wrong owner of " + id, i == index, shards[i].owns(id));
+            }
+        }
+    }
+
+    @Test
+    public void shouldOwnEveryVoterWhenNotSharded() {
+        Shard single = new Shard(0, 1);
+        Shard unset = new Shard();
+
+        for (int v = 0; v < 100; v++) {
+            assertTrue("Single shard did not own voter", single.owns("voter" + v));
+            assertTrue("Shard without count did not own voter", unset.owns("voter" + v));
+        }
+    }
+
+    /**
+     * Ids differing only in their last characters, and random ids, must be spread evenly over the shards
+     */
+    @Test
+    public void shouldSpreadVotersEvenly() {
+        int count = 4;
+        int voters = 20_000;
+        int[] sequential = new int[count];
+        int[] random = new int[count];
+
+        for (int v = 0; v < voters; v++) {
+            sequential[Shard.of("voter" + v, count)]++;
+            random[Shard.of(UUID.randomUUID().toString(), count)]++;
+        }
+
+        for (int i = 0; i < count; i++) {
+            assertEquals("Sequential ids were not spread evenly", voters / count, sequential[i], voters / count / 10);
+            assertEquals("Random ids were not spread evenly", voters / count, random[i], voters / count / 10);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package dk.mmj.evhe.crypto;
 
+import dk.mmj.evhe.crypto.keygeneration.EllipticCurveKeyGenerationParameters;
 import dk.mmj.evhe.crypto.keygeneration.KeyGenerationParameters;
 import dk.mmj.evhe.crypto.keygeneration.PersistedKeyParameters;
 import dk.mmj.evhe.entities.KeyPair;
@@ -21,7 +22,8 @@ class TestUtils {
         PrimePair primePair = params.getPrimePair();
 
         BigInteger secretKey = generateSecretKeyForTesting(primePair.getQ());
-        PublicKey publicKey = generatePublicKeyForTesting(secretKey, g, primePair.getQ());
+        BigInteger h = params.getGroup().pow(g, secretKey);
+        PublicKey publicKey = new PublicKey(h, g, primePair.getQ(), primePair.getP(), params.getCurve());
 
         return new KeyPair(secretKey, publicKey);
     }
@@ -30,13 +32,6 @@ class TestUtils {
         return SecurityUtils.getRandomNumModN(q);
     }
 
-    private static PublicKey generatePublicKeyForTesting(BigInteger secretKey, BigInteger g, BigInteger q) {
-        BigInteger p = q.multiply(BigInteger.valueOf(2)).add(BigInteger.ONE);
-        BigInteger h = g.modPow(secretKey, p);
-
-        return new PublicKey(h, g, q);
-    }
-
     static KeyPair generateKeysFromP11G2() {
         return generateKeysForTesting(getKeyGenParamsFromP11G2());
     }
@@ -45,11 +40,33 @@ class TestUtils {
         return generateKeysForTesting(getKeyGenParamsFromP2048bitsG2());
     }
 
+    static KeyPair generateKeysFromP256() {
+        return generateKeysForTesting(getKeyGenParamsFromP256());
+    }
+
+    static KeyGenerationParameters getKeyGenParamsFromP256() {
+        return new EllipticCurveKeyGenerationParameters("P-256");
+    }
+
     static KeyGenerationParameters getKeyGenParamsFromP2048bitsG2() {
         String pString = "FFFFFFFF FFFFFFFF C90FDAA2 2168C234 C4C6628B 80DC1CD1 29024E08 8A67CC74 020BBEA6 3B139B22 514A0879 8E3404DD EF9519B3 CD3A431B 302B0A6D F25F1437 4FE1356D 6D51C245 E485B576 625E7EC6 F44C42E9 A637ED6B 0BFF5CB6 F406B7ED EE386BFB 5A899FA5 AE9F2411 7C4B1FE6 49286651 ECE45B3D C2007CB8 A163BF05 98DA4836 1C55D39A 69163FA8 FD24CF5F 83655D23 DCA3AD96 1C62F356 208552BB 9ED52907 7096966D 670C354E 4ABC9804 F1746C08 CA18217C 32905E46 2E36CE3B E39E772C 180E8603 9B2783A2 EC07A28F B5C55DF0 6F4C52C9 DE2BCBF6 95581718 3995497C EA956AE5 15D22618 98FA0510 15728E5A 8AACAA68 FFFFFFFF FFFFFFFF";
         return new PersistedKeyParameters(pString, "2");
     }
 
+    static KeyPair generateKeysFromSchnorrGroup2048bits() {
+        return generateKeysForTesting(getKeyGenParamsFromSchnorrGroup2048bits());
+    }
+
+    /**
+     * Schnorr group with 2048 bit p and 256 bit q, where p = kq + 1
+     */
+    static KeyGenerationParameters getKeyGenParamsFromSchnorrGroup2048bits() {
+        String pString = "A2050D73 3EDBA436 A5D46059 A357FD34 D7D20B1A DB20E6BA DA662043 80569D14 9011DAC1 72023B42 77337AFE B7A7DD9A 303491DF EFB5F447 86FC1E84 8632D459 02C8D69B 776CE6D4 3C77304D BCEBD267 EC322C05 7386C892 5AB00F1E E2FA75DD F3ECA96A 227EAE51 0128C01E 6A521128 C240DE9D 6CEBE2AC 612F0069 5C99A737 2D38FE1D D63E208E 07DA8DE2 21DDF70F 55933841 572D8E6C 1DB96D2F 33135DD5 0F1D8417 86C7A253 9A491EE9 21C9607C 1E55BF3C B41C513A BFFB1531 074FE339 7C716585 CBA5A1E3 EC420A9E 56F0A2D8 95D46D66 FD69E031 CF5BED47 CE37226B 485CC7D0 F26A4166 D7FD658B 8071BFF4 6017D648 5B38672C 34AED679 DAE6390B";
+        String qString = "A003A659 1B00E31B 32973AA5 B3E6560B 74928150 C1CDDC7A DC074B24 E0363B09";
+        String gString = "70EA6190 F5228F2D A87A80ED 32C0CB7F FE523711 5A164B02 C6A62A84 4DC6704A 28158B54 3C1A78FD B6CA2D92 A6188952 4DFE4A82 654DC726 91172D9E 5934C796 05DB2B47 23279C4B 2922B9A9 0D9155E8 7E228C7F 84FC7F52 74900AD7 4DD19B5E D12EC176 DE73ED79 BF648B35 BE371C30 77074758 D77EE24D 933CCA7F A23A03EF B60FEF09 B3EC362D 80E8FE3B 849E3532 5AFE95E3 BA7A565F 8889DB64 2D2F2426 CC66D6D4 24178FDD C01029B7 4D717DAE 4C585B38 5664950B DDFA5654 E1E3BF8B B5CBCC3C 6E9B4309 9CE002FF F8C40509 7D799686 4E9F8798 985DA11F AA8141C6 F36C4D91 BBDBC3A6 5A6ADEB4 521F9104 8DAAAB62 9EE93FAB 82FE4C76 158E0F77";
+        return new PersistedKeyParameters(pString, qString, gString);
+    }
+
     static KeyGenerationParameters getKeyGenParamsFromP11G2() {
         PrimePair primes = new PrimePair(new BigInteger("11"), new BigInteger("5"));
         BigInteger g = new BigInteger("2");
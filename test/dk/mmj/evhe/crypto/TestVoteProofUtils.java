@@ -1,24 +1,32 @@
 package dk.mmj.evhe.crypto;
 
-import dk.mmj.evhe.entities.CipherText;
-import dk.mmj.evhe.entities.KeyPair;
-import dk.mmj.evhe.entities.PublicKey;
+import dk.mmj.evhe.entities.*;
 import dk.mmj.evhe.crypto.zeroknowledge.VoteProofUtils;
-import dk.mmj.evhe.entities.VoteDTO;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import static dk.mmj.evhe.crypto.TestUtils.generateKeysFromP2048bitsG2;
+import static dk.mmj.evhe.crypto.TestUtils.generateKeysFromP256;
+import static dk.mmj.evhe.crypto.TestUtils.generateKeysFromSchnorrGroup2048bits;
+import static dk.mmj.evhe.crypto.TestUtils.generateVotes;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class TestVoteProofUtils {
     private static String id = "testid42";
 
     private boolean createCiphertextAndProof(int vote, String cipherTextId, String proofId) {
-        KeyPair keyPair = generateKeysFromP2048bitsG2();
+        return createCiphertextAndProof(vote, cipherTextId, proofId, generateKeysFromP2048bitsG2());
+    }
 
+    private boolean createCiphertextAndProof(int vote, String cipherTextId, String proofId, KeyPair keyPair) {
         PublicKey publicKey = keyPair.getPublicKey();
 
         BigInteger r = SecurityUtils.getRandomNumModN(publicKey.getQ());
@@ -106,5 +114,129 @@ public class TestVoteProofUtils {
 
         assertFalse("Verified proof where ciphertext had been replaced", verify);
     }
-}
 
+    @Test
+    public void shouldBatchVerifyValidProofs() {
+        PublicKey publicKey = generateKeysFromP2048bitsG2().getPublicKey();
+        List<PersistedVote> votes = generateVotes(40, publicKey);
+
+        List<PersistedVote> verified = VoteProofUtils.verifyProofs(votes, publicKey);
+
+        assertEquals("Batch verification discarded valid proofs", votes, verified);
+    }
+
+    /**
+     * Changing z keeps the challenge valid, so the invalid proofs are only caught by the batch equation
+     */
+    @Test
+    public void shouldLocateInvalidProofsInBatch() {
+        PublicKey publicKey = generateKeysFromP2048bitsG2().getPublicKey();
+        List<PersistedVote> votes = generateVotes(40, publicKey);
+
+        List<PersistedVote> invalid = new ArrayList<>();
+        for (int i : new int[]{3, 17, 18}) {
+            VoteDTO.Proof proof = votes.get(i).getProof();
+            proof.setZ0(proof.getZ0().add(BigInteger.ONE));
+            invalid.add(votes.get(i));
+        }
+
+        List<PersistedVote> verified = VoteProofUtils.verifyProofs(votes, publicKey);
+        List<PersistedVote> expected = votes.stream().filter(v -> !invalid.contains(v)).collect(Collectors.toList());
+
+        assertEquals("Batch verification did not discard exactly the invalid proofs", expected, verified);
+    }
+
+    /**
+     * Proofs without commitments, or with altered commitments, must give the same result as single verification
+     */
+    @Test
+    public void shouldVerifyProofsWithoutUsableCommitments() {
+        PublicKey publicKey = generateKeysFromP2048bitsG2().getPublicKey();
+        List<PersistedVote> votes = generateVotes(20, publicKey);
+
+        for (int i = 0; i < votes.size(); i++) {
+            VoteDTO.Proof proof = votes.get(i).getProof();
+            if (i % 2 == 0) {
+                votes.get(i).setProof(new VoteDTO.Proof(proof.getE0(), proof.getE1(), proof.getZ0(), proof.getZ1()));
+            } else {
+                proof.setA0(publicKey.getP().subtract(proof.getA0()));
+            }
+        }
+        votes.get(5).getProof().setZ1(BigInteger.TEN);
+
+        List<PersistedVote> verified = VoteProofUtils.verifyProofs(votes, publicKey);
+        List<PersistedVote> expected = votes.stream().filter(v -> VoteProofUtils.verifyProof(v, publicKey)).collect(Collectors.toList());
+
+        assertEquals("Batch verification differed from single verification", expected, verified);
+        assertEquals("Wrong number of verified votes", 19, verified.size());
+    }
+
+    @Test
+    public void shouldVerifyProofsOnEllipticCurve() {
+        KeyPair keyPair = generateKeysFromP256();
+
+        Assert.assertTrue("Proof verification failed.", createCiphertextAndProof(0, id, id, keyPair));
+        Assert.assertTrue("Proof verification failed.", createCiphertextAndProof(1, id, id, keyPair));
+        assertFalse("Proof verification succeeded, but should fail.", createCiphertextAndProof(1, id, "testid43", keyPair));
+        assertFalse("Proof verification succeeded, but should fail.", createCiphertextAndProof(2, id, id, keyPair));
+    }
+
+    @Test
+    public void shouldVerifyProofsInSchnorrGroup() {
+        KeyPair keyPair = generateKeysFromSchnorrGroup2048bits();
+
+        Assert.assertTrue("Proof verification failed.", createCiphertextAndProof(0, id, id, keyPair));
+        Assert.assertTrue("Proof verification failed.", createCiphertextAndProof(1, id, id, keyPair));
+        assertFalse("Proof verification succeeded, but should fail.", createCiphertextAndProof(1, id, "testid43", keyPair));
+        assertFalse("Proof verification succeeded, but should fail.", createCiphertextAndProof(2, id, id, keyPair));
+    }
+
+    @Test
+    public void shouldVerifyProofsFromPrecomputation() {
+        for (KeyPair keyPair : new KeyPair[]{generateKeysFromP2048bitsG2(), generateKeysFromSchnorrGroup2048bits(), generateKeysFromP256()}) {
+            PublicKey publicKey = keyPair.getPublicKey();
+
+            for (int vote = 0; vote <= 2; vote++) {
+                VotePrecomputation precomputation = SecurityUtils.precomputeVote(publicKey);
+                CipherText cipherText = ElGamal.homomorphicEncryption(publicKey, BigInteger.valueOf(vote), precomputation);
+                VoteDTO.Proof proof = VoteProofUtils.generateProof(cipherText, publicKey, precomputation, id, vote);
+
+                boolean verified = VoteProofUtils.verifyProof(new VoteDTO(cipherText, id, proof), publicKey);
+                assertEquals("Wrong verification of precomputed proof for vote " + vote, vote <= 1, verified);
+            }
+        }
+    }
+
+    /**
+     * Multiplying c by -1, of order 2, gives a ciphertext outside G_q.
+     * Whenever the challenge of the real branch is even, the proof still satisfies the verification equations,
+     * so only the membership check can reject it
+     */
+    @Test
+    public void shouldNotVerifyProofWhenCipherTextHasSmallOrderInSchnorrGroup() {
+        PublicKey publicKey = generateKeysFromSchnorrGroup2048bits().getPublicKey();
+        BigInteger minusOne = publicKey.getP().subtract(BigInteger.ONE);
+
+        VoteDTO vote;
+        do {
+            BigInteger r = SecurityUtils.getRandomNumModN(publicKey.getQ());
+            CipherText cipherText = ElGamal.homomorphicEncryption(publicKey, BigInteger.ONE, r);
+            cipherText.setC(cipherText.getC().multiply(minusOne).mod(publicKey.getP()));
+
+            VoteDTO.Proof proof = VoteProofUtils.generateProof(cipherText, publicKey, r, id, BigInteger.ONE);
+            vote = new VoteDTO(cipherText, id, proof);
+        } while (vote.getProof().getE1().testBit(0));
+
+        assertFalse("Proof verification succeeded, but should fail.", VoteProofUtils.verifyProof(vote, publicKey));
+        assertTrue("Batch verification accepted the vote", VoteProofUtils.verifyProofs(Collections.singletonList(vote), publicKey).isEmpty());
+    }
+
+    @Test
+    public void shouldNotVerifyProofWhenCipherTextIsNotOnCurve() {
+        PublicKey publicKey = generateKeysFromP256().getPublicKey();
+        VoteDTO vote = SecurityUtils.generateVote(1, id, publicKey);
+        vote.getCipherText().setC(BigInteger.valueOf(12345));
+
+        assertFalse("Proof verification succeeded, but should fail.", VoteProofUtils.verifyProof(vote, publicKey));
+    }
+}
@@ -51,4 +51,53 @@ public class TestKeyGenerationsParametersImpl {
         List<Integer> possibleGeneratorsForQ = possibleGeneratorsForP.stream().map(i -> (int) Math.pow(i.doubleValue(), 2.0)).collect(Collectors.toList());
         Assert.assertTrue(possibleGeneratorsForQ.contains(params.getGenerator().intValue()));
     }
+
+    /**
+     * Tests that a Schnorr group has p = kq + 1 with the requested bit lengths, and a generator of order q
+     */
+    @Test
+    public void testSchnorrGroupParameters() {
+        KeyGenerationParameters params = new KeyGenerationParametersImpl(512, 160, 50);
+        BigInteger p = params.getPrimePair().getP();
+        BigInteger q = params.getPrimePair().getQ();
+        BigInteger g = params.getGenerator();
+
+        Assert.assertEquals(512, p.bitLength());
+        Assert.assertEquals(160, q.bitLength());
+        Assert.assertTrue(p.isProbablePrime(50));
+        Assert.assertTrue(q.isProbablePrime(50));
+        Assert.assertEquals(BigInteger.ZERO, p.subtract(BigInteger.ONE).mod(q));
+        Assert.assertNotEquals(BigInteger.ONE, g);
+        Assert.assertEquals(BigInteger.ONE, g.modPow(q, p));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectOrderAsLongAsP() {
+        new KeyGenerationParametersImpl(160, 160, 50);
+    }
+
+    /**
+     * p = 31 = 6 * 5 + 1, where 2 has order 5
+     */
+    @Test
+    public void shouldAcceptPersistedSchnorrGroup() {
+        KeyGenerationParameters params = new PersistedKeyParameters("1F", "5", "2");
+
+        Assert.assertEquals(BigInteger.valueOf(31), params.getPrimePair().getP());
+        Assert.assertEquals(BigInteger.valueOf(5), params.getPrimePair().getQ());
+        Assert.assertEquals(BigInteger.valueOf(2), params.getGenerator());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectPersistedGeneratorOne() {
+        new PersistedKeyParameters("1F", "5", "1");
+    }
+
+    /**
+     * 3 generates all of Z_31^*, so it has order 30 instead of 5
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectPersistedGeneratorOfWrongOrder() {
+        new PersistedKeyParameters("1F", "5", "3");
+    }
 }
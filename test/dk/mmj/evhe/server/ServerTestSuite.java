@@ -0,0 +1,12 @@
+package dk.mmj.evhe.server;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+
+@Suite.SuiteClasses({
+        TestMetrics.class
+})
+public class ServerTestSuite {
+}
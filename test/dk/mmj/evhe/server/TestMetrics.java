@@ -0,0 +1,86 @@
+package dk.mmj.evhe.server;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestMetrics {
+
+    /**
+     * Scrapes all metrics. They are registered for the whole process, so each test uses names of its own
+     *
+     * @return the lines of the scrape
+     */
+    private static List<String> scrape() {
+        return Arrays.asList(Metrics.scrape().split("\n"));
+    }
+
+    private static void assertLine(String message, String expected, List<String> lines) {
+        assertTrue(message + ": missing \"" + expected + "\" in " + lines, lines.contains(expected));
+    }
+
+    @Test
+    public void shouldWriteHelpAndTypeBeforeSamples() {
+        Metrics.counter("test_metrics_help_total", "Counted\nthings").inc(3);
+        List<String> lines = scrape();
+
+        int help = lines.indexOf("# HELP test_metrics_help_total Counted things");
+        assertTrue("Missing help line with newline replaced", help >= 0);
+        assertEquals("Wrong type line", "# TYPE test_metrics_help_total counter", lines.get(help + 1));
+        assertEquals("Wrong sample", "test_metrics_help_total 3", lines.get(help + 2));
+    }
+
+    @Test
+    public void shouldEscapeLabelValues() {
+        Metrics.counter("test_metrics_labels_total", "Labelled", "path", "a\"b\\c\nd", "status", "200").inc();
+        Metrics.gauge("test_metrics_gauge", "Gauge", () -> 1.5, "kind", "plain");
+
+        List<String> lines = scrape();
+        assertLine("Label value was not escaped", "test_metrics_labels_total{path=\"a\\\"b\\\\c\\nd\",status=\"200\"} 1", lines);
+        assertLine("Gauge was not read", "test_metrics_gauge{kind=\"plain\"} 1.5", lines);
+    }
+
+    @Test
+    public void shouldWriteCumulativeBuckets() {
+        Metrics.Histogram histogram = Metrics.histogram("test_metrics_duration_seconds", "Durations", "endpoint", "get");
+        histogram.observe(0.5);
+        histogram.observe(2);
+        histogram.observe(100);
+
+        List<String> lines = scrape();
+        String prefix = "test_metrics_duration_seconds_bucket{endpoint=\"get\",le=";
+        assertLine("Wrong bucket below every observation", prefix + "\"0.25\"} 0", lines);
+        assertLine("Observation on a bound was not in its bucket", prefix + "\"0.5\"} 1", lines);
+        assertLine("Bucket was not cumulative", prefix + "\"1\"} 1", lines);
+        assertLine("Bucket was not cumulative", prefix + "\"2.5\"} 2", lines);
+        assertLine("Observation above every bound was in a bucket", prefix + "\"60\"} 2", lines);
+        assertLine("Wrong infinite bucket", prefix + "\"+Inf\"} 3", lines);
+        assertLine("Wrong sum", "test_metrics_duration_seconds_sum{endpoint=\"get\"} 102.5", lines);
+        assertLine("Wrong count", "test_metrics_duration_seconds_count{endpoint=\"get\"} 3", lines);
+    }
+
+    @Test
+    public void shouldReturnSameMetricForSameLabels() {
+        Metrics.counter("test_metrics_same_total", "Same", "a", "1").inc();
+        Metrics.counter("test_metrics_same_total", "Same", "a", "1").inc();
+        Metrics.counter("test_metrics_same_total", "Same", "a", "2").inc();
+
+        List<String> lines = scrape();
+        assertLine("Counts were not added", "test_metrics_same_total{a=\"1\"} 2", lines);
+        assertLine("Other labels were counted together", "test_metrics_same_total{a=\"2\"} 1", lines);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectOtherTypeOfSameName() {
+        Metrics.counter("test_metrics_typed", "Typed").inc();
+        Metrics.histogram("test_metrics_typed", "Typed");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectLabelWithoutValue() {
+        Metrics.counter("test_metrics_unpaired_total", "Unpaired", "endpoint");
+    }
+}
@@ -0,0 +1,22 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+
+@Suite.SuiteClasses({
+        TestRunningTally.class,
+        TestVoteStore.class,
+        TestBallotLog.class,
+        TestVoteIngestor.class,
+        TestConditionalRequests.class,
+        TestVotePages.class,
+        TestVoterIdSet.class,
+        TestBloomFilter.class,
+        TestVoterRoll.class,
+        TestStateSnapshotter.class,
+        TestElectionCloser.class
+})
+public class BulletinBoardTestSuite {
+}
@@ -0,0 +1,96 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import dk.mmj.evhe.crypto.ElGamal;
+import dk.mmj.evhe.crypto.SecurityUtils;
+import dk.mmj.evhe.crypto.keygeneration.EllipticCurveKeyGenerationParameters;
+import dk.mmj.evhe.entities.DistKeyGenResult;
+import dk.mmj.evhe.entities.PersistedVote;
+import dk.mmj.evhe.entities.PublicInformationEntity;
+import dk.mmj.evhe.entities.PublicKey;
+import dk.mmj.evhe.server.ServerState;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+class BulletinBoardTestUtils {
+
+    /**
+     * @param endTime end of the vote, in milliseconds since the epoch
+     * @return public information for a vote on P-256, with three authorities
+     */
+    static PublicInformationEntity publicInfo(long endTime) {
+        DistKeyGenResult keys = ElGamal.generateDistributedKeys(new EllipticCurveKeyGenerationParameters("P-256"), 1, 3);
+
+        return new PublicInformationEntity(keys.getAuthorityIds(), keys.getPublicValues(),
+                keys.getG(), keys.getQ(), keys.getP(), keys.getCurve(), endTime);
+    }
+
+    /**
+     * @return public information for a vote ending in an hour
+     */
+    static PublicInformationEntity publicInfo() {
+        return publicInfo(System.currentTimeMillis() + 3600_000);
+    }
+
+    static PublicKey publicKey(PublicInformationEntity info) {
+        BigInteger h = SecurityUtils.combinePartials(info.getPublicKeys(), info.getGroup());
+
+        return new PublicKey(h, info.getG(), info.getQ(), info.getP(), info.getCurve());
+    }
+
+    /**
+     * @param from      number of the first voter
+     * @param amount    number of votes
+     * @param publicKey key the votes are encrypted under
+     * @return votes of the voters "voter" + from, and on, alternating between 1 and 0, cast now
+     */
+    static List<PersistedVote> votes(int from, int amount, PublicKey publicKey) {
+        List<PersistedVote> votes = new ArrayList<>();
+        for (int i = from; i < from + amount; i++) {
+            votes.add(new PersistedVote(SecurityUtils.generateVote((i + 1) % 2, "voter" + i, publicKey)));
+        }
+
+        return votes;
+    }
+
+    /**
+     * @return copy of the vote, cast at the given time
+     */
+    static PersistedVote castAt(PersistedVote vote, long time) {
+        return new PersistedVote(vote.getCipherText(), vote.getId(), vote.getProof(), new Date(time));
+    }
+
+    /**
+     * Removes everything from the server state, so a test starts as a fresh server
+     */
+    @SuppressWarnings("unchecked")
+    static void clearState() {
+        try {
+            Field state = ServerState.class.getDeclaredField("state");
+            state.setAccessible(true);
+            ((Map<String, Object>) state.get(ServerState.getInstance())).clear();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Unable to clear server state", e);
+        }
+    }
+
+    /**
+     * Fails the log as if a force had failed, which cannot be provoked on a healthy disk
+     */
+    static void failLog(BallotLog log) {
+        try {
+            Method fail = BallotLog.class.getDeclaredMethod("fail", Exception.class);
+            fail.setAccessible(true);
+            fail.invoke(log, new UncheckedIOException(new IOException("Simulated failure of force")));
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Unable to fail ballot log", e);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Response;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Suspended response, for calling asynchronous resource methods without a server.
+ * <br/>
+ * Completes with the response it is resumed with. A timeout set on it fires at once, when {@link #timeOut()} is called
+ */
+class CapturedResponse implements AsyncResponse {
+    private final CompletableFuture<Response> response = new CompletableFuture<>();
+    private TimeoutHandler timeoutHandler;
+
+    /**
+     * @return the response it was resumed with, with exceptions converted to their response
+     * @throws Exception if it was not resumed within a minute
+     */
+    Response get() throws Exception {
+        return response.get(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * @return whether it has been resumed
+     */
+    boolean isResumed() {
+        return response.isDone();
+    }
+
+    /**
+     * Runs the timeout handler, as if the timeout had passed
+     */
+    void timeOut() {
+        timeoutHandler.handleTimeout(this);
+    }
+
+    @Override
+    public boolean resume(Object entity) {
+        return response.complete(entity instanceof Response ? (Response) entity : Response.ok(entity).build());
+    }
+
+    @Override
+    public boolean resume(Throwable throwable) {
+        if (throwable instanceof WebApplicationException) {
+            return response.complete(((WebApplicationException) throwable).getResponse());
+        }
+
+        return response.completeExceptionally(throwable);
+    }
+
+    @Override
+    public boolean cancel() {
+        return response.complete(Response.status(Response.Status.SERVICE_UNAVAILABLE).build());
+    }
+
+    @Override
+    public boolean cancel(int retryAfter) {
+        return cancel();
+    }
+
+    @Override
+    public boolean cancel(Date retryAfter) {
+        return cancel();
+    }
+
+    @Override
+    public boolean isSuspended() {
+        return !response.isDone();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return response.isDone();
+    }
+
+    @Override
+    public boolean setTimeout(long time, TimeUnit unit) {
+        return true;
+    }
+
+    @Override
+    public void setTimeoutHandler(TimeoutHandler handler) {
+        timeoutHandler = handler;
+    }
+
+    @Override
+    public Collection<Class<?>> register(Class<?> callback) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Map<Class<?>, Collection<Class<?>>> register(Class<?> callback, Class<?>... callbacks) {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Collection<Class<?>> register(Object callback) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Map<Class<?>, Collection<Class<?>>> register(Object callback, Object... callbacks) {
+        return Collections.emptyMap();
+    }
+}
@@ -0,0 +1,285 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import dk.mmj.evhe.entities.BinaryEncoding;
+import dk.mmj.evhe.entities.CipherText;
+import dk.mmj.evhe.entities.PersistedVote;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class TestBallotLog {
+    private static final int RECORD_HEADER = 8;
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static PersistedVote vote(int i) {
+        return new PersistedVote(new CipherText(BigInteger.valueOf(i), BigInteger.valueOf(i + 1)),
+                "voter" + i, null, new Date(1000L * i));
+    }
+
+    private static List<PersistedVote> votes(int from, int amount) {
+        List<PersistedVote> votes = new ArrayList<>();
+        for (int i = from; i < from + amount; i++) {
+            votes.add(vote(i));
+        }
+
+        return votes;
+    }
+
+    private static int recordSize(PersistedVote vote) throws IOException {
+        return BinaryEncoding.encode(vote).length + RECORD_HEADER;
+    }
+
+    private static List<PersistedVote> replay(Path directory, int segmentSize) throws IOException {
+        List<PersistedVote> replayed = new ArrayList<>();
+        BallotLog.open(directory, BallotLog.Durability.SYNC, segmentSize, replayed::add).close();
+
+        return replayed;
+    }
+
+    private static void assertVotes(String message, List<PersistedVote> expected, List<PersistedVote> actual) {
+        assertEquals(message + ": wrong number of votes", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(message + ": wrong id", expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(message + ": wrong ciphertext", expected.get(i).getCipherText(), actual.get(i).getCipherText());
+            assertEquals(message + ": wrong timestamp", expected.get(i).getTs(), actual.get(i).getTs());
+        }
+    }
+
+    private List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void shouldReplayAppendedVotesInOrder() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        List<PersistedVote> votes = votes(0, 10);
+
+        try (BallotLog log = BallotLog.open(directory, BallotLog.Durability.SYNC, SEGMENT_SIZE, v -> fail("Replayed vote from empty log"))) {
+            log.append(votes.get(0));
+            log.append(votes.subList(1, 10));
+            assertEquals("Wrong size", 10, log.size());
+        }
+
+        assertVotes("Replay", votes, replay(directory, SEGMENT_SIZE));
+
+        //Reopening continues after the replayed votes
+        try (BallotLog log = BallotLog.open(directory, BallotLog.Durability.SYNC, SEGMENT_SIZE, v -> {
+        })) {
+            assertEquals("Wrong size after replay", 10, log.size());
+            log.append(vote(10));
+        }
+
+        assertVotes("Replay after reopening", votes(0, 11), replay(directory, SEGMENT_SIZE));
+    }
+
+    /**
+     * Corrupts the last of three records, as if the crash happened while it was written.
+     * It must be discarded, and a vote appended afterwards must be replayed in its place
+     */
+    @Test
+    public void shouldDiscardTornRecord() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        List<PersistedVote> votes = votes(0, 3);
+
+        try (BallotLog log = BallotLog.open(directory, BallotLog.Durability.SYNC, SEGMENT_SIZE, v -> {
+        })) {
+            log.append(votes);
+        }
+
+        long torn = recordSize(votes.get(0)) + recordSize(votes.get(1));
+        try (RandomAccessFile segment = new RandomAccessFile(segments(directory).get(0).toFile(), "rw")) {
+            long payloadByte = torn + RECORD_HEADER + 5;
+            segment.seek(payloadByte);
+            int original = segment.read();
+            segment.seek(payloadByte);
+            segment.write(original ^ 0xFF);
+        }
+
+        List<PersistedVote> replayed = new ArrayList<>();
+        try (BallotLog log = BallotLog.open(directory, BallotLog.Durability.SYNC, SEGMENT_SIZE, replayed::add)) {
+            assertVotes("Replay of torn log", votes.subList(0, 2), replayed);
+            log.append(vote(7));
+        }
+
+        assertVotes("Replay after appending to torn log",
+                Arrays.asList(votes.get(0), votes.get(1), vote(7)), replay(directory, SEGMENT_SIZE));
+    }
+
+    @Test
+    public void shouldDiscardRecordLongerThanSegment() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        List<PersistedVote> votes = votes(0, 2);
+
+        try (BallotLog log = BallotLog.open(directory, BallotLog.Durability.SYNC, SEGMENT_SIZE, v -> {
+        })) {
+            log.append(votes);
+        }
+
+        try (RandomAccessFile segment = new RandomAccessFile(segments(directory).get(0).toFile(), "rw")) {
+            segment.seek(recordSize(votes.get(0)));
+            segment.writeInt(SEGMENT_SIZE);
+        }
+
+        assertVotes("Replay with torn length", votes.subList(0, 1), replay(directory, SEGMENT_SIZE));
+    }
+
+    @Test
+    public void shouldRollToNewSegments() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        List<PersistedVote> votes = votes(0, 9);
+        //Room for two records in each segment
+        int segmentSize = recordSize(votes.get(8)) * 5 / 2;
+
+        try (BallotLog log = BallotLog.open(directory, BallotLog.Durability.SYNC, segmentSize, v -> {
+        })) {
+            log.append(votes.get(0));
+            //A batch spanning several segments
+            log.append(votes.subList(1, 6));
+            log.append(votes.get(6));
+        }
+
+        try (BallotLog log = BallotLog.open(directory, BallotLog.Durability.SYNC, segmentSize, v -> {
+        })) {
+            log.append(votes.subList(7, 9));
+        }
+
+        assertEquals("Wrong number of segments", 5, segments(directory).size());
+        assertVotes("Replay across segments", votes, replay(directory, segmentSize));
+    }
+
+    @Test
+    public void shouldLeaveNoVotesFromFailedAppend() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        List<PersistedVote> votes = votes(0, 3);
+        int segmentSize = recordSize(votes.get(0)) * 2;
+
+        PersistedVote tooLarge = vote(3);
+        tooLarge.setId(String.join("", Collections.nCopies(segmentSize, "x")));
+
+        try (BallotLog log = BallotLog.open(directory, BallotLog.Durability.SYNC, segmentSize, v -> {
+        })) {
+            log.append(votes.get(0));
+
+            try {
+                log.append(Arrays.asList(votes.get(1), votes.get(2), tooLarge));
+                fail("Appended vote larger than a segment");
+            } catch (IOException ignored) {
+            }
+
+            assertEquals("Failed append changed the size", 1, log.size());
+        }
+
+        assertVotes("Replay after failed append", votes.subList(0, 1), replay(directory, segmentSize));
+    }
+
+    /**
+     * Once a force has failed, the votes since the last force may or may not be on disk.
+     * The log must then refuse further votes, rather than write after a gap
+     */
+    @Test
+    public void shouldRefuseVotesOnceFailed() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        List<PersistedVote> votes = votes(0, 2);
+
+        try (BallotLog log = BallotLog.open(directory, BallotLog.Durability.SYNC, SEGMENT_SIZE, v -> {
+        })) {
+            log.append(votes.get(0));
+            assertFalse("Healthy log had failed", log.hasFailed());
+
+            BulletinBoardTestUtils.failLog(log);
+            assertTrue("Log had not failed", log.hasFailed());
+            try {
+                log.append(votes.get(1));
+                fail("Failed log took a vote");
+            } catch (IOException ignored) {
+            }
+
+            assertEquals("Failed log changed its size", 1, log.size());
+        }
+
+        assertVotes("Replay after failure", votes.subList(0, 1), replay(directory, SEGMENT_SIZE));
+    }
+
+    /**
+     * Appends from many threads at once. Each append must return with its votes forced,
+     * and no vote may be lost or reordered by the concurrent appends
+     */
+    @Test
+    public void shouldForceConcurrentAppendsBeforeReturning() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        int threads = 8;
+        int perThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try (BallotLog log = BallotLog.open(directory, BallotLog.Durability.SYNC, SEGMENT_SIZE, v -> {
+        })) {
+            List<Future<?>> appenders = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                appenders.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        log.append(vote(thread * perThread + i));
+                        assertTrue("Append returned before it was forced", log.durableSize() >= i + 1);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> appender : appenders) {
+                appender.get(1, TimeUnit.MINUTES);
+            }
+
+            assertEquals("Not every vote was forced", threads * perThread, log.durableSize());
+        } finally {
+            executor.shutdown();
+        }
+
+        List<PersistedVote> replayed = replay(directory, SEGMENT_SIZE);
+        assertEquals("Wrong number of votes replayed", threads * perThread, replayed.size());
+
+        //The votes of each thread are replayed in the order it appended them
+        int[] next = new int[threads];
+        for (PersistedVote vote : replayed) {
+            int i = Integer.parseInt(vote.getId().substring("voter".length()));
+            assertEquals("Votes of a thread were reordered", next[i / perThread]++, i % perThread);
+        }
+    }
+
+    @Test
+    public void shouldForceBatchedAppendsOnFlush() throws IOException {
+        Path directory = folder.getRoot().toPath();
+
+        try (BallotLog log = BallotLog.open(directory, BallotLog.Durability.BATCHED, SEGMENT_SIZE, v -> {
+        })) {
+            log.append(votes(0, 5));
+            log.flush();
+            assertEquals("Flush did not force appended votes", 5, log.durableSize());
+        }
+
+        assertVotes("Replay of batched log", votes(0, 5), replay(directory, SEGMENT_SIZE));
+    }
+}
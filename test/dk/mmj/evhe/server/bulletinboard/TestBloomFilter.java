@@ -0,0 +1,76 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestBloomFilter {
+
+    @Test
+    public void shouldHaveNoFalseNegatives() {
+        int amount = 200_000;
+        BloomFilter filter = new BloomFilter(amount);
+
+        for (int i = 0; i < amount; i++) {
+            long[] key = VoterIdSet.key("voter" + i);
+            filter.put(key[0], key[1]);
+        }
+
+        for (int i = 0; i < amount; i++) {
+            long[] key = VoterIdSet.key("voter" + i);
+            assertTrue("Added key was reported absent", filter.mightContain(key[0], key[1]));
+        }
+    }
+
+    /**
+     * Keys differing in a single bit must not share their bits in the filter
+     */
+    @Test
+    public void shouldHaveNoFalseNegativesForSimilarKeys() {
+        BloomFilter filter = new BloomFilter(1000);
+
+        for (int bit = 0; bit < 64; bit++) {
+            filter.put(1L << bit, 0);
+            filter.put(0, 1L << bit);
+        }
+
+        for (int bit = 0; bit < 64; bit++) {
+            assertTrue("Key with high bit " + bit + " was reported absent", filter.mightContain(1L << bit, 0));
+            assertTrue("Key with low bit " + bit + " was reported absent", filter.mightContain(0, 1L << bit));
+        }
+    }
+
+    /**
+     * Filled with the expected number of keys, about one in a hundred absent keys may pass
+     */
+    @Test
+    public void shouldRejectMostAbsentKeys() {
+        int amount = 200_000;
+        BloomFilter filter = new BloomFilter(amount);
+
+        for (int i = 0; i < amount; i++) {
+            long[] key = VoterIdSet.key("voter" + i);
+            filter.put(key[0], key[1]);
+        }
+
+        int passed = 0;
+        for (int i = 0; i < amount; i++) {
+            long[] key = VoterIdSet.key("absent" + i);
+            if (filter.mightContain(key[0], key[1])) {
+                passed++;
+            }
+        }
+
+        assertTrue("Too many absent keys passed: " + passed, passed < amount / 50);
+    }
+
+    @Test
+    public void shouldRejectEveryKeyWhenEmpty() {
+        BloomFilter filter = new BloomFilter(10);
+
+        for (int i = 0; i < 1000; i++) {
+            long[] key = VoterIdSet.key("voter" + i);
+            assertFalse("Empty filter passed a key", filter.mightContain(key[0], key[1]));
+        }
+    }
+}
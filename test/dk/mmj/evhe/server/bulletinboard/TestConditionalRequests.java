@@ -0,0 +1,155 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import dk.mmj.evhe.crypto.zeroknowledge.DLogProofUtils;
+import dk.mmj.evhe.entities.CipherText;
+import dk.mmj.evhe.entities.PartialResult;
+import dk.mmj.evhe.entities.PublicInformationEntity;
+import dk.mmj.evhe.entities.PublicKey;
+import dk.mmj.evhe.entities.ResultList;
+import dk.mmj.evhe.server.ServerState;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class TestConditionalRequests {
+    private final BulletinBoardResource resource = new BulletinBoardResource();
+
+    private static PartialResult partialResult(int id) {
+        BigInteger value = BigInteger.valueOf(id);
+
+        return new PartialResult(id, value, new DLogProofUtils.Proof(value, value), new CipherText(value, value), 10);
+    }
+
+    /**
+     * @param tag entity tag the client holds, or null if it holds none
+     * @return a GET request, conditional on the entity not matching the tag
+     */
+    private static Request get(EntityTag tag) {
+        ContainerRequest request = new ContainerRequest(URI.create("https://localhost/"), URI.create("https://localhost/result"),
+                HttpMethod.GET, null, new MapPropertiesDelegate());
+        if (tag != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, tag.toString());
+        }
+
+        return request;
+    }
+
+    @Before
+    public void setUp() {
+        BulletinBoardTestUtils.clearState();
+    }
+
+    @After
+    public void tearDown() {
+        BulletinBoardTestUtils.clearState();
+    }
+
+    @Test
+    public void shouldTagResponse() {
+        resource.postResult(partialResult(1));
+        Response response = resource.getResult(get(null));
+
+        assertEquals("Wrong status", 200, response.getStatus());
+        assertNotNull("Response was not tagged", response.getEntityTag());
+        assertTrue("Tag is not weak", response.getEntityTag().isWeak());
+        assertEquals("Response does not vary by Accept", HttpHeaders.ACCEPT, response.getHeaderString(HttpHeaders.VARY));
+        assertEquals("Wrong number of results", 1, ((ResultList) response.getEntity()).getResults().size());
+    }
+
+    /**
+     * A client holding the current tag is answered 304 every time it asks, with the same tag and no entity
+     */
+    @Test
+    public void shouldAnswerNotModifiedWhileUnchanged() {
+        resource.postResult(partialResult(1));
+        EntityTag tag = resource.getResult(get(null)).getEntityTag();
+
+        for (int i = 0; i < 3; i++) {
+            Response response = resource.getResult(get(tag));
+
+            assertEquals("Wrong status", 304, response.getStatus());
+            assertEquals("Wrong tag", tag, response.getEntityTag());
+            assertFalse("Not modified response had an entity", response.hasEntity());
+        }
+    }
+
+    /**
+     * When a result is posted, the list grows, so the list is tagged again.
+     * The old tag must then get the new list, and the new tag a 304
+     */
+    @Test
+    public void shouldTagAgainWhenListGrows() {
+        resource.postResult(partialResult(1));
+        EntityTag first = resource.getResult(get(null)).getEntityTag();
+
+        resource.postResult(partialResult(2));
+        Response changed = resource.getResult(get(first));
+
+        assertEquals("Grown list was not modified", 200, changed.getStatus());
+        assertNotEquals("Grown list has the same tag", first, changed.getEntityTag());
+        assertEquals("Wrong number of results", 2, ((ResultList) changed.getEntity()).getResults().size());
+
+        Response unchanged = resource.getResult(get(changed.getEntityTag()));
+        assertEquals("Grown list was modified for its own tag", 304, unchanged.getStatus());
+    }
+
+    @Test
+    public void shouldTagAgainWhenReplaced() {
+        PublicKey key = new PublicKey(BigInteger.valueOf(4), BigInteger.valueOf(2), BigInteger.valueOf(11), BigInteger.valueOf(23), null);
+        resource.setPublicKey(key);
+        EntityTag first = resource.getPublicKey(get(null)).getEntityTag();
+        assertEquals("Unchanged key was modified", 304, resource.getPublicKey(get(first)).getStatus());
+
+        resource.setPublicKey(new PublicKey(BigInteger.valueOf(8), BigInteger.valueOf(2), BigInteger.valueOf(11), BigInteger.valueOf(23), null));
+        Response replaced = resource.getPublicKey(get(first));
+
+        assertEquals("Replaced key was not modified", 200, replaced.getStatus());
+        assertNotEquals("Replaced key has the same tag", first, replaced.getEntityTag());
+    }
+
+    /**
+     * Public information can still be posted, so caches must revalidate it, while the public key may be served for a while
+     */
+    @Test
+    public void shouldOnlyLetCachesServeUnchangingEntitiesWithoutRevalidating() {
+        ServerState.getInstance().put(BulletinBoard.PUBLIC_INFO,
+                new CopyOnWriteArrayList<>(new PublicInformationEntity[]{BulletinBoardTestUtils.publicInfo()}));
+        CacheControl info = CacheControl.valueOf(resource.getPublicInfos(get(null)).getHeaderString(HttpHeaders.CACHE_CONTROL));
+
+        assertTrue("Public information was not revalidated", info.isNoCache());
+        assertTrue("Public information was not public", info.getCacheExtension().containsKey("public"));
+        assertEquals("Public information had a max age", -1, info.getMaxAge());
+
+        resource.setPublicKey(new PublicKey(BigInteger.valueOf(4), BigInteger.valueOf(2), BigInteger.valueOf(11), BigInteger.valueOf(23), null));
+        CacheControl key = CacheControl.valueOf(resource.getPublicKey(get(null)).getHeaderString(HttpHeaders.CACHE_CONTROL));
+
+        assertFalse("Public key was revalidated", key.isNoCache());
+        assertEquals("Wrong max age of public key", 60, key.getMaxAge());
+    }
+
+    @Test
+    public void shouldTagEqualListsEqually() {
+        resource.postResult(partialResult(1));
+        EntityTag tag = resource.getResult(get(null)).getEntityTag();
+
+        //A restarted server has a new list, but the same results
+        BulletinBoardTestUtils.clearState();
+        resource.postResult(partialResult(1));
+
+        assertEquals("Equal list was modified", 304, resource.getResult(get(tag)).getStatus());
+    }
+}
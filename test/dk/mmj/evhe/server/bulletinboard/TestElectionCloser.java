@@ -0,0 +1,88 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import dk.mmj.evhe.entities.BallotChain;
+import dk.mmj.evhe.entities.CipherText;
+import dk.mmj.evhe.entities.ElectionClose;
+import dk.mmj.evhe.entities.PersistedVote;
+import dk.mmj.evhe.server.ServerState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.Response;
+import java.math.BigInteger;
+import java.util.Date;
+
+import static dk.mmj.evhe.server.bulletinboard.BulletinBoard.*;
+import static org.junit.Assert.*;
+
+public class TestElectionCloser {
+    private final ServerState state = ServerState.getInstance();
+    private final BulletinBoardResource resource = new BulletinBoardResource();
+    private VoteStore votes;
+    private ElectionCloser closer;
+
+    @Before
+    public void setUp() {
+        BulletinBoardTestUtils.clearState();
+        votes = new VoteStore();
+        closer = new ElectionCloser();
+
+        state.put(VOTES, votes);
+        state.put(CHAIN, new VoteChain(votes));
+        state.put(INGESTOR, new VoteIngestor(10, 1));
+        state.put(CLOSER, closer);
+    }
+
+    @After
+    public void tearDown() {
+        BulletinBoardTestUtils.clearState();
+    }
+
+    private Response awaitClose() throws Exception {
+        CapturedResponse response = new CapturedResponse();
+        resource.awaitClose(30, response);
+
+        return response.get();
+    }
+
+    /**
+     * A board that has not been told the end of the vote, e.g. as it was restarted, never closes it by itself.
+     * Clients must be told at once, instead of being asked to repeat the request
+     */
+    @Test
+    public void shouldAnswerNotFoundWhenCloseIsNotScheduled() throws Exception {
+        assertEquals("Wrong status when close is not scheduled", 404, awaitClose().getStatus());
+
+        state.put(CLOSER, null);
+        assertEquals("Wrong status without closer", 404, awaitClose().getStatus());
+    }
+
+    @Test
+    public void shouldAnswerNoContentWhenNotClosedInTime() throws Exception {
+        closer.schedule(System.currentTimeMillis() + 3600_000);
+        CapturedResponse response = new CapturedResponse();
+        resource.awaitClose(30, response);
+
+        assertFalse("Answered before the vote closed", response.isResumed());
+        response.timeOut();
+        assertEquals("Wrong status when not closed in time", 204, response.get().getStatus());
+    }
+
+    @Test
+    public void shouldAnnounceCloseWithFinalVotes() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            votes.add(new PersistedVote(new CipherText(BigInteger.ONE, BigInteger.TEN), "voter" + i, null, new Date()));
+        }
+        long endTime = System.currentTimeMillis();
+        closer.schedule(endTime);
+
+        Response response = awaitClose();
+        assertEquals("Wrong status when closed", 200, response.getStatus());
+
+        ElectionClose close = (ElectionClose) response.getEntity();
+        assertEquals("Wrong end time", endTime, close.getEndTime());
+        assertEquals("Wrong number of votes", 2, close.getVotes());
+        assertEquals("Wrong chain head", BallotChain.toString(new VoteChain(votes).snapshot().getHead()), close.getChainHead());
+    }
+}
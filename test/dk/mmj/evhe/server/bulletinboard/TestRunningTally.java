@@ -0,0 +1,124 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import dk.mmj.evhe.crypto.SecurityUtils;
+import dk.mmj.evhe.entities.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static dk.mmj.evhe.server.bulletinboard.BulletinBoardTestUtils.*;
+import static org.junit.Assert.*;
+
+public class TestRunningTally {
+    private PublicInformationEntity info;
+    private PublicKey publicKey;
+
+    @Before
+    public void setUp() {
+        info = publicInfo();
+        publicKey = publicKey(info);
+    }
+
+    @Test
+    public void shouldGiveSameSumFromAddAndAddAll() {
+        List<PersistedVote> votes = votes(0, 10, publicKey);
+
+        RunningTally oneByOne = new RunningTally(info);
+        votes.forEach(oneByOne::add);
+
+        RunningTally together = new RunningTally(info);
+        assertEquals("Wrong number of votes added", 10, together.addAll(votes));
+
+        assertTallyEquals(oneByOne.snapshot(), together.snapshot());
+        assertEquals("Wrong number of votes", 10, together.snapshot().getVotes());
+        assertTallyEquals(sum(votes), together.snapshot());
+    }
+
+    @Test
+    public void shouldRejectVotesCastAfterEndTime() {
+        List<PersistedVote> votes = votes(0, 3, publicKey);
+        RunningTally tally = new RunningTally(info);
+
+        assertFalse("Added vote cast at the end time", tally.add(castAt(votes.get(0), info.getEndTime())));
+        assertEquals("Added votes cast after the end time", 0, tally.addAll(Arrays.asList(
+                castAt(votes.get(1), info.getEndTime() + 1),
+                castAt(votes.get(2), info.getEndTime() + 60_000))));
+        assertTrue("Did not add vote cast before the end time", tally.add(castAt(votes.get(0), info.getEndTime() - 1)));
+
+        assertEquals("Wrong number of votes", 1, tally.snapshot().getVotes());
+    }
+
+    @Test
+    public void shouldRejectVotesWithInvalidProofs() {
+        List<PersistedVote> votes = votes(0, 6, publicKey);
+
+        //Proof is bound to the voter id
+        PersistedVote wrongId = votes.get(0);
+        wrongId.setId("someone else");
+
+        //Proof of a vote that is neither 0 nor 1
+        VoteDTO two = SecurityUtils.generateVote(2, "voter1", publicKey);
+        votes.set(1, new PersistedVote(two));
+
+        RunningTally oneByOne = new RunningTally(info);
+        assertFalse("Added vote with proof for another id", oneByOne.add(votes.get(0)));
+        assertFalse("Added vote of 2", oneByOne.add(votes.get(1)));
+
+        RunningTally together = new RunningTally(info);
+        assertEquals("Wrong number of votes added", 4, together.addAll(votes));
+        assertTallyEquals(sum(votes.subList(2, 6)), together.snapshot());
+    }
+
+    @Test
+    public void shouldCountEachVoterOnce() {
+        List<PersistedVote> votes = votes(0, 4, publicKey);
+        PersistedVote again = new PersistedVote(SecurityUtils.generateVote(1, votes.get(0).getId(), publicKey));
+
+        RunningTally tally = new RunningTally(info);
+        assertTrue("Did not add first vote", tally.add(votes.get(0)));
+        assertFalse("Added second vote of the same voter", tally.add(again));
+        assertFalse("Added the same vote twice", tally.add(votes.get(0)));
+
+        //Replaying every vote, as when a tally is created after votes were recovered, only adds the new ones
+        List<PersistedVote> replayed = new ArrayList<>(votes);
+        replayed.add(again);
+        assertEquals("Wrong number of votes added on replay", 3, tally.addAll(replayed));
+
+        assertTallyEquals(sum(votes), tally.snapshot());
+    }
+
+    @Test
+    public void shouldContinueFromRestoredSnapshot() {
+        List<PersistedVote> votes = votes(0, 6, publicKey);
+
+        RunningTally original = new RunningTally(info);
+        original.addAll(votes.subList(0, 4));
+
+        RunningTally restored = new RunningTally(info);
+        restored.restore(original.snapshot(), votes.subList(0, 4));
+
+        assertEquals("Restored tally added votes it had seen", 2, restored.addAll(votes));
+        assertTallyEquals(sum(votes), restored.snapshot());
+    }
+
+    private Tally sum(List<PersistedVote> votes) {
+        BigInteger c = info.getGroup().getIdentity();
+        BigInteger d = info.getGroup().getIdentity();
+        for (PersistedVote vote : votes) {
+            c = info.getGroup().multiply(c, vote.getCipherText().getC());
+            d = info.getGroup().multiply(d, vote.getCipherText().getD());
+        }
+
+        return new Tally(new CipherText(c, d), votes.size());
+    }
+
+    private void assertTallyEquals(Tally expected, Tally actual) {
+        assertEquals("Wrong number of votes", expected.getVotes(), actual.getVotes());
+        assertEquals("Wrong c", expected.getCipherText().getC(), actual.getCipherText().getC());
+        assertEquals("Wrong d", expected.getCipherText().getD(), actual.getCipherText().getD());
+    }
+}
@@ -0,0 +1,180 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import dk.mmj.evhe.crypto.zeroknowledge.DLogProofUtils;
+import dk.mmj.evhe.entities.CipherText;
+import dk.mmj.evhe.entities.PartialResult;
+import dk.mmj.evhe.entities.PersistedVote;
+import dk.mmj.evhe.entities.PublicInformationEntity;
+import dk.mmj.evhe.entities.PublicKey;
+import dk.mmj.evhe.entities.Tally;
+import dk.mmj.evhe.server.ServerState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static dk.mmj.evhe.server.bulletinboard.BulletinBoard.*;
+import static dk.mmj.evhe.server.bulletinboard.BulletinBoardTestUtils.*;
+import static org.junit.Assert.*;
+
+public class TestStateSnapshotter {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private final ServerState state = ServerState.getInstance();
+    private PublicInformationEntity info;
+    private PublicKey publicKey;
+    private Path directory;
+
+    @Before
+    public void setUp() {
+        BulletinBoardTestUtils.clearState();
+        info = publicInfo();
+        publicKey = publicKey(info);
+        directory = folder.getRoot().toPath();
+    }
+
+    @After
+    public void tearDown() {
+        BulletinBoardTestUtils.clearState();
+    }
+
+    /**
+     * Puts a freshly started board in the state, holding the given votes as if replayed from the ballot log
+     */
+    private void startBoard(List<PersistedVote> cast) {
+        BulletinBoardTestUtils.clearState();
+        VoteStore votes = new VoteStore();
+        cast.forEach(votes::add);
+        VoteChain chain = new VoteChain(votes);
+        chain.extend();
+
+        state.put(VOTES, votes);
+        state.put(CHAIN, chain);
+        state.put(INGESTOR, new VoteIngestor(10, 1));
+        state.put(CLOSER, new ElectionCloser());
+    }
+
+    /**
+     * Starts a board with the given votes, and a tally of only the first <code>tallied</code> of them,
+     * so a restored tally can be told apart from one summed from the votes
+     */
+    private void snapshotBoard(List<PersistedVote> cast, int tallied) throws IOException {
+        startBoard(cast);
+        RunningTally tally = new RunningTally(info);
+        tally.addAll(cast.subList(0, tallied));
+
+        state.put(PUBLIC_KEY, publicKey);
+        state.put(PUBLIC_INFO, new CopyOnWriteArrayList<>(new PublicInformationEntity[]{info}));
+        state.put(RESULT, new CopyOnWriteArrayList<>(new PartialResult[]{partialResult(1), partialResult(2)}));
+        state.put(TALLY, tally);
+
+        new StateSnapshotter(directory).snapshot();
+    }
+
+    private static PartialResult partialResult(int id) {
+        BigInteger value = BigInteger.valueOf(id);
+
+        return new PartialResult(id, value, new DLogProofUtils.Proof(value, value), new CipherText(value, value), 10);
+    }
+
+    private Tally sum(List<PersistedVote> votes) {
+        RunningTally tally = new RunningTally(info);
+        tally.addAll(votes);
+
+        return tally.snapshot();
+    }
+
+    private void assertTallyEquals(String message, Tally expected, Tally actual) {
+        assertEquals(message + ": wrong number of votes", expected.getVotes(), actual.getVotes());
+        assertEquals(message + ": wrong sum", expected.getCipherText(), actual.getCipherText());
+    }
+
+    @Test
+    public void shouldRestoreNothingWithoutSnapshot() throws IOException {
+        startBoard(votes(0, 2, publicKey));
+
+        assertFalse("Restored missing snapshot", new StateSnapshotter(directory).restore());
+        assertNull("Restored public key", state.get(PUBLIC_KEY, PublicKey.class));
+        assertNull("Restored tally", state.get(TALLY, RunningTally.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void shouldRestoreStateOfSnapshot() throws IOException {
+        List<PersistedVote> votes = votes(0, 4, publicKey);
+        snapshotBoard(votes, 4);
+
+        startBoard(votes);
+        assertTrue("Snapshot was not restored", new StateSnapshotter(directory).restore());
+
+        assertEquals("Wrong public key", publicKey.getH(), state.get(PUBLIC_KEY, PublicKey.class).getH());
+        List<PublicInformationEntity> infos = state.get(PUBLIC_INFO, List.class);
+        assertEquals("Wrong number of public informations", 1, infos.size());
+        assertEquals("Wrong end time", info.getEndTime(), infos.get(0).getEndTime());
+        assertEquals("Wrong public keys of authorities", info.getPublicKeys(), infos.get(0).getPublicKeys());
+
+        List<PartialResult> results = state.get(RESULT, List.class);
+        assertEquals("Wrong number of results", 2, results.size());
+        assertEquals("Wrong result", 2, (int) results.get(1).getId());
+
+        assertTallyEquals("Restored tally", sum(votes), state.get(TALLY, RunningTally.class).snapshot());
+    }
+
+    /**
+     * The log holds the votes of the snapshot and votes cast since.
+     * The tally of the snapshot must be used, and the later votes added to it
+     */
+    @Test
+    public void shouldContinueTallyOfSnapshot() throws IOException {
+        List<PersistedVote> votes = votes(0, 7, publicKey);
+        snapshotBoard(votes.subList(0, 5), 2);
+
+        startBoard(votes);
+        new StateSnapshotter(directory).restore();
+
+        List<PersistedVote> expected = new ArrayList<>(votes.subList(0, 2));
+        expected.addAll(votes.subList(5, 7));
+        RunningTally tally = state.get(TALLY, RunningTally.class);
+        assertTallyEquals("Tally of snapshot was not continued", sum(expected), tally.snapshot());
+
+        assertFalse("Vote seen by snapshot was added again", tally.add(votes.get(3)));
+    }
+
+    /**
+     * The log holds other votes than the snapshot was taken after, so the chain has another head at its length.
+     * The tally of the snapshot must then be ignored, and every vote in the log tallied
+     */
+    @Test
+    public void shouldTallyAllVotesWhenChainDiffers() throws IOException {
+        snapshotBoard(votes(0, 5, publicKey), 2);
+
+        List<PersistedVote> other = votes(10, 6, publicKey);
+        startBoard(other);
+        new StateSnapshotter(directory).restore();
+
+        assertTallyEquals("Tally of other votes was used", sum(other), state.get(TALLY, RunningTally.class).snapshot());
+    }
+
+    /**
+     * The log holds fewer votes than the snapshot was taken after, e.g. as it was lost, so there is no head to compare
+     */
+    @Test
+    public void shouldTallyAllVotesWhenLogIsShorter() throws IOException {
+        List<PersistedVote> votes = votes(0, 5, publicKey);
+        snapshotBoard(votes, 2);
+
+        startBoard(votes.subList(0, 3));
+        new StateSnapshotter(directory).restore();
+
+        assertTallyEquals("Tally of longer log was used", sum(votes.subList(0, 3)),
+                state.get(TALLY, RunningTally.class).snapshot());
+    }
+}
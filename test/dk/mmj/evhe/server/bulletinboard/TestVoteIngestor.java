@@ -0,0 +1,289 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import dk.mmj.evhe.entities.BallotChain;
+import dk.mmj.evhe.entities.CipherText;
+import dk.mmj.evhe.entities.PersistedVote;
+import dk.mmj.evhe.entities.VoteBatch;
+import dk.mmj.evhe.entities.VoteBatchResult;
+import dk.mmj.evhe.entities.VoteDTO;
+import dk.mmj.evhe.server.ServerState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+import static dk.mmj.evhe.server.bulletinboard.BulletinBoard.*;
+import static org.junit.Assert.*;
+
+public class TestVoteIngestor {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private final ServerState state = ServerState.getInstance();
+    private VoteStore votes;
+
+    private static PersistedVote vote(String id) {
+        return new PersistedVote(new CipherText(BigInteger.ONE, BigInteger.TEN), id, null, new Date());
+    }
+
+    private static VoteBatch batch(String id) {
+        return new VoteBatch(Collections.singletonList(new VoteDTO(new CipherText(BigInteger.ONE, BigInteger.TEN), id, null)));
+    }
+
+    @Before
+    public void setUp() {
+        BulletinBoardTestUtils.clearState();
+        votes = new VoteStore();
+        state.put(VOTES, votes);
+    }
+
+    @After
+    public void tearDown() {
+        BulletinBoardTestUtils.clearState();
+    }
+
+    private List<VoteBatchResult.Status> write(VoteIngestor ingestor, PersistedVote... cast) throws Exception {
+        return ingestor.submit(Arrays.asList(cast)).get(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * The ballot log cannot hold the vote, so the append fails.
+     * The vote must not be published, and the voter must be able to vote again once the log works
+     */
+    @Test
+    public void shouldReleaseVotersWhenLogFails() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        VoteIngestor ingestor = new VoteIngestor(10, 1);
+
+        try (BallotLog tooSmall = BallotLog.open(directory.resolve("small"), BallotLog.Durability.SYNC, 16, v -> {
+        })) {
+            state.put(BALLOT_LOG, tooSmall);
+
+            try {
+                write(ingestor, vote("voter"));
+                fail("Vote was written although the log failed");
+            } catch (ExecutionException ignored) {
+            }
+        }
+
+        assertFalse("Voter was claimed", votes.hasVoted("voter"));
+        assertEquals("Vote was published", 0, votes.getVotes().size());
+
+        try (BallotLog log = BallotLog.open(directory.resolve("log"), BallotLog.Durability.SYNC, v -> {
+        })) {
+            state.put(BALLOT_LOG, log);
+
+            assertEquals("Retried vote was not accepted", Collections.singletonList(VoteBatchResult.Status.ACCEPTED),
+                    write(ingestor, vote("voter")));
+            assertEquals("Vote was not logged", 1, log.size());
+        }
+
+        assertTrue("Voter was not claimed", votes.hasVoted("voter"));
+        assertEquals("Vote was not published", 1, votes.getVotes().size());
+    }
+
+    /**
+     * A vote refused by a failed log may still be replayed from it after a restart,
+     * so its voter must not be able to cast another vote
+     */
+    @Test
+    public void shouldKeepVotersClaimedWhenLogHasFailed() throws Exception {
+        VoteIngestor ingestor = new VoteIngestor(10, 1);
+
+        try (BallotLog log = BallotLog.open(folder.getRoot().toPath(), BallotLog.Durability.SYNC, v -> {
+        })) {
+            state.put(BALLOT_LOG, log);
+            BulletinBoardTestUtils.failLog(log);
+
+            try {
+                write(ingestor, vote("voter"));
+                fail("Vote was written although the log had failed");
+            } catch (ExecutionException ignored) {
+            }
+        }
+
+        assertTrue("Voter was released", votes.hasVoted("voter"));
+        assertEquals("Vote was published", 0, votes.getVotes().size());
+    }
+
+    @Test
+    public void shouldReportOutcomeOfEachVote() throws Exception {
+        VoteIngestor ingestor = new VoteIngestor(10, 1);
+
+        assertEquals("Wrong outcomes", Arrays.asList(
+                VoteBatchResult.Status.ACCEPTED,
+                VoteBatchResult.Status.INVALID,
+                VoteBatchResult.Status.DUPLICATE,
+                VoteBatchResult.Status.ACCEPTED),
+                write(ingestor, vote("a"), null, vote("a"), vote("b")));
+        assertEquals("Wrong duplicate outcome", Collections.singletonList(VoteBatchResult.Status.DUPLICATE),
+                write(ingestor, vote("b")));
+        assertEquals("Wrong number of votes", 2, votes.getVotes().size());
+    }
+
+    /**
+     * Writes votes from many threads with two writers, and replays the ballot log as a restarted board would.
+     * The replayed votes must have the same chain as the votes in the store
+     */
+    @Test
+    public void shouldLogVotesInTheOrderOfTheStore() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        int threads = 8;
+        int batches = 100;
+        VoteIngestor ingestor = new VoteIngestor(1000, 2);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try (BallotLog log = BallotLog.open(directory, BallotLog.Durability.SYNC, 64 * 1024, v -> {
+        })) {
+            state.put(BALLOT_LOG, log);
+
+            List<Future<?>> voters = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                voters.add(executor.submit(() -> {
+                    for (int b = 0; b < batches; b++) {
+                        List<PersistedVote> batch = new ArrayList<>();
+                        for (int i = 0; i < 5; i++) {
+                            batch.add(vote("voter" + thread + "-" + b + "-" + i));
+                        }
+                        CompletableFuture<List<VoteBatchResult.Status>> result;
+                        while ((result = ingestor.submit(batch)) == null) {
+                            Thread.sleep(1);
+                        }
+                        result.get(1, TimeUnit.MINUTES);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> voter : voters) {
+                voter.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        VoteStore replayed = new VoteStore();
+        BallotLog.open(directory, BallotLog.Durability.SYNC, 64 * 1024, replayed::add).close();
+
+        BallotChain chain = new VoteChain(votes).snapshot();
+        BallotChain replayedChain = new VoteChain(replayed).snapshot();
+        assertEquals("Wrong number of votes stored", threads * batches * 5, chain.getLength());
+        assertEquals("Wrong number of votes replayed", chain.getLength(), replayedChain.getLength());
+        assertArrayEquals("Replayed chain has another head", chain.getHead(), replayedChain.getHead());
+    }
+
+    /**
+     * Holds back the writer, so votes wait in the queue until it is full.
+     * A vote submitted then must be refused at once with 429, and the delay to retry after
+     */
+    @Test
+    public void shouldRefuseVotesWhenQueueIsFull() throws Exception {
+        VoteIngestor ingestor = new VoteIngestor(3, 1);
+        state.put(INGESTOR, ingestor);
+        BulletinBoardResource resource = new BulletinBoardResource();
+
+        List<CapturedResponse> queued = new ArrayList<>();
+        CapturedResponse refused = new CapturedResponse();
+        boolean answeredWhileQueued = ingestor.betweenRounds(() -> {
+            for (int i = 0; i < 3; i++) {
+                CapturedResponse response = new CapturedResponse();
+                resource.voteBatch(batch("voter" + i), response);
+                queued.add(response);
+            }
+
+            resource.voteBatch(batch("refused"), refused);
+            return queued.stream().anyMatch(CapturedResponse::isResumed);
+        });
+
+        assertFalse("Queued votes were answered before they were written", answeredWhileQueued);
+        Response response = refused.get();
+        assertEquals("Wrong status of refused vote", BulletinBoardResource.TOO_MANY_REQUESTS, response.getStatus());
+        assertEquals("Wrong Retry-After", String.valueOf(VoteIngestor.RETRY_AFTER_SECONDS),
+                response.getHeaderString(HttpHeaders.RETRY_AFTER));
+
+        for (CapturedResponse written : queued) {
+            assertEquals("Queued vote was not written", 200, written.get().getStatus());
+        }
+        assertFalse("Refused vote was written", votes.hasVoted("refused"));
+        assertEquals("Wrong number of votes", 3, votes.getVotes().size());
+    }
+
+    @Test
+    public void shouldWriteVotesSubmittedBeforeClose() throws Exception {
+        VoteIngestor ingestor = new VoteIngestor(10, 2);
+
+        CompletableFuture<List<VoteBatchResult.Status>> before = ingestor.submit(Arrays.asList(vote("a"), vote("b")));
+        CompletableFuture<Integer> closed = ingestor.close();
+        CompletableFuture<List<VoteBatchResult.Status>> after = ingestor.submit(Collections.singletonList(vote("c")));
+
+        assertEquals("Wrong number of votes at close", 2, (int) closed.get(1, TimeUnit.MINUTES));
+        assertEquals("Votes before close were not accepted",
+                Arrays.asList(VoteBatchResult.Status.ACCEPTED, VoteBatchResult.Status.ACCEPTED), before.get());
+        assertEquals("Vote after close was not invalid",
+                Collections.singletonList(VoteBatchResult.Status.INVALID), after.get(1, TimeUnit.MINUTES));
+        assertFalse("Vote after close was stored", votes.hasVoted("c"));
+    }
+
+    /**
+     * One writer is paused after taking a submission off the queue, but before writing it, while the other writer
+     * writes a later submission. The close must wait for the paused vote, and count it, as it is answered accepted
+     */
+    @Test
+    public void shouldCountVotesTakenButNotWrittenAtClose() throws Exception {
+        VoteIngestor ingestor = new VoteIngestor(10, 2);
+        CountDownLatch taken = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+
+        //The writer streams the votes of a submission after taking it, and before writing them
+        List<PersistedVote> paused = new ArrayList<PersistedVote>() {
+            @Override
+            public Stream<PersistedVote> stream() {
+                taken.countDown();
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.stream();
+            }
+        };
+        paused.add(vote("paused"));
+
+        CompletableFuture<List<VoteBatchResult.Status>> slow = ingestor.submit(paused);
+        assertTrue("Writer did not take the vote", taken.await(1, TimeUnit.MINUTES));
+        assertEquals("Vote of other writer was not accepted", Collections.singletonList(VoteBatchResult.Status.ACCEPTED),
+                write(ingestor, vote("written")));
+
+        CompletableFuture<Integer> closed = ingestor.close();
+        try {
+            closed.get(500, TimeUnit.MILLISECONDS);
+            fail("Vote was closed while a vote taken before was not written");
+        } catch (TimeoutException ignored) {
+        }
+
+        resume.countDown();
+        assertEquals("Paused vote was not accepted", Collections.singletonList(VoteBatchResult.Status.ACCEPTED),
+                slow.get(1, TimeUnit.MINUTES));
+        assertEquals("Wrong number of votes at close", 2, (int) closed.get(1, TimeUnit.MINUTES));
+    }
+}
@@ -0,0 +1,259 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dk.mmj.evhe.entities.BallotChain;
+import dk.mmj.evhe.entities.BinaryEncoding;
+import dk.mmj.evhe.entities.BinaryEntityProvider;
+import dk.mmj.evhe.entities.CipherText;
+import dk.mmj.evhe.entities.PersistedVote;
+import dk.mmj.evhe.server.ServerState;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static dk.mmj.evhe.server.bulletinboard.BulletinBoard.*;
+import static org.junit.Assert.*;
+
+/**
+ * Pages of the votes, as served by the bulletin board to streams of votes.
+ * <br/>
+ * Requests are handled by Jersey in memory, so the media type of a page is negotiated as for a real client
+ */
+public class TestVotePages {
+    private static final ApplicationHandler handler = new ApplicationHandler(new ResourceConfig(
+            BulletinBoardResource.class, BinaryEntityProvider.class, JacksonFeature.class));
+    private final ServerState state = ServerState.getInstance();
+    private VoteStore votes;
+    private VoteChain chain;
+
+    private static PersistedVote vote(int i) {
+        return new PersistedVote(new CipherText(BigInteger.valueOf(i), BigInteger.valueOf(i + 1)),
+                "voter" + i, null, new Date(1000L * i));
+    }
+
+    @Before
+    public void setUp() {
+        BulletinBoardTestUtils.clearState();
+        votes = new VoteStore();
+        chain = new VoteChain(votes);
+
+        state.put(VOTES, votes);
+        state.put(CHAIN, chain);
+    }
+
+    @After
+    public void tearDown() {
+        BulletinBoardTestUtils.clearState();
+    }
+
+    private void cast(int from, int amount) {
+        for (int i = from; i < from + amount; i++) {
+            votes.add(vote(i));
+        }
+        chain.extend();
+    }
+
+    /**
+     * Reserves the next slot of the store without writing it, as a vote still being written
+     */
+    private void reserveSlot() throws ReflectiveOperationException {
+        Field reserved = VoteStore.class.getDeclaredField("reserved");
+        reserved.setAccessible(true);
+        ((AtomicInteger) reserved.get(votes)).incrementAndGet();
+    }
+
+    private Page get(String query, String accept) throws Exception {
+        ContainerRequest request = new ContainerRequest(URI.create("https://localhost/"),
+                URI.create("https://localhost/votes" + query), HttpMethod.GET, null, new MapPropertiesDelegate());
+        request.header(HttpHeaders.ACCEPT, accept);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        ContainerResponse response = handler.apply(request, body).get();
+
+        return new Page(response, body.toByteArray());
+    }
+
+    private Page getBinary(String query) throws Exception {
+        return get(query, BinaryEncoding.MEDIA_TYPE);
+    }
+
+    private static void assertIds(String message, int from, int to, List<PersistedVote> page) {
+        List<String> expected = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            expected.add("voter" + i);
+        }
+
+        List<String> actual = new ArrayList<>();
+        page.forEach(vote -> actual.add(vote.getId()));
+        assertEquals(message, expected, actual);
+    }
+
+    @Test
+    public void shouldPageVotesInOrder() throws Exception {
+        cast(0, 5);
+
+        Page first = getBinary("?offset=0&limit=3");
+        assertEquals("Wrong status", 200, first.status);
+        assertEquals("Wrong next offset", 3, first.nextOffset());
+        assertIds("Wrong first page", 0, 3, first.votes());
+        assertEquals("Wrong chain head", BallotChain.toString(chain.headAt(3)), first.chainHead());
+
+        Page second = getBinary("?offset=3&limit=3");
+        assertEquals("Wrong next offset at the end", 5, second.nextOffset());
+        assertIds("Wrong second page", 3, 5, second.votes());
+    }
+
+    /**
+     * At the end of the votes, the next offset is the requested offset, telling the client it has every vote
+     */
+    @Test
+    public void shouldAnswerSameOffsetAtEnd() throws Exception {
+        Page empty = getBinary("");
+        assertEquals("Wrong next offset without votes", 0, empty.nextOffset());
+        assertTrue("Votes were returned without votes", empty.votes().isEmpty());
+
+        cast(0, 2);
+        Page end = getBinary("?offset=2");
+        assertEquals("Wrong status at the end", 200, end.status);
+        assertEquals("Wrong next offset at the end", 2, end.nextOffset());
+        assertTrue("Votes were returned at the end", end.votes().isEmpty());
+        assertEquals("Wrong chain head at the end", BallotChain.toString(chain.headAt(2)), end.chainHead());
+
+        assertEquals("Wrong next offset past the end", 7, getBinary("?offset=7").nextOffset());
+    }
+
+    /**
+     * Votes after a vote still being written must not be returned, as the client would skip the vote once written
+     */
+    @Test
+    public void shouldStopAtVoteStillBeingWritten() throws Exception {
+        cast(0, 3);
+        reserveSlot();
+        cast(4, 2);
+
+        Page page = getBinary("?offset=0&limit=10");
+        assertEquals("Wrong next offset", 3, page.nextOffset());
+        assertIds("Wrong page", 0, 3, page.votes());
+
+        Page blocked = getBinary("?offset=3");
+        assertEquals("Page continued past vote being written", 3, blocked.nextOffset());
+        assertTrue("Votes after vote being written were returned", blocked.votes().isEmpty());
+    }
+
+    /**
+     * Votes cast later are left out of the page, but still covered by the next offset and the chain head,
+     * so the client can verify the page
+     */
+    @Test
+    public void shouldLeaveOutVotesCastAfterBefore() throws Exception {
+        cast(0, 6);
+
+        Page page = getBinary("?offset=1&limit=4&before=3000");
+        assertEquals("Wrong next offset", 5, page.nextOffset());
+        assertIds("Wrong votes before the time", 1, 3, page.votes());
+        assertEquals("Chain head did not cover left out votes", BallotChain.toString(chain.headAt(5)), page.chainHead());
+    }
+
+    @Test
+    public void shouldRejectOffsetAndLimitOutOfBounds() throws Exception {
+        cast(0, 2);
+
+        assertEquals("Wrong status of negative offset", 400, getBinary("?offset=-1").status);
+        assertEquals("Wrong status of zero limit", 400, getBinary("?limit=0").status);
+        assertEquals("Wrong status of negative limit", 400, getBinary("?limit=-5").status);
+        assertEquals("Wrong status of limit above maximum", 400, getBinary("?limit=10001").status);
+        assertEquals("Wrong status of limit at maximum", 200, getBinary("?limit=10000").status);
+    }
+
+    @Test
+    public void shouldAnswerNotFoundBeforeVotingIsInitialized() throws Exception {
+        BulletinBoardTestUtils.clearState();
+
+        assertEquals("Wrong status", 404, getBinary("").status);
+    }
+
+    @Test
+    public void shouldNegotiateBinaryOrJson() throws Exception {
+        cast(0, 3);
+
+        Page binary = get("", BinaryEncoding.MEDIA_TYPE + ", " + BulletinBoardResource.NDJSON + ";q=0.5");
+        assertTrue("Binary was not preferred", binary.isBinary());
+        assertIds("Wrong binary page", 0, 3, binary.votes());
+
+        Page json = get("", BulletinBoardResource.NDJSON);
+        assertTrue("Wrong media type", MediaType.valueOf(BulletinBoardResource.NDJSON).isCompatible(json.response.getMediaType()));
+        assertIds("Wrong JSON page", 0, 3, json.votes());
+        assertEquals("Formats had different next offsets", binary.nextOffset(), json.nextOffset());
+
+        assertEquals("Wrong status of unsupported media type", 406, get("", MediaType.TEXT_HTML).status);
+    }
+
+    /**
+     * A page of votes, with its response and the bytes written
+     */
+    private static class Page {
+        private final ContainerResponse response;
+        private final int status;
+        private final byte[] body;
+
+        private Page(ContainerResponse response, byte[] body) {
+            this.response = response;
+            this.status = response.getStatus();
+            this.body = body;
+        }
+
+        private int nextOffset() {
+            return Integer.parseInt(response.getHeaderString(BulletinBoardResource.NEXT_OFFSET));
+        }
+
+        private String chainHead() {
+            return response.getHeaderString(BulletinBoardResource.CHAIN_HEAD);
+        }
+
+        private boolean isBinary() {
+            return MediaType.valueOf(BinaryEncoding.MEDIA_TYPE).isCompatible(response.getMediaType());
+        }
+
+        private List<PersistedVote> votes() throws IOException {
+            List<PersistedVote> votes = new ArrayList<>();
+
+            try (InputStream in = new ByteArrayInputStream(body)) {
+                if (isBinary()) {
+                    PersistedVote vote;
+                    while ((vote = BinaryEncoding.read(PersistedVote.class, in)) != null) {
+                        votes.add(vote);
+                    }
+                } else {
+                    MappingIterator<PersistedVote> iterator = new ObjectMapper().readerFor(PersistedVote.class).readValues(in);
+                    while (iterator.hasNextValue()) {
+                        votes.add(iterator.nextValue());
+                    }
+                }
+            }
+
+            return votes;
+        }
+    }
+}
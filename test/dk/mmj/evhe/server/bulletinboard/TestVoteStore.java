@@ -0,0 +1,135 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import dk.mmj.evhe.entities.PersistedVote;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TestVoteStore {
+    private static final int THREADS = 8;
+
+    private static PersistedVote vote(String id) {
+        return new PersistedVote(null, id, null, new Date());
+    }
+
+    @Test
+    public void shouldKeepVotesInOrderAcrossChunks() {
+        VoteStore store = new VoteStore();
+        int amount = 10_000;
+
+        for (int i = 0; i < amount; i++) {
+            assertTrue("Vote was not added", store.add(vote("voter" + i)));
+        }
+
+        List<PersistedVote> votes = store.getVotes();
+        assertEquals("Wrong number of votes", amount, votes.size());
+        assertEquals("Wrong size", amount, store.size());
+        for (int i = 0; i < amount; i++) {
+            assertEquals("Vote out of order", "voter" + i, votes.get(i).getId());
+            assertSame("Get did not match list", votes.get(i), store.get(i));
+        }
+    }
+
+    @Test
+    public void shouldRejectSecondVoteWithSameId() {
+        VoteStore store = new VoteStore();
+
+        assertTrue("First vote was not added", store.add(vote("voter")));
+        assertFalse("Second vote was added", store.add(vote("voter")));
+        assertTrue("Voter has not voted", store.hasVoted("voter"));
+        assertFalse("Other voter has voted", store.hasVoted("other"));
+        assertEquals("Wrong number of votes", 1, store.getVotes().size());
+    }
+
+    /**
+     * Many threads add votes with the same ids at once. For each id exactly one of them must be accepted
+     */
+    @Test
+    public void shouldAcceptOneOfConcurrentVotesWithSameId() throws Exception {
+        VoteStore store = new VoteStore();
+        int ids = 5_000;
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger[] accepted = new AtomicInteger[ids];
+        for (int i = 0; i < ids; i++) {
+            accepted[i] = new AtomicInteger();
+        }
+
+        List<Future<?>> adders = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            adders.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ids; i++) {
+                    if (store.add(vote("voter" + i))) {
+                        accepted[i].incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> adder : adders) {
+            adder.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        for (int i = 0; i < ids; i++) {
+            assertEquals("Wrong number of votes accepted for voter" + i, 1, accepted[i].get());
+        }
+        assertEquals("Wrong number of votes stored", ids, store.getVotes().size());
+    }
+
+    /**
+     * Reads the votes while they are added. Every read must be a prefix of the votes finally stored,
+     * even when a later slot is written before an earlier one
+     */
+    @Test
+    public void shouldReturnPrefixWhileVotesAreAdded() throws Exception {
+        VoteStore store = new VoteStore();
+        int perThread = 5_000;
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+        AtomicBoolean adding = new AtomicBoolean(true);
+
+        List<Future<?>> adders = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            adders.add(executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    store.add(vote("voter" + thread + "-" + i));
+                }
+                return null;
+            }));
+        }
+
+        //Slots are written once, so a read is a prefix if each vote is the one now in its slot
+        Future<?> reader = executor.submit(() -> {
+            while (adding.get()) {
+                List<PersistedVote> read = store.getVotes();
+                for (int i = 0; i < read.size(); i++) {
+                    assertSame("Read was not a prefix of the votes", store.get(i), read.get(i));
+                }
+            }
+        });
+
+        for (Future<?> adder : adders) {
+            adder.get(1, TimeUnit.MINUTES);
+        }
+        adding.set(false);
+        reader.get(1, TimeUnit.MINUTES);
+        executor.shutdown();
+
+        assertEquals("Wrong number of votes stored", THREADS * perThread, store.getVotes().size());
+    }
+}
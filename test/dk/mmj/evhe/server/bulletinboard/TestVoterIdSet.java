@@ -0,0 +1,221 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TestVoterIdSet {
+    private static final String ZERO = "00000000-0000-0000-0000-000000000000";
+
+    /**
+     * Finds canonical UUIDs whose keys have the same home slot in the same segment, while the segment has its initial 16 slots
+     *
+     * @param home   home slot of the ids
+     * @param amount number of ids to find
+     * @return ids colliding in the first segment
+     */
+    private static List<String> colliding(int home, int amount) {
+        Random random = new Random(home);
+        List<String> ids = new ArrayList<>();
+
+        while (ids.size() < amount) {
+            String id = new UUID(random.nextLong(), random.nextLong()).toString();
+            long[] key = VoterIdSet.key(id);
+            long hash = VoterIdSet.mix(key[0] ^ key[1]);
+
+            if (hash >>> 58 == 0 && (hash & 15) == home) {
+                ids.add(id);
+            }
+        }
+
+        return ids;
+    }
+
+    @Test
+    public void shouldAddContainAndRemove() {
+        VoterIdSet set = new VoterIdSet();
+
+        assertFalse("Empty set contained id", set.contains("voter"));
+        assertTrue("Id was not added", set.add("voter"));
+        assertFalse("Id was added twice", set.add("voter"));
+        assertTrue("Added id was not contained", set.contains("voter"));
+        assertEquals("Wrong size", 1, set.size());
+
+        assertTrue("Id was not removed", set.remove("voter"));
+        assertFalse("Id was removed twice", set.remove("voter"));
+        assertFalse("Removed id was contained", set.contains("voter"));
+        assertEquals("Wrong size after remove", 0, set.size());
+        assertTrue("Removed id could not be added again", set.add("voter"));
+    }
+
+    /**
+     * Adds many more ids than the set was sized for, so every segment doubles several times
+     */
+    @Test
+    public void shouldKeepIdsWhenGrowing() {
+        VoterIdSet set = new VoterIdSet();
+        long initialMemory = set.memoryUsage();
+        int amount = 50_000;
+
+        for (int i = 0; i < amount; i++) {
+            assertTrue("Id was not added", set.add("voter" + i));
+        }
+
+        assertEquals("Wrong size", amount, set.size());
+        assertTrue("Set did not grow", set.memoryUsage() > initialMemory);
+        for (int i = 0; i < amount; i++) {
+            assertTrue("Id was lost when growing", set.contains("voter" + i));
+            assertFalse("Absent id was contained", set.contains("absent" + i));
+        }
+    }
+
+    /**
+     * Ids with their home in the last slot of the table are probed into the first slots
+     */
+    @Test
+    public void shouldWrapAroundEndOfTable() {
+        VoterIdSet set = new VoterIdSet();
+        List<String> ids = colliding(15, 4);
+
+        ids.forEach(set::add);
+
+        for (String id : ids) {
+            assertTrue("Wrapped id was not contained", set.contains(id));
+        }
+        for (String id : ids) {
+            assertTrue("Wrapped id was not removed", set.remove(id));
+            assertFalse("Removed wrapped id was contained", set.contains(id));
+        }
+        assertEquals("Wrong size", 0, set.size());
+    }
+
+    /**
+     * Removes an id from the middle of probe sequences crossing the end of the table.
+     * The ids after it must be shifted back without passing their home slot, so every other id is still found
+     */
+    @Test
+    public void shouldShiftBackIdsAfterRemovedId() {
+        //Occupies slots 14, 15 and 0 with ids from slot 14, and slots 1 and 2 with ids from slot 0
+        List<String> ids = new ArrayList<>(colliding(14, 3));
+        ids.addAll(colliding(0, 2));
+
+        for (int removed = 0; removed < ids.size(); removed++) {
+            VoterIdSet copy = new VoterIdSet();
+            ids.forEach(copy::add);
+
+            assertTrue("Id was not removed", copy.remove(ids.get(removed)));
+            for (int i = 0; i < ids.size(); i++) {
+                assertEquals("Wrong membership of id " + i + " after removing id " + removed,
+                        i != removed, copy.contains(ids.get(i)));
+            }
+            assertEquals("Wrong size", ids.size() - 1, copy.size());
+        }
+    }
+
+    /**
+     * The zero key marks free slots, so the id with that key is kept apart from the table
+     */
+    @Test
+    public void shouldHoldZeroKey() {
+        VoterIdSet set = new VoterIdSet(100, true);
+
+        assertFalse("Zero key was contained", set.contains(ZERO));
+        assertTrue("Zero key was not added", set.add(ZERO));
+        assertFalse("Zero key was added twice", set.add(ZERO));
+        assertTrue("Zero key was not contained", set.contains(ZERO));
+        assertEquals("Wrong size", 1, set.size());
+
+        set.add("voter");
+        assertTrue("Zero key was not removed", set.remove(ZERO));
+        assertFalse("Zero key was contained after removal", set.contains(ZERO));
+        assertTrue("Other id was lost", set.contains("voter"));
+        assertEquals("Wrong size after removal", 1, set.size());
+    }
+
+    /**
+     * Canonical UUIDs are stored as their bits, while other spellings of the same UUID are hashed,
+     * so they are other voters
+     */
+    @Test
+    public void shouldKeyCanonicalUuidsByTheirBits() {
+        UUID uuid = UUID.randomUUID();
+        long[] key = VoterIdSet.key(uuid.toString());
+
+        assertEquals("Wrong high bits", uuid.getMostSignificantBits(), key[0]);
+        assertEquals("Wrong low bits", uuid.getLeastSignificantBits(), key[1]);
+
+        String upper = uuid.toString().toUpperCase();
+        assertNotEquals("Upper case UUID was not hashed", uuid.getMostSignificantBits(), VoterIdSet.key(upper)[0]);
+        assertNotEquals("UUID without dashes was not hashed", uuid.getMostSignificantBits(),
+                VoterIdSet.key(uuid.toString().replace("-", ""))[0]);
+
+        VoterIdSet set = new VoterIdSet();
+        assertTrue("Canonical UUID was not added", set.add(uuid.toString()));
+        assertTrue("Other spelling was the same voter", set.add(upper));
+        assertEquals("Wrong size", 2, set.size());
+    }
+
+    @Test
+    public void shouldFindEveryIdThroughFilter() {
+        int amount = 20_000;
+        VoterIdSet set = new VoterIdSet(amount, true);
+
+        for (int i = 0; i < amount; i++) {
+            set.add("voter" + i);
+        }
+        set.remove("voter0");
+
+        assertFalse("Removed id was contained", set.contains("voter0"));
+        for (int i = 1; i < amount; i++) {
+            assertTrue("Filter hid an added id", set.contains("voter" + i));
+        }
+        assertFalse("Absent id was contained", set.contains("absent"));
+    }
+
+    /**
+     * Threads add overlapping ids while the segments grow. Each id must be added exactly once
+     */
+    @Test
+    public void shouldAddEachIdOnceConcurrently() throws Exception {
+        VoterIdSet set = new VoterIdSet(0, true);
+        int threads = 8;
+        int amount = 20_000;
+        AtomicInteger added = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            List<Future<?>> adders = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t * amount / 4;
+                adders.add(executor.submit(() -> {
+                    for (int i = 0; i < amount; i++) {
+                        if (set.add("voter" + (offset + i) % (amount * 2))) {
+                            added.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> adder : adders) {
+                adder.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals("Ids were added more or less than once", amount * 2, added.get());
+        assertEquals("Wrong size", amount * 2, set.size());
+        for (int i = 0; i < amount * 2; i++) {
+            assertTrue("Id was lost", set.contains("voter" + i));
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package dk.mmj.evhe.server.bulletinboard;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class TestVoterRoll {
+    private static final String LOWEST = "00000000-0000-0000-0000-000000000000";
+    private static final String HIGHEST = "ffffffff-ffff-ffff-ffff-ffffffffffff";
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static BufferedReader lines(List<String> ids) {
+        return new BufferedReader(new StringReader(String.join("\n", ids)));
+    }
+
+    private static List<String> voters(int amount) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < amount; i++) {
+            ids.add(i % 2 == 0 ? "voter" + i : UUID.randomUUID().toString());
+        }
+
+        return ids;
+    }
+
+    private Path write(List<String> ids) throws IOException {
+        Path path = folder.newFile().toPath();
+        VoterRoll.write(lines(ids), path);
+
+        return path;
+    }
+
+    private Path file(String magic, long size, int records) throws IOException {
+        Path path = folder.newFile().toPath();
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(path))) {
+            out.write(magic.getBytes(StandardCharsets.US_ASCII));
+            out.writeLong(size);
+            out.write(new byte[records * 16]);
+        }
+
+        return path;
+    }
+
+    private void assertRejected(String message, Path path) {
+        try {
+            VoterRoll.open(path);
+            fail(message);
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void shouldFindEveryVoterWritten() throws IOException {
+        List<String> ids = voters(1000);
+        Path path = folder.newFile().toPath();
+
+        assertEquals("Wrong number of voters written", 1000, VoterRoll.write(lines(ids), path));
+        VoterRoll roll = VoterRoll.open(path);
+
+        assertEquals("Wrong number of voters opened", 1000, roll.size());
+        for (String id : ids) {
+            assertTrue("Voter was not on the roll", roll.contains(id));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertFalse("Absent voter was on the roll", roll.contains("absent" + i));
+            assertFalse("Absent UUID was on the roll", roll.contains(UUID.randomUUID().toString()));
+        }
+    }
+
+    /**
+     * The lowest and highest keys bound the interpolation, so they and keys outside them are checked separately
+     */
+    @Test
+    public void shouldFindFirstAndLastVoter() throws IOException {
+        List<String> ids = voters(1000);
+        ids.sort(Comparator.comparing((String id) -> VoterIdSet.key(id)[0], Long::compareUnsigned));
+        VoterRoll roll = VoterRoll.open(write(ids));
+
+        assertTrue("First voter was not on the roll", roll.contains(ids.get(0)));
+        assertTrue("Last voter was not on the roll", roll.contains(ids.get(ids.size() - 1)));
+        assertFalse("Key below the first was on the roll", roll.contains(LOWEST));
+        assertFalse("Key above the last was on the roll", roll.contains(HIGHEST));
+
+        ids.add(LOWEST);
+        ids.add(HIGHEST);
+        VoterRoll bounded = VoterRoll.open(write(ids));
+        assertTrue("Lowest key was not on the roll", bounded.contains(LOWEST));
+        assertTrue("Highest key was not on the roll", bounded.contains(HIGHEST));
+    }
+
+    @Test
+    public void shouldFindNoVoterOnEmptyRoll() throws IOException {
+        Path path = folder.newFile().toPath();
+
+        assertEquals("Wrong number of voters written", 0, VoterRoll.write(lines(new ArrayList<>()), path));
+        VoterRoll roll = VoterRoll.open(path);
+
+        assertEquals("Wrong size", 0, roll.size());
+        assertFalse("Voter was on empty roll", roll.contains("voter"));
+        assertFalse("Lowest key was on empty roll", roll.contains(LOWEST));
+    }
+
+    @Test
+    public void shouldFindSingleVoter() throws IOException {
+        List<String> ids = new ArrayList<>();
+        ids.add("voter");
+        VoterRoll roll = VoterRoll.open(write(ids));
+
+        assertTrue("Voter was not on the roll", roll.contains("voter"));
+        assertFalse("Lowest key was on the roll", roll.contains(LOWEST));
+        assertFalse("Highest key was on the roll", roll.contains(HIGHEST));
+    }
+
+    /**
+     * Maps the roll in pieces of a few records, so lookups read keys on both sides of the end of a map
+     */
+    @Test
+    public void shouldFindVotersAcrossMaps() throws IOException {
+        List<String> ids = voters(1000);
+        Path path = write(ids);
+
+        for (int recordsPerMap : new int[]{1, 7, 999, 1000}) {
+            VoterRoll roll = VoterRoll.open(path, recordsPerMap);
+
+            assertEquals("Wrong size", 1000, roll.size());
+            for (String id : ids) {
+                assertTrue("Voter was not on the roll mapped in pieces of " + recordsPerMap, roll.contains(id));
+            }
+            assertFalse("Absent voter was on the roll mapped in pieces of " + recordsPerMap, roll.contains("absent"));
+        }
+    }
+
+    @Test
+    public void shouldSkipBlankLinesAndRepeatedVoters() throws IOException {
+        List<String> ids = new ArrayList<>();
+        ids.add("voter1");
+        ids.add("");
+        ids.add("  voter2 ");
+        ids.add("voter1");
+        ids.add("   ");
+        ids.add("voter2");
+        Path path = folder.newFile().toPath();
+
+        assertEquals("Wrong number of voters written", 2, VoterRoll.write(lines(ids), path));
+        VoterRoll roll = VoterRoll.open(path);
+        assertTrue("Voter was not on the roll", roll.contains("voter1"));
+        assertTrue("Trimmed voter was not on the roll", roll.contains("voter2"));
+        assertFalse("Blank voter was on the roll", roll.contains(""));
+    }
+
+    /**
+     * A list of a few ids repeated many times must be sorted in about linear time, not quadratic
+     */
+    @Test(timeout = 20_000)
+    public void shouldSortManyRepeatedVoters() throws IOException {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 300_000; i++) {
+            ids.add("voter" + i % 3);
+        }
+        Path path = folder.newFile().toPath();
+
+        assertEquals("Wrong number of voters written", 3, VoterRoll.write(lines(ids), path));
+        VoterRoll roll = VoterRoll.open(path);
+        for (int i = 0; i < 3; i++) {
+            assertTrue("Voter was not on the roll", roll.contains("voter" + i));
+        }
+    }
+
+    @Test
+    public void shouldRejectFilesThatAreNotRolls() throws IOException {
+        assertRejected("Accepted empty file", folder.newFile().toPath());
+        assertRejected("Accepted file shorter than the header", Files.write(folder.newFile().toPath(),
+                "EVHEROLL".getBytes(StandardCharsets.US_ASCII)));
+        assertRejected("Accepted wrong magic", file("EVHEBLOB", 2, 2));
+    }
+
+    @Test
+    public void shouldRejectRollsOfWrongSize() throws IOException {
+        assertRejected("Accepted missing records", file("EVHEROLL", 3, 2));
+        assertRejected("Accepted extra records", file("EVHEROLL", 1, 2));
+        assertRejected("Accepted negative size", file("EVHEROLL", -1, 0));
+
+        Path truncated = write(voters(10));
+        try (FileChannel channel = FileChannel.open(truncated, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        assertRejected("Accepted truncated record", truncated);
+    }
+}
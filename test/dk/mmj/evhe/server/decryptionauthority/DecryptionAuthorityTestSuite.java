@@ -0,0 +1,12 @@
+package dk.mmj.evhe.server.decryptionauthority;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+
+@Suite.SuiteClasses({
+        TestPreTally.class
+})
+public class DecryptionAuthorityTestSuite {
+}
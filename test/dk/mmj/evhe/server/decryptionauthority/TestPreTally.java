@@ -0,0 +1,386 @@
+package dk.mmj.evhe.server.decryptionauthority;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dk.mmj.evhe.client.ShardedBulletinBoard;
+import dk.mmj.evhe.crypto.ElGamal;
+import dk.mmj.evhe.crypto.SecurityUtils;
+import dk.mmj.evhe.crypto.group.Group;
+import dk.mmj.evhe.crypto.keygeneration.EllipticCurveKeyGenerationParameters;
+import dk.mmj.evhe.crypto.keygeneration.KeyGenerationParameters;
+import dk.mmj.evhe.entities.BallotChain;
+import dk.mmj.evhe.entities.ChainHead;
+import dk.mmj.evhe.entities.CipherText;
+import dk.mmj.evhe.entities.ElectionClose;
+import dk.mmj.evhe.entities.PersistedVote;
+import dk.mmj.evhe.entities.PublicKey;
+import dk.mmj.evhe.entities.Tally;
+import dk.mmj.evhe.entities.TallyCheckpoint;
+import dk.mmj.evhe.server.bulletinboard.BulletinBoardResource;
+import org.glassfish.jersey.client.JerseyClient;
+import org.glassfish.jersey.client.JerseyClientBuilder;
+import org.glassfish.jersey.client.JerseyWebTarget;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class TestPreTally {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private final List<FakeShard> shards = new ArrayList<>();
+    private final long endTime = System.currentTimeMillis() + 3600_000;
+    private JerseyClient client;
+    private Group group;
+    private PublicKey publicKey;
+    private Path checkpoint;
+    private int voters;
+
+    @Before
+    public void setUp() throws IOException {
+        client = JerseyClientBuilder.createClient().register(JacksonFeature.class);
+
+        KeyGenerationParameters params = new EllipticCurveKeyGenerationParameters("P-256");
+        group = params.getGroup();
+        BigInteger g = params.getGenerator();
+        publicKey = new PublicKey(group.pow(g, BigInteger.valueOf(7)), g,
+                params.getPrimePair().getQ(), params.getPrimePair().getP(), params.getCurve());
+
+        checkpoint = PreTally.checkpointFor(folder.newFile("authority.conf").toPath());
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        shards.forEach(shard -> shard.server.stop(0));
+    }
+
+    private ShardedBulletinBoard bulletinBoard(int size) throws IOException {
+        List<JerseyWebTarget> targets = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            FakeShard shard = new FakeShard();
+            shards.add(shard);
+            targets.add(client.target("http://localhost:" + shard.server.getAddress().getPort()));
+        }
+
+        return new ShardedBulletinBoard(targets);
+    }
+
+    /**
+     * @return votes of new voters, alternating between 1 and 0
+     */
+    private List<PersistedVote> votes(int amount) {
+        List<PersistedVote> votes = new ArrayList<>();
+        for (int i = 0; i < amount; i++) {
+            int voter = voters++;
+            votes.add(new PersistedVote(SecurityUtils.generateVote(voter % 2, "voter" + voter, publicKey)));
+        }
+
+        return votes;
+    }
+
+    /**
+     * @param summed the id of each vote summed is added to it
+     * @return sum of a page of votes, without verifying their proofs
+     */
+    private Function<List<PersistedVote>, CipherText> sumPage(List<String> summed) {
+        return page -> {
+            page.forEach(vote -> summed.add(vote.getId()));
+            return sum(page);
+        };
+    }
+
+    private CipherText sum(List<PersistedVote> votes) {
+        return votes.stream()
+                .map(PersistedVote::getCipherText)
+                .reduce((a, b) -> ElGamal.homomorphicAddition(a, b, group))
+                .orElse(null);
+    }
+
+    private List<ElectionClose> closes() {
+        return shards.stream().map(FakeShard::close).collect(Collectors.toList());
+    }
+
+    /**
+     * Waits for a round to write a checkpoint of the given number of votes over all shards
+     */
+    private void awaitCheckpoint(int votes) throws Exception {
+        long deadline = System.currentTimeMillis() + 60_000;
+
+        while (System.currentTimeMillis() < deadline) {
+            if (Files.exists(checkpoint)) {
+                TallyCheckpoint[] progress = mapper.readValue(checkpoint.toFile(), TallyCheckpoint[].class);
+                if (Arrays.stream(progress).mapToInt(p -> p.getChain().getLength()).sum() == votes) {
+                    return;
+                }
+            }
+            Thread.sleep(20);
+        }
+
+        fail("No checkpoint of " + votes + " votes was written");
+    }
+
+    private void assertSummedOnce(List<PersistedVote> expected, List<String> summed) {
+        List<String> ids = expected.stream().map(PersistedVote::getId).sorted().collect(Collectors.toList());
+        List<String> actual = new ArrayList<>(summed);
+        Collections.sort(actual);
+
+        assertEquals("Votes were not summed exactly once", ids, actual);
+    }
+
+    private void assertTally(List<PersistedVote> expected, Tally tally) {
+        assertEquals("Wrong number of votes", expected.size(), tally.getVotes());
+        assertEquals("Wrong sum", sum(expected), tally.getCipherText());
+    }
+
+    @Test
+    public void shouldFinishWithMatchingClose() throws IOException {
+        ShardedBulletinBoard bulletinBoard = bulletinBoard(2);
+        List<PersistedVote> all = new ArrayList<>();
+        for (FakeShard shard : shards) {
+            List<PersistedVote> votes = votes(4);
+            shard.votes.addAll(votes);
+            all.addAll(votes);
+        }
+        List<String> summed = new ArrayList<>();
+
+        Tally tally = new PreTally(bulletinBoard, group, endTime, sumPage(summed), checkpoint).finish(closes());
+
+        assertTally(all, tally);
+        assertSummedOnce(all, summed);
+    }
+
+    /**
+     * The shard closed the vote with a vote more than the authority summed, e.g. as it was accepted after the last page
+     */
+    @Test
+    public void shouldRejectCloseWithOtherNumberOfVotes() throws IOException {
+        ShardedBulletinBoard bulletinBoard = bulletinBoard(2);
+        shards.get(0).votes.addAll(votes(3));
+        shards.get(1).votes.addAll(votes(3));
+        List<ElectionClose> closes = closes();
+        closes.set(1, new ElectionClose(endTime, 4, closes.get(1).getChainHead()));
+
+        try {
+            new PreTally(bulletinBoard, group, endTime, sumPage(new ArrayList<>()), checkpoint).finish(closes);
+            fail("Finished with a close of more votes than summed");
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * The shard closed the vote with as many votes as the authority summed, but other votes
+     */
+    @Test
+    public void shouldRejectCloseWithOtherVotes() throws IOException {
+        ShardedBulletinBoard bulletinBoard = bulletinBoard(1);
+        shards.get(0).votes.addAll(votes(3));
+        BallotChain other = new BallotChain();
+        votes(3).forEach(other::append);
+        List<ElectionClose> closes = Collections.singletonList(new ElectionClose(endTime, 3, BallotChain.toString(other.getHead())));
+
+        try {
+            new PreTally(bulletinBoard, group, endTime, sumPage(new ArrayList<>()), checkpoint).finish(closes);
+            fail("Finished with a close of other votes than summed");
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Votes arrive on both shards while rounds run every second.
+     * Each vote must be summed exactly once, however the rounds fall between them
+     */
+    @Test
+    public void shouldSumEachVoteOnceAcrossRounds() throws Exception {
+        ShardedBulletinBoard bulletinBoard = bulletinBoard(2);
+        List<String> summed = new CopyOnWriteArrayList<>();
+        PreTally preTally = new PreTally(bulletinBoard, group, endTime, sumPage(summed), checkpoint);
+        List<PersistedVote> all = new ArrayList<>();
+
+        preTally.start(1);
+        for (int round = 0; round < 3; round++) {
+            for (FakeShard shard : shards) {
+                List<PersistedVote> votes = votes(3);
+                shard.votes.addAll(votes);
+                all.addAll(votes);
+            }
+            awaitCheckpoint(all.size());
+        }
+
+        //Votes cast after the last round are summed when finishing
+        List<PersistedVote> late = votes(2);
+        shards.get(1).votes.addAll(late);
+        all.addAll(late);
+
+        Tally tally = preTally.finish(closes());
+        assertTally(all, tally);
+        assertSummedOnce(all, summed);
+    }
+
+    @Test
+    public void shouldContinueFromCheckpoint() throws Exception {
+        ShardedBulletinBoard bulletinBoard = bulletinBoard(1);
+        List<PersistedVote> before = votes(5);
+        shards.get(0).votes.addAll(before);
+        new PreTally(bulletinBoard, group, endTime, sumPage(new ArrayList<>()), checkpoint).finish(null);
+
+        List<PersistedVote> after = votes(3);
+        shards.get(0).votes.addAll(after);
+        List<String> summed = new CopyOnWriteArrayList<>();
+        PreTally restarted = new PreTally(bulletinBoard, group, endTime, sumPage(summed), checkpoint);
+        restarted.start(3600);
+        awaitCheckpoint(8);
+
+        List<PersistedVote> all = new ArrayList<>(before);
+        all.addAll(after);
+        assertTally(all, restarted.finish(closes()));
+        assertSummedOnce(after, summed);
+    }
+
+    /**
+     * The second shard was reset and holds other votes than the checkpoint was written after, so it has another head.
+     * Its votes must all be summed again, while the first shard continues from the checkpoint
+     */
+    @Test
+    public void shouldSumAllVotesOfShardRejectingCheckpoint() throws Exception {
+        ShardedBulletinBoard bulletinBoard = bulletinBoard(2);
+        List<PersistedVote> kept = votes(4);
+        shards.get(0).votes.addAll(kept);
+        shards.get(1).votes.addAll(votes(4));
+        new PreTally(bulletinBoard, group, endTime, sumPage(new ArrayList<>()), checkpoint).finish(null);
+
+        List<PersistedVote> replaced = votes(5);
+        shards.get(1).votes.clear();
+        shards.get(1).votes.addAll(replaced);
+        List<String> summed = new CopyOnWriteArrayList<>();
+        PreTally restarted = new PreTally(bulletinBoard, group, endTime, sumPage(summed), checkpoint);
+        restarted.start(3600);
+        awaitCheckpoint(9);
+
+        List<PersistedVote> all = new ArrayList<>(kept);
+        all.addAll(replaced);
+        assertTally(all, restarted.finish(closes()));
+        assertSummedOnce(replaced, summed);
+    }
+
+    /**
+     * The shard lost votes, so it cannot give the head after the votes in the checkpoint
+     */
+    @Test
+    public void shouldSumAllVotesOfShardMissingCheckpointedVotes() throws Exception {
+        ShardedBulletinBoard bulletinBoard = bulletinBoard(1);
+        List<PersistedVote> votes = votes(6);
+        shards.get(0).votes.addAll(votes);
+        new PreTally(bulletinBoard, group, endTime, sumPage(new ArrayList<>()), checkpoint).finish(null);
+
+        shards.get(0).votes.subList(4, 6).clear();
+        List<String> summed = new CopyOnWriteArrayList<>();
+        PreTally restarted = new PreTally(bulletinBoard, group, endTime, sumPage(summed), checkpoint);
+        restarted.start(3600);
+        awaitCheckpoint(4);
+
+        assertTally(votes.subList(0, 4), restarted.finish(closes()));
+        assertSummedOnce(votes.subList(0, 4), summed);
+    }
+
+    /**
+     * Shard serving its votes as newline delimited JSON, and the head of their chain
+     */
+    private class FakeShard {
+        private final List<PersistedVote> votes = new CopyOnWriteArrayList<>();
+        private final HttpServer server;
+
+        private FakeShard() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/votes", this::votes);
+            server.createContext("/chain", this::chain);
+            server.start();
+        }
+
+        private BallotChain chainOf(List<PersistedVote> votes) {
+            BallotChain chain = new BallotChain();
+            votes.forEach(chain::append);
+
+            return chain;
+        }
+
+        private ElectionClose close() {
+            return new ElectionClose(endTime, votes.size(), BallotChain.toString(chainOf(votes).getHead()));
+        }
+
+        private Map<String, Integer> query(HttpExchange exchange) {
+            Map<String, Integer> parameters = new HashMap<>();
+            for (String parameter : exchange.getRequestURI().getQuery().split("&")) {
+                String[] pair = parameter.split("=");
+                parameters.put(pair[0], Integer.parseInt(pair[1]));
+            }
+
+            return parameters;
+        }
+
+        private void votes(HttpExchange exchange) throws IOException {
+            Map<String, Integer> query = query(exchange);
+            List<PersistedVote> held = new ArrayList<>(votes);
+            int offset = query.get("offset");
+            int next = Math.min(offset + query.get("limit"), held.size());
+
+            StringBuilder body = new StringBuilder();
+            for (PersistedVote vote : held.subList(offset, next)) {
+                body.append(mapper.writeValueAsString(vote)).append('\n');
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", BulletinBoardResource.NDJSON);
+            exchange.getResponseHeaders().set(BulletinBoardResource.NEXT_OFFSET, String.valueOf(next));
+            exchange.getResponseHeaders().set(BulletinBoardResource.CHAIN_HEAD,
+                    BallotChain.toString(chainOf(held.subList(0, next)).getHead()));
+            send(exchange, body.toString());
+        }
+
+        private void chain(HttpExchange exchange) throws IOException {
+            List<PersistedVote> held = new ArrayList<>(votes);
+            int length = query(exchange).get("length");
+
+            if (length > held.size()) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+
+            ChainHead head = new ChainHead(length, BallotChain.toString(chainOf(held.subList(0, length)).getHead()));
+            exchange.getResponseHeaders().set("Content-Type", MediaType.APPLICATION_JSON);
+            send(exchange, mapper.writeValueAsString(head));
+        }
+
+        private void send(HttpExchange exchange, String body) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length == 0 ? -1 : bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+}